@@ -0,0 +1,162 @@
+#! /bin/bash
+#
+# Licensed to the Apache Software Foundation (ASF) under one
+# or more contributor license agreements.  See the NOTICE file
+# distributed with this work for additional information
+# regarding copyright ownership.  The ASF licenses this file
+# to you under the Apache License, Version 2.0 (the
+# "License"); you may not use this file except in compliance
+# with the License.  You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing,
+# software distributed under the License is distributed on an
+# "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+# KIND, either express or implied.  See the License for the
+# specific language governing permissions and limitations
+# under the License.
+#
+
+CUR_SCRIPT_FOLDER=$( cd -- "$( dirname -- "${BASH_SOURCE[0]}" )" &> /dev/null && pwd )
+SCENARIO_HOMEDIR=$( cd -- "${CUR_SCRIPT_FOLDER}/.." &> /dev/null && pwd )
+
+source "${SCENARIO_HOMEDIR}/_bash/utilities.sh"
+# DEBUG=true
+
+echo
+
+##
+# Show usage info 
+#
+usage() {   
+   echo
+   echo "Usage: buildAppCds.sh [-h]"
+   echo "                      [-n <message_number>]"
+   echo "                      [-cc <client_conf_file>]"
+   echo "                      [-r]"
+   echo "       -h  : Show usage info"
+   echo "       -n  : (Optional) The number of messages to process in the training run (default: 1000)."
+   echo "       -cc : (Optional) 'client.conf' file path for the training run."
+   echo "             When not specified, the training run uses the in-memory broker (memory://) and"
+   echo "             the classes for connecting to a real Pulsar cluster are not part of the archive."
+   echo "       -r  : (Optional) Report the time to the first message with and without the archive."
+   echo
+}
+
+if [[ $# -gt 5 ]]; then
+   usage
+   errExit 10 "Incorrect input parameter count!"
+fi
+
+msgNum=1000
+reportTtfm=0
+while [[ "$#" -gt 0 ]]; do
+   case $1 in
+      -h)  usage; exit 0      ;;
+      -n)  msgNum=$2; shift   ;;
+      -cc) clntConfFile=$2; shift ;;
+      -r)  reportTtfm=1;      ;;
+      *)  errExit 20 "Unknown input parameter passed: $1" ;;
+   esac
+   shift
+done
+debugMsg "msgNum=${msgNum}"
+debugMsg "clntConfFile=${clntConfFile}"
+debugMsg "reportTtfm=${reportTtfm}"
+
+javaExistence=$(chkSysSvcExistence java)
+debugMsg "javaExistence=${javaExistence}"
+if [[ ${javaExistence} -eq 0 ]]; then
+    errExit 30 "[ERROR] 'java' isn't installed on the local machine, which is required to build AppCDS archives!"
+fi
+
+if [[ -z "${clntConfFile}" ]]; then
+   clntConfFile=$(mktemp -t memory-client-XXXXXX.conf)
+   echo "brokerServiceUrl=memory://local" > ${clntConfFile}
+   trap "rm -f ${clntConfFile}" EXIT
+elif ! [[ -f "${clntConfFile}" ]]; then
+   errExit 40 "The specified 'client.conf' file is invalid!"
+fi
+
+iotDataSrcFile="${SCENARIO_HOMEDIR}/_raw_data_src/sensor_telemetry.csv"
+if ! [[ -f "${iotDataSrcFile}" ]]; then
+  errExit 50 "Can't find the IoT sensor data source file is invalid!"
+fi
+
+randomStr=$(cat /dev/urandom | LC_ALL=C tr -dc 'a-z0-9' | fold -w 8 | head -n 1)
+trainingTopic="persistent://public/default/appcds-training-${randomStr}"
+commonParams="-n ${msgNum} -t ${trainingTopic} -c ${clntConfFile}"
+
+##
+# The shaded client app jars and the applications to run for collecting their class lists:
+#   <jar file path (relative to 'scenarios')>|<training run parameters>|<application used for reporting>
+#
+# Consumers are listed first so they have subscribed before the producers start publishing.
+#
+npClientApps=(
+  "native-pulsar/message-enrichment/client-app/target/np-msgenrich-clientapp-1.0.0.jar|\
+com.example.pulsarworkshop.IoTSensorConsumer ${commonParams} -sbn appcds-training -- \
+com.example.pulsarworkshop.IoTSensorProducer ${commonParams} -csv ${iotDataSrcFile}|\
+com.example.pulsarworkshop.IoTSensorProducer ${commonParams} -csv ${iotDataSrcFile}"
+  "native-pulsar/message-enrichment-avro/client-app/target/np-msgenrich-avro-clientapp-1.0.0.jar|\
+com.example.pulsarworkshop.IoTSensorConsumerAvro ${commonParams} -sbn appcds-training -- \
+com.example.pulsarworkshop.IoTSensorProducerAvro ${commonParams} -csv ${iotDataSrcFile}|\
+com.example.pulsarworkshop.IoTSensorProducerAvro ${commonParams} -csv ${iotDataSrcFile}"
+  "native-pulsar/message-redelivery/client-app/target/message-redelivery-clientapp-1.0.0.jar|\
+com.example.pulsarworkshop.DeadLetterConsumer ${commonParams} -- \
+com.example.pulsarworkshop.SimpleProducer ${commonParams} -csv ${iotDataSrcFile}|\
+com.example.pulsarworkshop.SimpleProducer ${commonParams} -csv ${iotDataSrcFile}"
+)
+
+##
+# Returns the "time to first message" (in milliseconds) reported by a client application run
+# - $1 : extra JVM options
+# - $2 : client app jar file
+# - $3 : application main class and parameters
+getTimeToFirstMsg() {
+   java $1 -cp $2 $3 2>&1 | grep "Time to first message" | head -n 1 | sed -E 's/.*message: ([0-9]+) ms.*/\1/'
+}
+
+ttfmReport=()
+for npClientApp in "${npClientApps[@]}"; do
+   IFS='|' read -r appJarPath trainingParams reportParams <<< "${npClientApp}"
+   appJar="${SCENARIO_HOMEDIR}/scenarios/${appJarPath}"
+   if ! [[ -f "${appJar}" ]]; then
+      echo "Can not find client app jar ${appJarPath}; skip building its AppCDS archive!"
+      continue
+   fi
+
+   classListFile="${appJar%.jar}.classlist"
+   cdsArchiveFile="${appJar%.jar}.jsa"
+
+   echo "Collecting the loaded class list for: ${appJarPath} ..."
+   java -Xshare:off -XX:DumpLoadedClassList=${classListFile} \
+      -cp ${appJar} com.example.pulsarworkshop.AppCdsTrainingRun ${trainingParams} > /dev/null 2>&1
+   if [[ $? -ne 0 || ! -s "${classListFile}" ]]; then
+      errExit 60 "The AppCDS training run failed for: ${appJarPath}"
+   fi
+
+   echo "Creating the AppCDS archive: ${cdsArchiveFile} ..."
+   java -Xshare:dump -XX:SharedClassListFile=${classListFile} -XX:SharedArchiveFile=${cdsArchiveFile} \
+      -cp ${appJar} > /dev/null 2>&1
+   if [[ $? -ne 0 || ! -f "${cdsArchiveFile}" ]]; then
+      errExit 70 "Failed to create the AppCDS archive for: ${appJarPath}"
+   fi
+
+   if [[ ${reportTtfm} -eq 1 ]]; then
+      ttfmNoCds=$(getTimeToFirstMsg "-Xshare:auto" "${appJar}" "${reportParams}")
+      ttfmCds=$(getTimeToFirstMsg "-XX:SharedArchiveFile=${cdsArchiveFile}" "${appJar}" "${reportParams}")
+      ttfmReport+=("$(basename ${appJar}): ${ttfmNoCds} ms without AppCDS, ${ttfmCds} ms with AppCDS")
+   fi
+done
+
+if [[ ${reportTtfm} -eq 1 ]]; then
+   echo
+   echo "Time to first message:"
+   for reportLine in "${ttfmReport[@]}"; do
+      echo "  ${reportLine}"
+   done
+fi
+
+echo
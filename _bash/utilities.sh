@@ -192,7 +192,7 @@ checkTntExistence () {
     fi
 
     curlCmd="${curlCmd}
-    --data 5"
+    --data ${numPartitions}"
 
     # stderr is needed here because stdout is capatured as the function output
     debugMsg "curlCmd=${curlCmd}" >&2
@@ -281,17 +281,19 @@ createNameSpace() {
 
 
 ##
-# Create a partitioned topic (with 5 partitions) using 'curl' command
-# 4 input parameters
+# Create a partitioned topic using 'curl' command
+# 5 input parameters
 #   - 1st parameter: Pulsar web service URL
 #   - 2nd parameter: Pulsar topic name (without the leading 'persistent://' or 'non-persistent://')
 #   - 3rd parameter: Whether JWT token authentication is enabled
 #   - 4th parameter: JWT token value
+#   - 5th parameter: (Optional) Number of partitions (default to 5)
 createTopic() {
     local webSvcUrl=${1}
     local topicName=${2}
     local jwtAuthEnalbed=${3}
     local tokenValue=${4}
+    local numPartitions=${5:-5}
 
     local curlCmd="curl -sS -k -X PUT
     --write-out '%{http_code}'
@@ -305,7 +307,7 @@ createTopic() {
     fi
 
     curlCmd="${curlCmd}
-    --data 5"
+    --data ${numPartitions}"
 
     # stderr is needed here because stdout is capatured as the function output
     debugMsg "curlCmd=${curlCmd}" >&2
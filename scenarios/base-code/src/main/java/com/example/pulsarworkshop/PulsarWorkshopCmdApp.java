@@ -19,6 +19,7 @@
 package com.example.pulsarworkshop;
 
 import com.example.pulsarworkshop.util.ClientConnConf;
+import com.example.pulsarworkshop.util.WorkloadSpec;
 import org.apache.commons.cli.*;
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -31,6 +32,10 @@ import com.example.pulsarworkshop.exception.WorkshopRuntimException;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 abstract public class PulsarWorkshopCmdApp {
 
@@ -44,8 +49,22 @@ abstract public class PulsarWorkshopCmdApp {
 
     protected ClientConnConf clientConnConf;
 
+    // The workload spec (file or bundled profile) that provides the default option values, if any
+    protected WorkloadSpec workloadSpec;
+    // 0 means no limit for the message rate (messages per second) or the run duration (seconds)
+    protected int msgRate;
+    protected int runDurationSec;
+    // Set by the first "paceWorkload()" or "hasRunTimeLeft()" call
+    private volatile long workloadStartNanos = -1;
+
     protected final String appName;
 
+    // Time (in milliseconds) from the JVM start to the first message being processed.
+    // -1 means no message has been processed yet.
+    protected long timeToFirstMsg = -1;
+    // Max time a receive call of a consumer application waits, so the run duration is checked
+    protected final static int RUN_CHECK_INTERVAL_MS = 1000;
+
     protected CommandLine commandLine;
     protected final DefaultParser commandParser;
     protected final Options cliOptions = new Options();
@@ -64,6 +83,10 @@ abstract public class PulsarWorkshopCmdApp {
         addOptionalCommandLineOption("t", "topic", true, "Pulsar topic name.");
         addRequiredCommandLineOption("c","connFile", true, "\"client.conf\" file path.");
         addOptionalCommandLineOption("a", "astra", false, "Whether to use Astra streaming.");
+        addOptionalCommandLineOption("w", "workload", true,
+                "Workload spec file (or bundled profile name) that provides the default option values.");
+        addOptionalCommandLineOption("rt", "rate", true, "Message rate limit per second (0: no limit).");
+        addOptionalCommandLineOption("d", "duration", true, "Run duration in seconds (0: no limit).");
     }
 
     protected void addRequiredCommandLineOption(String option, String longOption, boolean hasArg, String description) {
@@ -82,6 +105,49 @@ abstract public class PulsarWorkshopCmdApp {
         return apiType + "-" + appName;
     }
 
+    // Called by the client applications after the first message is published or received.
+    // This is used to measure the JVM start-up cost, e.g. with and without an AppCDS archive.
+    protected void recordFirstMessage() {
+        if (timeToFirstMsg == -1) {
+            timeToFirstMsg = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+            System.out.println("[" + appName + "] Time to first message: " + timeToFirstMsg + " ms (since JVM start)");
+        }
+    }
+
+
+    // Called by the client applications before processing the next message. It throttles the
+    // processing loop to the "rate" option, and returns false once the "duration" option is reached.
+    protected boolean paceWorkload(long msgCount) {
+        if (!hasRunTimeLeft()) {
+            return false;
+        }
+        long elapsedNanos = System.nanoTime() - workloadStartNanos;
+
+        if (msgRate > 0) {
+            long aheadNanos = (msgCount * TimeUnit.SECONDS.toNanos(1) / msgRate) - elapsedNanos;
+            if (aheadNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(aheadNanos);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    // Called by the consumer applications in their receive loop, which must not block for longer than
+    // "RUN_CHECK_INTERVAL_MS": returns false once the "duration" option is reached. The "rate" option
+    // only applies to the producers.
+    protected boolean hasRunTimeLeft() {
+        long now = System.nanoTime();
+        if (workloadStartNanos == -1) {
+            workloadStartNanos = now;
+        }
+        return runDurationSec <= 0 || (now - workloadStartNanos) < TimeUnit.SECONDS.toNanos(runDurationSec);
+    }
 
     public int runCmdApp() {
         int exitCode = 0;
@@ -124,6 +190,21 @@ abstract public class PulsarWorkshopCmdApp {
     public void processInputParams() throws HelpExitException, InvalidParamException {
 
     	if (commandLine == null) {
+            // The workload spec settings become the default values of the other CLI options
+            String workload = WorkloadSpec.findWorkloadParam("w", "workload", rawCmdInputParams);
+            if (workload != null) {
+                workloadSpec = new WorkloadSpec(workload);
+
+                List<String> unsupportedKeys = new ArrayList<>();
+                rawCmdInputParams = workloadSpec.mergeIntoCmdLineParams(
+                        appName, cliOptions, rawCmdInputParams, unsupportedKeys);
+                System.out.println("[" + appName + "] Using workload spec: " + workloadSpec.getSource());
+                if (!unsupportedKeys.isEmpty()) {
+                    System.out.println("[" + appName + "] Workload settings not applicable to this application (ignored): " +
+                            unsupportedKeys);
+                }
+            }
+
             try {
                 commandLine = commandParser.parse(cliOptions, rawCmdInputParams);
             } catch (ParseException e) {
@@ -154,6 +235,16 @@ abstract public class PulsarWorkshopCmdApp {
         // (Optional) Whether to use Astra Streaming
         useAstraStreaming = processBooleanInputParam("a", true);
 
+        // (Optional) Message rate limit and run duration
+        msgRate = processIntegerInputParam("rt", 0);
+        if (msgRate < 0) {
+            throw new InvalidParamException("Message rate must be a positive integer or 0 (no limit)!");
+        }
+        runDurationSec = processIntegerInputParam("d", 0);
+        if (runDurationSec < 0) {
+            throw new InvalidParamException("Run duration must be a positive integer or 0 (no limit)!");
+        }
+
         processExtendedInputParams();
     }
 
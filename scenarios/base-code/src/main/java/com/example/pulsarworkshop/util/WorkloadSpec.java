@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.util;
+
+import com.example.pulsarworkshop.exception.InvalidParamException;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.configuration2.Configuration;
+import org.apache.commons.configuration2.FileBasedConfiguration;
+import org.apache.commons.configuration2.PropertiesConfiguration;
+import org.apache.commons.configuration2.builder.FileBasedConfigurationBuilder;
+import org.apache.commons.configuration2.builder.fluent.Parameters;
+import org.apache.commons.configuration2.builder.fluent.PropertiesBuilderParameters;
+import org.apache.commons.configuration2.ex.ConfigurationException;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.io.File;
+import java.net.URL;
+import java.util.*;
+
+/**
+ * A workload spec is a properties file that describes a (load test) run of a client application,
+ * e.g. the number of messages, the subscription type, the publishing rate, the run duration, etc.
+ *
+ * Each key in the file is the long (or short) name of a command line option of the client
+ * application. The settings of the file are used as the default values of the corresponding
+ * command line options, which means an option that is explicitly set on the command line always wins.
+ *
+ * The same workload spec can be shared by the producer and the consumer applications and across
+ * the different APIs (native Pulsar, Kafka, JMS, RabbitMQ). A setting that doesn't apply to a
+ * client application is simply ignored by it. A setting can also be scoped to one client application
+ * by prefixing the key with the application name (e.g. "IoTSensorTopicSubscriber.subType=sd"), which
+ * then takes precedence over the same setting without the prefix.
+ *
+ * Besides a file path, a workload spec can also be the name of one of the standard capacity
+ * test profiles that are bundled with the client applications (under "workloads/" on the classpath).
+ */
+public class WorkloadSpec {
+
+    public final static String BUNDLED_PROFILE_FOLDER = "workloads";
+    public final static String[] BUNDLED_PROFILES = { "smoke", "sustained", "burst", "soak" };
+
+    // Keep the order of the settings as in the file so that the resulting command line is predictable
+    private final Map<String, String> workloadSettingMap = new LinkedHashMap<>();
+    private final String source;
+
+    public WorkloadSpec(String fileOrProfile) throws InvalidParamException {
+        if (StringUtils.isBlank(fileOrProfile)) {
+            throw new InvalidParamException("Empty workload spec file path or profile name!");
+        }
+
+        Parameters params = new Parameters();
+        PropertiesBuilderParameters propParams = params.properties();
+
+        File workloadFile = new File(fileOrProfile);
+        if (workloadFile.isFile()) {
+            source = workloadFile.getAbsolutePath();
+            propParams.setFile(workloadFile);
+        }
+        else {
+            URL profileUrl = WorkloadSpec.class.getClassLoader().getResource(
+                    BUNDLED_PROFILE_FOLDER + "/" + fileOrProfile + ".properties");
+            if (profileUrl == null) {
+                throw new InvalidParamException("Workload spec \"" + fileOrProfile + "\" is neither a valid file " +
+                        "nor a bundled profile name " + Arrays.toString(BUNDLED_PROFILES) + "!");
+            }
+            source = "profile:" + fileOrProfile;
+            propParams.setURL(profileUrl);
+        }
+
+        try {
+            FileBasedConfigurationBuilder<FileBasedConfiguration> builder =
+                    new FileBasedConfigurationBuilder<FileBasedConfiguration>(PropertiesConfiguration.class)
+                            .configure(propParams);
+
+            Configuration config = builder.getConfiguration();
+
+            for (Iterator<String> it = config.getKeys(); it.hasNext(); ) {
+                String settingKey = it.next();
+                String settingVal = config.getProperty(settingKey).toString();
+
+                if (!StringUtils.isBlank(settingVal)) {
+                    workloadSettingMap.put(settingKey, settingVal);
+                }
+            }
+        } catch (ConfigurationException cex) {
+            throw new InvalidParamException(
+                    "Error loading workload settings from the specified workload spec: " + source);
+        }
+    }
+
+    /**
+     * Get the value of the "-w"/"--workload" option from the raw command line parameters, if any.
+     * This needs to be done before the command line is parsed, because the workload settings
+     * provide the values of other (possibly required) command line options.
+     */
+    public static String findWorkloadParam(String shortOpt, String longOpt, String[] rawCmdInputParams) {
+        if (rawCmdInputParams == null) {
+            return null;
+        }
+
+        for (int i = 0; i < rawCmdInputParams.length; i++) {
+            String param = rawCmdInputParams[i];
+            if (StringUtils.equalsAny(param, "-" + shortOpt, "--" + longOpt)) {
+                return (i + 1 < rawCmdInputParams.length) ? rawCmdInputParams[i + 1] : null;
+            }
+            else if (StringUtils.startsWith(param, "--" + longOpt + "=")) {
+                return StringUtils.substringAfter(param, "=");
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Merge the workload settings into the raw command line parameters of the specified application.
+     * A workload setting is only added when the corresponding option is not explicitly set on the
+     * command line. The keys that don't match any command line option of the application are returned
+     * in "unsupportedKeys".
+     */
+    public String[] mergeIntoCmdLineParams(String appName,
+                                           Options cliOptions,
+                                           String[] rawCmdInputParams,
+                                           Collection<String> unsupportedKeys) {
+        String appScopePrefix = appName + ".";
+        Map<String, String> appSettingMap = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : workloadSettingMap.entrySet()) {
+            if (!StringUtils.startsWith(entry.getKey(), appScopePrefix)) {
+                appSettingMap.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+            else {
+                appSettingMap.put(StringUtils.removeStart(entry.getKey(), appScopePrefix), entry.getValue());
+            }
+        }
+
+        List<String> mergedParams = new ArrayList<>(Arrays.asList(rawCmdInputParams));
+
+        for (Map.Entry<String, String> entry : appSettingMap.entrySet()) {
+            Option option = cliOptions.getOption(entry.getKey());
+            if (option == null) {
+                unsupportedKeys.add(entry.getKey());
+                continue;
+            }
+
+            if (isSetOnCmdLine(option, rawCmdInputParams)) {
+                continue;
+            }
+
+            String optParam = (option.getLongOpt() != null) ? "--" + option.getLongOpt() : "-" + option.getOpt();
+            if (option.hasArg()) {
+                mergedParams.add(optParam);
+                mergedParams.add(entry.getValue());
+            }
+            // A flag option (with no argument) is only added when it is set to "true" in the workload spec
+            else if (BooleanUtils.toBoolean(entry.getValue())) {
+                mergedParams.add(optParam);
+            }
+        }
+
+        return mergedParams.toArray(new String[0]);
+    }
+
+    private static boolean isSetOnCmdLine(Option option, String[] rawCmdInputParams) {
+        for (String param : rawCmdInputParams) {
+            if (StringUtils.equals(param, "-" + option.getOpt())) {
+                return true;
+            }
+            if (option.getLongOpt() != null &&
+                (StringUtils.equals(param, "--" + option.getLongOpt()) ||
+                 StringUtils.startsWith(param, "--" + option.getLongOpt() + "="))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getValue(String settingKey) {
+        return workloadSettingMap.get(settingKey);
+    }
+
+    public String getSource() { return source; }
+
+    public String toString() {
+        return new ToStringBuilder(this).
+                append("source", source).
+                append("workloadSettingMap", workloadSettingMap.toString()).
+                toString();
+    }
+}
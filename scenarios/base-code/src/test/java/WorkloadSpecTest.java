@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import com.example.pulsarworkshop.exception.InvalidParamException;
+import com.example.pulsarworkshop.util.WorkloadSpec;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class WorkloadSpecTest {
+
+    private static Options testOptions(String subTypeOpt) {
+        Options options = new Options();
+        options.addOption(new Option("n", "numMsg", true, ""));
+        options.addOption(new Option("rt", "rate", true, ""));
+        options.addOption(new Option(subTypeOpt, "subType", true, ""));
+        options.addOption(new Option("a", "astra", false, ""));
+        return options;
+    }
+
+    private static String valueOf(String[] params, String optParam) {
+        List<String> paramList = Arrays.asList(params);
+        int idx = paramList.indexOf(optParam);
+        return (idx >= 0) ? paramList.get(idx + 1) : null;
+    }
+
+    @Test
+    public void testFindWorkloadParam() {
+        Assertions.assertEquals("smoke",
+                WorkloadSpec.findWorkloadParam("w", "workload", new String[] {"-n", "10", "-w", "smoke"}));
+        Assertions.assertEquals("smoke",
+                WorkloadSpec.findWorkloadParam("w", "workload", new String[] {"--workload=smoke"}));
+        Assertions.assertNull(
+                WorkloadSpec.findWorkloadParam("w", "workload", new String[] {"-n", "10"}));
+    }
+
+    @Test
+    public void testMergeBundledProfile() {
+        WorkloadSpec workloadSpec = new WorkloadSpec("smoke");
+        List<String> unsupportedKeys = new ArrayList<>();
+
+        String[] merged = workloadSpec.mergeIntoCmdLineParams(
+                "TestApp", testOptions("sbt"), new String[] {"-n", "5"}, unsupportedKeys);
+
+        // The command line always wins over the workload spec
+        Assertions.assertEquals("5", valueOf(merged, "-n"));
+        Assertions.assertNull(valueOf(merged, "--numMsg"));
+
+        Assertions.assertEquals("10", valueOf(merged, "--rate"));
+        Assertions.assertEquals("Shared", valueOf(merged, "--subType"));
+        Assertions.assertTrue(unsupportedKeys.contains("duration"));
+    }
+
+    @Test
+    public void testAppScopedSetting() {
+        WorkloadSpec workloadSpec = new WorkloadSpec("smoke");
+
+        String[] merged = workloadSpec.mergeIntoCmdLineParams(
+                "IoTSensorTopicSubscriber", testOptions("st"), new String[0], new ArrayList<>());
+        Assertions.assertEquals("sd", valueOf(merged, "--subType"));
+    }
+
+    @Test
+    public void testBundledProfileTopology() {
+        for (String profile : WorkloadSpec.BUNDLED_PROFILES) {
+            WorkloadSpec workloadSpec = new WorkloadSpec(profile);
+            for (String key : new String[] {"duration", "numPartitions", "producerNum", "consumerNum"}) {
+                Assertions.assertNotNull(workloadSpec.getValue(key), profile + " doesn't set " + key);
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidWorkloadSpec() {
+        Assertions.assertThrows(InvalidParamException.class, () -> new WorkloadSpec("no-such-profile"));
+    }
+}
@@ -77,8 +77,11 @@ public class IoTSensorQueueReceiver extends S4JCmdApp {
                 numMsg = Integer.MAX_VALUE;
             }
 
-            while (msgRecvd < numMsg) {
-                Message message = jmsConsumer.receive();
+            while (msgRecvd < numMsg && hasRunTimeLeft()) {
+                Message message = jmsConsumer.receive(RUN_CHECK_INTERVAL_MS);
+                if (message == null) {
+                    continue;
+                }
                 logger.info("Message received from topic {}: value={}",
                         queueDestination.getQueueName(),
                         message.getBody(String.class));
@@ -95,7 +95,7 @@ public class IoTSensorTopicPublisher extends S4JCmdApp {
                 String csvLine = csvFileLineScanner.getNextLine();
                 // Skip the first line which is a title line
                 if (!isTitleLine) {
-                    if (msgSent < numMsg) {
+                    if (msgSent < numMsg && paceWorkload(msgSent)) {
                         jmsProducer.send(topicDestination, csvLine);
                         logger.info("IoT sensor data published to topic {} [{}] {}",
                                 topicDestination.getTopicName(),
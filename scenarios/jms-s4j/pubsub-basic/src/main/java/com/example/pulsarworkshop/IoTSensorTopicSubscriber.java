@@ -119,8 +119,11 @@ public class IoTSensorTopicSubscriber extends S4JCmdApp {
                 numMsg = Integer.MAX_VALUE;
             }
 
-            while (msgRecvd < numMsg) {
-                Message message = jmsConsumer.receive();
+            while (msgRecvd < numMsg && hasRunTimeLeft()) {
+                Message message = jmsConsumer.receive(RUN_CHECK_INTERVAL_MS);
+                if (message == null) {
+                    continue;
+                }
                 logger.info("Message received from topic {}: value={}",
                         topicDestination.getTopicName(),
                         message.getBody(String.class));
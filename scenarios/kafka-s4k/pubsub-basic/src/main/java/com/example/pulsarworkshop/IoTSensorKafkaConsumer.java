@@ -84,8 +84,8 @@ public class IoTSensorKafkaConsumer extends S4KCmdApp {
             numMsg = Integer.MAX_VALUE;
         }
 
-        while (msgRecvd < numMsg) {
-            ConsumerRecords<String, String> records = kafkaConsumer.poll(1000);
+        while (msgRecvd < numMsg && hasRunTimeLeft()) {
+            ConsumerRecords<String, String> records = kafkaConsumer.poll(RUN_CHECK_INTERVAL_MS);
             kafkaConsumer.commitSync();
             for (ConsumerRecord<String, String> record : records) {
                 logger.info("({}) Message received and acknowledged: " +
@@ -94,7 +94,7 @@ public class IoTSensorKafkaProducer extends S4KCmdApp {
                 String csvLine = csvFileLineScanner.getNextLine();
                 // Skip the first line which is a title line
                 if (!isTitleLine) {
-                    if (msgSent < numMsg) {
+                    if (msgSent < numMsg && paceWorkload(msgSent)) {
                         ProducerRecord<String, String> message =
                                 new ProducerRecord<>(topicName, csvLine);
                         kafkaProducer.send(message);
@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop;
+
+import com.example.pulsarworkshop.exception.InvalidParamException;
+import com.example.pulsarworkshop.exception.WorkshopRuntimException;
+import com.example.pulsarworkshop.util.AsyncSendWindow;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.pulsar.client.api.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares two ways of publishing large "DeviceTSList" messages (like the ones of the
+ * "AccumulateByCountFunction" and "RouteByLengthFunction" functions), for several list sizes:
+ * - "chunked": each list is one message, which the producer splits into chunks when it is larger
+ *   than the broker "maxMessageSize" and the consumer assembles again
+ * - "split": each list is split into smaller lists of at most "splitListSize" entries, which are
+ *   published as separate (batched) messages and merged again by the consumer
+ *
+ * For each list size and mode, the lists are published to the topic and received from a new
+ * "Exclusive" subscription (chunking doesn't support the "Shared" subscriptions).
+ */
+public class DeviceTSListChunkingBenchmark extends NativePulsarConsumerCmdApp {
+
+    // Must be set before initializing the "logger" object.
+    private final static String APP_NAME = "DeviceTSListChunkingBenchmark";
+    static { System.setProperty("log_file_base_name", getLogFileName(API_TYPE, APP_NAME)); }
+    private final static Logger logger = LoggerFactory.getLogger(DeviceTSListChunkingBenchmark.class);
+
+    private final static String DFT_LIST_SIZES = "1000,10000,100000,200000";
+    private final static int DFT_SPLIT_LIST_SIZE = 1000;
+    private final static int DFT_LIST_NUM = 10;
+    private final static int MAX_IN_FLIGHT = 100;
+    private final static long RECEIVE_TIMEOUT_SEC = 30;
+
+    // Properties of a split list message, to merge the parts of a list again
+    private final static String PROP_LIST_ID = "listId";
+    private final static String PROP_LIST_PARTS = "listParts";
+
+    private final static String MODE_CHUNKED = "chunked";
+    private final static String MODE_SPLIT = "split";
+
+    private static PulsarClient pulsarClient;
+    private static Producer<DeviceTSList> pulsarProducer;
+    private static Consumer<DeviceTSList> pulsarConsumer;
+
+    private final Schema<DeviceTSList> schema = Schema.AVRO(DeviceTSList.class);
+    private final List<Integer> listSizes = new ArrayList<>();
+    private int splitListSize;
+    private int listNum;
+
+    public DeviceTSListChunkingBenchmark(String appName, String[] inputParams) {
+        super(appName, inputParams);
+        addOptionalCommandLineOption("ls", "listSizes",
+                true, "Comma separated numbers of entries per list (default: " + DFT_LIST_SIZES + ").");
+        addOptionalCommandLineOption("sls", "splitListSize",
+                true, "Max number of entries per list in the split mode (default: " + DFT_SPLIT_LIST_SIZE + ").");
+
+        logger.info("Starting application: \"" + appName + "\" ...");
+    }
+
+    public static void main(String[] args) {
+        PulsarWorkshopCmdApp workshopApp = new DeviceTSListChunkingBenchmark(APP_NAME, args);
+        int exitCode = workshopApp.runCmdApp();
+        System.exit(exitCode);
+    }
+
+    @Override
+    public void processExtendedInputParams() throws InvalidParamException {
+        super.processExtendedInputParams();
+
+        // The number of messages is the number of lists per list size and mode
+        listNum = (numMsg == -1) ? DFT_LIST_NUM : numMsg;
+
+        String listSizesStr = StringUtils.defaultIfBlank(processStringInputParam("ls"), DFT_LIST_SIZES);
+        for (String listSizeStr : StringUtils.split(listSizesStr, ',')) {
+            int listSize = NumberUtils.toInt(StringUtils.trim(listSizeStr));
+            if (listSize <= 0) {
+                throw new InvalidParamException("listSizes", "must be positive integers, but got \"" + listSizesStr + "\"");
+            }
+            listSizes.add(listSize);
+        }
+
+        splitListSize = processIntegerInputParam("sls", DFT_SPLIT_LIST_SIZE);
+        if (splitListSize <= 0) {
+            throw new InvalidParamException("The split list size must be a positive integer!");
+        }
+    }
+
+    @Override
+    public void execute() throws WorkshopRuntimException {
+        try {
+            pulsarClient = createNativePulsarClient();
+
+            // Warm up (JIT, connections) with the smallest list size, the result is not reported
+            DeviceTSList warmUpList = createDeviceTSList(listSizes.get(0));
+            runBenchmark(MODE_CHUNKED, warmUpList, 0);
+            runBenchmark(MODE_SPLIT, warmUpList, 0);
+
+            for (int listSize : listSizes) {
+                DeviceTSList deviceTSList = createDeviceTSList(listSize);
+                int serializedSize = schema.encode(deviceTSList).length;
+
+                String chunkedResult = runBenchmark(MODE_CHUNKED, deviceTSList, serializedSize);
+                String splitResult = runBenchmark(MODE_SPLIT, deviceTSList, serializedSize);
+                logger.info("{} entries/list (~{} KB serialized): {} | {}",
+                        listSize, serializedSize / 1024, chunkedResult, splitResult);
+            }
+        } catch (PulsarClientException pce) {
+            pce.printStackTrace();
+            throw new WorkshopRuntimException("Unexpected error when running the chunking benchmark: " + pce.getMessage());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new WorkshopRuntimException("Interrupted while running the chunking benchmark!");
+        }
+    }
+
+    private static DeviceTSList createDeviceTSList(int listSize) {
+        long baseTime = System.currentTimeMillis();
+        List<DeviceTS> deviceTSArray = new ArrayList<>(listSize);
+        for (int i = 0; i < listSize; i++) {
+            deviceTSArray.add(new DeviceTS(
+                    "tag-" + (i % 100),
+                    i % 3,
+                    Instant.ofEpochMilli(baseTime + i).toString(),
+                    (i % 1000) / 10.0));
+        }
+        return new DeviceTSList(deviceTSArray);
+    }
+
+    /**
+     * Publish and receive "listNum" lists in the given mode.
+     *
+     * @return the result summary
+     */
+    private String runBenchmark(String mode, DeviceTSList deviceTSList, int serializedSize)
+            throws PulsarClientException, InterruptedException {
+        boolean chunked = StringUtils.equals(mode, MODE_CHUNKED);
+        List<DeviceTSList> parts = chunked ? List.of(deviceTSList) : splitList(deviceTSList);
+
+        pulsarConsumer = applyConsumerSettings(pulsarClient.newConsumer(schema))
+                .topic(topicName)
+                .subscriptionName(appName + "-" + mode + "-" + System.currentTimeMillis())
+                .subscriptionType(SubscriptionType.Exclusive)
+                .subscriptionInitialPosition(SubscriptionInitialPosition.Latest)
+                .subscribe();
+        // The Pulsar client doesn't allow batching and chunking together
+        pulsarProducer = pulsarClient.newProducer(schema)
+                .topic(topicName)
+                .enableBatching(!chunked)
+                .enableChunking(chunked)
+                .maxPendingMessages(MAX_IN_FLIGHT)
+                .blockIfQueueFull(true)
+                .create();
+
+        AsyncSendWindow sendWindow = new AsyncSendWindow(MAX_IN_FLIGHT);
+        long startNanos = System.nanoTime();
+
+        // Publish from a separate thread, so the consumer doesn't fall behind the producer
+        Thread publisher = new Thread(() -> {
+            try {
+                for (int listId = 0; listId < listNum; listId++) {
+                    long eventTime = System.currentTimeMillis();
+                    for (DeviceTSList part : parts) {
+                        sendWindow.acquire();
+                        sendWindow.track(pulsarProducer.newMessage()
+                                .value(part)
+                                .eventTime(eventTime)
+                                .property(PROP_LIST_ID, String.valueOf(listId))
+                                .property(PROP_LIST_PARTS, String.valueOf(parts.size()))
+                                .sendAsync());
+                    }
+                }
+                pulsarProducer.flush();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            } catch (PulsarClientException pce) {
+                logger.warn("Failed to flush the {} producer: {}", mode, pce.getMessage());
+            }
+        }, appName + "-" + mode + "-publisher");
+        publisher.start();
+
+        // Merge the parts of the lists again
+        Map<String, Integer> receivedParts = new HashMap<>();
+        int receivedLists = 0;
+        long receivedEntries = 0;
+        long latencySumMs = 0;
+        long latencyMaxMs = 0;
+        while (receivedLists < listNum) {
+            Message<DeviceTSList> message = pulsarConsumer.receive((int) RECEIVE_TIMEOUT_SEC, TimeUnit.SECONDS);
+            if (message == null) {
+                logger.warn("No {} message received for {} seconds, giving up", mode, RECEIVE_TIMEOUT_SEC);
+                break;
+            }
+            recordFirstMessage();
+            receivedEntries += message.getValue().getDeviceTSArray().size();
+
+            String listId = message.getProperty(PROP_LIST_ID);
+            int partCnt = receivedParts.merge(listId, 1, Integer::sum);
+            if (partCnt == NumberUtils.toInt(message.getProperty(PROP_LIST_PARTS))) {
+                receivedParts.remove(listId);
+                receivedLists++;
+
+                long latencyMs = System.currentTimeMillis() - message.getEventTime();
+                latencySumMs += latencyMs;
+                latencyMaxMs = Math.max(latencyMaxMs, latencyMs);
+            }
+            pulsarConsumer.acknowledge(message);
+        }
+        double elapsedSec = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+
+        publisher.join();
+        sendWindow.awaitDrained(RECEIVE_TIMEOUT_SEC, TimeUnit.SECONDS);
+        pulsarProducer.close();
+        pulsarConsumer.unsubscribe();
+        pulsarConsumer.close();
+
+        if (sendWindow.getFailedCnt() > 0) {
+            return mode + ": " + sendWindow.getFailedCnt() + " sends failed (first failure: " +
+                    sendWindow.getFirstFailure().getMessage() + ")";
+        }
+        return mode + (chunked ? "" : " (" + parts.size() + " msgs/list)") + ": " +
+                receivedLists + " lists, " +
+                String.format("%.1f", receivedLists / elapsedSec) + " lists/s, " +
+                String.format("%.0f", receivedEntries / elapsedSec) + " entries/s, " +
+                String.format("%.2f", (double) receivedLists * serializedSize / elapsedSec / 1_048_576) + " MB/s, " +
+                "latency avg " + ((receivedLists > 0) ? latencySumMs / receivedLists : 0) + " ms, max " +
+                latencyMaxMs + " ms";
+    }
+
+    private List<DeviceTSList> splitList(DeviceTSList deviceTSList) {
+        List<DeviceTS> deviceTSArray = deviceTSList.getDeviceTSArray();
+        List<DeviceTSList> parts = new ArrayList<>();
+        for (int from = 0; from < deviceTSArray.size(); from += splitListSize) {
+            int to = Math.min(from + splitListSize, deviceTSArray.size());
+            parts.add(new DeviceTSList(new ArrayList<>(deviceTSArray.subList(from, to))));
+        }
+        return parts;
+    }
+
+    @Override
+    public void termCmdApp() {
+        try {
+            if (pulsarClient != null) {
+                pulsarClient.close();
+            }
+        }
+        catch (PulsarClientException pce) {
+            throw new WorkshopRuntimException("Failed to terminate Pulsar client!");
+        }
+        finally {
+            logger.info("Terminating application: \"" + appName + "\" ...");
+        }
+    }
+}
@@ -19,6 +19,7 @@
 package com.example.pulsarworkshop;
 
 import com.example.pulsarworkshop.pojo.IoTSensorData;
+import com.example.pulsarworkshop.pojo.IoTSensorDataUtils;
 import com.example.pulsarworkshop.exception.InvalidParamException;
 import com.example.pulsarworkshop.exception.WorkshopRuntimException;
 import org.apache.pulsar.client.api.*;
@@ -26,7 +27,9 @@ import org.apache.pulsar.shade.org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class IoTSensorConsumerAvro extends NativePulsarCmdApp {
+import java.util.concurrent.TimeUnit;
+
+public class IoTSensorConsumerAvro extends NativePulsarConsumerCmdApp {
 
     // Must be set before initializing the "logger" object.
     private final static String APP_NAME = "IoTSensorConsumerAvro";
@@ -39,11 +42,13 @@ public class IoTSensorConsumerAvro extends NativePulsarCmdApp {
     private static PulsarClient pulsarClient;
 
     private static Consumer<IoTSensorData> pulsarConsumer;
+    private static Schema<IoTSensorData> payloadSchema;
 
     public IoTSensorConsumerAvro(String appName, String[] inputParams) {
         super(appName, inputParams);
         addOptionalCommandLineOption("sbt","subType", true, "Pulsar subscription type.");
         addRequiredCommandLineOption("sbn", "subName", true, "Pulsar subscription name.");
+        addOptionalCommandLineOption("pf","payloadFormat", true, "Payload format: AVRO (default) or BINARY (fixed-width).");
 
         logger.info("Starting application: \"" + appName + "\" ...");
     }
@@ -74,6 +79,13 @@ public class IoTSensorConsumerAvro extends NativePulsarCmdApp {
 	            subscriptionType = SubscriptionType.Exclusive;
 	        }
         }
+
+        // (Optional) Payload format, must be the same as the producer one
+        String payloadFormat = StringUtils.defaultIfBlank(processStringInputParam("pf"), IoTSensorDataUtils.PAYLOAD_FORMAT_AVRO);
+        payloadSchema = IoTSensorDataUtils.payloadSchema(payloadFormat);
+        if (payloadSchema == null) {
+            throw new InvalidParamException("payloadFormat", "must be AVRO or BINARY, but got \"" + payloadFormat + "\"");
+        }
     }
 
     @Override
@@ -83,21 +95,31 @@ public class IoTSensorConsumerAvro extends NativePulsarCmdApp {
                 pulsarClient = createNativePulsarClient();
 
                 if (pulsarConsumer == null) {
-                    ConsumerBuilder<IoTSensorData> consumerBuilder = pulsarClient.newConsumer(Schema.AVRO(IoTSensorData.class));
+                    ConsumerBuilder<IoTSensorData> consumerBuilder = pulsarClient.newConsumer(payloadSchema);
                     consumerBuilder.topic(topicName);
                     consumerBuilder.subscriptionName(subscriptionName);
                     consumerBuilder.subscriptionType(subscriptionType);
-                    pulsarConsumer = consumerBuilder.subscribe();
+                    pulsarConsumer = applyConsumerSettings(consumerBuilder).subscribe();
                 }
             }
+            addToLagReport(pulsarConsumer);
 
             int msgRecvd = 0;
             if (numMsg == -1) {
                 numMsg = Integer.MAX_VALUE;
             }
 
-            while (msgRecvd < numMsg) {
-                Message<IoTSensorData> message = pulsarConsumer.receive();
+            long startNanos = 0;
+            while (msgRecvd < numMsg && hasRunTimeLeft()) {
+                Message<IoTSensorData> message = pulsarConsumer.receive(RUN_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (message == null) {
+                    continue;
+                }
+                if (startNanos == 0) {
+                    startNanos = System.nanoTime();
+                }
+                recordFirstMessage();
+                recordLag(message);
                 IoTSensorData sensorData = message.getValue();
                 logger.info("({}) Message received and acknowledged: " +
                                 "key={}; properties={}; value={}",
@@ -106,9 +128,12 @@ public class IoTSensorConsumerAvro extends NativePulsarCmdApp {
                         message.getProperties(),
                         sensorData);
                 pulsarConsumer.acknowledge(message);
+                ackRpcCounter.recordAck(1);
                 msgRecvd++;
             }
 
+            reportConsumption(msgRecvd, (startNanos > 0) ? (System.nanoTime() - startNanos) / 1_000_000_000.0 : 0.0);
+
         }
         catch (PulsarClientException pce) {
             throw new WorkshopRuntimException("Unexpected error when consuming Pulsar messages: " + pce.getMessage());
@@ -30,8 +30,10 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
-public class IoTSensorProducerAvro extends NativePulsarCmdApp {
+public class IoTSensorProducerAvro extends NativePulsarProducerCmdApp {
 
     // Must be set before initializing the "logger" object.
     private final static String APP_NAME = "IoTSensorProducerAvro";
@@ -40,11 +42,13 @@ public class IoTSensorProducerAvro extends NativePulsarCmdApp {
 
     private static File iotSensorDataCsvFile;
     private static PulsarClient pulsarClient;
-    private static Producer<IoTSensorData> pulsarProducer;
+    private static List<Producer<IoTSensorData>> pulsarProducers;
+    private static Schema<IoTSensorData> payloadSchema;
 
     public IoTSensorProducerAvro(String appName, String[] inputParams) {
         super(appName, inputParams);
         addRequiredCommandLineOption("csv","csvFile", true, "IoT sensor data CSV file.");
+        addOptionalCommandLineOption("pf","payloadFormat", true, "Payload format: AVRO (default) or BINARY (fixed-width).");
 
         logger.info("Starting application: \"" + appName + "\" ...");
     }
@@ -64,6 +68,13 @@ public class IoTSensorProducerAvro extends NativePulsarCmdApp {
         if ( iotSensorDataCsvFile == null) {
             throw new InvalidParamException("Must provided a valid IoT sensor source data csv file!");
         }
+
+        // (Optional) Payload format
+        String payloadFormat = StringUtils.defaultIfBlank(processStringInputParam("pf"), IoTSensorDataUtils.PAYLOAD_FORMAT_AVRO);
+        payloadSchema = IoTSensorDataUtils.payloadSchema(payloadFormat);
+        if (payloadSchema == null) {
+            throw new InvalidParamException("payloadFormat", "must be AVRO or BINARY, but got \"" + payloadFormat + "\"");
+        }
     }
 
     @Override
@@ -71,16 +82,15 @@ public class IoTSensorProducerAvro extends NativePulsarCmdApp {
         try {
             if (pulsarClient == null ) {
                 pulsarClient = createNativePulsarClient();
-                if (pulsarProducer == null) {
-                    ProducerBuilder<IoTSensorData> producerBuilder = pulsarClient.newProducer(Schema.AVRO(IoTSensorData.class));
-                    pulsarProducer = producerBuilder.topic(topicName).create();
+                if (pulsarProducers == null) {
+                    ProducerBuilder<IoTSensorData> producerBuilder = pulsarClient.newProducer(payloadSchema);
+                    pulsarProducers = createProducers(applyProducerSettings(producerBuilder.topic(topicName)));
                 }
             }
 
             assert (iotSensorDataCsvFile != null);
 
             CsvFileLineScanner csvFileLineScanner = new CsvFileLineScanner(iotSensorDataCsvFile);
-            TypedMessageBuilder<IoTSensorData> messageBuilder = pulsarProducer.newMessage();
 
             boolean isTitleLine = true;
             String titleLine = "";
@@ -91,16 +101,37 @@ public class IoTSensorProducerAvro extends NativePulsarCmdApp {
 
             while (csvFileLineScanner.hasNextLine()) {
                 String csvLine = csvFileLineScanner.getNextLine();
+                // The event time is when the reading enters the pipeline, before the producer side
+                // waits (rate limit, in-flight window), so the consumers can tell its end-to-end staleness
+                long eventTime = System.currentTimeMillis();
                 // Skip the first line which is a title line
                 if (!isTitleLine && StringUtils.isNotBlank(csvLine)) {
-                    if (msgSent < numMsg) {
+                    if (msgSent < numMsg && paceWorkload(msgSent)) {
                         IoTSensorData data = IoTSensorDataUtils.csvToPojo(csvLine);
-                        MessageId messageId = messageBuilder
-                                .value(data)
-                                .send();
-                        logger.info("Published a message with raw value: [{}] {}",
-                                msgSent,
-                                csvLine);
+                        String deviceId = data.getDevice().toString();
+                        CompletableFuture<MessageId> published = dispatchMessage(pulsarProducers, deviceId, producer -> {
+                            TypedMessageBuilder<IoTSensorData> messageBuilder = producer.newMessage()
+                                    .value(data)
+                                    .eventTime(eventTime);
+                            if (keyByDevice) {
+                                messageBuilder.key(deviceId);
+                            }
+                            return messageBuilder;
+                        });
+                        recordFirstMessage();
+                        // Logged once the broker has acknowledged (or rejected) the message
+                        if (isLogged(msgSent)) {
+                            int msgIdx = msgSent;
+                            published.whenComplete((messageId, throwable) -> {
+                                if (throwable == null) {
+                                    logger.info("Published a message with raw value: [{}] {}", msgIdx, csvLine);
+                                }
+                                else {
+                                    logger.warn("Failed to publish a message with raw value: [{}] {}: {}",
+                                            msgIdx, csvLine, throwable.getMessage());
+                                }
+                            });
+                        }
 
                         msgSent++;
                     } else {
@@ -112,6 +143,8 @@ public class IoTSensorProducerAvro extends NativePulsarCmdApp {
                 }
             }
 
+            completePublishing(pulsarProducers);
+
         } catch (PulsarClientException pce) {
             pce.printStackTrace();
             throw new WorkshopRuntimException("Unexpected error when producing Pulsar messages: " + pce.getMessage());
@@ -123,8 +156,11 @@ public class IoTSensorProducerAvro extends NativePulsarCmdApp {
     @Override
     public void termCmdApp() {
         try {
-            if (pulsarProducer != null) {
-                pulsarProducer.close();
+            if (pulsarProducers != null) {
+                drainPublishing(pulsarProducers);
+                for (Producer<?> pulsarProducer : pulsarProducers) {
+                    pulsarProducer.close();
+                }
             }
 
             if (pulsarClient != null) {
@@ -19,7 +19,9 @@
 package com.example.pulsarworkshop;
 
 import com.example.pulsarworkshop.pojo.IoTSensorData;
-import org.apache.pulsar.client.api.MessageId;
+import com.example.pulsarworkshop.pojo.IoTSensorDataAvroSchema;
+import com.example.pulsarworkshop.util.CoarseTimestampClock;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.pulsar.client.api.PulsarClientException;
 import org.apache.pulsar.client.api.Schema;
 import org.apache.pulsar.client.api.TypedMessageBuilder;
@@ -28,56 +30,108 @@ import org.apache.pulsar.functions.api.Function;
 import org.apache.pulsar.functions.api.Record;
 import org.slf4j.Logger;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Publishes each IoT sensor reading to the output topic with its key and properties, plus the
+ * "internal_process_time" property.
+ *
+ * The output schema, topic and the input topics (for the log lines) are resolved once, in
+ * "initialize()", and the output messages are sent asynchronously: a send completes (or fails)
+ * in the background, and the function keeps count of the sent, failed and pending messages.
+ * The input record is acknowledged once its output message is sent, or failed (to be redelivered)
+ * if the send fails, so the function must run with "autoAck" false.
+ * Only one message out of "logSampleInterval" (user config, default: 1000, 0 for none) is
+ * logged, next to these counts, and the send failures are logged with the same sampling.
+ */
 public class AddMetadataFuncAvro implements Function<IoTSensorData, Void> {
-    private static DateFormat timeFormat = new SimpleDateFormat("yyyy-mm-dd hh:mm:ss.SSS");
+    private final static String PROP_PROCESS_TIME = "internal_process_time";
+    // Shared by all the function instances of the JVM
+    private final static CoarseTimestampClock PROCESS_TIME_CLOCK = new CoarseTimestampClock("yyyy-MM-dd HH:mm:ss.SSS");
 
+    public final static String CFG_LOG_SAMPLE_INTERVAL = "logSampleInterval";
+    public final static long DFT_LOG_SAMPLE_INTERVAL = 1000;
 
-    @Override
-    public Void process(IoTSensorData input, Context context) throws Exception {
+    private Schema<IoTSensorData> outputSchema;
+    private String outputTopic;
+    private String inputTopics;
+    private Logger logger;
+    private long logSampleInterval;
 
-        Logger LOG = context.getLogger();
-        String outputTopic = context.getOutputTopic();
+    // Only updated by the thread of the function instance
+    private long processedCnt;
+    // Updated by the client threads completing the sends
+    private final LongAdder sentCnt = new LongAdder();
+    private final LongAdder failedCnt = new LongAdder();
 
-        String inputTopics = context.getInputTopics().stream().collect(Collectors.joining(", "));
-        String logMessage = String.format(
-                "A message with a value of \"%s\" has arrived on one of the following topics: %s\n",
-                input,
-                inputTopics);
-        LOG.info(logMessage);
+    @Override
+    public void initialize(Context context) {
+        logger = context.getLogger();
+        outputSchema = IoTSensorDataAvroSchema.INSTANCE;
+        outputTopic = context.getOutputTopic();
+        inputTopics = String.join(", ", context.getInputTopics());
 
-        try {
-            Record<IoTSensorData> currentRecord = (Record<IoTSensorData>) context.getCurrentRecord();
+        Object logSampleIntervalCfg = context.getUserConfigValueOrDefault(CFG_LOG_SAMPLE_INTERVAL, DFT_LOG_SAMPLE_INTERVAL);
+        logSampleInterval = (logSampleIntervalCfg instanceof Number)
+                ? ((Number) logSampleIntervalCfg).longValue()
+                : NumberUtils.toLong(String.valueOf(logSampleIntervalCfg), DFT_LOG_SAMPLE_INTERVAL);
+        logger.info("Publishing the readings of {} with their \"{}\" property to {} (logging 1 message out of {})",
+                inputTopics, PROP_PROCESS_TIME, outputTopic, logSampleInterval);
+    }
 
-            Optional<String> keyOpt = currentRecord.getKey();
-            Map<String, String> msgProperties = currentRecord.getProperties();
+    @Override
+    public Void process(IoTSensorData input, Context context) throws PulsarClientException {
+        // Acknowledged (or failed) by the send callback, in another thread
+        Record<?> currentRecord = context.getCurrentRecord();
 
-            TypedMessageBuilder<IoTSensorData> messageBuilder
-                    = context.newOutputMessage(outputTopic, Schema.AVRO(IoTSensorData.class));
-            if (keyOpt.isPresent()) {
-                messageBuilder.key(keyOpt.get());
+        TypedMessageBuilder<IoTSensorData> outputMessageBuilder = context.newOutputMessage(outputTopic, outputSchema)
+                .properties(currentRecord.getProperties())
+                // a newly added custom metadata
+                .property(PROP_PROCESS_TIME, PROCESS_TIME_CLOCK.now())
+                .value(input);
+        Optional<String> keyOpt = currentRecord.getKey();
+        if (keyOpt.isPresent()) {
+            outputMessageBuilder.key(keyOpt.get());
+        }
+        outputMessageBuilder.sendAsync().whenComplete((messageId, throwable) -> {
+            if (throwable == null) {
+                currentRecord.ack();
+                sentCnt.increment();
             }
-
-            for (String propKey : msgProperties.keySet()) {
-                messageBuilder.property(propKey, msgProperties.get(propKey));
+            else {
+                currentRecord.fail();
+                failedCnt.increment();
+                if (isSampled(failedCnt.sum())) {
+                    logger.error("Failed to publish a reading to {} ({} failures so far): {}",
+                            outputTopic, failedCnt.sum(), throwable.toString());
+                }
             }
+        });
 
-            // a newly added custom metadata
-            messageBuilder.property("internal_process_time",
-                    timeFormat.format(Calendar.getInstance().getTime()) );
-
-            messageBuilder.value(input);
-
-            MessageId messageId = messageBuilder.send();
-        }
-        catch (PulsarClientException e) {
-            LOG.error(e.toString());
+        processedCnt++;
+        if (isSampled(processedCnt)) {
+            logger.info("Processed {} readings from {} ({}), last: {}", processedCnt, inputTopics, sendCounts(), input);
         }
 
         return null;
     }
+
+    // The first one, then one out of "logSampleInterval"
+    private boolean isSampled(long cnt) {
+        return logSampleInterval > 0 && (cnt == 1 || cnt % logSampleInterval == 0);
+    }
+
+    private String sendCounts() {
+        long sent = sentCnt.sum();
+        long failed = failedCnt.sum();
+        return sent + " sent, " + failed + " failed, " + Math.max(0, processedCnt - sent - failed) + " pending";
+    }
+
+    @Override
+    public void close() {
+        if (logger != null) {
+            logger.info("Processed {} readings from {} ({})", processedCnt, inputTopics, sendCounts());
+        }
+    }
 }
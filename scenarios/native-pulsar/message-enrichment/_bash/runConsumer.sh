@@ -37,24 +37,28 @@ usage() {
    echo "                      -n <message_number>"
    echo "                      -cc <client_conf_file>" 
    echo "                      [-na]"
+   echo "                      [-cds]"
    echo "       -h  : Show usage info"
    echo "       -t  : (Required) The topic name to publish messages to."
    echo "       -n  : (Required) The number of messages to consume."
    echo "       -cc : (Required) 'client.conf' file path."
    echo "       -na : (Optional) Non-Astra Streaming (Astra streaming is the default)."
+   echo "       -cds: (Optional) Use the AppCDS archive created by '_bash/buildAppCds.sh' for faster start-up."
    echo
 }
 
-if [[ $# -eq 0 || $# -gt 8 ]]; then
+if [[ $# -eq 0 || $# -gt 9 ]]; then
    usage
    errExit 10 "Incorrect input parameter count!"
 fi
 
 astraStreaming=1
+useAppCds=0
 while [[ "$#" -gt 0 ]]; do
    case $1 in
       -h)  usage; exit 0      ;;
       -na) astraStreaming=0;  ;;
+      -cds) useAppCds=1;      ;;
       -t)  tpName=$2; shift   ;;
       -n)  msgNum=$2; shift   ;;
       -cc) clntConfFile=$2; shift ;;
@@ -63,6 +67,7 @@ while [[ "$#" -gt 0 ]]; do
    shift
 done
 debugMsg "astraStreaming=${astraStreaming}"
+debugMsg "useAppCds=${useAppCds}"
 debugMsg "tpName=${tpName}"
 debugMsg "msgNum=${msgNum}"
 debugMsg "clntConfFile=${clntConfFile}"
@@ -80,10 +85,19 @@ if ! [[ -f "${clientAppJar}" ]]; then
   errExit 50 "Can't find the client app jar file. Please first build the programs!"
 fi
 
+javaOpts=""
+if [[ ${useAppCds} -eq 1 ]]; then
+  appCdsArchive="${clientAppJar%.jar}.jsa"
+  if ! [[ -f "${appCdsArchive}" ]]; then
+    errExit 70 "Can't find the AppCDS archive file. Please first run '_bash/buildAppCds.sh'!"
+  fi
+  javaOpts="-XX:SharedArchiveFile=${appCdsArchive}"
+fi
+
 # generate a random alphanumeric string with length 20
 randomStr=$(cat /dev/urandom | LC_ALL=C tr -dc 'a-zA-Z0-9' | fold -w 20 | head -n 1)
 
-javaCmd="java -cp ${clientAppJar} \
+javaCmd="java ${javaOpts} -cp ${clientAppJar} \
     com.example.pulsarworkshop.IoTSensorConsumer \
     -n ${msgNum} -t ${tpName} -c ${clntConfFile} -sbn mysub-${randomStr}"
 if [[ ${astraStreaming} -eq 1 ]]; then
@@ -0,0 +1,357 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop;
+
+import com.example.pulsarworkshop.exception.InvalidParamException;
+import com.example.pulsarworkshop.exception.WorkshopRuntimException;
+import org.apache.pulsar.client.api.*;
+import org.apache.pulsar.common.naming.TopicName;
+import org.apache.pulsar.shade.org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Re-processes the IoT sensor readings published in a time range with the Pulsar "Reader" API,
+ * instead of a durable subscription: there is no cursor to create, reset or acknowledge, so the
+ * live subscriptions of the topic are not disturbed.
+ *
+ * One reader per partition reads in parallel (one thread each): it seeks to the start publish
+ * time, then reads until the end publish time, the end message id of its partition, or the last
+ * message available when the backfill started (read for each partition before the backfill
+ * starts). The messages go through the same processing as the ones of "IoTSensorConsumer".
+ *
+ * The message ids are compared with "MessageId.compareTo()", including the batch index, and are
+ * given in their serialized form ("MessageId.toByteArray()", Base64 encoded): the ledger and entry
+ * ids can't be turned into a message id with the public client API. The report prints the last
+ * message id read in each partition in this form.
+ */
+public class IoTSensorBackfill extends NativePulsarCmdApp {
+
+    // Must be set before initializing the "logger" object.
+    private final static String APP_NAME = "IoTSensorBackfill";
+    static { System.setProperty("log_file_base_name", getLogFileName(API_TYPE, APP_NAME)); }
+    private final static Logger logger = LoggerFactory.getLogger(IoTSensorBackfill.class);
+
+    private final static long READ_TIMEOUT_SEC = 30;
+
+    private final static String END_TIME = "end time";
+    private final static String END_MESSAGE_ID = "end message id";
+    private final static String END_OF_PARTITION = "end of partition";
+    private final static String MESSAGE_LIMIT = "message limit";
+    private final static String READ_TIMEOUT = "read timeout";
+
+    private long startPublishTime;
+    // Exclusive, Long.MAX_VALUE means no end time
+    private long endPublishTime = Long.MAX_VALUE;
+    // The last message to read (inclusive) per partition index, -1 for a non-partitioned topic
+    private final Map<Integer, MessageId> endMessageIds = new HashMap<>();
+
+    private static PulsarClient pulsarClient;
+    private static final List<Reader<byte[]>> pulsarReaders = new ArrayList<>();
+
+    // Per partition statistics, only updated by the partition's own reader thread
+    private static class PartitionBackfillStats {
+        private final String partition;
+        private long msgRead = 0;
+        private long bytesRead = 0;
+        private long firstPublishTime = -1;
+        private long lastPublishTime = -1;
+        private long elapsedNanos = 0;
+        private MessageId lastMessageId = null;
+        private String endReason = END_OF_PARTITION;
+
+        PartitionBackfillStats(String partition) {
+            this.partition = partition;
+        }
+    }
+
+    public IoTSensorBackfill(String appName, String[] inputParams) {
+        super(appName, inputParams);
+        addRequiredCommandLineOption("bs", "backfillStart", true,
+                "Publish time to start from, as an ISO-8601 instant (e.g. 2023-07-18T01:00:00Z) or epoch milliseconds.");
+        addOptionalCommandLineOption("be", "backfillEnd", true,
+                "Publish time to stop at (exclusive), in the same format (default: the last available message).");
+        addOptionalCommandLineOption("bem", "backfillEndMessageIds", true,
+                "Comma separated last message ids to read, as \"[partitionIdx:]messageId\" (one per partition), " +
+                        "with the Base64 encoded serialized message id printed by a previous backfill.");
+
+        logger.info("Starting application: \"" + appName + "\" ...");
+    }
+
+    public static void main(String[] args) {
+        PulsarWorkshopCmdApp workshopApp = new IoTSensorBackfill(APP_NAME, args);
+        int exitCode = workshopApp.runCmdApp();
+        System.exit(exitCode);
+    }
+
+    @Override
+    public void processExtendedInputParams() throws InvalidParamException {
+        super.processExtendedInputParams();
+
+        // (Required) Start publish time
+        startPublishTime = parsePublishTime("backfillStart", processStringInputParam("bs"));
+
+        // (Optional) End publish time
+        String backfillEnd = processStringInputParam("be");
+        if (!StringUtils.isBlank(backfillEnd)) {
+            endPublishTime = parsePublishTime("backfillEnd", backfillEnd);
+            if (endPublishTime <= startPublishTime) {
+                throw new InvalidParamException("The backfill end time must be after the start time!");
+            }
+        }
+
+        // (Optional) End message id per partition
+        String backfillEndMessageIds = processStringInputParam("bem");
+        if (!StringUtils.isBlank(backfillEndMessageIds)) {
+            for (String messageIdStr : StringUtils.split(backfillEndMessageIds, ',')) {
+                // A Base64 string has no ':'
+                String[] idParts = StringUtils.split(StringUtils.trim(messageIdStr), ':');
+                try {
+                    if (idParts.length < 1 || idParts.length > 2) {
+                        throw new IllegalArgumentException();
+                    }
+                    int partitionIdx = (idParts.length == 2) ? Integer.parseInt(idParts[0]) : -1;
+                    endMessageIds.put(partitionIdx,
+                            MessageId.fromByteArray(Base64.getDecoder().decode(idParts[idParts.length - 1])));
+                }
+                catch (IllegalArgumentException | IOException e) {
+                    throw new InvalidParamException("backfillEndMessageIds", "must be \"[partitionIdx:]messageId\" " +
+                            "message ids, but got \"" + messageIdStr + "\"");
+                }
+            }
+        }
+    }
+
+    private static long parsePublishTime(String paramName, String publishTimeStr) throws InvalidParamException {
+        String timeStr = StringUtils.trim(publishTimeStr);
+        if (StringUtils.isNumeric(timeStr)) {
+            return Long.parseLong(timeStr);
+        }
+        try {
+            return Instant.parse(timeStr).toEpochMilli();
+        }
+        catch (DateTimeParseException | NullPointerException e) {
+            throw new InvalidParamException(paramName, "must be an ISO-8601 instant or epoch milliseconds, " +
+                    "but got \"" + publishTimeStr + "\"");
+        }
+    }
+
+    @Override
+    public void execute() {
+        if (numMsg == -1) {
+            numMsg = Integer.MAX_VALUE;
+        }
+        AtomicInteger totalRead = new AtomicInteger();
+        List<PartitionBackfillStats> partitionStatsList = new ArrayList<>();
+
+        ExecutorService executorService = null;
+        long startNanos = System.nanoTime();
+        try {
+            pulsarClient = createNativePulsarClient();
+
+            List<String> partitions = pulsarClient.getPartitionsForTopic(topicName).get();
+            // Before the backfill starts, so the messages published during the backfill are not read
+            List<MessageId> lastMessageIds = new ArrayList<>();
+            for (String partition : partitions) {
+                lastMessageIds.add(readLastMessageId(partition));
+            }
+            for (String partition : partitions) {
+                Reader<byte[]> reader = pulsarClient.newReader()
+                        .topic(partition)
+                        .readerName(appName + "-" + TopicName.getPartitionIndex(partition))
+                        .startMessageId(MessageId.earliest)
+                        .create();
+                pulsarReaders.add(reader);
+                partitionStatsList.add(new PartitionBackfillStats(partition));
+            }
+
+            executorService = Executors.newFixedThreadPool(partitions.size());
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < partitions.size(); i++) {
+                final Reader<byte[]> reader = pulsarReaders.get(i);
+                final PartitionBackfillStats partitionStats = partitionStatsList.get(i);
+                final MessageId endMessageId = endMessageIds.get(TopicName.getPartitionIndex(partitionStats.partition));
+                final MessageId lastMessageId = lastMessageIds.get(i);
+                futures.add(executorService.submit(() -> {
+                    backfillPartition(reader, endMessageId, lastMessageId, totalRead, partitionStats);
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        catch (PulsarClientException pce) {
+            throw new WorkshopRuntimException("Unexpected error when reading Pulsar messages: " + pce.getMessage());
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new WorkshopRuntimException("Interrupted while backfilling the Pulsar messages!");
+        }
+        catch (Exception e) {
+            throw new WorkshopRuntimException("Unexpected error in a backfill reader: " + e.getMessage());
+        }
+        finally {
+            if (executorService != null) {
+                executorService.shutdownNow();
+            }
+        }
+
+        reportBackfill(partitionStatsList, (System.nanoTime() - startNanos) / 1_000_000_000.0);
+    }
+
+    /**
+     * @return the id of the last message of the partition, or null if it has none: a reader
+     *         starting at the latest message inclusive reads it first
+     */
+    private MessageId readLastMessageId(String partition) throws IOException {
+        try (Reader<byte[]> reader = pulsarClient.newReader()
+                .topic(partition)
+                .startMessageId(MessageId.latest)
+                .startMessageIdInclusive()
+                .create()) {
+            if (!reader.hasMessageAvailable()) {
+                return null;
+            }
+            Message<byte[]> message = reader.readNext((int) READ_TIMEOUT_SEC, TimeUnit.SECONDS);
+            return (message != null) ? message.getMessageId() : null;
+        }
+    }
+
+    /**
+     * Read one partition from the start publish time until one of the end conditions.
+     */
+    private void backfillPartition(Reader<byte[]> reader,
+                                   MessageId endMessageId,
+                                   MessageId lastMessageId,
+                                   AtomicInteger totalRead,
+                                   PartitionBackfillStats partitionStats) throws PulsarClientException {
+        long startNanos = System.nanoTime();
+        if (lastMessageId == null) {
+            // Nothing to read
+            return;
+        }
+        reader.seek(startPublishTime);
+
+        // The messages up to the last one at the start are there, a read only times out on an error
+        while (true) {
+            Message<byte[]> message = reader.readNext((int) READ_TIMEOUT_SEC, TimeUnit.SECONDS);
+            if (message == null) {
+                partitionStats.endReason = READ_TIMEOUT;
+                break;
+            }
+            if (message.getPublishTime() >= endPublishTime) {
+                partitionStats.endReason = END_TIME;
+                break;
+            }
+            MessageId messageId = message.getMessageId();
+            if (messageId.compareTo(lastMessageId) > 0) {
+                partitionStats.endReason = END_OF_PARTITION;
+                break;
+            }
+            if (endMessageId != null && messageId.compareTo(endMessageId) > 0) {
+                partitionStats.endReason = END_MESSAGE_ID;
+                break;
+            }
+            if (totalRead.getAndIncrement() >= numMsg) {
+                partitionStats.endReason = MESSAGE_LIMIT;
+                break;
+            }
+            recordFirstMessage();
+
+            IoTSensorConsumer.processMessage(logger, reader.getTopic(), "read", message);
+
+            partitionStats.msgRead++;
+            partitionStats.bytesRead += message.size();
+            if (partitionStats.firstPublishTime == -1) {
+                partitionStats.firstPublishTime = message.getPublishTime();
+            }
+            partitionStats.lastPublishTime = message.getPublishTime();
+            partitionStats.lastMessageId = messageId;
+
+            // The full message id, i.e. the other messages of a batch are still read
+            if (endMessageId != null && messageId.compareTo(endMessageId) == 0) {
+                partitionStats.endReason = END_MESSAGE_ID;
+                break;
+            }
+            if (messageId.compareTo(lastMessageId) == 0) {
+                partitionStats.endReason = END_OF_PARTITION;
+                break;
+            }
+        }
+        partitionStats.elapsedNanos = System.nanoTime() - startNanos;
+    }
+
+    private void reportBackfill(List<PartitionBackfillStats> partitionStatsList, double elapsedSec) {
+        long msgTotal = partitionStatsList.stream().mapToLong(stats -> stats.msgRead).sum();
+        long bytesTotal = partitionStatsList.stream().mapToLong(stats -> stats.bytesRead).sum();
+        System.out.println("[" + appName + "] Backfilled " + msgTotal + " messages from " +
+                partitionStatsList.size() + " partition(s) in " + String.format("%.3f", elapsedSec) + " s (" +
+                String.format("%.1f", (elapsedSec > 0) ? msgTotal / elapsedSec : 0.0) + " msg/s, " +
+                String.format("%.2f", (elapsedSec > 0) ? bytesTotal / elapsedSec / 1_048_576 : 0.0) + " MB/s), " +
+                "publish time from " + Instant.ofEpochMilli(startPublishTime) +
+                ((endPublishTime == Long.MAX_VALUE) ? "" : " to " + Instant.ofEpochMilli(endPublishTime)));
+        for (PartitionBackfillStats stats : partitionStatsList) {
+            double partitionSec = stats.elapsedNanos / 1_000_000_000.0;
+            System.out.println("[" + appName + "]   " + stats.partition + ": " + stats.msgRead + " msgs in " +
+                    String.format("%.3f", partitionSec) + " s (" +
+                    String.format("%.1f", (partitionSec > 0) ? stats.msgRead / partitionSec : 0.0) + " msg/s, " +
+                    String.format("%.2f", (partitionSec > 0) ? stats.bytesRead / partitionSec / 1_048_576 : 0.0) + " MB/s), " +
+                    ((stats.msgRead > 0) ? "published " + Instant.ofEpochMilli(stats.firstPublishTime) + " .. " +
+                            Instant.ofEpochMilli(stats.lastPublishTime) + ", last message id " +
+                            TopicName.getPartitionIndex(stats.partition) + ":" +
+                            Base64.getEncoder().encodeToString(stats.lastMessageId.toByteArray()) + ", " : "") +
+                    "ended by " + stats.endReason);
+        }
+    }
+
+    @Override
+    public void termCmdApp() {
+        try {
+            for (Reader<byte[]> reader : pulsarReaders) {
+                reader.close();
+            }
+
+            if (pulsarClient != null) {
+                pulsarClient.close();
+            }
+        }
+        catch (Exception e) {
+            throw new WorkshopRuntimException("Failed to terminate Pulsar reader or client!");
+        }
+        finally {
+            logger.info("Terminating application: \"" + appName + "\" ...");
+        }
+    }
+}
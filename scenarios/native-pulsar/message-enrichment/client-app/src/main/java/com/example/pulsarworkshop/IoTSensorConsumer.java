@@ -20,12 +20,29 @@ package com.example.pulsarworkshop;
 
 import com.example.pulsarworkshop.exception.InvalidParamException;
 import com.example.pulsarworkshop.exception.WorkshopRuntimException;
+import com.example.pulsarworkshop.pojo.IoTSensorDataUtils;
+import com.example.pulsarworkshop.util.KeyOrderedExecutor;
+import com.example.pulsarworkshop.util.ReceiverQueueController;
 import org.apache.pulsar.client.api.*;
 import org.apache.pulsar.shade.org.apache.commons.lang3.StringUtils;
+import org.apache.pulsar.shade.org.apache.commons.lang3.math.NumberUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class IoTSensorConsumer extends NativePulsarCmdApp {
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class IoTSensorConsumer extends NativePulsarConsumerCmdApp {
 
     // Must be set before initializing the "logger" object.
     private final static String APP_NAME = "IoTSensorConsumer";
@@ -34,14 +51,77 @@ public class IoTSensorConsumer extends NativePulsarCmdApp {
 
     private String subscriptionName;
     private SubscriptionType subscriptionType = SubscriptionType.Exclusive;
+    // 0 means a single consumer with the specified subscription type
+    private int keySharedConsumerNum = 0;
+
+    // Same defaults as the Pulsar client, except for the max number of messages (unlimited)
+    private final static int DFT_BATCH_RECEIVE_MAX_MESSAGES = 100;
+    private final static int DFT_BATCH_RECEIVE_MAX_BYTES = 10 * 1024 * 1024;
+    private final static int DFT_BATCH_RECEIVE_TIMEOUT_MS = 100;
+
+    private boolean batchReceive = false;
+    private BatchReceivePolicy batchReceivePolicy;
+    private boolean cumulativeAck = false;
+
+    // 0 means processing the messages inline, on the receiving thread
+    private final static int DFT_PROCESSING_QUEUE_SIZE = 1000;
+    private final static long PROCESSING_DRAIN_TIMEOUT_SEC = 60;
+    private int processingWorkerNum = 0;
+    private int processingQueueSize;
+    private KeyOrderedExecutor processingExecutor;
+
+    // Adaptive receiver queue: the consumer is recreated with the new size
+    private final static String DFT_ADAPTIVE_RECEIVER_QUEUE_RANGE = "10:10000";
+    private final static int DFT_ADAPTIVE_RECEIVER_QUEUE_INTERVAL_MS = 1000;
+    private final static int DFT_ADAPTIVE_RECEIVER_QUEUE_BUFFER_MS = 100;
+    // How long to wait for the messages still on their way to a paused consumer
+    private final static int RESIZE_DRAIN_WAIT_MS = 100;
+    private boolean adaptiveReceiverQueue = false;
+    private int adaptiveReceiverQueueMin;
+    private int adaptiveReceiverQueueMax;
+    private int adaptiveReceiverQueueIntervalMs;
+    private int adaptiveReceiverQueueBufferMs;
+    private ReceiverQueueController receiverQueueController;
+    private int consumerRecreateCnt = 0;
+    // The receiver queue size of the current consumer
+    private int subscribedReceiverQueueSize;
+    private long resizeDrainedCnt = 0;
+    private long resizeDroppedCnt = 0;
 
     private static PulsarClient pulsarClient;
     private static Consumer<byte[]> pulsarConsumer;
+    private static final List<Consumer<byte[]>> keySharedConsumers = new ArrayList<>();
 
     public IoTSensorConsumer(String appName, String[] inputParams) {
         super(appName, inputParams);
         addOptionalCommandLineOption("sbt","subType", true, "Pulsar subscription type.");
         addRequiredCommandLineOption("sbn", "subName", true, "Pulsar subscription name.");
+        addOptionalCommandLineOption("ksc", "keySharedConsumers", true,
+                "Number of Key_Shared consumers to run in parallel (overrides the subscription type).");
+        addOptionalCommandLineOption("brc", "batchReceive", false,
+                "Receive the messages in batches with \"batchReceive()\", and acknowledge each batch at once.");
+        addOptionalCommandLineOption("brm", "batchReceiveMaxMessages", true,
+                "Max number of messages per received batch (default: " + DFT_BATCH_RECEIVE_MAX_MESSAGES + ").");
+        addOptionalCommandLineOption("brb", "batchReceiveMaxBytes", true,
+                "Max number of bytes per received batch (default: " + DFT_BATCH_RECEIVE_MAX_BYTES + ").");
+        addOptionalCommandLineOption("brt", "batchReceiveTimeout", true,
+                "Max time in milliseconds to wait for a batch to fill up (default: " + DFT_BATCH_RECEIVE_TIMEOUT_MS + ").");
+        addOptionalCommandLineOption("cak", "cumulativeAck", false,
+                "Acknowledge cumulatively (only for the Exclusive and Failover subscription types).");
+        addOptionalCommandLineOption("pw", "processingWorkers", true,
+                "Number of worker threads processing the messages, in order per device (default: 0, i.e. on the receiving thread).");
+        addOptionalCommandLineOption("pwq", "processingQueueSize", true,
+                "Max number of messages waiting for each processing worker (default: " + DFT_PROCESSING_QUEUE_SIZE + ").");
+        addOptionalCommandLineOption("arq", "adaptiveReceiverQueue", false,
+                "Adapt the receiver queue size to the processing rate and the queue occupancy (recreates the consumer).");
+        addOptionalCommandLineOption("arqr", "adaptiveReceiverQueueRange", true,
+                "Min and max adaptive receiver queue size, as \"min:max\" (default: " + DFT_ADAPTIVE_RECEIVER_QUEUE_RANGE + ").");
+        addOptionalCommandLineOption("arqi", "adaptiveReceiverQueueInterval", true,
+                "Interval in milliseconds between two adaptive receiver queue decisions (default: " +
+                        DFT_ADAPTIVE_RECEIVER_QUEUE_INTERVAL_MS + ").");
+        addOptionalCommandLineOption("arqb", "adaptiveReceiverQueueBuffer", true,
+                "Processing time in milliseconds the receiver queue of a busy consumer should hold (default: " +
+                        DFT_ADAPTIVE_RECEIVER_QUEUE_BUFFER_MS + ").");
 
         logger.info("Starting application: \"" + appName + "\" ...");
     }
@@ -72,44 +152,471 @@ public class IoTSensorConsumer extends NativePulsarCmdApp {
 	            subscriptionType = SubscriptionType.Exclusive;
 	        }
         }
+
+        // (Optional) Number of Key_Shared consumers
+        keySharedConsumerNum = processIntegerInputParam("ksc", 0);
+        if (keySharedConsumerNum < 0) {
+            throw new InvalidParamException("The number of Key_Shared consumers must be a positive integer!");
+        }
+        if (keySharedConsumerNum > 0) {
+            subscriptionType = SubscriptionType.Key_Shared;
+        }
+
+        // (Optional) Batch receive
+        batchReceive = commandLine.hasOption("brc");
+        int batchReceiveMaxMessages = processIntegerInputParam("brm", DFT_BATCH_RECEIVE_MAX_MESSAGES);
+        int batchReceiveMaxBytes = processIntegerInputParam("brb", DFT_BATCH_RECEIVE_MAX_BYTES);
+        int batchReceiveTimeoutMs = processIntegerInputParam("brt", DFT_BATCH_RECEIVE_TIMEOUT_MS);
+        if (batchReceiveMaxMessages <= 0 || batchReceiveMaxBytes <= 0 || batchReceiveTimeoutMs <= 0) {
+            throw new InvalidParamException("The batch receive max messages, max bytes and timeout must be positive integers!");
+        }
+        batchReceivePolicy = BatchReceivePolicy.builder()
+                .maxNumMessages(batchReceiveMaxMessages)
+                .maxNumBytes(batchReceiveMaxBytes)
+                .timeout(batchReceiveTimeoutMs, TimeUnit.MILLISECONDS)
+                .build();
+        if (batchReceive && keySharedConsumerNum > 0) {
+            throw new InvalidParamException("The batch receive mode can't be combined with the Key_Shared consumers!");
+        }
+
+        // (Optional) Cumulative acknowledgement, which acknowledges all the messages up to the
+        // given one, so it requires a single active consumer
+        cumulativeAck = commandLine.hasOption("cak");
+        if (cumulativeAck &&
+                subscriptionType != SubscriptionType.Exclusive && subscriptionType != SubscriptionType.Failover) {
+            throw new InvalidParamException("cumulativeAck", "is only supported by the Exclusive and Failover " +
+                    "subscription types, but the subscription type is " + subscriptionType);
+        }
+
+        // (Optional) Parallel processing, which completes the messages out of order, so they
+        // must be acknowledged individually
+        processingWorkerNum = processIntegerInputParam("pw", 0);
+        processingQueueSize = processIntegerInputParam("pwq", DFT_PROCESSING_QUEUE_SIZE);
+        if (processingWorkerNum < 0 || processingQueueSize <= 0) {
+            throw new InvalidParamException("The number of processing workers and their queue size must be positive integers!");
+        }
+        if (processingWorkerNum > 0 && (cumulativeAck || keySharedConsumerNum > 0)) {
+            throw new InvalidParamException("The processing workers can't be combined with the cumulative acknowledgement " +
+                    "or the Key_Shared consumers!");
+        }
+
+        // (Optional) Adaptive receiver queue. The messages must all be acknowledged when the
+        // consumer is recreated, so it can't be combined with the processing workers.
+        adaptiveReceiverQueue = commandLine.hasOption("arq");
+        String queueRange = StringUtils.defaultIfBlank(processStringInputParam("arqr"), DFT_ADAPTIVE_RECEIVER_QUEUE_RANGE);
+        String[] queueRangeParts = StringUtils.split(queueRange, ':');
+        adaptiveReceiverQueueMin = (queueRangeParts.length == 2) ? NumberUtils.toInt(queueRangeParts[0].trim()) : 0;
+        adaptiveReceiverQueueMax = (queueRangeParts.length == 2) ? NumberUtils.toInt(queueRangeParts[1].trim()) : 0;
+        if (adaptiveReceiverQueueMin <= 0 || adaptiveReceiverQueueMax < adaptiveReceiverQueueMin) {
+            throw new InvalidParamException("adaptiveReceiverQueueRange", "must be \"min:max\" with 0 < min <= max, " +
+                    "but got \"" + queueRange + "\"");
+        }
+        adaptiveReceiverQueueIntervalMs = processIntegerInputParam("arqi", DFT_ADAPTIVE_RECEIVER_QUEUE_INTERVAL_MS);
+        adaptiveReceiverQueueBufferMs = processIntegerInputParam("arqb", DFT_ADAPTIVE_RECEIVER_QUEUE_BUFFER_MS);
+        if (adaptiveReceiverQueueIntervalMs <= 0 || adaptiveReceiverQueueBufferMs <= 0) {
+            throw new InvalidParamException("The adaptive receiver queue interval and buffer time must be positive integers!");
+        }
+        if (adaptiveReceiverQueue && (processingWorkerNum > 0 || keySharedConsumerNum > 0)) {
+            throw new InvalidParamException("The adaptive receiver queue can't be combined with the processing workers " +
+                    "or the Key_Shared consumers!");
+        }
     }
 
     @Override
     public void execute() {
+        if (keySharedConsumerNum > 0) {
+            executeKeyShared();
+            return;
+        }
+
         try {
             if (pulsarClient == null) {
                 pulsarClient = createNativePulsarClient();
 
                 if (pulsarConsumer == null) {
-                    ConsumerBuilder<byte[]> consumerBuilder = pulsarClient.newConsumer();
-                    consumerBuilder.topic(topicName);
-                    consumerBuilder.subscriptionName(subscriptionName);
-                    consumerBuilder.subscriptionType(subscriptionType);
-                    pulsarConsumer = consumerBuilder.subscribe();
+                    pulsarConsumer = subscribeConsumer(receiverQueueSize);
                 }
             }
+            addToLagReport(pulsarConsumer);
 
             int msgRecvd = 0;
             if (numMsg == -1) {
                 numMsg = Integer.MAX_VALUE;
             }
 
-            while (msgRecvd < numMsg) {
-                Message<byte[]> message = pulsarConsumer.receive();
-                logger.info("({}) Message received and acknowledged: " +
-                                "key={}; properties={}; value={}",
-                        pulsarConsumer.getConsumerName(),
-                        message.getKey(),
-                        message.getProperties(),
-                        new String(message.getData()));
-                pulsarConsumer.acknowledge(message);
-                msgRecvd++;
+            if (adaptiveReceiverQueue) {
+                receiverQueueController = new ReceiverQueueController(adaptiveReceiverQueueMin, adaptiveReceiverQueueMax,
+                        receiverQueueSize, adaptiveReceiverQueueIntervalMs, adaptiveReceiverQueueBufferMs);
+                // The controller may clamp the initial size to its range
+                if (receiverQueueController.getCurrentSize() != receiverQueueSize) {
+                    msgRecvd += resizeReceiverQueue(receiverQueueController.getCurrentSize(), numMsg);
+                }
+                receiverQueueController.evaluate(System.nanoTime(), 0);
+            }
+            if (processingWorkerNum > 0) {
+                // Stop the broker from pushing more messages while the workers are behind
+                processingExecutor = new KeyOrderedExecutor(appName, processingWorkerNum, processingQueueSize,
+                        pulsarConsumer::pause, pulsarConsumer::resume);
+            }
+
+            long startNanos = 0;
+            while (msgRecvd < numMsg && hasRunTimeLeft()) {
+                if (batchReceive) {
+                    // The last batch may go beyond "numMsg", it is acknowledged as a whole
+                    long receiveStartNanos = System.nanoTime();
+                    Messages<byte[]> messages = pulsarConsumer.batchReceive();
+                    if (receiverQueueController != null) {
+                        receiverQueueController.recordReceive(messages.size(), System.nanoTime() - receiveStartNanos);
+                    }
+                    if (messages.size() == 0) {
+                        continue;
+                    }
+                    if (startNanos == 0) {
+                        startNanos = System.nanoTime();
+                    }
+                    recordFirstMessage();
+                    for (Message<byte[]> message : messages) {
+                        recordLag(message);
+                    }
+                    if (processingExecutor != null) {
+                        for (Message<byte[]> message : messages) {
+                            submitMessage(message);
+                        }
+                    }
+                    else {
+                        for (Message<byte[]> message : messages) {
+                            logMessage(message);
+                        }
+                        acknowledgeBatch(messages);
+                    }
+                    msgRecvd += messages.size();
+                }
+                else {
+                    long receiveStartNanos = System.nanoTime();
+                    Message<byte[]> message = pulsarConsumer.receive(RUN_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    if (receiverQueueController != null) {
+                        receiverQueueController.recordReceive((message != null) ? 1 : 0, System.nanoTime() - receiveStartNanos);
+                    }
+                    if (message == null) {
+                        continue;
+                    }
+                    if (startNanos == 0) {
+                        startNanos = System.nanoTime();
+                    }
+                    recordFirstMessage();
+                    recordLag(message);
+                    if (processingExecutor != null) {
+                        submitMessage(message);
+                    }
+                    else {
+                        processMessage(message);
+                    }
+                    msgRecvd++;
+                }
+
+                // The receiver queue is only sampled (a consumer stats snapshot) once per interval
+                long nowNanos = System.nanoTime();
+                if (receiverQueueController != null && msgRecvd < numMsg && receiverQueueController.isDue(nowNanos)) {
+                    int newReceiverQueueSize = receiverQueueController.evaluate(nowNanos, msgNumInReceiverQueue());
+                    if (newReceiverQueueSize > 0) {
+                        msgRecvd += resizeReceiverQueue(newReceiverQueueSize, numMsg - msgRecvd);
+                    }
+                }
             }
 
+            if (processingExecutor != null &&
+                    !processingExecutor.shutdownAndAwait(PROCESSING_DRAIN_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+                logger.warn("Timed out waiting for the processing workers to complete");
+            }
+            reportConsumption(msgRecvd, (startNanos > 0) ? (System.nanoTime() - startNanos) / 1_000_000_000.0 : 0.0);
+            if (processingExecutor != null) {
+                reportProcessing();
+            }
+            if (receiverQueueController != null) {
+                reportReceiverQueue();
+            }
         }
         catch (PulsarClientException pce) {
             throw new WorkshopRuntimException("Unexpected error when consuming Pulsar messages: " + pce.getMessage());
         }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new WorkshopRuntimException("Interrupted while processing Pulsar messages!");
+        }
+    }
+
+    private Consumer<byte[]> subscribeConsumer(int consumerReceiverQueueSize) throws PulsarClientException {
+        ConsumerBuilder<byte[]> consumerBuilder = pulsarClient.newConsumer();
+        consumerBuilder.topic(topicName);
+        consumerBuilder.subscriptionName(subscriptionName);
+        consumerBuilder.subscriptionType(subscriptionType);
+        consumerBuilder.batchReceivePolicy(batchReceivePolicy);
+        subscribedReceiverQueueSize = consumerReceiverQueueSize;
+        return applyConsumerSettings(consumerBuilder)
+                .receiverQueueSize(consumerReceiverQueueSize)
+                .subscribe();
+    }
+
+    @Override
+    protected int getCurrentReceiverQueueSize() {
+        return (receiverQueueController != null) ? receiverQueueController.getCurrentSize() : receiverQueueSize;
+    }
+
+    private int msgNumInReceiverQueue() {
+        Integer msgNum = pulsarConsumer.getStats().getMsgNumInReceiverQueue();
+        return (msgNum == null) ? 0 : msgNum;
+    }
+
+    /**
+     * Log and acknowledge a message on the receiving thread.
+     */
+    private void processMessage(Message<byte[]> message) throws PulsarClientException {
+        logMessage(message);
+        if (cumulativeAck) {
+            pulsarConsumer.acknowledgeCumulative(message);
+            ackRpcCounter.recordCumulativeAck(1);
+        }
+        else {
+            pulsarConsumer.acknowledge(message);
+            ackRpcCounter.recordAck(1);
+        }
+    }
+
+    /**
+     * The receiver queue size of a consumer can't be changed, so close the consumer and subscribe
+     * again with the new size. Closing the consumer drops the messages prefetched in its receiver
+     * queue, which the broker then redelivers (to this or another consumer of the subscription).
+     * To keep these redeliveries low, the consumer is paused first (no more flow permits are sent
+     * to the broker), and the messages already prefetched or on their way are processed: at most
+     * the receiver queue size (the permits already sent), and at most "maxDrainMsgs". The messages
+     * still in the receiver queue when the consumer is closed are counted as dropped.
+     *
+     * @return the number of messages processed while draining the consumer
+     */
+    private int resizeReceiverQueue(int newReceiverQueueSize, int maxDrainMsgs) throws PulsarClientException {
+        List<ReceiverQueueController.Decision> decisions = receiverQueueController.getDecisions();
+        if (!decisions.isEmpty()) {
+            System.out.println("[" + appName + "] Receiver queue " + decisions.get(decisions.size() - 1));
+        }
+
+        pulsarConsumer.pause();
+        int drainLimit = Math.min(maxDrainMsgs, subscribedReceiverQueueSize);
+        int drained = 0;
+        Message<byte[]> message;
+        while (drained < drainLimit &&
+               (message = pulsarConsumer.receive(RESIZE_DRAIN_WAIT_MS, TimeUnit.MILLISECONDS)) != null) {
+            recordLag(message);
+            processMessage(message);
+            drained++;
+        }
+        int dropped = msgNumInReceiverQueue();
+        resizeDrainedCnt += drained;
+        resizeDroppedCnt += dropped;
+        if (dropped > 0) {
+            logger.warn("Closing the consumer drops {} prefetched messages, which will be redelivered", dropped);
+        }
+
+        removeFromLagReport(pulsarConsumer);
+        pulsarConsumer.close();
+        pulsarConsumer = subscribeConsumer(newReceiverQueueSize);
+        addToLagReport(pulsarConsumer);
+        consumerRecreateCnt++;
+        return drained;
+    }
+
+    private void reportReceiverQueue() {
+        System.out.println("[" + appName + "] Adaptive receiver queue: size " + receiverQueueSize + " -> " +
+                receiverQueueController.getCurrentSize() + " (" + receiverQueueController.getMinSizeSeen() + ".." +
+                receiverQueueController.getMaxSizeSeen() + ", range " + adaptiveReceiverQueueMin + ".." +
+                adaptiveReceiverQueueMax + "), " +
+                receiverQueueController.getDecisionCnt(ReceiverQueueController.STARVED) + " grown (starved), " +
+                receiverQueueController.getDecisionCnt(ReceiverQueueController.CONSUMER_BOUND) + " shrunk (consumer-bound), " +
+                "consumer recreated " + consumerRecreateCnt + " time(s), " + resizeDrainedCnt +
+                " messages drained before closing it, " + resizeDroppedCnt + " prefetched messages dropped (redelivered)");
+    }
+
+    /**
+     * Process the message on the worker of its device (the message key, or the device id of
+     * the CSV payload), and acknowledge it once processed.
+     */
+    private void submitMessage(Message<byte[]> message) throws InterruptedException {
+        String deviceKey = message.hasKey() ?
+                message.getKey() : IoTSensorDataUtils.csvDeviceId(new String(message.getData()));
+        processingExecutor.submit(deviceKey, () -> {
+            logMessage(message);
+            pulsarConsumer.acknowledgeAsync(message);
+            ackRpcCounter.recordAck(1);
+        });
+    }
+
+    private void reportProcessing() {
+        List<Long> workerTaskCnts = processingExecutor.getWorkerTaskCnts();
+        long totalTaskCnt = workerTaskCnts.stream().mapToLong(Long::longValue).sum();
+        System.out.println("[" + appName + "] Processed " + totalTaskCnt + " messages with " +
+                processingExecutor.getWorkerNum() + " workers (queue size " + processingQueueSize + "), " +
+                "paused the consumer " + processingExecutor.getPauseCnt() + " time(s), " +
+                processingExecutor.getFailedCnt() + " failure(s)");
+        for (int i = 0; i < workerTaskCnts.size(); i++) {
+            System.out.println("[" + appName + "]   worker " + i + ": " + workerTaskCnts.get(i) + " msgs (" +
+                    String.format("%.1f", (totalTaskCnt > 0) ? workerTaskCnts.get(i) * 100.0 / totalTaskCnt : 0.0) + "%)");
+        }
+    }
+
+    private void logMessage(Message<byte[]> message) {
+        processMessage(logger, pulsarConsumer.getConsumerName(), "received and acknowledged", message);
+    }
+
+    /**
+     * The processing of one IoT sensor reading message, shared with the other ways of reading
+     * the topic (e.g. "IoTSensorBackfill").
+     */
+    static void processMessage(Logger appLogger, String receiverName, String outcome, Message<byte[]> message) {
+        appLogger.info("({}) Message {}: " +
+                        "key={}; properties={}; value={}",
+                receiverName,
+                outcome,
+                message.getKey(),
+                message.getProperties(),
+                new String(message.getData()));
+    }
+
+    /**
+     * Acknowledge a whole received batch with a single call, or with one cumulative
+     * acknowledgement per topic partition (the cumulative acknowledgement of a partitioned
+     * topic only covers the partition of the given message).
+     */
+    private void acknowledgeBatch(Messages<byte[]> messages) throws PulsarClientException {
+        if (!cumulativeAck) {
+            pulsarConsumer.acknowledge(messages);
+            ackRpcCounter.recordAck(messages.size());
+            return;
+        }
+
+        Map<String, Message<byte[]>> lastMessages = new HashMap<>();
+        Map<String, Integer> msgCnts = new HashMap<>();
+        for (Message<byte[]> message : messages) {
+            lastMessages.put(message.getTopicName(), message);
+            msgCnts.merge(message.getTopicName(), 1, Integer::sum);
+        }
+        for (Map.Entry<String, Message<byte[]>> entry : lastMessages.entrySet()) {
+            pulsarConsumer.acknowledgeCumulative(entry.getValue());
+            ackRpcCounter.recordCumulativeAck(msgCnts.get(entry.getKey()));
+        }
+    }
+
+    // Per consumer statistics of the Key_Shared mode, only updated by the consumer's own thread
+    private static class KeySharedConsumerStats {
+        private final String consumerName;
+        private long msgRecvd = 0;
+        private final Set<String> keys = new HashSet<>();
+
+        KeySharedConsumerStats(String consumerName) {
+            this.consumerName = consumerName;
+        }
+    }
+
+    /**
+     * Run several Key_Shared consumers in parallel (one thread each) until "numMsg" messages are
+     * received in total, then report how the messages and the keys are spread across the consumers.
+     */
+    private void executeKeyShared() {
+        List<KeySharedConsumerStats> consumerStatsList = new ArrayList<>();
+        // The first consumer that received each key. A key received by more than one consumer
+        // means that the per-key ordering was not guaranteed (e.g. messages without a key or
+        // key ranges moved to another consumer).
+        Map<String, Integer> keyOwners = new ConcurrentHashMap<>();
+        Set<String> sharedKeys = ConcurrentHashMap.newKeySet();
+        AtomicInteger totalRecvd = new AtomicInteger();
+
+        if (numMsg == -1) {
+            numMsg = Integer.MAX_VALUE;
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(keySharedConsumerNum);
+        long startNanos = System.nanoTime();
+        try {
+            pulsarClient = createNativePulsarClient();
+
+            for (int i = 0; i < keySharedConsumerNum; i++) {
+                Consumer<byte[]> consumer = applyConsumerSettings(pulsarClient.newConsumer())
+                        .topic(topicName)
+                        .subscriptionName(subscriptionName)
+                        .subscriptionType(SubscriptionType.Key_Shared)
+                        .consumerName(appName + "-" + i)
+                        .subscribe();
+                keySharedConsumers.add(consumer);
+                addToLagReport(consumer);
+                consumerStatsList.add(new KeySharedConsumerStats(consumer.getConsumerName()));
+            }
+
+            // Start the run duration clock before the consumer threads share it
+            hasRunTimeLeft();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < keySharedConsumerNum; i++) {
+                final int consumerIdx = i;
+                final Consumer<byte[]> consumer = keySharedConsumers.get(i);
+                final KeySharedConsumerStats consumerStats = consumerStatsList.get(i);
+
+                futures.add(executorService.submit(() -> {
+                    while (totalRecvd.get() < numMsg && hasRunTimeLeft()) {
+                        Message<byte[]> message = consumer.receive(100, TimeUnit.MILLISECONDS);
+                        if (message == null) {
+                            continue;
+                        }
+                        // Leave the messages above "numMsg" unacknowledged for the next run
+                        if (totalRecvd.getAndIncrement() >= numMsg) {
+                            break;
+                        }
+                        recordFirstMessage();
+                        recordLag(message);
+
+                        String key = message.hasKey() ? message.getKey() : "";
+                        Integer owner = keyOwners.putIfAbsent(key, consumerIdx);
+                        if (owner != null && owner != consumerIdx) {
+                            sharedKeys.add(key);
+                        }
+                        consumerStats.keys.add(key);
+                        consumerStats.msgRecvd++;
+
+                        processMessage(logger, consumer.getConsumerName(), "received and acknowledged", message);
+                        consumer.acknowledge(message);
+                        ackRpcCounter.recordAck(1);
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        catch (PulsarClientException pce) {
+            throw new WorkshopRuntimException("Unexpected error when consuming Pulsar messages: " + pce.getMessage());
+        }
+        catch (Exception e) {
+            throw new WorkshopRuntimException("Unexpected error in a Key_Shared consumer: " + e.getMessage());
+        }
+        finally {
+            executorService.shutdownNow();
+        }
+
+        double elapsedSec = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        long msgTotal = consumerStatsList.stream().mapToLong(stats -> stats.msgRecvd).sum();
+        logger.info("Key_Shared load spread: {} messages, {} keys, {} consumers in {} s ({} msg/s)",
+                msgTotal,
+                keyOwners.size(),
+                keySharedConsumerNum,
+                String.format("%.3f", elapsedSec),
+                String.format("%.1f", msgTotal / elapsedSec));
+        for (KeySharedConsumerStats stats : consumerStatsList) {
+            logger.info("  {}: {} messages ({}%), {} keys",
+                    stats.consumerName,
+                    stats.msgRecvd,
+                    String.format("%.1f", (msgTotal > 0) ? stats.msgRecvd * 100.0 / msgTotal : 0.0),
+                    stats.keys.size());
+        }
+        logger.info("  keys received by more than one consumer: {}", sharedKeys.size());
+        reportConsumption(msgTotal, elapsedSec);
     }
 
     @Override
@@ -119,6 +626,10 @@ public class IoTSensorConsumer extends NativePulsarCmdApp {
                 pulsarConsumer.close();
             }
 
+            for (Consumer<byte[]> consumer : keySharedConsumers) {
+                consumer.close();
+            }
+
             if (pulsarClient != null) {
                 pulsarClient.close();
             }
@@ -0,0 +1,405 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop;
+
+import com.example.pulsarworkshop.exception.InvalidParamException;
+import com.example.pulsarworkshop.exception.WorkshopRuntimException;
+import com.example.pulsarworkshop.util.AckRpcCounter;
+import com.example.pulsarworkshop.util.AsyncSendWindow;
+import com.example.pulsarworkshop.util.CsvPreloader;
+import com.example.pulsarworkshop.util.TransactionBatcher;
+import org.apache.pulsar.client.api.*;
+import org.apache.pulsar.client.api.transaction.Transaction;
+import org.apache.pulsar.shade.org.apache.commons.lang3.StringUtils;
+import org.apache.pulsar.shade.org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A client side version of the "AddMetadataFunc" function: consumes the IoT sensor readings of
+ * the input topic, adds the "internal_process_time" property and publishes them to the output
+ * topic (same key, properties and payload).
+ *
+ * By default, each input message is acknowledged once its output message is published, so a
+ * crash in between publishes the message twice. With "-txn", the output messages are published
+ * and the input messages acknowledged in Pulsar transactions (consume-transform-produce exactly
+ * once): a transaction is committed every "txnBatchSize" messages or "txnBatchTime" milliseconds,
+ * and up to "txnPipeline" transactions are open at the same time, so the next batch doesn't wait
+ * for the commit of the previous one (see {@link TransactionBatcher}).
+ *
+ * With several comma separated batch sizes, "numMsg" messages are processed with each of them
+ * and the throughput of each batch size is reported. The transactions must be enabled in the
+ * broker ("transactionCoordinatorEnabled=true").
+ */
+public class IoTSensorEnricher extends NativePulsarConsumerCmdApp {
+
+    // Must be set before initializing the "logger" object.
+    private final static String APP_NAME = "IoTSensorEnricher";
+    static { System.setProperty("log_file_base_name", getLogFileName(API_TYPE, APP_NAME)); }
+    private final static Logger logger = LoggerFactory.getLogger(IoTSensorEnricher.class);
+
+    private final static String PROP_PROCESS_TIME = "internal_process_time";
+    private final static DateTimeFormatter PROCESS_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    private final static String DFT_TXN_BATCH_SIZES = "100";
+    private final static int DFT_TXN_BATCH_TIME_MS = 100;
+    private final static int DFT_TXN_PIPELINE = 4;
+    private final static int MAX_IN_FLIGHT = 1000;
+    private final static long IDLE_TIMEOUT_SEC = 30;
+    private final static long TXN_DRAIN_TIMEOUT_SEC = 60;
+    // How long a transaction may stay open on top of its batch time (the commit round trips, the
+    // pipeline waits, etc.) before the coordinator aborts it, e.g. once this application died
+    private final static long TXN_TIMEOUT_SEC = 30;
+
+    private String subscriptionName;
+    private SubscriptionType subscriptionType = SubscriptionType.Shared;
+    private String outputTopic;
+    private final List<Integer> txnBatchSizes = new ArrayList<>();
+    private int txnBatchTimeMs;
+    private int txnPipeline;
+    private File preloadCsvFile;
+    private boolean txnReportHeaderPrinted = false;
+
+    private static PulsarClient pulsarClient;
+    private static Consumer<byte[]> pulsarConsumer;
+    private static Producer<byte[]> pulsarProducer;
+
+    public IoTSensorEnricher(String appName, String[] inputParams) {
+        super(appName, inputParams);
+        addOptionalCommandLineOption("sbt","subType", true, "Pulsar subscription type (default: Shared).");
+        addRequiredCommandLineOption("sbn", "subName", true, "Pulsar subscription name.");
+        addRequiredCommandLineOption("ot", "outputTopic", true, "Pulsar topic of the enriched messages.");
+        addOptionalCommandLineOption("txn", "transactional", false,
+                "Publish the output and acknowledge the input messages in Pulsar transactions.");
+        addOptionalCommandLineOption("txb", "txnBatchSizes", true,
+                "Comma separated numbers of messages per transaction, one run each (default: " + DFT_TXN_BATCH_SIZES + ").");
+        addOptionalCommandLineOption("txt", "txnBatchTime", true,
+                "Max time in milliseconds before a transaction is committed (default: " + DFT_TXN_BATCH_TIME_MS + ").");
+        addOptionalCommandLineOption("txp", "txnPipeline", true,
+                "Max number of open (filling or committing) transactions (default: " + DFT_TXN_PIPELINE + ").");
+        addOptionalCommandLineOption("pre", "preloadCsvFile", true,
+                "Publish the IoT sensor readings of all the runs from this CSV file before subscribing (from the earliest message).");
+
+        logger.info("Starting application: \"" + appName + "\" ...");
+    }
+
+    public static void main(String[] args) {
+        PulsarWorkshopCmdApp workshopApp = new IoTSensorEnricher(APP_NAME, args);
+        int exitCode = workshopApp.runCmdApp();
+        System.exit(exitCode);
+    }
+
+    @Override
+    public void processExtendedInputParams() throws InvalidParamException {
+        super.processExtendedInputParams();
+
+        // (Required) Pulsar subscription name and output topic
+        subscriptionName = processStringInputParam("sbn");
+        if ( StringUtils.isBlank(subscriptionName) ) {
+            throw new InvalidParamException("Must provide a subscription name for a consumer!");
+        }
+        outputTopic = processStringInputParam("ot");
+        if ( StringUtils.isBlank(outputTopic) ) {
+            throw new InvalidParamException("Must provide an output topic!");
+        }
+
+        // (Optional) Pulsar subscription type
+        String subType = processStringInputParam("sbt");
+        if (!StringUtils.isBlank(subType)) {
+            try {
+                subscriptionType = SubscriptionType.valueOf(subType);
+            }
+            catch (IllegalArgumentException iae) {
+                throw new InvalidParamException("subType", "unknown subscription type \"" + subType + "\"");
+            }
+        }
+
+        // (Optional) Transactions
+        enableTransaction = commandLine.hasOption("txn");
+        String txnBatchSizesStr = StringUtils.defaultIfBlank(processStringInputParam("txb"), DFT_TXN_BATCH_SIZES);
+        for (String txnBatchSizeStr : StringUtils.split(txnBatchSizesStr, ',')) {
+            int txnBatchSize = NumberUtils.toInt(StringUtils.trim(txnBatchSizeStr));
+            if (txnBatchSize <= 0) {
+                throw new InvalidParamException("txnBatchSizes", "must be positive integers, but got \"" + txnBatchSizesStr + "\"");
+            }
+            txnBatchSizes.add(txnBatchSize);
+        }
+        if (enableTransaction && txnBatchSizes.size() > 1 && numMsg == -1) {
+            throw new InvalidParamException("numMsg", "must be a positive integer with several transaction batch sizes");
+        }
+        txnBatchTimeMs = processIntegerInputParam("txt", DFT_TXN_BATCH_TIME_MS);
+        if (txnBatchTimeMs <= 0) {
+            throw new InvalidParamException("The transaction batch time must be a positive integer!");
+        }
+        txnPipeline = processIntegerInputParam("txp", DFT_TXN_PIPELINE);
+        if (txnPipeline <= 0) {
+            throw new InvalidParamException("The transaction pipeline must be a positive integer!");
+        }
+        if (enableTransaction) {
+            // The transactional acknowledgements are not grouped, each one is a command to the broker
+            ackGroupTimeMs = 0;
+            ackRpcCounter = new AckRpcCounter(0);
+        }
+
+        // (Optional) CSV file to publish first
+        String preloadCsvPath = processStringInputParam("pre");
+        if (StringUtils.isNotBlank(preloadCsvPath)) {
+            preloadCsvFile = new File(preloadCsvPath);
+            if (!preloadCsvFile.isFile()) {
+                throw new InvalidParamException("Must provided a valid IoT sensor source data csv file to preload!");
+            }
+        }
+    }
+
+    @Override
+    public void execute() throws WorkshopRuntimException {
+        int runNum = enableTransaction ? txnBatchSizes.size() : 1;
+        if (numMsg == -1) {
+            numMsg = Integer.MAX_VALUE;
+        }
+
+        try {
+            pulsarClient = createNativePulsarClient();
+            if (preloadCsvFile != null) {
+                preload((long) numMsg * runNum);
+            }
+
+            ConsumerBuilder<byte[]> consumerBuilder = applyConsumerSettings(pulsarClient.newConsumer())
+                    .topic(topicName)
+                    .subscriptionName(subscriptionName)
+                    .subscriptionType(subscriptionType);
+            if (preloadCsvFile != null) {
+                consumerBuilder.subscriptionInitialPosition(SubscriptionInitialPosition.Earliest);
+            }
+            pulsarConsumer = consumerBuilder.subscribe();
+            addToLagReport(pulsarConsumer);
+
+            // The transactional messages can't have a send timeout
+            pulsarProducer = pulsarClient.newProducer()
+                    .topic(outputTopic)
+                    .sendTimeout(0, TimeUnit.SECONDS)
+                    .maxPendingMessages(MAX_IN_FLIGHT)
+                    .blockIfQueueFull(true)
+                    .create();
+
+            long msgProcessed = 0;
+            long startNanos = System.nanoTime();
+            if (enableTransaction) {
+                for (int txnBatchSize : txnBatchSizes) {
+                    msgProcessed += runTransactional(txnBatchSize);
+                }
+            }
+            else {
+                msgProcessed = runNonTransactional();
+            }
+            reportConsumption(msgProcessed, (System.nanoTime() - startNanos) / 1_000_000_000.0);
+        }
+        catch (PulsarClientException pce) {
+            throw new WorkshopRuntimException("Unexpected error when enriching Pulsar messages: " + pce.getMessage());
+        }
+        catch (IOException ioException) {
+            throw new WorkshopRuntimException("Failed to read from the workload data source file: " + ioException.getMessage());
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new WorkshopRuntimException("Interrupted while enriching the messages!");
+        }
+    }
+
+    /**
+     * The output message of an input message: same key, properties and payload, plus the processing time.
+     */
+    private TypedMessageBuilder<byte[]> enrich(TypedMessageBuilder<byte[]> messageBuilder, Message<byte[]> message) {
+        if (message.hasKey()) {
+            messageBuilder.key(message.getKey());
+        }
+        return messageBuilder
+                .properties(message.getProperties())
+                .property(PROP_PROCESS_TIME, LocalDateTime.now().format(PROCESS_TIME_FORMATTER))
+                .value(message.getData());
+    }
+
+    /**
+     * Acknowledge each input message once its output message is published (at least once).
+     *
+     * @return the number of processed messages
+     */
+    private long runNonTransactional() throws PulsarClientException, InterruptedException {
+        AsyncSendWindow sendWindow = new AsyncSendWindow(MAX_IN_FLIGHT);
+        long msgProcessed = 0;
+        long lastMsgNanos = System.nanoTime();
+        while (msgProcessed < numMsg && hasRunTimeLeft()) {
+            Message<byte[]> message = pulsarConsumer.receive(RUN_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            if (message == null) {
+                if (System.nanoTime() - lastMsgNanos > TimeUnit.SECONDS.toNanos(IDLE_TIMEOUT_SEC)) {
+                    logger.warn("No message received for {} seconds, giving up", IDLE_TIMEOUT_SEC);
+                    break;
+                }
+                continue;
+            }
+            lastMsgNanos = System.nanoTime();
+            recordFirstMessage();
+            recordLag(message);
+
+            sendWindow.acquire();
+            CompletableFuture<MessageId> sendFuture = enrich(pulsarProducer.newMessage(), message).sendAsync();
+            sendWindow.track(sendFuture.whenComplete((messageId, throwable) -> {
+                if (throwable == null) {
+                    pulsarConsumer.acknowledgeAsync(message);
+                    ackRpcCounter.recordAck(1);
+                }
+                else {
+                    pulsarConsumer.negativeAcknowledge(message);
+                }
+            }));
+            msgProcessed++;
+        }
+
+        pulsarProducer.flush();
+        if (!sendWindow.awaitDrained(IDLE_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+            logger.warn("{} messages still not published after {} seconds, their input messages will be redelivered",
+                    sendWindow.getInFlight(), IDLE_TIMEOUT_SEC);
+        }
+        if (sendWindow.getFailedCnt() > 0) {
+            logger.warn("{} messages failed to publish and will be redelivered (first failure: {})",
+                    sendWindow.getFailedCnt(), sendWindow.getFirstFailure().getMessage());
+        }
+        return msgProcessed;
+    }
+
+    /**
+     * Process "numMsg" messages in transactions of "txnBatchSize" messages, and report the throughput.
+     *
+     * @return the number of processed messages
+     */
+    private long runTransactional(int txnBatchSize) throws PulsarClientException, InterruptedException {
+        TransactionBatcher<Message<byte[]>> txnBatcher = new TransactionBatcher<>(
+                this::openTransaction, txnBatchSize, txnBatchTimeMs, txnPipeline,
+                // The input messages of an aborted transaction are not acknowledged, process them again
+                (messages, throwable) -> messages.forEach(pulsarConsumer::negativeAcknowledge));
+
+        long msgProcessed = 0;
+        long startNanos = 0;
+        long lastMsgNanos = System.nanoTime();
+        while (msgProcessed < numMsg && hasRunTimeLeft()) {
+            // Don't wait for new messages beyond the time left to the current batch
+            long waitMs = Math.max(1, Math.min(RUN_CHECK_INTERVAL_MS,
+                    TimeUnit.NANOSECONDS.toMillis(txnBatcher.remainingBatchNanos())));
+            Message<byte[]> message = pulsarConsumer.receive((int) waitMs, TimeUnit.MILLISECONDS);
+            if (message == null) {
+                txnBatcher.commitIfDue();
+                if (System.nanoTime() - lastMsgNanos > TimeUnit.SECONDS.toNanos(IDLE_TIMEOUT_SEC)) {
+                    logger.warn("No message received for {} seconds, giving up", IDLE_TIMEOUT_SEC);
+                    break;
+                }
+                continue;
+            }
+            lastMsgNanos = System.nanoTime();
+            if (startNanos == 0) {
+                startNanos = lastMsgNanos;
+            }
+            recordFirstMessage();
+            recordLag(message);
+
+            // The commit waits for the send and the acknowledgement of the transaction to complete
+            Transaction txn = txnBatcher.currentTransaction();
+            enrich(pulsarProducer.newMessage(txn), message).sendAsync();
+            pulsarConsumer.acknowledgeAsync(message.getMessageId(), txn);
+            ackRpcCounter.recordAck(1);
+            txnBatcher.add(message);
+            txnBatcher.commitIfDue();
+            msgProcessed++;
+        }
+
+        if (!txnBatcher.close(TXN_DRAIN_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+            logger.warn("Some transactions are still not committed after {} seconds", TXN_DRAIN_TIMEOUT_SEC);
+        }
+        double elapsedSec = (startNanos > 0) ? (System.nanoTime() - startNanos) / 1_000_000_000.0 : 0.0;
+
+        if (!txnReportHeaderPrinted) {
+            System.out.println("[" + appName + "] " + String.format("%10s %10s %8s %10s %14s %14s %10s %8s",
+                    "batch size", "msgs", "txns", "msg/s", "avg commit ms", "max commit ms", "max open", "failed"));
+            txnReportHeaderPrinted = true;
+        }
+        System.out.println("[" + appName + "] " + String.format("%10d %10d %8d %10.1f %14.1f %14.1f %10d %8d",
+                txnBatchSize,
+                txnBatcher.getCommittedItemCnt(),
+                txnBatcher.getCommittedTxnCnt(),
+                (elapsedSec > 0) ? txnBatcher.getCommittedItemCnt() / elapsedSec : 0.0,
+                txnBatcher.getAvgCommitMs(),
+                txnBatcher.getMaxCommitMs(),
+                txnBatcher.getMaxOpenTxnCnt(),
+                txnBatcher.getFailedTxnCnt()));
+        if (txnBatcher.getFailedTxnCnt() > 0) {
+            logger.warn("{} transactions were aborted (first failure: {})",
+                    txnBatcher.getFailedTxnCnt(), txnBatcher.getFirstFailure().getMessage());
+        }
+        return msgProcessed;
+    }
+
+    private CompletableFuture<Transaction> openTransaction() {
+        try {
+            return pulsarClient.newTransaction()
+                    .withTransactionTimeout(TimeUnit.SECONDS.toMillis(TXN_TIMEOUT_SEC) + txnBatchTimeMs, TimeUnit.MILLISECONDS)
+                    .build();
+        }
+        catch (PulsarClientException pce) {
+            return CompletableFuture.failedFuture(pce);
+        }
+    }
+
+    /**
+     * Publish "msgCnt" readings of the CSV file (from the start again when the file is shorter).
+     */
+    private void preload(long msgCnt) throws IOException, PulsarClientException, InterruptedException {
+        CsvPreloader.preload(pulsarClient, topicName, preloadCsvFile, msgCnt);
+        System.out.println("[" + appName + "] Preloaded " + msgCnt + " messages from " + preloadCsvFile.getName());
+    }
+
+    @Override
+    public void termCmdApp() {
+        try {
+            if (pulsarProducer != null) {
+                pulsarProducer.close();
+            }
+            if (pulsarConsumer != null) {
+                pulsarConsumer.close();
+            }
+
+            if (pulsarClient != null) {
+                pulsarClient.close();
+            }
+        }
+        catch (PulsarClientException pce) {
+            throw new WorkshopRuntimException("Failed to terminate Pulsar producer, consumer or client!");
+        }
+        finally {
+            logger.info("Terminating application: \"" + appName + "\" ...");
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop;
+
+import com.example.pulsarworkshop.exception.InvalidParamException;
+import com.example.pulsarworkshop.exception.WorkshopRuntimException;
+import com.example.pulsarworkshop.pojo.IoTSensorData;
+import com.example.pulsarworkshop.pojo.IoTSensorDataUtils;
+import com.example.pulsarworkshop.util.LatestReadingCache;
+import org.apache.pulsar.client.api.PulsarClient;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Schema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the latest IoT sensor reading of each device in memory with a {@link LatestReadingCache},
+ * from a topic keyed by the device id (published with "IoTSensorProducer -kd"). Compaction should
+ * be enabled on the topic, so loading the cache only reads the latest reading of each device.
+ *
+ * Once the cache is loaded, the application measures the cost of the local point lookups, then
+ * logs the changes of the device readings until "-n" changes are received or the run duration
+ * is over, and prints the latest reading of each device.
+ */
+public class IoTSensorLatestReadings extends NativePulsarCmdApp {
+
+    // Must be set before initializing the "logger" object.
+    private final static String APP_NAME = "IoTSensorLatestReadings";
+    static { System.setProperty("log_file_base_name", getLogFileName(API_TYPE, APP_NAME)); }
+    private final static Logger logger = LoggerFactory.getLogger(IoTSensorLatestReadings.class);
+
+    private final static int DFT_LOOKUP_NUM = 1_000_000;
+    // How often the watch loop checks the number of changes and the run duration
+    private final static long WATCH_CHECK_MS = 100;
+
+    private int lookupNum;
+
+    private static PulsarClient pulsarClient;
+    private static LatestReadingCache<byte[], IoTSensorData> latestReadings;
+
+    public IoTSensorLatestReadings(String appName, String[] inputParams) {
+        super(appName, inputParams);
+        addOptionalCommandLineOption("lk", "lookups",
+                true, "Number of point lookups to measure once the latest readings are loaded (default: " +
+                        DFT_LOOKUP_NUM + ", 0 to skip).");
+
+        logger.info("Starting application: \"" + appName + "\" ...");
+    }
+
+    public static void main(String[] args) {
+        PulsarWorkshopCmdApp workshopApp = new IoTSensorLatestReadings(APP_NAME, args);
+        int exitCode = workshopApp.runCmdApp();
+        System.exit(exitCode);
+    }
+
+    @Override
+    public void processExtendedInputParams() throws InvalidParamException {
+        super.processExtendedInputParams();
+
+        // (Optional) Point lookups
+        lookupNum = processIntegerInputParam("lk", DFT_LOOKUP_NUM);
+        if (lookupNum < 0) {
+            throw new InvalidParamException("The number of lookups must be a non-negative integer!");
+        }
+    }
+
+    @Override
+    public void execute() throws WorkshopRuntimException {
+        try {
+            pulsarClient = createNativePulsarClient();
+
+            long loadStartNanos = System.nanoTime();
+            // The readings are raw CSV lines, which are parsed once when they arrive
+            latestReadings = LatestReadingCache.create(pulsarClient, topicName, Schema.BYTES,
+                    csvBytes -> (csvBytes.length == 0) ? null :
+                            IoTSensorDataUtils.csvToPojo(new String(csvBytes, StandardCharsets.UTF_8)));
+            System.out.println("[" + appName + "] Loaded the latest reading of " + latestReadings.size() +
+                    " devices in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loadStartNanos) + " ms");
+
+            measureLookups();
+            watchChanges();
+
+            System.out.println("[" + appName + "] Latest reading of " + latestReadings.size() + " devices:");
+            new TreeMap<>(latestReadings.asMap()).forEach((deviceId, reading) ->
+                    System.out.println("[" + appName + "]   " + deviceId + ": " + reading));
+        } catch (PulsarClientException pce) {
+            pce.printStackTrace();
+            throw new WorkshopRuntimException("Unexpected error when loading the latest readings: " + pce.getMessage());
+        }
+    }
+
+    /**
+     * Look up the known devices (plus an unknown one) round-robin, like a consumer or a function
+     * enriching each message with the current device state would.
+     */
+    private void measureLookups() {
+        if (lookupNum == 0 || latestReadings.size() == 0) {
+            return;
+        }
+
+        List<String> deviceIds = new ArrayList<>(latestReadings.asMap().keySet());
+        deviceIds.add("unknown-device");
+        long hitCnt = 0;
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < lookupNum; i++) {
+            if (latestReadings.get(deviceIds.get(i % deviceIds.size())) != null) {
+                hitCnt++;
+            }
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        System.out.println("[" + appName + "] " + lookupNum + " point lookups in " +
+                String.format("%.3f", elapsedNanos / 1_000_000.0) + " ms (" +
+                String.format("%.1f", (double) elapsedNanos / lookupNum) + " ns/lookup, " +
+                String.format("%.0f", lookupNum * 1_000_000_000.0 / elapsedNanos) + " lookups/s), " +
+                hitCnt + " hits");
+    }
+
+    /**
+     * Log the changes of the device readings until "-n" changes are received (no limit with -1)
+     * or the run duration is over.
+     */
+    private void watchChanges() {
+        AtomicLong changeCnt = new AtomicLong();
+        latestReadings.addListener((deviceId, reading) -> {
+            recordFirstMessage();
+            logger.info("Device {} changed: {}", deviceId, (reading == null) ? "removed" : reading);
+            changeCnt.incrementAndGet();
+        });
+
+        long watchStartNanos = System.nanoTime();
+        while ((numMsg == -1 || changeCnt.get() < numMsg) && hasRunTimeLeft()) {
+            try {
+                Thread.sleep(WATCH_CHECK_MS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        double elapsedSec = (System.nanoTime() - watchStartNanos) / 1_000_000_000.0;
+        System.out.println("[" + appName + "] Received " + changeCnt.get() + " reading changes in " +
+                String.format("%.3f", elapsedSec) + " s (" + latestReadings.getUpdateCnt() + " updates, " +
+                latestReadings.getLookupCnt() + " lookups, " + latestReadings.getMissCnt() + " misses in total)");
+    }
+
+    @Override
+    public void termCmdApp() {
+        try {
+            if (latestReadings != null) {
+                latestReadings.close();
+            }
+
+            if (pulsarClient != null) {
+                pulsarClient.close();
+            }
+        }
+        catch (IOException ioe) {
+            throw new WorkshopRuntimException("Failed to terminate the table view or Pulsar client!");
+        }
+        finally {
+            logger.info("Terminating application: \"" + appName + "\" ...");
+        }
+    }
+}
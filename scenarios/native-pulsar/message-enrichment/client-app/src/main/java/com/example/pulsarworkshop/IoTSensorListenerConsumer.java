@@ -0,0 +1,346 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop;
+
+import com.example.pulsarworkshop.exception.InvalidParamException;
+import com.example.pulsarworkshop.exception.WorkshopRuntimException;
+import com.example.pulsarworkshop.util.CsvPreloader;
+import org.apache.pulsar.client.api.*;
+import org.apache.pulsar.shade.org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A push based variant of the "IoTSensorConsumer": several consumers in one process share a
+ * subscription ("Shared" by default), and the Pulsar client calls their message listener from a
+ * pool of "listenerThreads" threads. The run completes when "numMsg" messages have been received
+ * (a latch, instead of a receive loop), when the "duration" option is reached, or when no message
+ * was received for "IDLE_TIMEOUT_SEC" seconds.
+ *
+ * For comparison, the "pull" mode runs the same consumers with one thread each, calling
+ * "receive()" in a loop. Both modes report the throughput, the spread of the messages over the
+ * consumers and the process CPU time per message.
+ */
+public class IoTSensorListenerConsumer extends NativePulsarConsumerCmdApp {
+
+    // Must be set before initializing the "logger" object.
+    private final static String APP_NAME = "IoTSensorListenerConsumer";
+    static { System.setProperty("log_file_base_name", getLogFileName(API_TYPE, APP_NAME)); }
+    private final static Logger logger = LoggerFactory.getLogger(IoTSensorListenerConsumer.class);
+
+    private final static String MODE_LISTENER = "listener";
+    private final static String MODE_PULL = "pull";
+
+    private final static int DFT_CONSUMER_NUM = 1;
+    private final static long RECEIVE_TIMEOUT_MS = 100;
+    private final static long IDLE_TIMEOUT_SEC = 30;
+
+    private String subscriptionName;
+    private SubscriptionType subscriptionType = SubscriptionType.Shared;
+    private String consumeMode = MODE_LISTENER;
+    private int consumerNum;
+    private File preloadCsvFile;
+
+    private static PulsarClient pulsarClient;
+    private static final List<Consumer<byte[]>> pulsarConsumers = new ArrayList<>();
+
+    private CountDownLatch completionLatch;
+    private final AtomicInteger totalRecvd = new AtomicInteger();
+    private final AtomicLong firstMsgNanos = new AtomicLong();
+    private final List<LongAdder> consumerMsgCnts = new ArrayList<>();
+    private final Set<String> deliveryThreads = ConcurrentHashMap.newKeySet();
+
+    public IoTSensorListenerConsumer(String appName, String[] inputParams) {
+        super(appName, inputParams);
+        addOptionalCommandLineOption("sbt","subType", true, "Pulsar subscription type (default: Shared).");
+        addRequiredCommandLineOption("sbn", "subName", true, "Pulsar subscription name.");
+        addOptionalCommandLineOption("cm", "consumeMode", true,
+                "How the messages are consumed: \"listener\" (message listener, default) or \"pull\" (receive loop).");
+        addOptionalCommandLineOption("cn", "consumerNum", true,
+                "Number of consumers of the subscription in this process (default: " + DFT_CONSUMER_NUM + ").");
+        addOptionalCommandLineOption("lt", "listenerThreads", true,
+                "Number of client threads calling the message listeners (default: 1).");
+        addOptionalCommandLineOption("pre", "preloadCsvFile", true,
+                "Publish \"numMsg\" IoT sensor readings from this CSV file before subscribing (from the earliest message).");
+
+        logger.info("Starting application: \"" + appName + "\" ...");
+    }
+
+    public static void main(String[] args) {
+        PulsarWorkshopCmdApp workshopApp = new IoTSensorListenerConsumer(APP_NAME, args);
+        int exitCode = workshopApp.runCmdApp();
+        System.exit(exitCode);
+    }
+
+    @Override
+    public void processExtendedInputParams() throws InvalidParamException {
+        super.processExtendedInputParams();
+
+        // (Required) Pulsar subscription name
+        subscriptionName = processStringInputParam("sbn");
+        if ( StringUtils.isBlank(subscriptionName) ) {
+            throw new InvalidParamException("Must provide a subscription name for a consumer!");
+        }
+
+        // (Optional) Pulsar subscription type
+        String subType = processStringInputParam("sbt");
+        if (!StringUtils.isBlank(subType)) {
+            try {
+                subscriptionType = SubscriptionType.valueOf(subType);
+            }
+            catch (IllegalArgumentException iae) {
+                throw new InvalidParamException("subType", "unknown subscription type \"" + subType + "\"");
+            }
+        }
+
+        // (Optional) Consume mode, number of consumers and listener threads
+        consumeMode = StringUtils.defaultIfBlank(processStringInputParam("cm"), MODE_LISTENER);
+        if (!StringUtils.equalsAny(consumeMode, MODE_LISTENER, MODE_PULL)) {
+            throw new InvalidParamException("consumeMode", "must be \"listener\" or \"pull\", but got \"" + consumeMode + "\"");
+        }
+        consumerNum = processIntegerInputParam("cn", DFT_CONSUMER_NUM);
+        if (consumerNum <= 0) {
+            throw new InvalidParamException("The number of consumers must be a positive integer!");
+        }
+        if (consumerNum > 1 &&
+                (subscriptionType == SubscriptionType.Exclusive || subscriptionType == SubscriptionType.Failover)) {
+            logger.warn("Only one of the {} consumers is active with a {} subscription", consumerNum, subscriptionType);
+        }
+        listenerThreads = processIntegerInputParam("lt", 1);
+        if (listenerThreads <= 0) {
+            throw new InvalidParamException("The number of listener threads must be a positive integer!");
+        }
+
+        // (Optional) CSV file to publish first
+        String preloadCsvPath = processStringInputParam("pre");
+        if (StringUtils.isNotBlank(preloadCsvPath)) {
+            preloadCsvFile = new File(preloadCsvPath);
+            if (!preloadCsvFile.isFile()) {
+                throw new InvalidParamException("Must provided a valid IoT sensor source data csv file to preload!");
+            }
+            if (numMsg == -1) {
+                throw new InvalidParamException("Must provide the number of messages to preload (\"numMsg\" can't be -1)!");
+            }
+        }
+    }
+
+    @Override
+    public void execute() throws WorkshopRuntimException {
+        if (numMsg == -1) {
+            numMsg = Integer.MAX_VALUE;
+        }
+        completionLatch = new CountDownLatch(numMsg);
+
+        ExecutorService pullExecutor = null;
+        try {
+            pulsarClient = createNativePulsarClient();
+            if (preloadCsvFile != null) {
+                preload();
+            }
+
+            com.sun.management.OperatingSystemMXBean osMXBean =
+                    (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+            long cpuStartNanos = osMXBean.getProcessCpuTime();
+
+            for (int i = 0; i < consumerNum; i++) {
+                LongAdder consumerMsgCnt = new LongAdder();
+                consumerMsgCnts.add(consumerMsgCnt);
+
+                ConsumerBuilder<byte[]> consumerBuilder = applyConsumerSettings(pulsarClient.newConsumer())
+                        .topic(topicName)
+                        .subscriptionName(subscriptionName)
+                        .subscriptionType(subscriptionType)
+                        .consumerName(appName + "-" + i);
+                if (preloadCsvFile != null) {
+                    consumerBuilder.subscriptionInitialPosition(SubscriptionInitialPosition.Earliest);
+                }
+                if (StringUtils.equals(consumeMode, MODE_LISTENER)) {
+                    consumerBuilder.messageListener((consumer, message) -> process(consumer, message, consumerMsgCnt));
+                }
+                pulsarConsumers.add(consumerBuilder.subscribe());
+                addToLagReport(pulsarConsumers.get(i));
+            }
+
+            List<Future<?>> pullTasks = new ArrayList<>();
+            if (StringUtils.equals(consumeMode, MODE_PULL)) {
+                pullExecutor = Executors.newFixedThreadPool(consumerNum);
+                for (int i = 0; i < consumerNum; i++) {
+                    Consumer<byte[]> consumer = pulsarConsumers.get(i);
+                    LongAdder consumerMsgCnt = consumerMsgCnts.get(i);
+                    pullTasks.add(pullExecutor.submit(() -> {
+                        while (completionLatch.getCount() > 0) {
+                            Message<byte[]> message = consumer.receive((int) RECEIVE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                            if (message != null) {
+                                process(consumer, message, consumerMsgCnt);
+                            }
+                        }
+                        return null;
+                    }));
+                }
+            }
+
+            awaitCompletion(pullTasks);
+            long endNanos = System.nanoTime();
+            long cpuNanos = osMXBean.getProcessCpuTime() - cpuStartNanos;
+
+            report(endNanos, cpuNanos);
+        }
+        catch (PulsarClientException pce) {
+            throw new WorkshopRuntimException("Unexpected error when consuming Pulsar messages: " + pce.getMessage());
+        }
+        catch (IOException ioException) {
+            throw new WorkshopRuntimException("Failed to read from the workload data source file: " + ioException.getMessage());
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new WorkshopRuntimException("Interrupted while waiting for the messages!");
+        }
+        finally {
+            if (pullExecutor != null) {
+                pullExecutor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Wait for "numMsg" messages, in steps of "RECEIVE_TIMEOUT_MS" to check the pull tasks, the run
+     * duration and the idle timeout in between. A failed pull task fails the run, as its consumer
+     * would otherwise stop receiving and the latch never be released.
+     */
+    private void awaitCompletion(List<Future<?>> pullTasks) throws InterruptedException {
+        long startNanos = System.nanoTime();
+        long lastMsgNanos = startNanos;
+        int lastRecvd = 0;
+        while (!completionLatch.await(RECEIVE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            for (Future<?> pullTask : pullTasks) {
+                if (pullTask.isDone()) {
+                    try {
+                        pullTask.get();
+                    }
+                    catch (ExecutionException ee) {
+                        throw new WorkshopRuntimException("Failed to receive Pulsar messages: " + ee.getCause());
+                    }
+                }
+            }
+
+            long now = System.nanoTime();
+            if (runDurationSec > 0 && now - startNanos >= TimeUnit.SECONDS.toNanos(runDurationSec)) {
+                logger.info("Run duration of {} seconds reached", runDurationSec);
+                break;
+            }
+            int recvd = totalRecvd.get();
+            if (recvd != lastRecvd) {
+                lastRecvd = recvd;
+                lastMsgNanos = now;
+            }
+            else if (now - lastMsgNanos > TimeUnit.SECONDS.toNanos(IDLE_TIMEOUT_SEC)) {
+                logger.warn("No message received for {} seconds, giving up", IDLE_TIMEOUT_SEC);
+                break;
+            }
+        }
+    }
+
+    // Called by a listener thread (listener mode) or by the consumer's own thread (pull mode)
+    private void process(Consumer<byte[]> consumer, Message<byte[]> message, LongAdder consumerMsgCnt) {
+        // Leave the messages above "numMsg" unacknowledged for the next run
+        if (totalRecvd.getAndIncrement() >= numMsg) {
+            return;
+        }
+        firstMsgNanos.compareAndSet(0, System.nanoTime());
+        recordFirstMessage();
+        recordLag(message);
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("({}) Message received and acknowledged: key={}; properties={}; value={}",
+                    consumer.getConsumerName(),
+                    message.getKey(),
+                    message.getProperties(),
+                    new String(message.getData()));
+        }
+        consumer.acknowledgeAsync(message);
+        ackRpcCounter.recordAck(1);
+
+        consumerMsgCnt.increment();
+        deliveryThreads.add(Thread.currentThread().getName());
+        completionLatch.countDown();
+    }
+
+    /**
+     * Publish "numMsg" readings of the CSV file (from the start again when the file is shorter).
+     */
+    private void preload() throws IOException, PulsarClientException, InterruptedException {
+        CsvPreloader.preload(pulsarClient, topicName, preloadCsvFile, numMsg);
+        System.out.println("[" + appName + "] Preloaded " + numMsg + " messages from " + preloadCsvFile.getName());
+    }
+
+    private void report(long endNanos, long cpuNanos) {
+        long msgRecvd = Math.min(totalRecvd.get(), numMsg);
+        double elapsedSec = (firstMsgNanos.get() > 0) ? (endNanos - firstMsgNanos.get()) / 1_000_000_000.0 : 0.0;
+
+        System.out.println("[" + appName + "] Mode " + consumeMode + ": " + consumerNum + " consumer(s) on a " +
+                subscriptionType + " subscription, receiver queue size " + receiverQueueSize +
+                (StringUtils.equals(consumeMode, MODE_LISTENER) ? ", " + listenerThreads + " listener thread(s)" : ""));
+        reportConsumption(msgRecvd, elapsedSec);
+        System.out.println("[" + appName + "] Process CPU time: " + (cpuNanos / 1_000_000) + " ms (" +
+                String.format("%.0f", (msgRecvd > 0) ? (double) cpuNanos / msgRecvd : 0.0) + " ns/msg), " +
+                deliveryThreads.size() + " delivery thread(s)");
+        for (int i = 0; i < consumerNum; i++) {
+            long consumerMsgCnt = consumerMsgCnts.get(i).sum();
+            System.out.println("[" + appName + "]   " + pulsarConsumers.get(i).getConsumerName() + ": " +
+                    consumerMsgCnt + " msgs (" +
+                    String.format("%.1f", (msgRecvd > 0) ? consumerMsgCnt * 100.0 / msgRecvd : 0.0) + "%)");
+        }
+    }
+
+    @Override
+    public void termCmdApp() {
+        try {
+            for (Consumer<byte[]> consumer : pulsarConsumers) {
+                consumer.close();
+            }
+
+            if (pulsarClient != null) {
+                pulsarClient.close();
+            }
+        }
+        catch (PulsarClientException pce) {
+            throw new WorkshopRuntimException("Failed to terminate Pulsar consumer or client!");
+        }
+        finally {
+            logger.info("Terminating application: \"" + appName + "\" ...");
+        }
+    }
+}
@@ -20,6 +20,7 @@ package com.example.pulsarworkshop;
 
 import com.example.pulsarworkshop.exception.InvalidParamException;
 import com.example.pulsarworkshop.exception.WorkshopRuntimException;
+import com.example.pulsarworkshop.pojo.IoTSensorDataUtils;
 import com.example.pulsarworkshop.util.CsvFileLineScanner;
 import org.apache.pulsar.client.api.*;
 import org.slf4j.Logger;
@@ -28,8 +29,10 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
-public class IoTSensorProducer extends NativePulsarCmdApp {
+public class IoTSensorProducer extends NativePulsarProducerCmdApp {
 
     // Must be set before initializing the "logger" object.
     private final static String APP_NAME = "IoTSensorProducer";
@@ -39,7 +42,7 @@ public class IoTSensorProducer extends NativePulsarCmdApp {
 
     private static File iotSensorDataCsvFile;
     private static PulsarClient pulsarClient;
-    private static Producer<byte[]> pulsarProducer;
+    private static List<Producer<byte[]>> pulsarProducers;
 
     public IoTSensorProducer(String appName, String[] inputParams) {
         super(appName, inputParams);
@@ -70,16 +73,15 @@ public class IoTSensorProducer extends NativePulsarCmdApp {
         try {
             if (pulsarClient == null ) {
                 pulsarClient = createNativePulsarClient();
-                if (pulsarProducer == null) {
+                if (pulsarProducers == null) {
                     ProducerBuilder<byte[]> producerBuilder = pulsarClient.newProducer();
-                    pulsarProducer = producerBuilder.topic(topicName).create();
+                    pulsarProducers = createProducers(applyProducerSettings(producerBuilder.topic(topicName)));
                 }
             }
 
             assert (iotSensorDataCsvFile != null);
 
             CsvFileLineScanner csvFileLineScanner = new CsvFileLineScanner(iotSensorDataCsvFile);
-            TypedMessageBuilder<byte[]> messageBuilder = pulsarProducer.newMessage();
 
             boolean isTitleLine = true;
             String titleLine = "";
@@ -90,15 +92,36 @@ public class IoTSensorProducer extends NativePulsarCmdApp {
 
             while (csvFileLineScanner.hasNextLine()) {
                 String csvLine = csvFileLineScanner.getNextLine();
+                // The event time is when the reading enters the pipeline, before the producer side
+                // waits (rate limit, in-flight window), so the consumers can tell its end-to-end staleness
+                long eventTime = System.currentTimeMillis();
                 // Skip the first line which is a title line
                 if (!isTitleLine) {
-                    if (msgSent < numMsg) {
-                        MessageId messageId = messageBuilder
-                                .value(csvLine.getBytes(StandardCharsets.UTF_8))
-                                .send();
-                        logger.info("Published a message with raw value: [{}] {}",
-                                msgSent,
-                                csvLine);
+                    if (msgSent < numMsg && paceWorkload(msgSent)) {
+                        String deviceId = IoTSensorDataUtils.csvDeviceId(csvLine);
+                        CompletableFuture<MessageId> published = dispatchMessage(pulsarProducers, deviceId, producer -> {
+                            TypedMessageBuilder<byte[]> messageBuilder = producer.newMessage()
+                                    .value(csvLine.getBytes(StandardCharsets.UTF_8))
+                                    .eventTime(eventTime);
+                            if (keyByDevice) {
+                                messageBuilder.key(deviceId);
+                            }
+                            return messageBuilder;
+                        });
+                        recordFirstMessage();
+                        // Logged once the broker has acknowledged (or rejected) the message
+                        if (isLogged(msgSent)) {
+                            int msgIdx = msgSent;
+                            published.whenComplete((messageId, throwable) -> {
+                                if (throwable == null) {
+                                    logger.info("Published a message with raw value: [{}] {}", msgIdx, csvLine);
+                                }
+                                else {
+                                    logger.warn("Failed to publish a message with raw value: [{}] {}: {}",
+                                            msgIdx, csvLine, throwable.getMessage());
+                                }
+                            });
+                        }
 
                         msgSent++;
                     } else {
@@ -110,6 +133,8 @@ public class IoTSensorProducer extends NativePulsarCmdApp {
                 }
             }
 
+            completePublishing(pulsarProducers);
+
         } catch (PulsarClientException pce) {
         	pce.printStackTrace();
             throw new WorkshopRuntimException("Unexpected error when producing Pulsar messages: " + pce.getMessage());
@@ -121,8 +146,11 @@ public class IoTSensorProducer extends NativePulsarCmdApp {
     @Override
     public void termCmdApp() {
         try {
-            if (pulsarProducer != null) {
-                pulsarProducer.close();
+            if (pulsarProducers != null) {
+                drainPublishing(pulsarProducers);
+                for (Producer<?> pulsarProducer : pulsarProducers) {
+                    pulsarProducer.close();
+                }
             }
 
             if (pulsarClient != null) {
@@ -26,41 +26,44 @@ import org.apache.pulsar.functions.api.Function;
 import org.apache.pulsar.functions.api.Record;
 import org.slf4j.Logger;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.*;
+import java.util.Optional;
 
+/**
+ * Publishes each input message to the output topic with its key and properties, plus the
+ * "internal_process_time" property.
+ *
+ * Each message gets its own output message builder, so the properties of a message never leak
+ * into the next one, and the function keeps no per-message state, so several instances can run
+ * in the same JVM. The process time is the same string for all the messages of a millisecond.
+ */
 public class AddMetadataFunc implements Function<String, Void> {
-    private static DateFormat timeFormat = new SimpleDateFormat("yyyy-mm-dd hh:mm:ss.SSS");
-    private static TypedMessageBuilder<String> outputMessageBuilder;
-    private static Logger LOG;
+    private final static String PROP_PROCESS_TIME = "internal_process_time";
+    // Shared by all the function instances of the JVM
+    private final static CoarseTimestampClock PROCESS_TIME_CLOCK = new CoarseTimestampClock("yyyy-MM-dd HH:mm:ss.SSS");
 
-    @Override
-    public void initialize(Context context) throws PulsarClientException {
-        LOG = context.getLogger();
+    private String outputTopic;
+    private Logger logger;
 
-        String outputTopic = context.getOutputTopic();
-        outputMessageBuilder = context.newOutputMessage(outputTopic, Schema.STRING);
+    @Override
+    public void initialize(Context context) {
+        logger = context.getLogger();
+        outputTopic = context.getOutputTopic();
+        logger.info("Publishing the messages with their \"{}\" property to {}", PROP_PROCESS_TIME, outputTopic);
     }
 
     @Override
-    public Void process(String input, Context context) {
+    public Void process(String input, Context context) throws PulsarClientException {
         Record<?> currentRecord = context.getCurrentRecord();
-        Optional<String> keyOpt = currentRecord.getKey();
-        Map<String, String> msgProperties = currentRecord.getProperties();
 
+        TypedMessageBuilder<String> outputMessageBuilder = context.newOutputMessage(outputTopic, Schema.STRING)
+                .properties(currentRecord.getProperties())
+                // a newly added custom metadata
+                .property(PROP_PROCESS_TIME, PROCESS_TIME_CLOCK.now())
+                .value(input);
+        Optional<String> keyOpt = currentRecord.getKey();
         if (keyOpt.isPresent()) {
             outputMessageBuilder.key(keyOpt.get());
         }
-        for (String propKey : msgProperties.keySet()) {
-            outputMessageBuilder.property(propKey, msgProperties.get(propKey));
-        }
-        // a newly added custom metadata
-        outputMessageBuilder.property("internal_process_time",
-                timeFormat.format(Calendar.getInstance().getTime()) );
-
-        outputMessageBuilder.value(input);
-
         outputMessageBuilder.sendAsync();
 
         return null;
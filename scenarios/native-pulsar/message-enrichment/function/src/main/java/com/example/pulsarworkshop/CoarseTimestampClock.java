@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * A wall clock that returns the current time as a formatted string, formatted at most once per
+ * millisecond. The last formatted time is cached in one immutable holder, so all the instances of
+ * the function in the same JVM share it without locking.
+ *
+ * This is the same clock as "CoarseTimestampClock" in np-common, kept in the function jar so the
+ * function doesn't depend on np-common (and doesn't ship the Pulsar client with it).
+ */
+class CoarseTimestampClock {
+
+    private static class Tick {
+        private final long tickMs;
+        private final String formatted;
+
+        Tick(long tickMs, String formatted) {
+            this.tickMs = tickMs;
+            this.formatted = formatted;
+        }
+    }
+
+    private final DateTimeFormatter formatter;
+    private volatile Tick lastTick = new Tick(Long.MIN_VALUE, null);
+
+    CoarseTimestampClock(String pattern) {
+        this.formatter = DateTimeFormatter.ofPattern(pattern).withZone(ZoneId.systemDefault());
+    }
+
+    /**
+     * @return the current time, rounded down to the millisecond, as a formatted string
+     */
+    String now() {
+        long tickMs = System.currentTimeMillis();
+        Tick tick = lastTick;
+        if (tick.tickMs != tickMs) {
+            // Two threads may format the same tick, the result is the same
+            tick = new Tick(tickMs, formatter.format(Instant.ofEpochMilli(tickMs)));
+            lastTick = tick;
+        }
+        return tick.formatted;
+    }
+}
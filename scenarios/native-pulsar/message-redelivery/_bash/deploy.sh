@@ -96,8 +96,10 @@ fi
 tntNamespace=$(getPropVal ${deployPropFile} "tenantNamespace")
 coreTopics=$(getPropVal ${deployPropFile} "coreTopics")
 coreFunctions=$(getPropVal ${deployPropFile} "coreFunctions")
+topicPartitions=$(getPropVal ${deployPropFile} "topicPartitions")
 debugMsg "tntNamespace=${tntNamespace}"
 debugMsg "coreTopics=${coreTopics}"
+debugMsg "topicPartitions=${topicPartitions}"
 debugMsg "coreFunctions=${coreFunctions}"
 
 IFS='/' read -r -a tntNsArr <<< "${tntNamespace}"
@@ -196,7 +198,8 @@ if [[ ${#pulsarTopics[@]} -gt 0 ]]; then
             "${webServiceUrl}" \
             "${topic}" \
             "${jwtTokenAuthEnabled}" \
-            "${jwtTokenValue}")
+            "${jwtTokenValue}" \
+            "${topicPartitions}")
         processHttpResponse "${httpResponseCode}" 6 ${deployMainLogFile}
 
         outputMsg "" 0 ${deployMainLogFile} true
@@ -39,6 +39,7 @@ usage() {
    echo "                      -c <redelivery | dlt>" 
    echo "                      -dlt <dead letter topic name>"
    echo "                      [-na]"
+   echo "                      [-cds]"
    echo "       -h  : Show usage info"
    echo "       -t  : (Required) The topic name to publish messages to."
    echo "       -n  : (Required) The number of messages to consume."
@@ -46,19 +47,22 @@ usage() {
    echo "       -c  : (Required) The consumer to run (redelivery or dlt)."
    echo "       -dlt  : (Optional) The dead letter topic to publish to.  Required if -c is 'redelivery'."
    echo "       -na : (Optional) Non-Astra Streaming (Astra streaming is the default)."
+   echo "       -cds: (Optional) Use the AppCDS archive created by '_bash/buildAppCds.sh' for faster start-up."
    echo
 }
 
-if [[ $# -eq 0 || $# -gt 10 ]]; then
+if [[ $# -eq 0 || $# -gt 11 ]]; then
    usage
    errExit 10 "Incorrect input parameter count!"
 fi
 
 astraStreaming=1
+useAppCds=0
 while [[ "$#" -gt 0 ]]; do
    case $1 in
       -h)  usage; exit 0      ;;
       -na) astraStreaming=0;  ;;
+      -cds) useAppCds=1;      ;;
       -t)  tpName=$2; shift   ;;
       -dlt)  dltName=$2; shift   ;;
       -n)  msgNum=$2; shift   ;;
@@ -69,6 +73,7 @@ while [[ "$#" -gt 0 ]]; do
    shift
 done
 debugMsg "astraStreaming=${astraStreaming}"
+debugMsg "useAppCds=${useAppCds}"
 debugMsg "tpName=${tpName}"
 debugMsg "msgNum=${msgNum}"
 debugMsg "clntConfFile=${clntConfFile}"
@@ -88,6 +93,15 @@ if ! [[ -f "${clientAppJar}" ]]; then
   errExit 50 "Can't find the client app jar file. Please first build the programs!"
 fi
 
+javaOpts=""
+if [[ ${useAppCds} -eq 1 ]]; then
+  appCdsArchive="${clientAppJar%.jar}.jsa"
+  if ! [[ -f "${appCdsArchive}" ]]; then
+    errExit 70 "Can't find the AppCDS archive file. Please first run '_bash/buildAppCds.sh'!"
+  fi
+  javaOpts="-XX:SharedArchiveFile=${appCdsArchive}"
+fi
+
 # generate a random alphanumeric string with length 20
 randomStr=$(cat /dev/urandom | LC_ALL=C tr -dc 'a-zA-Z0-9' | fold -w 20 | head -n 1)
 
@@ -96,12 +110,12 @@ if [ ${consumerType} == "redelivery" ]; then
       errExit 50 "Dead letter topic must be specified if consumer type is 'redelivery'!"
    fi
 
-   javaCmd="java -cp ${clientAppJar} \
+   javaCmd="java ${javaOpts} -cp ${clientAppJar} \
       com.example.pulsarworkshop.RedeliveryConsumer \
       -n ${msgNum} -t ${tpName} -c ${clntConfFile} -dlt ${dltName}"
 
 elif [ ${consumerType}=="dlt" ]; then
-   javaCmd="java -cp ${clientAppJar} \
+   javaCmd="java ${javaOpts} -cp ${clientAppJar} \
       com.example.pulsarworkshop.DeadLetterConsumer \
       -n ${msgNum} -t ${tpName} -c ${clntConfFile}" 
 else 
@@ -18,26 +18,110 @@
  */
 package com.example.pulsarworkshop;
 
+import com.example.pulsarworkshop.exception.InvalidParamException;
 import com.example.pulsarworkshop.exception.WorkshopRuntimException;
+import com.example.pulsarworkshop.util.AsyncSendWindow;
+import com.example.pulsarworkshop.util.RateLimiter;
+import com.example.pulsarworkshop.util.ReprocessCheckpoint;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.pulsar.client.api.*;
+import org.apache.pulsar.client.util.RetryMessageUtil;
+import org.apache.pulsar.common.naming.TopicName;
+import org.apache.pulsar.shade.org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class DeadLetterConsumer extends NativePulsarCmdApp {
+/**
+ * Drains a dead letter topic and republishes its messages, once the cause of their failures is
+ * fixed, to their original topic (the "REAL_TOPIC" property set by the Pulsar client) or to a
+ * target topic ("targetTopic").
+ *
+ * The messages are received in batches ("batchReceive()") and republished asynchronously (at most
+ * "maxInFlight" messages at a time, with one producer per target topic), each one acknowledged
+ * once its republish completes. An optional rate limit (the "rate" option) keeps the reprocessing from
+ * swamping the live traffic of the target topics. The key, ordering key, event time and
+ * properties of the messages are kept, except the retry count and delay of the retry letter topic,
+ * so the republished messages get all their attempts again.
+ *
+ * With a checkpoint file ("checkpointFile"), the position up to which the messages are
+ * republished is saved periodically, and a restarted program skips the messages up to it (the
+ * ones republished but not acknowledged yet when it stopped).
+ *
+ * The program stops after "numMsg" messages (-1 for no limit), or once the dead letter topic is
+ * drained, i.e. when no message was received for "idleTimeout" seconds.
+ */
+public class DeadLetterConsumer extends NativePulsarConsumerCmdApp {
 
+    // Must be set before initializing the "logger" object.
+    private final static String APP_NAME = "DeadLetterConsumer";
+    static { System.setProperty("log_file_base_name", getLogFileName(API_TYPE, APP_NAME)); }
     private final static Logger logger = LoggerFactory.getLogger(DeadLetterConsumer.class);
 
-    private final static String APP_NAME = "DeadLetterConsumer";
-    private final String SUB_NAME = "demo-subscription";
+    private final static String DFT_SUB_NAME = "demo-subscription";
+    // Same defaults as the IoTSensorConsumer batch receive
+    private final static int DFT_BATCH_RECEIVE_MAX_MESSAGES = 100;
+    private final static int DFT_BATCH_RECEIVE_MAX_BYTES = 10 * 1024 * 1024;
+    private final static int DFT_BATCH_RECEIVE_TIMEOUT_MS = 100;
+    private final static int DFT_MAX_IN_FLIGHT = 1000;
+    private final static int DFT_CHECKPOINT_INTERVAL_MS = 1000;
+    private final static int DFT_IDLE_TIMEOUT_SEC = 5;
+    private final static long DRAIN_TIMEOUT_SEC = 30;
+
     private PulsarClient pulsarClient;
-    private Consumer<?> pulsarConsumer;
+    private Consumer<byte[]> pulsarConsumer;
+    // One producer per target topic
+    private final Map<String, Producer<byte[]>> pulsarProducers = new HashMap<>();
+
+    private String subscriptionName;
+    private String targetTopicName;
+    private BatchReceivePolicy batchReceivePolicy;
+    private int maxInFlight;
+    // null for no rate limit
+    private RateLimiter rateLimiter;
+    private File checkpointFile;
+    private int checkpointIntervalMs;
+    private int idleTimeoutSec;
 
-    private String deadLetterTopicName;
+    private AsyncSendWindow sendWindow;
+    private ReprocessCheckpoint checkpoint;
+    private final LongAdder republishedBytes = new LongAdder();
+    // Updated by the client threads completing the sends, sorted for the report
+    private final Map<String, Long> republishedCnts = new ConcurrentSkipListMap<>();
+    private long skippedCnt = 0;
+    private long noTargetCnt = 0;
+    private long rateLimitWaitNanos = 0;
 
     public DeadLetterConsumer(String appName, String[] inputParams) {
         super(appName, inputParams);
+
+        addOptionalCommandLineOption("sbn", "subName", true,
+                "Pulsar subscription name (default: " + DFT_SUB_NAME + ").");
+        addOptionalCommandLineOption("ot", "targetTopic", true,
+                "Pulsar topic to republish the messages to (default: their original topic).");
+        addOptionalCommandLineOption("brm", "batchReceiveMaxMessages", true,
+                "Max number of messages per received batch (default: " + DFT_BATCH_RECEIVE_MAX_MESSAGES + ").");
+        addOptionalCommandLineOption("brb", "batchReceiveMaxBytes", true,
+                "Max number of bytes per received batch (default: " + DFT_BATCH_RECEIVE_MAX_BYTES + ").");
+        addOptionalCommandLineOption("brt", "batchReceiveTimeout", true,
+                "Max time in milliseconds to wait for a batch to fill up (default: " + DFT_BATCH_RECEIVE_TIMEOUT_MS + ").");
+        addOptionalCommandLineOption("mif", "maxInFlight", true,
+                "Max number of messages being republished at the same time (default: " + DFT_MAX_IN_FLIGHT + ").");
+        addOptionalCommandLineOption("cpf", "checkpointFile", true,
+                "File to save the reprocessing position to, and to resume from after a restart.");
+        addOptionalCommandLineOption("cpi", "checkpointInterval", true,
+                "Interval in milliseconds between the checkpoint saves (default: " + DFT_CHECKPOINT_INTERVAL_MS + ").");
+        addOptionalCommandLineOption("it", "idleTimeout", true,
+                "Stop once no message was received for this number of seconds, 0 to never stop (default: " +
+                        DFT_IDLE_TIMEOUT_SEC + ").");
+
         logger.info("Starting application: \"" + appName + "\" ...");                    
     }
 
@@ -47,26 +131,130 @@ public class DeadLetterConsumer extends NativePulsarCmdApp {
         System.exit(exitCode);
     }
 
+    @Override
+    public void processExtendedInputParams() throws InvalidParamException {
+        super.processExtendedInputParams();
+
+        // (Optional) Subscription name and target topic
+        subscriptionName = StringUtils.defaultIfBlank(processStringInputParam("sbn"), DFT_SUB_NAME);
+        targetTopicName = StringUtils.trimToNull(processStringInputParam("ot"));
+
+        // (Optional) Batch receive
+        int batchReceiveMaxMessages = processIntegerInputParam("brm", DFT_BATCH_RECEIVE_MAX_MESSAGES);
+        int batchReceiveMaxBytes = processIntegerInputParam("brb", DFT_BATCH_RECEIVE_MAX_BYTES);
+        int batchReceiveTimeoutMs = processIntegerInputParam("brt", DFT_BATCH_RECEIVE_TIMEOUT_MS);
+        if (batchReceiveMaxMessages <= 0 || batchReceiveMaxBytes <= 0 || batchReceiveTimeoutMs <= 0) {
+            throw new InvalidParamException("The batch receive max messages, max bytes and timeout must be positive integers!");
+        }
+        batchReceivePolicy = BatchReceivePolicy.builder()
+                .maxNumMessages(batchReceiveMaxMessages)
+                .maxNumBytes(batchReceiveMaxBytes)
+                .timeout(batchReceiveTimeoutMs, TimeUnit.MILLISECONDS)
+                .build();
+
+        // (Optional) Republish window and rate
+        maxInFlight = processIntegerInputParam("mif", DFT_MAX_IN_FLIGHT);
+        if (maxInFlight <= 0) {
+            throw new InvalidParamException("The max number of in-flight messages must be a positive integer!");
+        }
+        // The "rate" option (in messages per second) of the base class, applied per received batch
+        if (msgRate > 0) {
+            rateLimiter = new RateLimiter(msgRate);
+        }
+
+        // (Optional) Checkpoint
+        String checkpointPath = processStringInputParam("cpf");
+        if (StringUtils.isNotBlank(checkpointPath)) {
+            checkpointFile = new File(checkpointPath);
+        }
+        checkpointIntervalMs = processIntegerInputParam("cpi", DFT_CHECKPOINT_INTERVAL_MS);
+        if (checkpointIntervalMs <= 0) {
+            throw new InvalidParamException("The checkpoint interval must be a positive integer!");
+        }
+
+        // (Optional) End of the dead letter topic
+        idleTimeoutSec = processIntegerInputParam("it", DFT_IDLE_TIMEOUT_SEC);
+        if (idleTimeoutSec < 0) {
+            throw new InvalidParamException("The idle timeout must be a non-negative integer!");
+        }
+        if (numMsg == -1 && idleTimeoutSec == 0) {
+            throw new InvalidParamException("idleTimeout", "must be positive when all the messages are reprocessed (numMsg -1)");
+        }
+    }
+
     @Override
     public void execute() {
         try {
-        	
             pulsarClient = createNativePulsarClient();
-            System.out.println("########### Using dlt: " + deadLetterTopicName);
+            sendWindow = new AsyncSendWindow(maxInFlight);
+            if (checkpointFile != null) {
+                checkpoint = new ReprocessCheckpoint(checkpointFile);
+                if (checkpoint.getResumeMessageId() != null) {
+                    System.out.println("[" + appName + "] Resuming after message " + checkpoint.getResumeMessageId() +
+                            " (" + checkpoint.getResumeReprocessedCnt() + " messages reprocessed before)");
+                }
+            }
+            System.out.println("[" + appName + "] Reprocessing dlt: " + topicName + " to " +
+                    ((targetTopicName != null) ? targetTopicName : "the original topics") +
+                    ", rate limit " + ((rateLimiter != null) ? rateLimiter.getPermitsPerSec() + " msg/s" : "none"));
 
-            Consumer<byte[]> pulsarConsumer = pulsarClient.newConsumer()
-                    .ackTimeout(1, TimeUnit.SECONDS)
+            // From the earliest message, for the messages sent to the dead letter topic before the
+            // subscription is created
+            pulsarConsumer = applyConsumerSettings(pulsarClient.newConsumer())
                     .topic(topicName)
-                    .subscriptionName(SUB_NAME)
+                    .subscriptionName(subscriptionName)
                     .subscriptionType(SubscriptionType.Shared)
+                    .subscriptionInitialPosition(SubscriptionInitialPosition.Earliest)
+                    .batchReceivePolicy(batchReceivePolicy)
                     .subscribe();
+            addToLagReport(pulsarConsumer);
+
+            long msgRecvd = 0;
+            long startNanos = System.nanoTime();
+            long lastRecvNanos = startNanos;
+            long lastCheckpointNanos = startNanos;
+            // Not counted in the throughput
+            long idleNanos = 0;
+            while ((numMsg == -1 || msgRecvd < numMsg) && hasRunTimeLeft()) {
+                Messages<byte[]> messages = pulsarConsumer.batchReceive();
+                long nowNanos = System.nanoTime();
+                if (messages.size() == 0) {
+                    if (idleTimeoutSec > 0 && (nowNanos - lastRecvNanos) >= TimeUnit.SECONDS.toNanos(idleTimeoutSec)) {
+                        idleNanos = nowNanos - lastRecvNanos;
+                        break;
+                    }
+                    continue;
+                }
+                lastRecvNanos = nowNanos;
+                recordFirstMessage();
+
+                if (rateLimiter != null) {
+                    rateLimitWaitNanos += rateLimiter.acquire(messages.size());
+                }
+                for (Message<byte[]> message : messages) {
+                    recordLag(message);
+                    republish(message);
+                }
+                msgRecvd += messages.size();
 
-        	// Negative Acknowledge message until re-delivery attempts are exceeded
-            Message<byte[]> message = pulsarConsumer.receive();
-            System.out.println("###########");
-            System.out.println("########### Received message from dead letter topic: " + new String(message.getData()));
-            System.out.println("###########");
-            pulsarConsumer.acknowledge(message);
+                if (checkpoint != null && (nowNanos - lastCheckpointNanos) >= TimeUnit.MILLISECONDS.toNanos(checkpointIntervalMs)) {
+                    checkpoint.save();
+                    lastCheckpointNanos = nowNanos;
+                }
+            }
+
+            // Wait for the last republished messages
+            for (Producer<byte[]> producer : pulsarProducers.values()) {
+                producer.flush();
+            }
+            if (!sendWindow.awaitDrained(DRAIN_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+                logger.warn("Timed out after {} s waiting for {} republished messages", DRAIN_TIMEOUT_SEC, sendWindow.getInFlight());
+            }
+            if (checkpoint != null) {
+                checkpoint.save();
+            }
+            double elapsedSec = (System.nanoTime() - startNanos - idleNanos) / 1_000_000_000.0;
+            report(msgRecvd, elapsedSec);
         }
         catch (Exception e) {
         	e.printStackTrace();
@@ -74,6 +262,118 @@ public class DeadLetterConsumer extends NativePulsarCmdApp {
         }
     }
 
+    /**
+     * Republish the message to its target topic, and acknowledge it once it is republished (or
+     * negatively acknowledge it if the republish failed).
+     */
+    private void republish(Message<byte[]> message) throws InterruptedException, IOException {
+        if (checkpoint != null && checkpoint.isReprocessed(message.getMessageId())) {
+            pulsarConsumer.acknowledgeAsync(message.getMessageId());
+            ackRpcCounter.recordAck(1);
+            skippedCnt++;
+            return;
+        }
+
+        String targetTopic = getTargetTopic(message);
+        if (targetTopic == null) {
+            // Left in the dead letter topic, so the checkpoint must not move past it
+            logger.warn("No target topic for message {}, it is left unacknowledged", message.getMessageId());
+            if (checkpoint != null) {
+                checkpoint.holdBack(message.getMessageId());
+            }
+            noTargetCnt++;
+            return;
+        }
+
+        Map<String, String> properties = new HashMap<>(message.getProperties());
+        properties.remove(RetryMessageUtil.SYSTEM_PROPERTY_RECONSUMETIMES);
+        properties.remove(RetryMessageUtil.SYSTEM_PROPERTY_DELAY_TIME);
+        TypedMessageBuilder<byte[]> messageBuilder = getProducer(targetTopic).newMessage()
+                .value(message.getData())
+                .properties(properties);
+        if (message.hasBase64EncodedKey()) {
+            messageBuilder.keyBytes(message.getKeyBytes());
+        }
+        else if (message.hasKey()) {
+            messageBuilder.key(message.getKey());
+        }
+        if (message.hasOrderingKey()) {
+            messageBuilder.orderingKey(message.getOrderingKey());
+        }
+        if (message.getEventTime() > 0) {
+            messageBuilder.eventTime(message.getEventTime());
+        }
+
+        sendWindow.acquire();
+        CompletableFuture<MessageId> sendFuture = messageBuilder.sendAsync();
+        sendWindow.track(sendFuture);
+        if (checkpoint != null) {
+            checkpoint.track(message.getMessageId(), sendFuture);
+        }
+        sendFuture.whenComplete((messageId, throwable) -> {
+            if (throwable == null) {
+                pulsarConsumer.acknowledgeAsync(message.getMessageId());
+                ackRpcCounter.recordAck(1);
+                republishedBytes.add(message.size());
+                republishedCnts.merge(targetTopic, 1L, Long::sum);
+            }
+            else {
+                // Redelivered and republished again, the checkpoint waits for it
+                logger.warn("Failed to republish message {}, it will be redelivered: {}",
+                        message.getMessageId(), throwable.getMessage());
+                pulsarConsumer.negativeAcknowledge(message);
+            }
+        });
+    }
+
+    /**
+     * @return the target topic, or the original (partitioned) topic of the message
+     */
+    private String getTargetTopic(Message<byte[]> message) {
+        if (targetTopicName != null) {
+            return targetTopicName;
+        }
+        String realTopic = message.getProperty(RetryMessageUtil.SYSTEM_PROPERTY_REAL_TOPIC);
+        if (StringUtils.isBlank(realTopic)) {
+            return null;
+        }
+        // Through the partitioned topic, so the messages are routed by their key again
+        return TopicName.get(realTopic).getPartitionedTopicName();
+    }
+
+    private Producer<byte[]> getProducer(String targetTopic) throws PulsarClientException {
+        Producer<byte[]> producer = pulsarProducers.get(targetTopic);
+        if (producer == null) {
+            producer = pulsarClient.newProducer()
+                    .topic(targetTopic)
+                    .maxPendingMessages(maxInFlight)
+                    .blockIfQueueFull(true)
+                    .create();
+            pulsarProducers.put(targetTopic, producer);
+        }
+        return producer;
+    }
+
+    private void report(long msgRecvd, double elapsedSec) {
+        reportConsumption(msgRecvd, elapsedSec);
+        long republishedCnt = sendWindow.getCompletedCnt();
+        System.out.println("[" + appName + "] Republished " + republishedCnt + " messages (" +
+                String.format("%.1f", (elapsedSec > 0) ? republishedCnt / elapsedSec : 0.0) + " msg/s, " +
+                String.format("%.2f", (elapsedSec > 0) ? republishedBytes.sum() / elapsedSec / (1024 * 1024) : 0.0) +
+                " MB/s) to " + republishedCnts + ", " + sendWindow.getFailedCnt() + " failed" +
+                ((sendWindow.getFailedCnt() > 0) ? " (" + sendWindow.getFirstFailure().getMessage() + ")" : "") +
+                ", " + noTargetCnt + " without a target topic");
+        if (rateLimiter != null) {
+            System.out.println("[" + appName + "] Rate limit " + rateLimiter.getPermitsPerSec() + " msg/s, waited " +
+                    String.format("%.3f", rateLimitWaitNanos / 1_000_000_000.0) + " s");
+        }
+        if (checkpoint != null) {
+            System.out.println("[" + appName + "] Checkpoint at message " + checkpoint.getCheckpointMessageId() + ", " +
+                    checkpoint.getReprocessedCnt() + " messages reprocessed in total, " +
+                    skippedCnt + " skipped as already reprocessed before the restart");
+        }
+    }
+
     @Override
     public void termCmdApp() {
         try {
@@ -81,6 +381,10 @@ public class DeadLetterConsumer extends NativePulsarCmdApp {
                 pulsarConsumer.close();
             }
 
+            for (Producer<byte[]> producer : pulsarProducers.values()) {
+                producer.close();
+            }
+
             if (pulsarClient != null) {
                 pulsarClient.close();
             }
@@ -88,5 +392,8 @@ public class DeadLetterConsumer extends NativePulsarCmdApp {
         catch (PulsarClientException pce) {
             throw new WorkshopRuntimException("Failed to terminate Pulsar producer or client!");
         }
+        finally {
+            logger.info("Terminating application: \"" + appName + "\" ...");
+        }
     }
-}
\ No newline at end of file
+}
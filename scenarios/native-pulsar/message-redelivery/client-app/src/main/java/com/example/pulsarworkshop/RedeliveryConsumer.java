@@ -20,28 +20,96 @@ package com.example.pulsarworkshop;
 
 import com.example.pulsarworkshop.exception.InvalidParamException;
 import com.example.pulsarworkshop.exception.WorkshopRuntimException;
+import com.example.pulsarworkshop.util.CsvPreloader;
+import com.example.pulsarworkshop.util.RedeliveryStats;
+import java.io.File;
+import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.pulsar.client.api.*;
+import org.apache.pulsar.client.impl.MultiplierRedeliveryBackoff;
+import org.apache.pulsar.shade.org.apache.commons.lang3.StringUtils;
+import org.apache.pulsar.shade.org.apache.commons.lang3.math.NumberUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class RedeliveryConsumer extends NativePulsarCmdApp {
+/**
+ * Consumes the messages of a topic and fails the processing of some of them ("failPercent", all
+ * of them by default), so they are redelivered until they are processed ("failAttempts"), or
+ * until they were redelivered "maxRedeliverCount" times and go to the dead letter topic.
+ *
+ * A failed message is redelivered:
+ * - by default, with a negative acknowledgement: after a fixed "nackRedeliveryDelay", or after an
+ *   exponential backoff delay ("redeliveryBackoff") that grows with its redelivery count, so a
+ *   failing dependency isn't hammered with redeliveries. The ack timeout (for the messages that
+ *   are neither acknowledged nor negatively acknowledged) backs off the same way.
+ * - with a retry letter topic: "reconsumeLater()" acknowledges the message and publishes it to
+ *   the retry letter topic with a delayed delivery (same delays), which the consumer also
+ *   subscribes to.
+ *
+ * At the end, the program reports the throughput of the processed messages next to the one of
+ * all the deliveries, the number of attempts per message and the redelivery delays.
+ */
+public class RedeliveryConsumer extends NativePulsarConsumerCmdApp {
 
+    // Must be set before initializing the "logger" object.
+    private final static String APP_NAME = "RedeliveryConsumer";
+    static { System.setProperty("log_file_base_name", getLogFileName(API_TYPE, APP_NAME)); }
     private final static Logger logger = LoggerFactory.getLogger(RedeliveryConsumer.class);
 
-    private final static String APP_NAME = "RedeliveryConsumer";
-    private final String SUB_NAME = "demo-subscription";
+    private final static String DFT_SUB_NAME = "demo-subscription";
+    private final static int DFT_MAX_REDELIVER_COUNT = 5;
+    private final static int DFT_ACK_TIMEOUT_MS = 1000;
+    private final static int DFT_NACK_REDELIVERY_DELAY_MS = 1000;
+    private final static double DFT_BACKOFF_MULTIPLIER = 2.0;
+    // Time for the client to send the last negatively acknowledged messages to the dead letter topic
+    private final static long DEAD_LETTER_SEND_MARGIN_MS = 1000;
+
     private PulsarClient pulsarClient;
-    private Consumer<?> pulsarConsumer;
+    private Consumer<byte[]> pulsarConsumer;
 
+    private String subscriptionName;
     private String deadLetterTopicName;
+    private String retryLetterTopicName;
+    private int maxRedeliverCount;
+    private int ackTimeoutMs;
+    private int nackRedeliveryDelayMs;
+    // null for the fixed redelivery delay
+    private RedeliveryBackoff redeliveryBackoff;
+    private String redeliveryBackoffStr;
+    private int failPercent;
+    private int failAttempts;
+    private File preloadCsvFile;
+
+    private final RedeliveryStats redeliveryStats = new RedeliveryStats();
 
     public RedeliveryConsumer(String appName, String[] inputParams) {
         super(appName, inputParams);
 
         addRequiredCommandLineOption("dlt", "deadLetterTopic", true, 
         			"Pulsar dead letter topic where message go if redelivery fails.");
+        addOptionalCommandLineOption("sbn", "subName", true,
+                "Pulsar subscription name (default: " + DFT_SUB_NAME + ").");
+        addOptionalCommandLineOption("mrc", "maxRedeliverCount", true,
+                "Max number of redeliveries of a message before it goes to the dead letter topic (default: " +
+                        DFT_MAX_REDELIVER_COUNT + ").");
+        addOptionalCommandLineOption("at", "ackTimeout", true,
+                "Time in milliseconds after which an unacknowledged message is redelivered, 0 to disable (default: " +
+                        DFT_ACK_TIMEOUT_MS + ").");
+        addOptionalCommandLineOption("nrd", "nackRedeliveryDelay", true,
+                "Fixed delay in milliseconds before a failed message is redelivered (default: " +
+                        DFT_NACK_REDELIVERY_DELAY_MS + ").");
+        addOptionalCommandLineOption("rb", "redeliveryBackoff", true,
+                "Exponential redelivery delay \"<min ms>,<max ms>[,<multiplier>]\" instead of the fixed one (default multiplier: " +
+                        DFT_BACKOFF_MULTIPLIER + ").");
+        addOptionalCommandLineOption("rlt", "retryLetterTopic", true,
+                "Pulsar retry letter topic, to retry the failed messages with \"reconsumeLater()\" instead of negative acknowledgements.");
+        addOptionalCommandLineOption("fp", "failPercent", true,
+                "Percentage of the messages whose processing fails (default: 100).");
+        addOptionalCommandLineOption("fa", "failAttempts", true,
+                "Number of failed attempts of a failing message before it is processed, -1 to always fail (default: -1).");
+        addOptionalCommandLineOption("pre", "preloadCsvFile", true,
+                "Publish \"numMsg\" IoT sensor readings from this CSV file before subscribing (from the earliest message).");
 
         logger.info("Starting application: \"" + appName + "\" ...");                    
     }
@@ -54,8 +122,75 @@ public class RedeliveryConsumer extends NativePulsarCmdApp {
 
     @Override
     public void processExtendedInputParams() throws InvalidParamException {
+        super.processExtendedInputParams();
+
         // (Required) Pulsar dead letter topic
         deadLetterTopicName = processStringInputParam("dlt");
+        if ( StringUtils.isBlank(deadLetterTopicName) ) {
+            throw new InvalidParamException("Must provide a dead letter topic!");
+        }
+
+        // (Optional) Subscription name and retry letter topic
+        subscriptionName = StringUtils.defaultIfBlank(processStringInputParam("sbn"), DFT_SUB_NAME);
+        retryLetterTopicName = processStringInputParam("rlt");
+        if (StringUtils.isBlank(retryLetterTopicName)) {
+            retryLetterTopicName = null;
+        }
+
+        // (Optional) Redelivery settings
+        maxRedeliverCount = processIntegerInputParam("mrc", DFT_MAX_REDELIVER_COUNT);
+        if (maxRedeliverCount <= 0) {
+            throw new InvalidParamException("The max redeliver count must be a positive integer!");
+        }
+        ackTimeoutMs = processIntegerInputParam("at", DFT_ACK_TIMEOUT_MS);
+        // Same minimum as the Pulsar client
+        if (ackTimeoutMs != 0 && ackTimeoutMs < 1000) {
+            throw new InvalidParamException("The ack timeout must be 0 or at least 1000 milliseconds!");
+        }
+        nackRedeliveryDelayMs = processIntegerInputParam("nrd", DFT_NACK_REDELIVERY_DELAY_MS);
+        if (nackRedeliveryDelayMs < 0) {
+            throw new InvalidParamException("The negative ack redelivery delay must be a non-negative integer!");
+        }
+        redeliveryBackoffStr = processStringInputParam("rb");
+        if (StringUtils.isNotBlank(redeliveryBackoffStr)) {
+            String[] backoffParts = StringUtils.split(redeliveryBackoffStr, ',');
+            long minDelayMs = (backoffParts.length >= 2) ? NumberUtils.toLong(backoffParts[0].trim(), -1) : -1;
+            long maxDelayMs = (backoffParts.length >= 2) ? NumberUtils.toLong(backoffParts[1].trim(), -1) : -1;
+            double multiplier = (backoffParts.length == 3)
+                    ? NumberUtils.toDouble(backoffParts[2].trim(), -1) : DFT_BACKOFF_MULTIPLIER;
+            if (backoffParts.length > 3 || minDelayMs < 0 || maxDelayMs < minDelayMs || multiplier < 1) {
+                throw new InvalidParamException("redeliveryBackoff",
+                        "must be \"<min ms>,<max ms>[,<multiplier>]\" with min <= max and multiplier >= 1, but got \"" +
+                                redeliveryBackoffStr + "\"");
+            }
+            redeliveryBackoff = MultiplierRedeliveryBackoff.builder()
+                    .minDelayMs(minDelayMs)
+                    .maxDelayMs(maxDelayMs)
+                    .multiplier(multiplier)
+                    .build();
+        }
+
+        // (Optional) Simulated processing failures
+        failPercent = processIntegerInputParam("fp", 100);
+        if (failPercent < 0 || failPercent > 100) {
+            throw new InvalidParamException("The fail percentage must be between 0 and 100!");
+        }
+        failAttempts = processIntegerInputParam("fa", -1);
+        if (failAttempts < -1) {
+            throw new InvalidParamException("The number of failed attempts must be -1 or a non-negative integer!");
+        }
+
+        // (Optional) CSV file to publish first
+        String preloadCsvPath = processStringInputParam("pre");
+        if (StringUtils.isNotBlank(preloadCsvPath)) {
+            preloadCsvFile = new File(preloadCsvPath);
+            if (!preloadCsvFile.isFile()) {
+                throw new InvalidParamException("Must provided a valid IoT sensor source data csv file to preload!");
+            }
+            if (numMsg == -1) {
+                throw new InvalidParamException("numMsg", "must be a positive integer to preload the messages");
+            }
+        }
     }
 
     @Override
@@ -63,25 +198,82 @@ public class RedeliveryConsumer extends NativePulsarCmdApp {
 
         try {
             pulsarClient = createNativePulsarClient();
-            System.out.println("########### Using dlt: " + deadLetterTopicName);
+            if (preloadCsvFile != null) {
+                preload();
+            }
+            System.out.println("[" + appName + "] Using dlt: " + deadLetterTopicName +
+                    ((retryLetterTopicName != null) ? ", retry letter topic: " + retryLetterTopicName : "") +
+                    ", max redeliver count " + maxRedeliverCount + ", redelivery delay " +
+                    ((redeliveryBackoff != null) ? "backoff " + redeliveryBackoffStr : nackRedeliveryDelayMs) + " ms");
 
-            Consumer<byte[]> pulsarConsumer = pulsarClient.newConsumer()
-                    .ackTimeout(1, TimeUnit.SECONDS)
+            ConsumerBuilder<byte[]> consumerBuilder = applyConsumerSettings(pulsarClient.newConsumer())
                     .topic(topicName)
-                    .subscriptionName(SUB_NAME)
+                    .subscriptionName(subscriptionName)
                     .subscriptionType(SubscriptionType.Shared)
+                    .ackTimeout(ackTimeoutMs, TimeUnit.MILLISECONDS)
+                    .negativeAckRedeliveryDelay(nackRedeliveryDelayMs, TimeUnit.MILLISECONDS)
                     .deadLetterPolicy(DeadLetterPolicy.builder()
-                            .maxRedeliverCount(5)
+                            .maxRedeliverCount(maxRedeliverCount)
                             .deadLetterTopic(deadLetterTopicName)
+                            .retryLetterTopic(retryLetterTopicName)
                             .build())
-                    .subscribe();
-
-        	// Negative Acknowledge message until re-delivery attempts are exceeded
-        	while (true) {
-                Message<byte[]> message = pulsarConsumer.receive();
-            	System.out.println("########### Received message: " + new String(message.getData()));
-                pulsarConsumer.negativeAcknowledge(message);
-        	}
+                    .enableRetry(retryLetterTopicName != null);
+            if (redeliveryBackoff != null) {
+                consumerBuilder.negativeAckRedeliveryBackoff(redeliveryBackoff);
+                if (ackTimeoutMs > 0) {
+                    consumerBuilder.ackTimeoutRedeliveryBackoff(redeliveryBackoff);
+                }
+            }
+            if (preloadCsvFile != null) {
+                consumerBuilder.subscriptionInitialPosition(SubscriptionInitialPosition.Earliest);
+            }
+            pulsarConsumer = consumerBuilder.subscribe();
+            addToLagReport(pulsarConsumer);
+
+            // Fail the processing of the messages until they are processed or dead lettered
+            long msgFinished = 0;
+            long startNanos = System.nanoTime();
+            while ((numMsg == -1 || msgFinished < numMsg) && hasRunTimeLeft()) {
+                Message<byte[]> message = pulsarConsumer.receive(RUN_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (message == null) {
+                    continue;
+                }
+                recordFirstMessage();
+                recordLag(message);
+                redeliveryStats.recordDelivery(message);
+
+                int previousAttempts = RedeliveryStats.previousAttempts(message);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Received message (attempt {}): {}", previousAttempts + 1, new String(message.getData()));
+                }
+                if (processingFails(message, previousAttempts)) {
+                    // Past the max redeliver count, the client sends it to the dead letter topic
+                    boolean deadLetter = (previousAttempts >= maxRedeliverCount);
+                    redeliveryStats.recordFailure(message, deadLetter);
+                    if (retryLetterTopicName != null) {
+                        pulsarConsumer.reconsumeLater(message, getRedeliveryDelayMs(previousAttempts), TimeUnit.MILLISECONDS);
+                    }
+                    else {
+                        pulsarConsumer.negativeAcknowledge(message);
+                    }
+                    if (deadLetter) {
+                        msgFinished++;
+                    }
+                }
+                else {
+                    pulsarConsumer.acknowledge(message);
+                    ackRpcCounter.recordAck(1);
+                    redeliveryStats.recordProcessed(message);
+                    msgFinished++;
+                }
+            }
+            double elapsedSec = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+
+            // The negatively acknowledged messages go to the dead letter topic when their redelivery is due
+            if (retryLetterTopicName == null && redeliveryStats.getDeadLetterCnt() > 0) {
+                Thread.sleep(getRedeliveryDelayMs(maxRedeliverCount) + DEAD_LETTER_SEND_MARGIN_MS);
+            }
+            report(msgFinished, elapsedSec);
         }
         catch (Exception e) {
         	e.printStackTrace();
@@ -89,6 +281,43 @@ public class RedeliveryConsumer extends NativePulsarCmdApp {
         }
     }
 
+    /**
+     * The failing messages are picked by the hash of their original message id, so a message
+     * fails (or not) on all its attempts.
+     */
+    private boolean processingFails(Message<byte[]> message, int previousAttempts) {
+        if (Math.floorMod(RedeliveryStats.originMessageId(message).hashCode(), 100) >= failPercent) {
+            return false;
+        }
+        return (failAttempts == -1) || (previousAttempts < failAttempts);
+    }
+
+    private long getRedeliveryDelayMs(int redeliveryCount) {
+        return (redeliveryBackoff != null) ? redeliveryBackoff.next(redeliveryCount) : nackRedeliveryDelayMs;
+    }
+
+    /**
+     * Publish "numMsg" readings of the CSV file (from the start again when the file is shorter).
+     */
+    private void preload() throws IOException, PulsarClientException, InterruptedException {
+        CsvPreloader.preload(pulsarClient, topicName, preloadCsvFile, numMsg);
+        System.out.println("[" + appName + "] Preloaded " + numMsg + " messages from " + preloadCsvFile.getName());
+    }
+
+    private void report(long msgFinished, double elapsedSec) {
+        reportConsumption(redeliveryStats.getDeliveryCnt(), elapsedSec);
+        System.out.println("[" + appName + "] Finished " + msgFinished + " messages (" +
+                String.format("%.1f", (elapsedSec > 0) ? msgFinished / elapsedSec : 0.0) + " msg/s): " +
+                redeliveryStats.getProcessedCnt() + " processed, " +
+                redeliveryStats.getDeadLetterCnt() + " sent to the dead letter topic, with " +
+                redeliveryStats.getDeliveryCnt() + " deliveries (" +
+                redeliveryStats.getRedeliveryCnt() + " redeliveries, " +
+                String.format("%.2f", (msgFinished > 0) ? (double) redeliveryStats.getDeliveryCnt() / msgFinished : 0.0) +
+                " deliveries/msg)");
+        System.out.println("[" + appName + "] Attempts per message: " + redeliveryStats.getAttemptCnts());
+        System.out.println("[" + appName + "] Redelivery delay: " + redeliveryStats.getRedeliveryDelaySummary());
+    }
+
     @Override
     public void termCmdApp() {
         try {
@@ -103,5 +332,8 @@ public class RedeliveryConsumer extends NativePulsarCmdApp {
         catch (PulsarClientException pce) {
             throw new WorkshopRuntimException("Failed to terminate Pulsar producer or client!");
         }
+        finally {
+            logger.info("Terminating application: \"" + appName + "\" ...");
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,397 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop;
+
+import com.example.pulsarworkshop.exception.InvalidParamException;
+import com.example.pulsarworkshop.exception.WorkshopRuntimException;
+import com.example.pulsarworkshop.util.AsyncSendWindow;
+import com.example.pulsarworkshop.util.ConsumerLagStats;
+import com.example.pulsarworkshop.util.CsvPreloader;
+import com.example.pulsarworkshop.util.RateLimiter;
+import com.example.pulsarworkshop.util.RedeliveryStats;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.apache.pulsar.client.api.*;
+import org.apache.pulsar.shade.org.apache.commons.lang3.StringUtils;
+import org.apache.pulsar.shade.org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Simulates a redelivery storm: the messages are published at a fixed rate ("rate") and
+ * consumed by "consumerNum" consumers, which negatively acknowledge a share of the deliveries
+ * ("failureRates"). Each delivery costs "processingTime" microseconds, failed or not, so the
+ * redeliveries take consumer capacity away from the new messages.
+ *
+ * The failures are either:
+ * - "random": each delivery fails with the failure rate, whatever its message
+ * - "key": the messages of a share of the keys (the failure rate) fail their first
+ *   "failAttempts" deliveries, like the devices behind a failing downstream system
+ *
+ * There is one run per subscription type ("subTypes") and failure rate, each one publishing
+ * "numMsg" messages to a new subscription. Each run reports the effective throughput (processed
+ * messages per second), the end-to-end latency (from the publish time to the successful
+ * processing), the redeliveries the broker dispatched, and the backlog left when the publishing
+ * ends, in seconds of input: a growing backlog means the consumers can't absorb that failure rate.
+ */
+public class RedeliveryStormSimulator extends NativePulsarConsumerCmdApp {
+
+    // Must be set before initializing the "logger" object.
+    private final static String APP_NAME = "RedeliveryStormSimulator";
+    static { System.setProperty("log_file_base_name", getLogFileName(API_TYPE, APP_NAME)); }
+    private final static Logger logger = LoggerFactory.getLogger(RedeliveryStormSimulator.class);
+
+    private final static String FAILURE_MODE_RANDOM = "random";
+    private final static String FAILURE_MODE_KEY = "key";
+
+    private final static String DFT_SUB_NAME = "storm-subscription";
+    private final static String DFT_SUB_TYPES = "Shared,Key_Shared";
+    private final static String DFT_FAILURE_RATES = "0,1,5,10,25";
+    private final static int DFT_FAIL_ATTEMPTS = 3;
+    private final static int DFT_CONSUMER_NUM = 4;
+    private final static int DFT_KEY_NUM = 100;
+    private final static int DFT_PROCESSING_TIME_US = 200;
+    private final static int DFT_NACK_REDELIVERY_DELAY_MS = 1000;
+    private final static int DFT_DRAIN_TIMEOUT_SEC = 30;
+    private final static int MAX_IN_FLIGHT = 1000;
+    private final static long RECEIVE_TIMEOUT_MS = 100;
+
+    private PulsarClient pulsarClient;
+    private Producer<byte[]> pulsarProducer;
+
+    private File iotSensorDataCsvFile;
+    private String subscriptionName;
+    private final List<SubscriptionType> subscriptionTypes = new ArrayList<>();
+    private final List<Integer> failureRates = new ArrayList<>();
+    private String failureMode;
+    private int failAttempts;
+    private int consumerNum;
+    private int keyNum;
+    private int processingTimeUs;
+    private int nackRedeliveryDelayMs;
+    private int drainTimeoutSec;
+
+    // The measurements of one run
+    private static class RunStats {
+        private final RedeliveryStats redeliveryStats = new RedeliveryStats();
+        // The publish lag when the message is processed, i.e. its end-to-end latency
+        private final ConsumerLagStats latencyStats = new ConsumerLagStats();
+        private final AtomicLong lastProcessedNanos = new AtomicLong();
+    }
+
+    public RedeliveryStormSimulator(String appName, String[] inputParams) {
+        super(appName, inputParams);
+
+        addRequiredCommandLineOption("csv","csvFile", true, "IoT sensor data CSV file.");
+        addOptionalCommandLineOption("sbn", "subName", true,
+                "Pulsar subscription name prefix, one subscription per run (default: " + DFT_SUB_NAME + ").");
+        addOptionalCommandLineOption("sbts", "subTypes", true,
+                "Comma separated Pulsar subscription types, one run each (default: " + DFT_SUB_TYPES + ").");
+        addOptionalCommandLineOption("frs", "failureRates", true,
+                "Comma separated failure rates in percent, one run each (default: " + DFT_FAILURE_RATES + ").");
+        addOptionalCommandLineOption("fm", "failureMode", true,
+                "Which deliveries fail: " + FAILURE_MODE_RANDOM + " (default), or " + FAILURE_MODE_KEY +
+                        " (the first attempts of the messages of a share of the keys).");
+        addOptionalCommandLineOption("fa", "failAttempts", true,
+                "Number of failed attempts of each message of a failing key, in the key failure mode (default: " +
+                        DFT_FAIL_ATTEMPTS + ").");
+        addOptionalCommandLineOption("cn", "consumerNum", true,
+                "Number of consumers on the subscription, one thread each (default: " + DFT_CONSUMER_NUM + ").");
+        addOptionalCommandLineOption("kn", "keyNum", true,
+                "Number of distinct message keys (default: " + DFT_KEY_NUM + ").");
+        addOptionalCommandLineOption("pt", "processingTime", true,
+                "Processing time of each delivery in microseconds, failed or not (default: " + DFT_PROCESSING_TIME_US + ").");
+        addOptionalCommandLineOption("nrd", "nackRedeliveryDelay", true,
+                "Delay in milliseconds before a failed message is redelivered (default: " + DFT_NACK_REDELIVERY_DELAY_MS + ").");
+        addOptionalCommandLineOption("dt", "drainTimeout", true,
+                "Max time in seconds to wait for the backlog to be processed after the publishing ends (default: " +
+                        DFT_DRAIN_TIMEOUT_SEC + ").");
+
+        logger.info("Starting application: \"" + appName + "\" ...");
+    }
+
+    public static void main(String[] args) {
+        PulsarWorkshopCmdApp workshopApp = new RedeliveryStormSimulator(APP_NAME, args);
+        int exitCode = workshopApp.runCmdApp();
+        System.exit(exitCode);
+    }
+
+    @Override
+    public void processExtendedInputParams() throws InvalidParamException {
+        super.processExtendedInputParams();
+
+        if (numMsg <= 0) {
+            throw new InvalidParamException("numMsg", "must be a positive number of messages per run");
+        }
+        if (msgRate <= 0) {
+            throw new InvalidParamException("rate", "must be a positive publish rate");
+        }
+
+        // (Required) IoT sensor source data file (the message payloads)
+        iotSensorDataCsvFile = processFileInputParam("csv");
+        if (iotSensorDataCsvFile == null) {
+            throw new InvalidParamException("Must provided a valid IoT sensor source data csv file!");
+        }
+
+        subscriptionName = StringUtils.defaultIfBlank(processStringInputParam("sbn"), DFT_SUB_NAME);
+
+        // (Optional) The runs
+        String subTypesStr = StringUtils.defaultIfBlank(processStringInputParam("sbts"), DFT_SUB_TYPES);
+        for (String subType : StringUtils.split(subTypesStr, ',')) {
+            try {
+                subscriptionTypes.add(SubscriptionType.valueOf(StringUtils.trim(subType)));
+            }
+            catch (IllegalArgumentException iae) {
+                throw new InvalidParamException("subTypes", "unknown subscription type \"" + subType + "\"");
+            }
+        }
+        failureMode = StringUtils.defaultIfBlank(processStringInputParam("fm"), FAILURE_MODE_RANDOM);
+        if (!StringUtils.equalsAny(failureMode, FAILURE_MODE_RANDOM, FAILURE_MODE_KEY)) {
+            throw new InvalidParamException("failureMode", "must be " + FAILURE_MODE_RANDOM + " or " +
+                    FAILURE_MODE_KEY + ", but got \"" + failureMode + "\"");
+        }
+        String failureRatesStr = StringUtils.defaultIfBlank(processStringInputParam("frs"), DFT_FAILURE_RATES);
+        for (String failureRateStr : StringUtils.split(failureRatesStr, ',')) {
+            int failureRate = NumberUtils.toInt(StringUtils.trim(failureRateStr), -1);
+            // A message would never be processed with a 100% random failure rate
+            int maxFailureRate = FAILURE_MODE_RANDOM.equals(failureMode) ? 99 : 100;
+            if (failureRate < 0 || failureRate > maxFailureRate) {
+                throw new InvalidParamException("failureRates", "must be between 0 and " + maxFailureRate +
+                        ", but got \"" + failureRateStr + "\"");
+            }
+            failureRates.add(failureRate);
+        }
+        failAttempts = processIntegerInputParam("fa", DFT_FAIL_ATTEMPTS);
+        if (failAttempts <= 0) {
+            throw new InvalidParamException("The number of failed attempts must be a positive integer!");
+        }
+
+        // (Optional) The consumers
+        consumerNum = processIntegerInputParam("cn", DFT_CONSUMER_NUM);
+        keyNum = processIntegerInputParam("kn", DFT_KEY_NUM);
+        processingTimeUs = processIntegerInputParam("pt", DFT_PROCESSING_TIME_US);
+        nackRedeliveryDelayMs = processIntegerInputParam("nrd", DFT_NACK_REDELIVERY_DELAY_MS);
+        drainTimeoutSec = processIntegerInputParam("dt", DFT_DRAIN_TIMEOUT_SEC);
+        if (consumerNum <= 0 || keyNum <= 0 || drainTimeoutSec <= 0) {
+            throw new InvalidParamException("The number of consumers and keys, and the drain timeout must be positive integers!");
+        }
+        if (processingTimeUs < 0 || nackRedeliveryDelayMs < 0) {
+            throw new InvalidParamException("The processing time and the redelivery delay must be non-negative integers!");
+        }
+    }
+
+    @Override
+    public void execute() {
+        try {
+            List<byte[]> payloads = CsvPreloader.loadPayloads(iotSensorDataCsvFile);
+            pulsarClient = createNativePulsarClient();
+            pulsarProducer = pulsarClient.newProducer()
+                    .topic(topicName)
+                    .maxPendingMessages(MAX_IN_FLIGHT)
+                    .blockIfQueueFull(true)
+                    .create();
+
+            System.out.println("[" + appName + "] " + numMsg + " messages per run at " + msgRate + " msg/s, " +
+                    consumerNum + " consumers, " + keyNum + " keys, processing time " + processingTimeUs +
+                    " us, " + failureMode + " failures" +
+                    (FAILURE_MODE_KEY.equals(failureMode) ? " (" + failAttempts + " attempts)" : "") +
+                    ", redelivery delay " + nackRedeliveryDelayMs + " ms");
+            System.out.println(String.format("%-11s %6s %9s %10s %9s %10s %8s %8s %8s %10s %8s",
+                    "sub type", "fail %", "processed", "msg/s", "dlv/msg", "redlv/s",
+                    "p50 ms", "p99 ms", "max ms", "backlog s", "drain s"));
+            for (SubscriptionType subscriptionType : subscriptionTypes) {
+                for (int failureRate : failureRates) {
+                    runStorm(subscriptionType, failureRate, payloads);
+                }
+            }
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            throw new WorkshopRuntimException("Unexpected error when simulating the redelivery storm: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Publish "numMsg" messages to a new subscription, and wait for them to be processed.
+     */
+    private void runStorm(SubscriptionType subscriptionType, int failureRate, List<byte[]> payloads) throws Exception {
+        RunStats runStats = new RunStats();
+        String runSubscriptionName = subscriptionName + "-" + subscriptionType + "-" + failureRate;
+
+        List<Consumer<byte[]>> consumers = new ArrayList<>();
+        List<Thread> consumerThreads = new ArrayList<>();
+        for (int i = 0; i < consumerNum; i++) {
+            Consumer<byte[]> consumer = applyConsumerSettings(pulsarClient.newConsumer())
+                    .topic(topicName)
+                    .subscriptionName(runSubscriptionName)
+                    .subscriptionType(subscriptionType)
+                    .negativeAckRedeliveryDelay(nackRedeliveryDelayMs, TimeUnit.MILLISECONDS)
+                    .subscribe();
+            consumers.add(consumer);
+            Thread consumerThread = new Thread(() -> consume(consumer, failureRate, runStats),
+                    appName + "-consumer-" + i);
+            consumerThreads.add(consumerThread);
+            consumerThread.start();
+        }
+
+        // Publish at the fixed rate
+        RateLimiter rateLimiter = new RateLimiter(msgRate);
+        AsyncSendWindow sendWindow = new AsyncSendWindow(MAX_IN_FLIGHT);
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < numMsg; i++) {
+            rateLimiter.acquire(1);
+            sendWindow.acquire();
+            sendWindow.track(pulsarProducer.newMessage()
+                    .key("key-" + (i % keyNum))
+                    .value(payloads.get(i % payloads.size()))
+                    .sendAsync());
+        }
+        pulsarProducer.flush();
+        long publishEndNanos = System.nanoTime();
+        long backlogAtPublishEnd = numMsg - runStats.redeliveryStats.getProcessedCnt();
+
+        // Drain the backlog
+        long drainDeadlineNanos = publishEndNanos + TimeUnit.SECONDS.toNanos(drainTimeoutSec);
+        while (runStats.redeliveryStats.getProcessedCnt() < numMsg && System.nanoTime() < drainDeadlineNanos) {
+            Thread.sleep(10);
+        }
+        for (Thread consumerThread : consumerThreads) {
+            consumerThread.interrupt();
+        }
+        for (Thread consumerThread : consumerThreads) {
+            consumerThread.join();
+        }
+        for (Consumer<byte[]> consumer : consumers) {
+            try {
+                consumer.unsubscribe();
+            }
+            catch (PulsarClientException pce) {
+                // The other consumers of the subscription are still connected
+            }
+            consumer.close();
+        }
+        if (sendWindow.getFailedCnt() > 0) {
+            logger.warn("Failed to publish {} messages: {}", sendWindow.getFailedCnt(), sendWindow.getFirstFailure().getMessage());
+        }
+
+        reportRun(subscriptionType, failureRate, runStats, startNanos, publishEndNanos, backlogAtPublishEnd);
+    }
+
+    /**
+     * Receive, "process" and acknowledge the messages, or negatively acknowledge the failing ones,
+     * until the thread is interrupted.
+     */
+    private void consume(Consumer<byte[]> consumer, int failureRate, RunStats runStats) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Message<byte[]> message = consumer.receive((int) RECEIVE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (message == null) {
+                    continue;
+                }
+                runStats.redeliveryStats.recordDelivery(message);
+
+                if (processingTimeUs > 0) {
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(processingTimeUs));
+                }
+                if (fails(message, failureRate)) {
+                    runStats.redeliveryStats.recordFailure(message, false);
+                    consumer.negativeAcknowledge(message);
+                }
+                else {
+                    consumer.acknowledge(message);
+                    ackRpcCounter.recordAck(1);
+                    runStats.latencyStats.record(message);
+                    runStats.redeliveryStats.recordProcessed(message);
+                    runStats.lastProcessedNanos.set(System.nanoTime());
+                }
+            }
+        }
+        catch (PulsarClientException pce) {
+            // Interrupted while receiving, or the consumer is closed
+            if (!Thread.currentThread().isInterrupted() && !(pce.getCause() instanceof InterruptedException)) {
+                logger.error("Unexpected error when consuming Pulsar messages", pce);
+            }
+        }
+    }
+
+    private boolean fails(Message<byte[]> message, int failureRate) {
+        if (failureRate == 0) {
+            return false;
+        }
+        if (FAILURE_MODE_RANDOM.equals(failureMode)) {
+            return ThreadLocalRandom.current().nextInt(100) < failureRate;
+        }
+        return Math.floorMod(message.getKey().hashCode(), 100) < failureRate &&
+                RedeliveryStats.previousAttempts(message) < failAttempts;
+    }
+
+    private void reportRun(SubscriptionType subscriptionType,
+                           int failureRate,
+                           RunStats runStats,
+                           long startNanos,
+                           long publishEndNanos,
+                           long backlogAtPublishEnd) {
+        RedeliveryStats redeliveryStats = runStats.redeliveryStats;
+        long processedCnt = redeliveryStats.getProcessedCnt();
+        long lastProcessedNanos = runStats.lastProcessedNanos.get();
+        double elapsedSec = (Math.max(lastProcessedNanos, publishEndNanos) - startNanos) / 1_000_000_000.0;
+        double drainSec = Math.max(0, lastProcessedNanos - publishEndNanos) / 1_000_000_000.0;
+        Histogram latency = runStats.latencyStats.getPublishLagHistogram();
+
+        System.out.println(String.format("%-11s %6d %9d %10.1f %9.2f %10.1f %8d %8d %8d %10.2f %8s",
+                subscriptionType,
+                failureRate,
+                processedCnt,
+                (elapsedSec > 0) ? processedCnt / elapsedSec : 0.0,
+                (processedCnt > 0) ? (double) redeliveryStats.getDeliveryCnt() / processedCnt : 0.0,
+                (elapsedSec > 0) ? redeliveryStats.getRedeliveryCnt() / elapsedSec : 0.0,
+                latency.getValueAtPercentile(50),
+                latency.getValueAtPercentile(99),
+                latency.getMaxValue(),
+                (double) backlogAtPublishEnd / msgRate,
+                // Not all processed within the drain timeout
+                (processedCnt < numMsg) ? ">" + drainTimeoutSec : String.format("%.2f", drainSec)));
+    }
+
+    @Override
+    public void termCmdApp() {
+        try {
+            if (pulsarProducer != null) {
+                pulsarProducer.close();
+            }
+
+            if (pulsarClient != null) {
+                pulsarClient.close();
+            }
+        }
+        catch (PulsarClientException pce) {
+            throw new WorkshopRuntimException("Failed to terminate Pulsar producer or client!");
+        }
+        finally {
+            logger.info("Terminating application: \"" + appName + "\" ...");
+        }
+    }
+}
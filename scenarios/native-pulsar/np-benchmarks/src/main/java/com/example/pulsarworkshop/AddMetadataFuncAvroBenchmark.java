@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop;
+
+import com.example.pulsarworkshop.pojo.IoTSensorData;
+import com.example.pulsarworkshop.pojo.IoTSensorDataUtils;
+import com.example.pulsarworkshop.util.CsvFileLineScanner;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.TypedMessageBuilder;
+import org.apache.pulsar.functions.api.Context;
+import org.apache.pulsar.functions.api.Function;
+import org.apache.pulsar.functions.api.Record;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Measures the messages per second of one "AddMetadataFuncAvro" instance, next to the CPU time and
+ * heap allocation per message, against its former version ("previous version" below), which on
+ * every message created a new "Schema.AVRO(IoTSensorData.class)" schema, joined the input topics
+ * and formatted a log line with the whole reading, formatted the process time with a new "Calendar",
+ * and sent the output message with the blocking "send()".
+ *
+ * The input messages are the IoT sensor readings of the CSV file, with the device id as the key
+ * and 2 properties. The output messages are encoded with the schema of the output topic. See
+ * {@link FunctionBenchmark} for how the function runs.
+ *
+ *   java -cp <np-benchmarks jar> com.example.pulsarworkshop.AddMetadataFuncAvroBenchmark
+ *        <IoT sensor data CSV file> [rounds (default 20)] [instances (default 1)]
+ */
+public class AddMetadataFuncAvroBenchmark {
+
+    private final static int DFT_ROUNDS = 20;
+    private final static int DFT_INSTANCES = 1;
+
+    /**
+     * The previous version of "AddMetadataFuncAvro" (with the process time pattern fixed).
+     */
+    private static class PreviousAddMetadataFuncAvro implements Function<IoTSensorData, Void> {
+        private final static DateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Void process(IoTSensorData input, Context context) throws Exception {
+            Logger LOG = context.getLogger();
+            String outputTopic = context.getOutputTopic();
+
+            String inputTopics = context.getInputTopics().stream().collect(Collectors.joining(", "));
+            String logMessage = String.format(
+                    "A message with a value of \"%s\" has arrived on one of the following topics: %s\n",
+                    input,
+                    inputTopics);
+            LOG.info(logMessage);
+
+            try {
+                Record<IoTSensorData> currentRecord = (Record<IoTSensorData>) context.getCurrentRecord();
+                Optional<String> keyOpt = currentRecord.getKey();
+                Map<String, String> msgProperties = currentRecord.getProperties();
+
+                TypedMessageBuilder<IoTSensorData> messageBuilder
+                        = context.newOutputMessage(outputTopic, Schema.AVRO(IoTSensorData.class));
+                if (keyOpt.isPresent()) {
+                    messageBuilder.key(keyOpt.get());
+                }
+                for (String propKey : msgProperties.keySet()) {
+                    messageBuilder.property(propKey, msgProperties.get(propKey));
+                }
+                // Shared by the function instances, so it needs a lock
+                String processTime;
+                synchronized (timeFormat) {
+                    processTime = timeFormat.format(Calendar.getInstance().getTime());
+                }
+                messageBuilder.property("internal_process_time", processTime);
+                messageBuilder.value(input);
+                messageBuilder.send();
+            }
+            catch (PulsarClientException e) {
+                LOG.error(e.toString());
+            }
+            return null;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: AddMetadataFuncAvroBenchmark <IoT sensor data CSV file> [rounds] [instances]");
+            System.exit(1);
+        }
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : DFT_ROUNDS;
+        int instances = (args.length > 2) ? Integer.parseInt(args[2]) : DFT_INSTANCES;
+
+        List<Record<IoTSensorData>> records = new ArrayList<>();
+        CsvFileLineScanner csvFileLineScanner = new CsvFileLineScanner(new File(args[0]));
+        boolean isTitleLine = true;
+        while (csvFileLineScanner.hasNextLine()) {
+            String csvLine = csvFileLineScanner.getNextLine();
+            if (!isTitleLine && !csvLine.isBlank()) {
+                IoTSensorData reading = IoTSensorDataUtils.csvToPojo(csvLine);
+                records.add(FunctionBenchmark.newRecord(reading, reading.getDevice().toString(),
+                        Map.of("source", "iot-sensor", "format", "avro")));
+            }
+            isTitleLine = false;
+        }
+        System.out.println("Loaded " + records.size() + " IoT sensor readings, " +
+                rounds + " rounds, " + instances + " function instance(s)");
+
+        FunctionBenchmark.printHeader();
+        FunctionBenchmark.printResult("previous version",
+                FunctionBenchmark.run(PreviousAddMetadataFuncAvro::new, records, rounds, instances));
+        FunctionBenchmark.printResult("AddMetadataFuncAvro",
+                FunctionBenchmark.run(AddMetadataFuncAvro::new, records, rounds, instances));
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop;
+
+import com.example.pulsarworkshop.pojo.IoTSensorData;
+import com.example.pulsarworkshop.pojo.IoTSensorDataUtils;
+import com.example.pulsarworkshop.util.CsvFileLineScanner;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.TypedMessageBuilder;
+import org.apache.pulsar.functions.api.Context;
+import org.apache.pulsar.functions.api.Function;
+import org.apache.pulsar.functions.api.Record;
+
+import java.io.File;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the messages per second of one "AddMetadataFunc" instance, next to the CPU time and
+ * heap allocation per message, against the same function formatting the process time on each
+ * message:
+ * - "SimpleDateFormat + Calendar": a new "Calendar" per message, formatted by a shared
+ *   "SimpleDateFormat" (under a lock, as it isn't thread safe), the properties copied one by one
+ * - "DateTimeFormatter": "LocalDateTime.now()" formatted by a "DateTimeFormatter"
+ * - "AddMetadataFunc": the process time formatted once per millisecond ("CoarseTimestampClock")
+ *
+ * The input messages are the CSV lines of the IoT sensor data file, with the device id as the
+ * key and 2 properties. See {@link FunctionBenchmark} for how the function runs.
+ *
+ *   java -cp <np-benchmarks jar> com.example.pulsarworkshop.AddMetadataFuncBenchmark
+ *        <IoT sensor data CSV file> [rounds (default 20)] [instances (default 1)]
+ */
+public class AddMetadataFuncBenchmark {
+
+    private final static int DFT_ROUNDS = 20;
+    private final static int DFT_INSTANCES = 1;
+    private final static String PROP_PROCESS_TIME = "internal_process_time";
+
+    // The process time formatting of the previous versions of the function
+    private final static DateFormat SIMPLE_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    private final static DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    private static abstract class PerMessageFormatFunc implements Function<String, Void> {
+        private String outputTopic;
+
+        abstract String formatProcessTime();
+
+        @Override
+        public void initialize(Context context) {
+            outputTopic = context.getOutputTopic();
+        }
+
+        @Override
+        public Void process(String input, Context context) throws Exception {
+            Record<?> currentRecord = context.getCurrentRecord();
+            TypedMessageBuilder<String> outputMessageBuilder = context.newOutputMessage(outputTopic, Schema.STRING);
+            if (currentRecord.getKey().isPresent()) {
+                outputMessageBuilder.key(currentRecord.getKey().get());
+            }
+            Map<String, String> msgProperties = currentRecord.getProperties();
+            for (String propKey : msgProperties.keySet()) {
+                outputMessageBuilder.property(propKey, msgProperties.get(propKey));
+            }
+            outputMessageBuilder.property(PROP_PROCESS_TIME, formatProcessTime());
+            outputMessageBuilder.value(input).sendAsync();
+            return null;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: AddMetadataFuncBenchmark <IoT sensor data CSV file> [rounds] [instances]");
+            System.exit(1);
+        }
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : DFT_ROUNDS;
+        int instances = (args.length > 2) ? Integer.parseInt(args[2]) : DFT_INSTANCES;
+
+        List<Record<String>> records = new ArrayList<>();
+        CsvFileLineScanner csvFileLineScanner = new CsvFileLineScanner(new File(args[0]));
+        boolean isTitleLine = true;
+        while (csvFileLineScanner.hasNextLine()) {
+            String csvLine = csvFileLineScanner.getNextLine();
+            if (!isTitleLine && !csvLine.isBlank()) {
+                IoTSensorData reading = IoTSensorDataUtils.csvToPojo(csvLine);
+                records.add(FunctionBenchmark.newRecord(csvLine, reading.getDevice().toString(),
+                        Map.of("source", "iot-sensor", "format", "csv")));
+            }
+            isTitleLine = false;
+        }
+        System.out.println("Loaded " + records.size() + " IoT sensor readings, " +
+                rounds + " rounds, " + instances + " function instance(s)");
+
+        FunctionBenchmark.printHeader();
+        FunctionBenchmark.printResult("SimpleDateFormat + Calendar", FunctionBenchmark.run(() -> new PerMessageFormatFunc() {
+            @Override
+            String formatProcessTime() {
+                synchronized (SIMPLE_DATE_FORMAT) {
+                    return SIMPLE_DATE_FORMAT.format(Calendar.getInstance().getTime());
+                }
+            }
+        }, records, rounds, instances));
+        FunctionBenchmark.printResult("DateTimeFormatter", FunctionBenchmark.run(() -> new PerMessageFormatFunc() {
+            @Override
+            String formatProcessTime() {
+                return LocalDateTime.now().format(DATE_TIME_FORMATTER);
+            }
+        }, records, rounds, instances));
+        FunctionBenchmark.printResult("AddMetadataFunc", FunctionBenchmark.run(AddMetadataFunc::new, records, rounds, instances));
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.TypedMessageBuilder;
+import org.apache.pulsar.functions.api.Context;
+import org.apache.pulsar.functions.api.Function;
+import org.apache.pulsar.functions.api.Record;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Runs Pulsar functions in the current JVM, without any Pulsar cluster, to measure the per-message
+ * cost of their "process()" method: the throughput of one function instance, and its CPU time and
+ * heap allocation per message.
+ *
+ * The function context is a stand-in that only supports what the workshop functions use: the
+ * current record, the input and output topics, the user config defaults, the logger and
+ * "newOutputMessage()". The output message builders keep the key, properties and value of the
+ * message like a real one, and encode the value with the schema of the output topic (the first
+ * schema used for a topic, like the function runtime keeps one producer per topic). "send()" and
+ * "sendAsync()" complete right away, so the cost of the stand-in is the same for all the functions
+ * compared. The function logger formats the log lines, but only counts them instead of writing
+ * them.
+ *
+ * Each function instance runs on its own thread, like the instances of a function in the thread
+ * runtime of a function worker, and several instances in the same JVM share its static state.
+ */
+public class FunctionBenchmark {
+
+    private final static String INPUT_TOPIC = "persistent://public/default/function-benchmark-input";
+    private final static String OUTPUT_TOPIC = "persistent://public/default/function-benchmark-output";
+
+    private final static LogLineCounter logLineCounter = new LogLineCounter();
+    private final static Logger functionLogger = newFunctionLogger();
+
+    private final static com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * The totals of a run, over all the function instances.
+     */
+    public static class Result {
+        private final int instances;
+        private long msgCnt;
+        private long outputCnt;
+        private long logLineCnt;
+        private long cpuNanos;
+        private long allocatedBytes;
+        private long wallNanos;
+
+        Result(int instances) {
+            this.instances = instances;
+        }
+
+        synchronized void add(long instanceMsgCnt, long instanceOutputCnt, long instanceCpuNanos, long instanceAllocatedBytes) {
+            msgCnt += instanceMsgCnt;
+            outputCnt += instanceOutputCnt;
+            cpuNanos += instanceCpuNanos;
+            allocatedBytes += instanceAllocatedBytes;
+        }
+
+        public long getMsgCnt() { return msgCnt; }
+        public long getOutputCnt() { return outputCnt; }
+        public long getLogLineCnt() { return logLineCnt; }
+        public double getMsgPerSecPerInstance() { return msgCnt * 1_000_000_000.0 / wallNanos / instances; }
+        public double getCpuNanosPerMsg() { return (double) cpuNanos / msgCnt; }
+        public double getAllocatedBytesPerMsg() { return (double) allocatedBytes / msgCnt; }
+    }
+
+    /**
+     * @return an input record of a function
+     */
+    public static <I> Record<I> newRecord(I value, String key, Map<String, String> properties) {
+        Map<String, String> recordProperties = (properties == null) ? Collections.emptyMap() : properties;
+        return new Record<I>() {
+            @Override
+            public I getValue() { return value; }
+            @Override
+            public Optional<String> getKey() { return Optional.ofNullable(key); }
+            @Override
+            public Map<String, String> getProperties() { return recordProperties; }
+        };
+    }
+
+    /**
+     * Process all the records "rounds" times with each function instance, after a warm-up run.
+     */
+    public static <I> Result run(Supplier<? extends Function<I, ?>> functionFactory,
+                                 List<Record<I>> records,
+                                 int rounds,
+                                 int instances) throws Exception {
+        runInstances(functionFactory, records, rounds, instances);
+        return runInstances(functionFactory, records, rounds, instances);
+    }
+
+    private static <I> Result runInstances(Supplier<? extends Function<I, ?>> functionFactory,
+                                           List<Record<I>> records,
+                                           int rounds,
+                                           int instances) throws Exception {
+        List<Function<I, ?>> functions = new ArrayList<>();
+        List<ContextHandler> contextHandlers = new ArrayList<>();
+        for (int i = 0; i < instances; i++) {
+            Function<I, ?> function = functionFactory.get();
+            ContextHandler contextHandler = new ContextHandler(i);
+            function.initialize(contextHandler.getProxy());
+            functions.add(function);
+            contextHandlers.add(contextHandler);
+        }
+
+        Result result = new Result(instances);
+        long logLineStartCnt = logLineCounter.getCnt();
+        ExecutorService executor = Executors.newFixedThreadPool(instances);
+        try {
+            long startNanos = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < instances; i++) {
+                Function<I, ?> function = functions.get(i);
+                ContextHandler contextHandler = contextHandlers.get(i);
+                futures.add(executor.submit(() -> {
+                    long threadId = Thread.currentThread().getId();
+                    long cpuStart = threadMXBean.getCurrentThreadCpuTime();
+                    long allocStart = threadMXBean.getThreadAllocatedBytes(threadId);
+
+                    Context context = contextHandler.getProxy();
+                    for (int round = 0; round < rounds; round++) {
+                        for (Record<I> record : records) {
+                            contextHandler.currentRecord = record;
+                            function.process(record.getValue(), context);
+                        }
+                    }
+
+                    result.add((long) rounds * records.size(), contextHandler.outputCnt,
+                            threadMXBean.getCurrentThreadCpuTime() - cpuStart,
+                            threadMXBean.getThreadAllocatedBytes(threadId) - allocStart);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            result.wallNanos = System.nanoTime() - startNanos;
+            result.logLineCnt = logLineCounter.getCnt() - logLineStartCnt;
+        } finally {
+            executor.shutdown();
+            for (Function<I, ?> function : functions) {
+                function.close();
+            }
+        }
+        return result;
+    }
+
+    public static void printHeader() {
+        System.out.println(String.format("%-32s %16s %14s %14s %10s %10s",
+                "function", "msg/s (instance)", "cpu ns/msg", "alloc B/msg", "outputs", "log lines"));
+    }
+
+    public static void printResult(String name, Result result) {
+        System.out.println(String.format("%-32s %16.0f %14.1f %14.1f %10d %10d",
+                name, result.getMsgPerSecPerInstance(), result.getCpuNanosPerMsg(),
+                result.getAllocatedBytesPerMsg(), result.getOutputCnt(), result.getLogLineCnt()));
+    }
+
+    /**
+     * @return the logger of the functions, which only counts its (INFO and above) log lines
+     */
+    private static Logger newFunctionLogger() {
+        Logger functionLogger = LoggerFactory.getLogger(FunctionBenchmark.class.getName() + ".function");
+        if (functionLogger instanceof ch.qos.logback.classic.Logger) {
+            ch.qos.logback.classic.Logger logbackLogger = (ch.qos.logback.classic.Logger) functionLogger;
+            logLineCounter.setContext(logbackLogger.getLoggerContext());
+            logLineCounter.start();
+            logbackLogger.setLevel(Level.INFO);
+            logbackLogger.setAdditive(false);
+            logbackLogger.addAppender(logLineCounter);
+        }
+        return functionLogger;
+    }
+
+    private static class LogLineCounter extends AppenderBase<ILoggingEvent> {
+        private long cnt;
+
+        // Called under the appender lock
+        @Override
+        protected void append(ILoggingEvent event) {
+            event.getFormattedMessage();
+            cnt++;
+        }
+
+        synchronized long getCnt() {
+            return cnt;
+        }
+    }
+
+    /**
+     * The function context of one function instance.
+     */
+    private static class ContextHandler implements InvocationHandler {
+        private final int instanceId;
+        private final Context proxy;
+        private Record<?> currentRecord;
+        private final Map<String, Schema<?>> outputSchemas = new HashMap<>();
+        // Only updated by the thread of the instance
+        private long outputCnt;
+
+        ContextHandler(int instanceId) {
+            this.instanceId = instanceId;
+            this.proxy = (Context) Proxy.newProxyInstance(
+                    Context.class.getClassLoader(), new Class<?>[] { Context.class }, this);
+        }
+
+        Context getProxy() {
+            return proxy;
+        }
+
+        @Override
+        public Object invoke(Object proxyObj, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getCurrentRecord":
+                    return currentRecord;
+                case "getInputTopics":
+                    return List.of(INPUT_TOPIC);
+                case "getOutputTopic":
+                    return OUTPUT_TOPIC;
+                case "getLogger":
+                    return functionLogger;
+                case "getInstanceId":
+                    return instanceId;
+                case "getFunctionName":
+                    return "function-benchmark";
+                case "getUserConfigValue":
+                    return Optional.empty();
+                case "getUserConfigValueOrDefault":
+                    return args[1];
+                case "getUserConfigMap":
+                    return Collections.emptyMap();
+                case "newOutputMessage":
+                    Schema<?> schema = outputSchemas.computeIfAbsent((String) args[0], topic -> (Schema<?>) args[1]);
+                    return new MessageBuilderHandler(this, schema).getProxy();
+                case "toString":
+                    return "FunctionBenchmarkContext-" + instanceId;
+                case "hashCode":
+                    return System.identityHashCode(proxyObj);
+                case "equals":
+                    return proxyObj == args[0];
+                default:
+                    throw new UnsupportedOperationException(
+                            "Context." + method.getName() + "() is not supported by the function benchmark!");
+            }
+        }
+    }
+
+    /**
+     * An output message builder, which keeps what a real one would send.
+     */
+    private static class MessageBuilderHandler implements InvocationHandler {
+        private final static CompletableFuture<MessageId> SENT = CompletableFuture.completedFuture(MessageId.earliest);
+
+        private final ContextHandler contextHandler;
+        private final Schema<Object> schema;
+        private final TypedMessageBuilder<?> proxy;
+        private final Map<String, String> properties = new HashMap<>();
+        private String key;
+        private Object value;
+
+        @SuppressWarnings("unchecked")
+        MessageBuilderHandler(ContextHandler contextHandler, Schema<?> schema) {
+            this.contextHandler = contextHandler;
+            this.schema = (Schema<Object>) schema;
+            this.proxy = (TypedMessageBuilder<?>) Proxy.newProxyInstance(
+                    TypedMessageBuilder.class.getClassLoader(), new Class<?>[] { TypedMessageBuilder.class }, this);
+        }
+
+        TypedMessageBuilder<?> getProxy() {
+            return proxy;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxyObj, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "key":
+                    key = (String) args[0];
+                    return proxyObj;
+                case "property":
+                    properties.put((String) args[0], (String) args[1]);
+                    return proxyObj;
+                case "properties":
+                    properties.putAll((Map<String, String>) args[0]);
+                    return proxyObj;
+                case "value":
+                    value = args[0];
+                    return proxyObj;
+                case "send":
+                    encodeAndCount();
+                    return MessageId.earliest;
+                case "sendAsync":
+                    encodeAndCount();
+                    return SENT;
+                case "hashCode":
+                    return System.identityHashCode(proxyObj);
+                case "equals":
+                    return proxyObj == args[0];
+                default:
+                    // Other settings (event time, sequence id, etc.)
+                    if (method.getReturnType() == TypedMessageBuilder.class) {
+                        return proxyObj;
+                    }
+                    throw new UnsupportedOperationException(
+                            "TypedMessageBuilder." + method.getName() + "() is not supported by the function benchmark!");
+            }
+        }
+
+        private void encodeAndCount() {
+            if (value != null) {
+                schema.encode(value);
+            }
+            contextHandler.outputCnt++;
+        }
+    }
+
+    // Not instantiable, only the static helpers
+    private FunctionBenchmark() {
+    }
+}
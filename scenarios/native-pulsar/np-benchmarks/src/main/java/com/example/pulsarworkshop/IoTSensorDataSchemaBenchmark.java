@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop;
+
+import com.example.pulsarworkshop.pojo.IoTSensorData;
+import com.example.pulsarworkshop.pojo.IoTSensorDataAvroSchema;
+import com.example.pulsarworkshop.pojo.IoTSensorDataBinarySchema;
+import com.example.pulsarworkshop.pojo.IoTSensorDataBinaryView;
+import com.example.pulsarworkshop.pojo.IoTSensorDataUtils;
+import com.example.pulsarworkshop.util.CsvFileLineScanner;
+import org.apache.pulsar.client.api.Schema;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToIntFunction;
+
+/**
+ * Measures the per-message cost of the payload formats of the IoT sensor readings: the encoded
+ * size, the throughput, and the CPU time and heap allocation of encoding and decoding one reading.
+ * - "CSV": the raw CSV line, like the "IoTSensorProducer" publishes it, parsed by the consumer
+ * - "AVRO (reflection)": "Schema.AVRO(IoTSensorData.class)"
+ * - "AVRO (specific)": {@link IoTSensorDataAvroSchema}
+ * - "BINARY": {@link IoTSensorDataBinarySchema}, decoded into an "IoTSensorData" object
+ * - "BINARY (in place)": the same payload, with all the fields read in place by an {@link IoTSensorDataBinaryView}
+ *
+ * The broker bytes/s of a format are its bytes/msg times the message rate (plus the per message
+ * metadata, which is the same for all the formats).
+ *
+ * This only exercises the schemas, without any client or broker, so it can be run directly from
+ * the client application jar of a native Pulsar scenario:
+ *
+ *   java -cp <np-benchmarks jar> com.example.pulsarworkshop.IoTSensorDataSchemaBenchmark
+ *        <IoT sensor data CSV file> [rounds (default 20)] [threads (default 1)]
+ *
+ * With several threads, all of them share the same schema instance, like the producers and
+ * consumers of one client application do.
+ */
+public class IoTSensorDataSchemaBenchmark {
+
+    private final static int DFT_ROUNDS = 20;
+    private final static int DFT_THREADS = 1;
+
+    private final static com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Keeps the JIT from dropping the encoding and decoding work
+    private static volatile long sink;
+
+    private static class Candidate {
+        private final String name;
+        private final IntFunction<byte[]> encoder;
+        // Decodes a payload and returns a hash of the decoded fields
+        private final ToIntFunction<byte[]> decoder;
+
+        Candidate(String name, IntFunction<byte[]> encoder, ToIntFunction<byte[]> decoder) {
+            this.name = name;
+            this.encoder = encoder;
+            this.decoder = decoder;
+        }
+    }
+
+    // CPU time and allocated bytes of one phase, summed over all the threads
+    private static class PhaseCost {
+        private long cpuNanos;
+        private long allocatedBytes;
+        private long wallNanos;
+
+        synchronized void add(long threadCpuNanos, long threadAllocatedBytes) {
+            cpuNanos += threadCpuNanos;
+            allocatedBytes += threadAllocatedBytes;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: IoTSensorDataSchemaBenchmark <IoT sensor data CSV file> [rounds] [threads]");
+            System.exit(1);
+        }
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : DFT_ROUNDS;
+        int threads = (args.length > 2) ? Integer.parseInt(args[2]) : DFT_THREADS;
+
+        List<String> csvLines = loadCsvLines(new File(args[0]));
+        List<IoTSensorData> readings = new ArrayList<>(csvLines.size());
+        for (String csvLine : csvLines) {
+            readings.add(IoTSensorDataUtils.csvToPojo(csvLine));
+        }
+        System.out.println("Loaded " + readings.size() + " IoT sensor readings, " +
+                rounds + " rounds, " + threads + " thread(s)");
+
+        Schema<IoTSensorData> reflectAvroSchema = Schema.AVRO(IoTSensorData.class);
+        Schema<IoTSensorData> specificAvroSchema = IoTSensorDataAvroSchema.INSTANCE;
+        Schema<IoTSensorData> binarySchema = IoTSensorDataBinarySchema.INSTANCE;
+        ThreadLocal<IoTSensorDataBinaryView> binaryView = ThreadLocal.withInitial(IoTSensorDataBinaryView::new);
+
+        List<Candidate> candidates = new ArrayList<>();
+        candidates.add(new Candidate("CSV",
+                idx -> csvLines.get(idx).getBytes(StandardCharsets.UTF_8),
+                bytes -> IoTSensorDataUtils.csvToPojo(new String(bytes, StandardCharsets.UTF_8)).hashCode()));
+        candidates.add(new Candidate("AVRO (reflection)",
+                idx -> reflectAvroSchema.encode(readings.get(idx)), bytes -> reflectAvroSchema.decode(bytes).hashCode()));
+        candidates.add(new Candidate("AVRO (specific)",
+                idx -> specificAvroSchema.encode(readings.get(idx)), bytes -> specificAvroSchema.decode(bytes).hashCode()));
+        candidates.add(new Candidate("BINARY",
+                idx -> binarySchema.encode(readings.get(idx)), bytes -> binarySchema.decode(bytes).hashCode()));
+        candidates.add(new Candidate("BINARY (in place)",
+                idx -> binarySchema.encode(readings.get(idx)),
+                bytes -> readInPlace(binaryView.get().wrap(ByteBuffer.wrap(bytes)))));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            System.out.println(String.format("%-20s %10s %14s %14s %14s %14s %14s %14s",
+                    "format", "bytes/msg", "encode msg/s", "encode cpu ns", "encode alloc B",
+                    "decode msg/s", "decode cpu ns", "decode alloc B"));
+            for (Candidate candidate : candidates) {
+                byte[][] payloads = new byte[readings.size()][];
+                for (int idx = 0; idx < readings.size(); idx++) {
+                    payloads[idx] = candidate.encoder.apply(idx);
+                }
+                long payloadBytes = 0;
+                for (byte[] payload : payloads) {
+                    payloadBytes += payload.length;
+                }
+
+                // The first run is the warm-up
+                runPhase(executor, threads, rounds, readings.size(), idx -> candidate.encoder.apply(idx).length);
+                PhaseCost encodeCost =
+                        runPhase(executor, threads, rounds, readings.size(), idx -> candidate.encoder.apply(idx).length);
+                runPhase(executor, threads, rounds, readings.size(), idx -> candidate.decoder.applyAsInt(payloads[idx]));
+                PhaseCost decodeCost =
+                        runPhase(executor, threads, rounds, readings.size(), idx -> candidate.decoder.applyAsInt(payloads[idx]));
+
+                long msgCnt = (long) threads * rounds * readings.size();
+                System.out.println(String.format("%-20s %10.1f %14.0f %14.1f %14.1f %14.0f %14.1f %14.1f",
+                        candidate.name,
+                        (double) payloadBytes / readings.size(),
+                        msgCnt * 1_000_000_000.0 / encodeCost.wallNanos,
+                        (double) encodeCost.cpuNanos / msgCnt,
+                        (double) encodeCost.allocatedBytes / msgCnt,
+                        msgCnt * 1_000_000_000.0 / decodeCost.wallNanos,
+                        (double) decodeCost.cpuNanos / msgCnt,
+                        (double) decodeCost.allocatedBytes / msgCnt));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static List<String> loadCsvLines(File csvFile) throws IOException {
+        List<String> csvLines = new ArrayList<>();
+        CsvFileLineScanner csvFileLineScanner = new CsvFileLineScanner(csvFile);
+        boolean isTitleLine = true;
+        while (csvFileLineScanner.hasNextLine()) {
+            String csvLine = csvFileLineScanner.getNextLine();
+            if (!isTitleLine && !csvLine.isBlank()) {
+                csvLines.add(csvLine);
+            }
+            isTitleLine = false;
+        }
+        return csvLines;
+    }
+
+    /**
+     * Read all the fields of a reading, like a consumer would, but without creating any object
+     * (the device name is a shared string).
+     */
+    private static int readInPlace(IoTSensorDataBinaryView view) {
+        int hash = Double.hashCode(view.getTsSeconds());
+        hash = 31 * hash + view.getDevice().hashCode();
+        hash = 31 * hash + Double.hashCode(view.getCo());
+        hash = 31 * hash + Double.hashCode(view.getHumidity());
+        hash = 31 * hash + Boolean.hashCode(view.isLight());
+        hash = 31 * hash + Double.hashCode(view.getLpg());
+        hash = 31 * hash + Boolean.hashCode(view.isMotion());
+        hash = 31 * hash + Double.hashCode(view.getSmoke());
+        return 31 * hash + Double.hashCode(view.getTemp());
+    }
+
+    /**
+     * Run the operation on each reading index, "rounds" times, in each thread.
+     */
+    private static PhaseCost runPhase(ExecutorService executor,
+                                      int threads,
+                                      int rounds,
+                                      int readingCnt,
+                                      IntUnaryOperator operation) throws Exception {
+        PhaseCost phaseCost = new PhaseCost();
+        long startNanos = System.nanoTime();
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                long threadId = Thread.currentThread().getId();
+                long cpuStart = threadMXBean.getCurrentThreadCpuTime();
+                long allocStart = threadMXBean.getThreadAllocatedBytes(threadId);
+
+                long result = 0;
+                for (int round = 0; round < rounds; round++) {
+                    for (int idx = 0; idx < readingCnt; idx++) {
+                        result += operation.applyAsInt(idx);
+                    }
+                }
+                sink += result;
+
+                phaseCost.add(threadMXBean.getCurrentThreadCpuTime() - cpuStart,
+                        threadMXBean.getThreadAllocatedBytes(threadId) - allocStart);
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        phaseCost.wallNanos = System.nanoTime() - startNanos;
+        return phaseCost;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a set of workshop client applications in one JVM. This is the training run used by
+ * "_bash/buildAppCds.sh" to collect the list of loaded classes for an AppCDS archive.
+ *
+ * Usage: AppCdsTrainingRun <app_class> <app_params> [-- <app_class> <app_params>] ...
+ *
+ * Each application runs on its own thread. The applications are started in the given order
+ * and a bit apart from each other, so that a consumer that is listed before a producer has
+ * already subscribed when the producer starts publishing.
+ */
+public class AppCdsTrainingRun {
+    private final static String APP_SEPARATOR = "--";
+    private final static long APP_START_INTERVAL_MS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        List<List<String>> appInvocations = new ArrayList<>();
+        List<String> curInvocation = new ArrayList<>();
+        for (String arg : args) {
+            if (APP_SEPARATOR.equals(arg)) {
+                appInvocations.add(curInvocation);
+                curInvocation = new ArrayList<>();
+            }
+            else {
+                curInvocation.add(arg);
+            }
+        }
+        appInvocations.add(curInvocation);
+
+        AtomicInteger failedAppCnt = new AtomicInteger();
+        List<Thread> appThreads = new ArrayList<>();
+
+        for (List<String> invocation : appInvocations) {
+            if (invocation.isEmpty()) {
+                continue;
+            }
+
+            Class<?> appClass = Class.forName(invocation.get(0));
+            String[] appParams = invocation.subList(1, invocation.size()).toArray(new String[0]);
+            Constructor<?> constructor = appClass.getConstructor(String.class, String[].class);
+            PulsarWorkshopCmdApp workshopApp =
+                    (PulsarWorkshopCmdApp) constructor.newInstance(appClass.getSimpleName(), appParams);
+
+            System.out.println("Starting training run of " + appClass.getSimpleName() + " " + Arrays.toString(appParams));
+            Thread appThread = new Thread(() -> {
+                if (workshopApp.runCmdApp() != 0) {
+                    failedAppCnt.incrementAndGet();
+                }
+            }, appClass.getSimpleName());
+            appThread.start();
+            appThreads.add(appThread);
+
+            Thread.sleep(APP_START_INTERVAL_MS);
+        }
+
+        for (Thread appThread : appThreads) {
+            appThread.join();
+        }
+
+        System.exit(failedAppCnt.get() > 0 ? 1 : 0);
+    }
+}
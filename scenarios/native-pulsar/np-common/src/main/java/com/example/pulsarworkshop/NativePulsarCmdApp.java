@@ -20,15 +20,25 @@ package com.example.pulsarworkshop;
 
 import com.example.pulsarworkshop.exception.InvalidParamException;
 import com.example.pulsarworkshop.exception.WorkshopRuntimException;
+import com.example.pulsarworkshop.memory.MemoryPulsarClient;
 import com.example.pulsarworkshop.util.ClientConnConf;
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.pulsar.client.api.ClientBuilder;
 import org.apache.pulsar.client.api.PulsarClient;
 import org.apache.pulsar.client.api.PulsarClientException;
 
+import java.util.concurrent.TimeUnit;
+
 abstract public class NativePulsarCmdApp extends PulsarWorkshopCmdApp {
     protected final static String API_TYPE = "native-pulsar";
+
+    // Number of threads calling the message listeners of the consumers (same default as the Pulsar client)
+    protected int listenerThreads = 1;
+    // Set by the applications that produce and acknowledge within Pulsar transactions
+    protected boolean enableTransaction = false;
+
     public NativePulsarCmdApp(String appName, String[] inputParams) {
         super(appName, inputParams);
         addOptionalCommandLineOption("a", "astra",
@@ -42,10 +52,27 @@ abstract public class NativePulsarCmdApp extends PulsarWorkshopCmdApp {
     }
 
     public PulsarClient createNativePulsarClient() throws PulsarClientException {
-        ClientBuilder clientBuilder = PulsarClient.builder();
-
         String pulsarSvcUrl = clientConnConf.getValue("brokerServiceUrl");
+
+        // "memory://" replaces the Pulsar cluster with an in-JVM queue. This is only meant for
+        // benchmarking and profiling the client side code without any broker or network cost.
+        // The (optional) "memoryTxnLatencyMs" stands for the transaction coordinator round trips.
+        if (MemoryPulsarClient.isMemoryServiceUrl(pulsarSvcUrl)) {
+            return MemoryPulsarClient.create(listenerThreads,
+                    NumberUtils.toLong(clientConnConf.getValue("memoryTxnLatencyMs"), 0));
+        }
+
+        ClientBuilder clientBuilder = PulsarClient.builder();
         clientBuilder.serviceUrl(pulsarSvcUrl);
+        clientBuilder.listenerThreads(listenerThreads);
+        clientBuilder.enableTransaction(enableTransaction);
+
+        // The client statistics (e.g. the bytes a producer sent) are only updated once per stats
+        // interval, 60 seconds by default. A shorter interval makes them usable for short runs.
+        String statsIntervalSeconds = clientConnConf.getValue("statsIntervalSeconds");
+        if (StringUtils.isNotBlank(statsIntervalSeconds)) {
+            clientBuilder.statsInterval(NumberUtils.toLong(statsIntervalSeconds, 60), TimeUnit.SECONDS);
+        }
 
         String authPluginClassName = clientConnConf.getValue("authPlugin");
         String authParams = clientConnConf.getValue("authParams");
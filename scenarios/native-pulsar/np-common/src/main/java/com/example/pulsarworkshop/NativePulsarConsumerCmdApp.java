@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop;
+
+import com.example.pulsarworkshop.exception.InvalidParamException;
+import com.example.pulsarworkshop.util.AckRpcCounter;
+import com.example.pulsarworkshop.util.ConsumerLagStats;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.ConsumerBuilder;
+import org.apache.pulsar.client.api.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Common consumer settings of the native Pulsar consumer applications.
+ */
+abstract public class NativePulsarConsumerCmdApp extends NativePulsarCmdApp {
+
+    // Same defaults as the Pulsar client
+    public final static int DFT_MAX_PENDING_CHUNKED_MESSAGE = 10;
+    public final static int DFT_EXPIRE_INCOMPLETE_CHUNKED_MESSAGE_SEC = 60;
+    public final static int DFT_ACK_GROUP_TIME_MS = 100;
+    public final static int DFT_RECEIVER_QUEUE_SIZE = 1000;
+
+    // Chunked message settings: how many large messages can be assembled at the same time,
+    // and what to do with the incomplete ones
+    protected int maxPendingChunkedMessage;
+    protected boolean autoAckOldestChunkedMessage;
+    protected int expireIncompleteChunkedMessageSec;
+
+    // The acknowledgements are sent to the broker in groups, at most once per "ackGroupTimeMs"
+    protected int ackGroupTimeMs;
+    protected AckRpcCounter ackRpcCounter;
+
+    // The number of messages each consumer prefetches from the broker
+    protected int receiverQueueSize;
+
+    // How old the received messages are (publish and event time), with an optional live view
+    // every "lagReportIntervalSec" seconds, next to the receiver queue size of the consumers
+    protected final ConsumerLagStats lagStats = new ConsumerLagStats();
+    protected int lagReportIntervalSec;
+    private final List<Consumer<?>> lagReportConsumers = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService lagReportExecutor;
+
+    public NativePulsarConsumerCmdApp(String appName, String[] inputParams) {
+        super(appName, inputParams);
+        addOptionalCommandLineOption("mpc", "maxPendingChunkedMessage",
+                true, "Max number of chunked messages being assembled at the same time (default: " +
+                        DFT_MAX_PENDING_CHUNKED_MESSAGE + ").");
+        addOptionalCommandLineOption("aoc", "autoAckOldestChunkedMessageOnQueueFull",
+                false, "Whether to acknowledge (instead of redeliver) the oldest incomplete chunked message when there are too many.");
+        addOptionalCommandLineOption("eic", "expireTimeOfIncompleteChunkedMessage",
+                true, "Time in seconds after which an incomplete chunked message is dropped (default: " +
+                        DFT_EXPIRE_INCOMPLETE_CHUNKED_MESSAGE_SEC + ").");
+        addOptionalCommandLineOption("agt", "ackGroupTime",
+                true, "Time in milliseconds to group the acknowledgements before sending them, 0 to send them right away (default: " +
+                        DFT_ACK_GROUP_TIME_MS + ").");
+        addOptionalCommandLineOption("rqs", "receiverQueueSize",
+                true, "Number of messages prefetched by each consumer (default: " + DFT_RECEIVER_QUEUE_SIZE + ").");
+        addOptionalCommandLineOption("lri", "lagReportInterval",
+                true, "Interval in seconds of the live message lag and receiver queue report (default: 0, i.e. only at the end).");
+    }
+
+    @Override
+    public void processExtendedInputParams() throws InvalidParamException {
+        super.processExtendedInputParams();
+
+        // (Optional) Chunked messages
+        maxPendingChunkedMessage = processIntegerInputParam("mpc", DFT_MAX_PENDING_CHUNKED_MESSAGE);
+        if (maxPendingChunkedMessage <= 0) {
+            throw new InvalidParamException("The max number of pending chunked messages must be a positive integer!");
+        }
+        autoAckOldestChunkedMessage = commandLine.hasOption("aoc");
+        expireIncompleteChunkedMessageSec = processIntegerInputParam("eic", DFT_EXPIRE_INCOMPLETE_CHUNKED_MESSAGE_SEC);
+        if (expireIncompleteChunkedMessageSec <= 0) {
+            throw new InvalidParamException("The expire time of incomplete chunked messages must be a positive integer!");
+        }
+
+        // (Optional) Acknowledgement grouping
+        ackGroupTimeMs = processIntegerInputParam("agt", DFT_ACK_GROUP_TIME_MS);
+        if (ackGroupTimeMs < 0) {
+            throw new InvalidParamException("The acknowledgement group time must be a non-negative integer!");
+        }
+        ackRpcCounter = new AckRpcCounter(ackGroupTimeMs);
+
+        // (Optional) Receiver queue (prefetch)
+        receiverQueueSize = processIntegerInputParam("rqs", DFT_RECEIVER_QUEUE_SIZE);
+        if (receiverQueueSize < 0) {
+            throw new InvalidParamException("The receiver queue size must be a non-negative integer!");
+        }
+
+        // (Optional) Live lag report
+        lagReportIntervalSec = processIntegerInputParam("lri", 0);
+        if (lagReportIntervalSec < 0) {
+            throw new InvalidParamException("The lag report interval must be a non-negative integer!");
+        }
+    }
+
+    /**
+     * Apply the common consumer settings from the command line to the consumer builder.
+     */
+    public <T> ConsumerBuilder<T> applyConsumerSettings(ConsumerBuilder<T> consumerBuilder) {
+        // The chunks of a large message are assembled in the consumer memory, so this caps
+        // that memory when several producers publish large messages at the same time
+        return consumerBuilder
+                .maxPendingChunkedMessage(maxPendingChunkedMessage)
+                .autoAckOldestChunkedMessageOnQueueFull(autoAckOldestChunkedMessage)
+                .expireTimeOfIncompleteChunkedMessage(expireIncompleteChunkedMessageSec, TimeUnit.SECONDS)
+                .acknowledgmentGroupTime(ackGroupTimeMs, TimeUnit.MILLISECONDS)
+                .receiverQueueSize(receiverQueueSize);
+    }
+
+    /**
+     * Record the publish and event lag of a received message.
+     */
+    protected void recordLag(Message<?> message) {
+        lagStats.record(message);
+    }
+
+    /**
+     * Include the consumer in the live lag report, which starts with the first consumer (when
+     * a report interval is set).
+     */
+    protected synchronized void addToLagReport(Consumer<?> consumer) {
+        lagReportConsumers.add(consumer);
+        if (lagReportIntervalSec > 0 && lagReportExecutor == null) {
+            lagReportExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, appName + "-lag-report");
+                thread.setDaemon(true);
+                return thread;
+            });
+            lagReportExecutor.scheduleAtFixedRate(() -> System.out.println("[" + appName + "] Last " +
+                            lagReportIntervalSec + " s: " + lagStats.takeIntervalSummary() +
+                            ", receiver queue " + receiverQueueView()),
+                    lagReportIntervalSec, lagReportIntervalSec, TimeUnit.SECONDS);
+        }
+    }
+
+    protected void removeFromLagReport(Consumer<?> consumer) {
+        lagReportConsumers.remove(consumer);
+    }
+
+    private synchronized void stopLagReport() {
+        if (lagReportExecutor != null) {
+            lagReportExecutor.shutdownNow();
+            lagReportExecutor = null;
+        }
+    }
+
+    /**
+     * @return the number of messages in the receiver queue of each consumer, out of its size
+     */
+    private String receiverQueueView() {
+        List<String> queueSizes = new ArrayList<>();
+        for (Consumer<?> consumer : lagReportConsumers) {
+            Integer msgNumInReceiverQueue = null;
+            try {
+                msgNumInReceiverQueue = consumer.getStats().getMsgNumInReceiverQueue();
+            }
+            catch (RuntimeException re) {
+                // e.g. a closed consumer, or the stats are disabled ("statsIntervalSeconds" = 0)
+            }
+            queueSizes.add((msgNumInReceiverQueue == null) ? "n/a" : String.valueOf(msgNumInReceiverQueue));
+        }
+        return queueSizes + " / " + getCurrentReceiverQueueSize();
+    }
+
+    /**
+     * @return the receiver queue size of the consumers, for the applications that change it
+     */
+    protected int getCurrentReceiverQueueSize() {
+        return receiverQueueSize;
+    }
+
+    /**
+     * Print the number of received messages and the throughput, next to the number of
+     * acknowledgement calls and the estimated number of ack commands sent to the broker,
+     * and the lag histograms of the received messages.
+     */
+    protected void reportConsumption(long msgRecvd, double elapsedSec) {
+        stopLagReport();
+
+        System.out.println("[" + appName + "] Received " + msgRecvd + " messages in " +
+                String.format("%.3f", elapsedSec) + " s (" +
+                String.format("%.1f", (elapsedSec > 0) ? msgRecvd / elapsedSec : 0.0) + " msg/s)");
+        long ackRpcCnt = ackRpcCounter.getAckRpcCnt();
+        System.out.println("[" + appName + "] Acknowledged " + ackRpcCounter.getAckedMsgCnt() + " messages with " +
+                ackRpcCounter.getAckCalls() + " ack calls and ~" + ackRpcCnt + " ack commands (" +
+                String.format("%.1f", (ackRpcCnt > 0) ? (double) ackRpcCounter.getAckedMsgCnt() / ackRpcCnt : 0.0) +
+                " msgs/command, ack group time " + ackGroupTimeMs + " ms)");
+        System.out.println("[" + appName + "] Lag: " + lagStats.getTotalSummary());
+    }
+}
@@ -0,0 +1,647 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop;
+
+import com.example.pulsarworkshop.exception.InvalidParamException;
+import com.example.pulsarworkshop.exception.WorkshopRuntimException;
+import com.example.pulsarworkshop.memory.MemoryBroker;
+import com.example.pulsarworkshop.memory.MemoryPulsarClient;
+import com.example.pulsarworkshop.util.AsyncSendWindow;
+import com.example.pulsarworkshop.util.DeviceHashMessageRouter;
+import com.example.pulsarworkshop.util.KeyOrderedExecutor;
+import com.example.pulsarworkshop.util.PartitionPublishStats;
+import com.example.pulsarworkshop.util.ProducerPayloadStats;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.pulsar.client.api.BatcherBuilder;
+import org.apache.pulsar.client.api.CompressionType;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.MessageRoutingMode;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.ProducerBuilder;
+import org.apache.pulsar.client.api.ProducerStats;
+import org.apache.pulsar.client.api.PulsarClient;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.TypedMessageBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Common producer settings and publishing logic of the native Pulsar producer applications.
+ */
+abstract public class NativePulsarProducerCmdApp extends NativePulsarCmdApp {
+
+    public final static int DFT_MAX_IN_FLIGHT = 1000;
+    // Same defaults as the Pulsar client
+    public final static int DFT_BATCHING_MAX_MESSAGES = 1000;
+    public final static int DFT_BATCHING_MAX_BYTES = 128 * 1024;
+    public final static int DFT_BATCHING_MAX_PUBLISH_DELAY_MS = 1;
+    // How long to wait for the in-flight messages when the publishing is done
+    private final static long DRAIN_TIMEOUT_SEC = 60;
+    // Partition routers, the first one is the Pulsar client default
+    public final static String PARTITION_ROUTER_ROUND_ROBIN = "RoundRobin";
+    public final static String PARTITION_ROUTER_SINGLE = "Single";
+    public final static String PARTITION_ROUTER_DEVICE_HASH = "DeviceHash";
+    // A partition that gets this many times its fair share of the messages is reported as hot
+    private final static double HOT_PARTITION_FACTOR = 1.5;
+    // How the messages are spread over several producers, the first one is the default
+    public final static String PRODUCER_DISTRIBUTION_ROUND_ROBIN = "RoundRobin";
+    public final static String PRODUCER_DISTRIBUTION_KEY = "Key";
+    // Max number of messages queued for the sender thread of each producer
+    public final static int DFT_SENDER_QUEUE_SIZE = 1000;
+    // The first messages are always logged, then one message out of "logInterval"
+    public final static int DFT_LOG_INTERVAL = 1000;
+    private final static int LOG_FIRST_MSGS = 10;
+
+    // Whether to publish with "sendAsync()" (pipelined) instead of "send()" (one round trip per message)
+    protected boolean asyncMode;
+    protected int maxInFlight;
+    protected AsyncSendWindow asyncSendWindow;
+
+    // Batching and compression settings (from the command line or the "client.conf" file)
+    protected boolean batchingEnabled;
+    protected int batchingMaxMessages;
+    protected int batchingMaxBytes;
+    protected int batchingMaxPublishDelayMs;
+    protected CompressionType compressionType;
+    // Whether to split the messages larger than the broker "maxMessageSize" into chunks
+    protected boolean chunkingEnabled;
+    // Whether to estimate the payload bytes on the wire with the client internals (costs about the compression CPU again)
+    protected boolean estimateWireBytes;
+    protected ProducerPayloadStats payloadStats;
+
+    // Whether to use the IoT device id as the message key (for per-device ordering with Key_Shared)
+    protected boolean keyByDevice;
+
+    // Partitioned topic settings: the expected number of partitions (0 means not checked) and the routing
+    protected int numPartitions;
+    protected MessageRoutingMode messageRoutingMode;
+    protected PartitionPublishStats partitionStats;
+
+    // Several producers on the shared client, each one publishing from its own sender thread
+    protected int producerNum;
+    protected boolean distributeByKey;
+    private KeyOrderedExecutor senderExecutor;
+    private long dispatchedCnt = 0;
+
+    // Logging every published message would cost more than publishing it
+    protected int logInterval;
+
+    private final LongAdder publishedCnt = new LongAdder();
+    private final AtomicLong publishStartNanos = new AtomicLong(-1);
+    private boolean publishingDrained = false;
+
+    public NativePulsarProducerCmdApp(String appName, String[] inputParams) {
+        super(appName, inputParams);
+        addOptionalCommandLineOption("as", "async",
+                false, "Whether to publish messages asynchronously (pipelined).");
+        addOptionalCommandLineOption("mif", "maxInFlight",
+                true, "Max number of in-flight messages in async mode (default: " + DFT_MAX_IN_FLIGHT + ").");
+        addOptionalCommandLineOption("bat", "batching",
+                true, "Whether to enable message batching (default: true).");
+        addOptionalCommandLineOption("bmm", "batchingMaxMessages",
+                true, "Max number of messages in a batch (default: " + DFT_BATCHING_MAX_MESSAGES + ").");
+        addOptionalCommandLineOption("bmb", "batchingMaxBytes",
+                true, "Max number of bytes in a batch (default: " + DFT_BATCHING_MAX_BYTES + ").");
+        addOptionalCommandLineOption("bmd", "batchingMaxPublishDelay",
+                true, "Max delay in milliseconds before a batch is published (default: " + DFT_BATCHING_MAX_PUBLISH_DELAY_MS + ").");
+        addOptionalCommandLineOption("chk", "chunking",
+                true, "Whether to enable message chunking (default: false). Disables batching.");
+        addOptionalCommandLineOption("ct", "compressionType",
+                true, "Compression type: NONE (default), LZ4, ZLIB, ZSTD, SNAPPY.");
+        addOptionalCommandLineOption("ewb", "estimateWireBytes",
+                false, "Whether to estimate the payload bytes on the wire after batching and compression, a client-internal approximation (costs CPU on the send path).");
+        addOptionalCommandLineOption("kd", "keyByDevice",
+                false, "Whether to use the IoT device id as the message key (with key based batching).");
+        addOptionalCommandLineOption("np", "numPartitions",
+                true, "Number of partitions of the (partitioned) topic.");
+        addOptionalCommandLineOption("pr", "partitionRouter",
+                true, "Partition router: " + PARTITION_ROUTER_ROUND_ROBIN + " (default), " +
+                        PARTITION_ROUTER_SINGLE + ", " + PARTITION_ROUTER_DEVICE_HASH + ".");
+        addOptionalCommandLineOption("pn", "producerNum",
+                true, "Number of producers on the shared client, each one with its own sender thread (default: 1).");
+        addOptionalCommandLineOption("pd", "producerDistribution",
+                true, "How the messages are spread over the producers: " + PRODUCER_DISTRIBUTION_ROUND_ROBIN +
+                        " (default) or " + PRODUCER_DISTRIBUTION_KEY + " (keeps the order of each IoT device).");
+        addOptionalCommandLineOption("li", "logInterval",
+                true, "Log the first " + LOG_FIRST_MSGS + " published messages, then one out of this many (default: " +
+                        DFT_LOG_INTERVAL + ", 0 to log only the first ones).");
+    }
+
+    @Override
+    public void processExtendedInputParams() throws InvalidParamException {
+        super.processExtendedInputParams();
+
+        // (Optional) Asynchronous publishing and its in-flight window
+        asyncMode = commandLine.hasOption("as");
+        maxInFlight = processIntegerInputParam("mif", DFT_MAX_IN_FLIGHT);
+        if (maxInFlight <= 0) {
+            throw new InvalidParamException("The max number of in-flight messages must be a positive integer!");
+        }
+        if (asyncMode) {
+            asyncSendWindow = new AsyncSendWindow(maxInFlight);
+        }
+
+        // (Optional) Batching, chunking and compression
+        chunkingEnabled = BooleanUtils.toBoolean(getProducerSetting("chk"));
+        // The Pulsar client doesn't allow batching and chunking together
+        batchingEnabled = !chunkingEnabled && BooleanUtils.toBoolean(
+                StringUtils.defaultIfBlank(getProducerSetting("bat"), "true"));
+        batchingMaxMessages = getPositiveIntProducerSetting("bmm", DFT_BATCHING_MAX_MESSAGES);
+        batchingMaxBytes = getPositiveIntProducerSetting("bmb", DFT_BATCHING_MAX_BYTES);
+        batchingMaxPublishDelayMs = getPositiveIntProducerSetting("bmd", DFT_BATCHING_MAX_PUBLISH_DELAY_MS);
+
+        String compression = getProducerSetting("ct");
+        try {
+            compressionType = StringUtils.isBlank(compression) ?
+                    CompressionType.NONE : CompressionType.valueOf(StringUtils.upperCase(compression));
+        }
+        catch (IllegalArgumentException iae) {
+            throw new InvalidParamException("Invalid compression type: " + compression + "!");
+        }
+
+        // (Optional) Message key
+        keyByDevice = commandLine.hasOption("kd");
+
+        // (Optional) Partitioned topic
+        numPartitions = processIntegerInputParam("np", 0);
+        if (numPartitions < 0) {
+            throw new InvalidParamException("The number of partitions must be a positive integer!");
+        }
+
+        String partitionRouter = processStringInputParam("pr");
+        if (StringUtils.isBlank(partitionRouter) ||
+            StringUtils.equalsIgnoreCase(partitionRouter, PARTITION_ROUTER_ROUND_ROBIN)) {
+            messageRoutingMode = MessageRoutingMode.RoundRobinPartition;
+        }
+        else if (StringUtils.equalsIgnoreCase(partitionRouter, PARTITION_ROUTER_SINGLE)) {
+            messageRoutingMode = MessageRoutingMode.SinglePartition;
+        }
+        else if (StringUtils.equalsIgnoreCase(partitionRouter, PARTITION_ROUTER_DEVICE_HASH)) {
+            messageRoutingMode = MessageRoutingMode.CustomPartition;
+            // The device hash router routes by the message key
+            keyByDevice = true;
+        }
+        else {
+            throw new InvalidParamException("Invalid partition router: " + partitionRouter + "!");
+        }
+        partitionStats = new PartitionPublishStats();
+
+        // (Optional) Multiple producers
+        producerNum = processIntegerInputParam("pn", 1);
+        if (producerNum <= 0) {
+            throw new InvalidParamException("The number of producers must be a positive integer!");
+        }
+        String producerDistribution = processStringInputParam("pd");
+        if (StringUtils.isBlank(producerDistribution) ||
+            StringUtils.equalsIgnoreCase(producerDistribution, PRODUCER_DISTRIBUTION_ROUND_ROBIN)) {
+            distributeByKey = false;
+        }
+        else if (StringUtils.equalsIgnoreCase(producerDistribution, PRODUCER_DISTRIBUTION_KEY)) {
+            distributeByKey = true;
+        }
+        else {
+            throw new InvalidParamException("Invalid producer distribution: " + producerDistribution + "!");
+        }
+
+        // (Optional) Published message logging
+        logInterval = processIntegerInputParam("li", DFT_LOG_INTERVAL);
+        if (logInterval < 0) {
+            throw new InvalidParamException("The log interval must be a non-negative integer!");
+        }
+
+        // (Optional) Wire bytes estimation. A synchronous send waits for the broker acknowledgement,
+        // so each batch only holds one message
+        estimateWireBytes = commandLine.hasOption("ewb");
+        if (estimateWireBytes) {
+            int effectiveBatchMaxMessages = (batchingEnabled && asyncMode) ? batchingMaxMessages : 1;
+            payloadStats = new ProducerPayloadStats(
+                    compressionType,
+                    effectiveBatchMaxMessages,
+                    batchingMaxBytes,
+                    batchingMaxPublishDelayMs,
+                    TimeUnit.MILLISECONDS,
+                    batchingEnabled && keyByDevice);
+        }
+        else {
+            payloadStats = new ProducerPayloadStats();
+        }
+    }
+
+    /**
+     * A producer setting is taken from the command line first. If not set there, it is taken
+     * from the "client.conf" file, using the long option name as the key.
+     */
+    private String getProducerSetting(String optionName) {
+        String value = processStringInputParam(optionName);
+        if (StringUtils.isBlank(value) && clientConnConf != null) {
+            value = clientConnConf.getValue(cliOptions.getOption(optionName).getLongOpt());
+        }
+        return value;
+    }
+
+    private int getPositiveIntProducerSetting(String optionName, int dftValue) {
+        String value = getProducerSetting(optionName);
+        if (StringUtils.isBlank(value)) {
+            return dftValue;
+        }
+
+        int intVal = NumberUtils.toInt(value);
+        if (intVal <= 0) {
+            throw new InvalidParamException(cliOptions.getOption(optionName).getLongOpt(),
+                    "must be a positive integer, but got \"" + value + "\"");
+        }
+        return intVal;
+    }
+
+    /**
+     * Besides creating the client, make sure the topic has the expected number of partitions.
+     * The partitioned topics of a Pulsar cluster are created by the scenario deployment script,
+     * while the in-memory broker creates the partitioned topic on demand.
+     */
+    @Override
+    public PulsarClient createNativePulsarClient() throws PulsarClientException {
+        PulsarClient pulsarClient = super.createNativePulsarClient();
+        if (numPartitions == 0) {
+            return pulsarClient;
+        }
+
+        if (MemoryPulsarClient.isMemoryServiceUrl(clientConnConf.getValue("brokerServiceUrl"))) {
+            MemoryBroker.getInstance().createPartitionedTopic(topicName, numPartitions);
+        }
+
+        try {
+            List<String> partitions = pulsarClient.getPartitionsForTopic(topicName).get();
+            // A non-partitioned topic has itself as its only "partition"
+            int actualPartitions = (partitions.size() == 1 && partitions.get(0).equals(topicName)) ? 0 : partitions.size();
+            if (actualPartitions != numPartitions) {
+                throw new InvalidParamException("numPartitions", "the topic \"" + topicName + "\" has " +
+                        actualPartitions + " partitions, but " + numPartitions + " are expected");
+            }
+        } catch (ExecutionException ee) {
+            throw new PulsarClientException(ee.getCause());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new PulsarClientException(ie);
+        }
+        return pulsarClient;
+    }
+
+    /**
+     * Apply the common producer settings from the command line to the producer builder.
+     */
+    public <T> ProducerBuilder<T> applyProducerSettings(ProducerBuilder<T> producerBuilder) {
+        producerBuilder.enableBatching(batchingEnabled);
+        if (batchingEnabled) {
+            producerBuilder
+                    .batchingMaxMessages(batchingMaxMessages)
+                    .batchingMaxBytes(batchingMaxBytes)
+                    .batchingMaxPublishDelay(batchingMaxPublishDelayMs, TimeUnit.MILLISECONDS);
+
+            // The default batcher puts messages of different keys into one batch, which is then
+            // dispatched as a whole to one Key_Shared consumer. Key based batching keeps each
+            // batch to a single key so the key to consumer assignment is preserved.
+            if (keyByDevice) {
+                producerBuilder.batcherBuilder(BatcherBuilder.KEY_BASED);
+            }
+        }
+        // A chunk is at most the "maxMessageSize" of the broker the producer is connected to
+        // ("chunkMaxMessageSize" is not available in this client version)
+        producerBuilder.enableChunking(chunkingEnabled);
+        producerBuilder
+                .compressionType(compressionType)
+                .intercept(payloadStats, partitionStats);
+
+        // Only relevant for a partitioned topic. Note that the default (round-robin) routing also
+        // keeps the messages of a key on one partition, but with the Pulsar string hash.
+        producerBuilder.messageRoutingMode(messageRoutingMode);
+        if (messageRoutingMode == MessageRoutingMode.CustomPartition) {
+            producerBuilder.messageRouter(new DeviceHashMessageRouter());
+        }
+
+        if (asyncMode) {
+            // The in-flight window already bounds the pending messages. This only makes sure
+            // the client side queue never rejects a message when the window is larger than its default.
+            producerBuilder
+                    .maxPendingMessages(maxInFlight)
+                    .blockIfQueueFull(true);
+        }
+        return producerBuilder;
+    }
+
+    /**
+     * Publish one message, either synchronously or within the asynchronous in-flight window.
+     *
+     * @return completed with the message id once the broker has acknowledged the message
+     */
+    public <T> CompletableFuture<MessageId> publishMessage(TypedMessageBuilder<T> messageBuilder) throws PulsarClientException {
+        if (publishStartNanos.get() == -1) {
+            publishStartNanos.compareAndSet(-1, System.nanoTime());
+        }
+
+        CompletableFuture<MessageId> sendFuture;
+        if (!asyncMode) {
+            sendFuture = CompletableFuture.completedFuture(messageBuilder.send());
+        }
+        else {
+            // Fail fast like the synchronous mode does
+            Throwable failure = asyncSendWindow.getFirstFailure();
+            if (failure != null) {
+                throw new WorkshopRuntimException("Asynchronous message publishing failed: " + failure.getMessage());
+            }
+
+            try {
+                asyncSendWindow.acquire();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new WorkshopRuntimException("Interrupted while waiting for the in-flight messages!");
+            }
+            sendFuture = messageBuilder.sendAsync();
+            asyncSendWindow.track(sendFuture);
+        }
+
+        publishedCnt.increment();
+        return sendFuture;
+    }
+
+    /**
+     * @return whether to log the message published at the given index (from 0), see "-li"
+     */
+    protected boolean isLogged(long msgIdx) {
+        return msgIdx < LOG_FIRST_MSGS || (logInterval > 0 && msgIdx % logInterval == 0);
+    }
+
+    /**
+     * Create the producers ("-pn", 1 by default) from the same builder. With more than one
+     * producer, each one gets its own sender thread, fed by {@link #dispatchMessage}.
+     */
+    public <T> List<Producer<T>> createProducers(ProducerBuilder<T> producerBuilder) throws PulsarClientException {
+        List<Producer<T>> producers = new ArrayList<>();
+        for (int i = 0; i < producerNum; i++) {
+            producers.add(producerBuilder.create());
+        }
+        if (producerNum > 1) {
+            senderExecutor = new KeyOrderedExecutor(appName + "-sender", producerNum, DFT_SENDER_QUEUE_SIZE, null, null);
+        }
+        return producers;
+    }
+
+    /**
+     * Publish one message on one of the producers. With a single producer, the message is published
+     * by the calling thread. Otherwise, it is queued for the sender thread of the producer picked
+     * round-robin, or by the hash of the key (so all the messages of a key keep their order).
+     *
+     * @param key            the key the messages are distributed by (usually the IoT device id)
+     * @param messageCreator creates the message on the given producer (called on its sender thread)
+     * @return completed with the message id once the broker has acknowledged the message
+     */
+    public <T> CompletableFuture<MessageId> dispatchMessage(List<Producer<T>> producers,
+                                                            String key,
+                                                            Function<Producer<T>, TypedMessageBuilder<T>> messageCreator) throws PulsarClientException {
+        if (senderExecutor == null) {
+            return publishMessage(messageCreator.apply(producers.get(0)));
+        }
+
+        // Fail fast like a single producer does
+        Throwable failure = senderExecutor.getFirstFailure();
+        if (failure != null) {
+            throw new WorkshopRuntimException("Message publishing failed: " + failure.getMessage());
+        }
+
+        int producerIdx = distributeByKey ? senderExecutor.workerFor(key) : (int) (dispatchedCnt++ % producerNum);
+        Producer<T> producer = producers.get(producerIdx);
+        CompletableFuture<MessageId> published = new CompletableFuture<>();
+        try {
+            senderExecutor.submitTo(producerIdx, () -> {
+                try {
+                    publishMessage(messageCreator.apply(producer)).whenComplete((messageId, throwable) -> {
+                        if (throwable == null) {
+                            published.complete(messageId);
+                        }
+                        else {
+                            published.completeExceptionally(throwable);
+                        }
+                    });
+                } catch (PulsarClientException pce) {
+                    published.completeExceptionally(pce);
+                    throw new WorkshopRuntimException(pce.getMessage());
+                } catch (RuntimeException re) {
+                    published.completeExceptionally(re);
+                    throw re;
+                }
+            });
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new WorkshopRuntimException("Interrupted while waiting for the sender threads!");
+        }
+        return published;
+    }
+
+    /**
+     * Called at the end of "execute()": wait for all the in-flight messages and fail if any of them failed.
+     */
+    public void completePublishing(Producer<?> producer) {
+        completePublishing(List.of(producer));
+    }
+
+    public void completePublishing(List<? extends Producer<?>> producers) {
+        drainPublishing(producers);
+
+        if (senderExecutor != null && senderExecutor.getFailedCnt() > 0) {
+            throw new WorkshopRuntimException(senderExecutor.getFailedCnt() + " sends failed, " +
+                    "first failure: " + senderExecutor.getFirstFailure().getMessage());
+        }
+        if (asyncMode && asyncSendWindow.getFailedCnt() > 0) {
+            throw new WorkshopRuntimException(asyncSendWindow.getFailedCnt() + " asynchronous sends failed, " +
+                    "first failure: " + asyncSendWindow.getFirstFailure().getMessage());
+        }
+    }
+
+    /**
+     * Called by "termCmdApp()" before closing the producer: wait for all the in-flight messages
+     * and report the publishing statistics. Only the first call has an effect.
+     */
+    public void drainPublishing(Producer<?> producer) {
+        if (producer != null) {
+            drainPublishing(List.of(producer));
+        }
+    }
+
+    public void drainPublishing(List<? extends Producer<?>> producers) {
+        if (publishingDrained || producers == null || producers.isEmpty()) {
+            return;
+        }
+        publishingDrained = true;
+
+        // The sender threads publish the messages still in their queues first
+        if (senderExecutor != null) {
+            try {
+                if (!senderExecutor.shutdownAndAwait(DRAIN_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+                    System.out.println("[" + appName + "] Timed out waiting for the sender threads!");
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (asyncMode) {
+            try {
+                for (Producer<?> producer : producers) {
+                    producer.flush();
+                }
+                if (!asyncSendWindow.awaitDrained(DRAIN_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+                    System.out.println("[" + appName + "] Timed out waiting for " +
+                            asyncSendWindow.getInFlight() + " in-flight messages!");
+                }
+            } catch (PulsarClientException pce) {
+                System.out.println("[" + appName + "] Failed to flush the producer: " + pce.getMessage());
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        reportPublishing(producers);
+        reportPartitions(producers.get(0).getNumOfPartitions());
+    }
+
+    protected void reportPublishing(List<? extends Producer<?>> producers) {
+        if (publishStartNanos.get() == -1) {
+            return;
+        }
+
+        double elapsedSec = (System.nanoTime() - publishStartNanos.get()) / 1_000_000_000.0;
+        long totalPublishedCnt = publishedCnt.sum();
+        StringBuilder report = new StringBuilder()
+                .append("[").append(appName).append("] Published ").append(totalPublishedCnt).append(" messages in ")
+                .append(String.format("%.3f", elapsedSec)).append(" s (")
+                .append(String.format("%.1f", totalPublishedCnt / elapsedSec)).append(" msg/s)");
+        if (senderExecutor != null) {
+            report.append(" with ").append(producerNum).append(" producers (")
+                    .append(distributeByKey ? PRODUCER_DISTRIBUTION_KEY : PRODUCER_DISTRIBUTION_ROUND_ROBIN)
+                    .append(" distribution)");
+        }
+        if (asyncMode) {
+            report.append("; async window ").append(maxInFlight)
+                    .append(", completed ").append(asyncSendWindow.getCompletedCnt())
+                    .append(", failed ").append(asyncSendWindow.getFailedCnt());
+        }
+        System.out.println(report);
+
+        if (senderExecutor != null) {
+            List<Long> producerMsgCnts = senderExecutor.getWorkerTaskCnts();
+            for (int idx = 0; idx < producerMsgCnts.size(); idx++) {
+                long msgCnt = producerMsgCnts.get(idx);
+                System.out.println("[" + appName + "]   producer " + idx + ": " + msgCnt + " msgs (" +
+                        String.format("%.1f", (totalPublishedCnt > 0) ? msgCnt * 100.0 / totalPublishedCnt : 0.0) + "%, " +
+                        String.format("%.1f", msgCnt / elapsedSec) + " msg/s)");
+            }
+        }
+
+        long rawBytes = payloadStats.getRawBytes();
+        String wireBytesSummary;
+        if (payloadStats.isWireBytesEstimated()) {
+            long wireBytes = payloadStats.getWireBytes();
+            wireBytesSummary = "wire ~" + wireBytes + " (client-internal approximation, " +
+                    String.format("%.2f", wireBytes / elapsedSec / 1_048_576) + " MB/s, " +
+                    String.format("%.1f", (rawBytes > 0) ? wireBytes * 100.0 / rawBytes : 0.0) + "% of raw, " +
+                    payloadStats.getBatchCnt() + " batches)";
+        }
+        else {
+            wireBytesSummary = "wire not estimated (see -ewb)";
+        }
+        System.out.println("[" + appName + "] Payload bytes (batching " +
+                (batchingEnabled ? "max " + batchingMaxMessages + " msgs/" + batchingMaxBytes + " bytes/" +
+                        batchingMaxPublishDelayMs + " ms" : "disabled") +
+                ", chunking " + (chunkingEnabled ? "enabled" : "disabled") +
+                ", compression " + compressionType + "): " +
+                "raw " + rawBytes + " (" + String.format("%.2f", rawBytes / elapsedSec / 1_048_576) + " MB/s), " +
+                sentBytesSummary(producers, rawBytes) + ", " +
+                wireBytesSummary);
+    }
+
+    /**
+     * The bytes sent by the producers, from the client statistics. The client only updates them
+     * once per stats interval ("statsIntervalSeconds" in the "client.conf" file), so they usually
+     * miss the end of the run: the bytes per message are compared with the raw ones instead.
+     */
+    private String sentBytesSummary(List<? extends Producer<?>> producers, long rawBytes) {
+        long sentMsgCnt = 0;
+        long sentBytes = 0;
+        for (Producer<?> producer : producers) {
+            ProducerStats producerStats = producer.getStats();
+            sentMsgCnt += producerStats.getTotalMsgsSent();
+            sentBytes += producerStats.getTotalBytesSent();
+        }
+
+        long rawMsgCnt = payloadStats.getRawMsgCnt();
+        if (sentMsgCnt == 0 || rawMsgCnt == 0) {
+            return "sent not reported yet (client stats interval)";
+        }
+        double sentBytesPerMsg = (double) sentBytes / sentMsgCnt;
+        double rawBytesPerMsg = (double) rawBytes / rawMsgCnt;
+        return "sent " + sentBytes + " for " + sentMsgCnt + " msgs (" +
+                String.format("%.1f", sentBytesPerMsg * 100.0 / rawBytesPerMsg) + "% of raw per msg)";
+    }
+
+    /**
+     * Report the throughput and latency per partition and flag the hot partitions, i.e. the ones
+     * that got a lot more than their fair share of the messages.
+     */
+    protected void reportPartitions(int topicPartitions) {
+        if (publishStartNanos.get() == -1 || topicPartitions == 0) {
+            return;
+        }
+
+        double elapsedSec = (System.nanoTime() - publishStartNanos.get()) / 1_000_000_000.0;
+        SortedMap<Integer, PartitionPublishStats.PartitionStats> statsMap = partitionStats.getPartitionStats();
+        long totalMsgCnt = 0;
+        for (PartitionPublishStats.PartitionStats stats : statsMap.values()) {
+            totalMsgCnt += stats.getAckedMsgCnt();
+        }
+        double fairShare = (double) totalMsgCnt / topicPartitions;
+
+        System.out.println("[" + appName + "] Messages per partition (" + topicPartitions + " partitions, " +
+                messageRoutingMode + " routing):");
+        int hotPartitionCnt = 0;
+        for (int idx = 0; idx < topicPartitions; idx++) {
+            PartitionPublishStats.PartitionStats stats = statsMap.get(idx);
+            long msgCnt = (stats == null) ? 0 : stats.getAckedMsgCnt();
+            boolean hot = (msgCnt > fairShare * HOT_PARTITION_FACTOR);
+            if (hot) {
+                hotPartitionCnt++;
+            }
+            System.out.println("[" + appName + "]   partition " + idx + ": " + msgCnt + " msgs (" +
+                    String.format("%.1f", (totalMsgCnt > 0) ? msgCnt * 100.0 / totalMsgCnt : 0.0) + "%, " +
+                    String.format("%.1f", msgCnt / elapsedSec) + " msg/s), latency avg " +
+                    String.format("%.2f", (stats == null) ? 0.0 : stats.getLatencyAvgMs()) + " ms, max " +
+                    ((stats == null) ? 0 : stats.getLatencyMaxMs()) + " ms" + (hot ? "  <-- HOT" : ""));
+        }
+        System.out.println("[" + appName + "] " + hotPartitionCnt + " hot partition(s) with more than " +
+                HOT_PARTITION_FACTOR + "x the fair share of " + String.format("%.1f", fairShare) + " msgs");
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.memory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Base class of the in-memory stand-ins for the Pulsar client API interfaces.
+ *
+ * The Pulsar client interfaces are large, while the workshop applications only use a
+ * small subset of them. Each subclass is exposed as a dynamic proxy of one client API
+ * interface and only handles the methods it supports:
+ * - builder settings that don't matter for an in-JVM queue are accepted and ignored
+ * - any other unsupported method fails with an UnsupportedOperationException
+ */
+abstract class MemoryApiHandler<A> implements InvocationHandler {
+    protected final static Object NOT_HANDLED = new Object();
+
+    private final Class<?> apiType;
+    private final A proxy;
+
+    @SuppressWarnings("unchecked")
+    protected MemoryApiHandler(Class<?> apiType) {
+        this.apiType = apiType;
+        this.proxy = (A) Proxy.newProxyInstance(
+                apiType.getClassLoader(), new Class<?>[] { apiType }, this);
+    }
+
+    public A getProxy() {
+        return proxy;
+    }
+
+    /**
+     * @return the method result, or NOT_HANDLED if the method isn't supported by this handler
+     */
+    protected abstract Object handle(String methodName, Object[] args) throws Exception;
+
+    @Override
+    public Object invoke(Object proxyObj, Method method, Object[] args) throws Throwable {
+        Object[] methodArgs = (args == null) ? new Object[0] : args;
+
+        Object result = handle(method.getName(), methodArgs);
+        if (result != NOT_HANDLED) {
+            return result;
+        }
+
+        switch (method.getName()) {
+            case "toString":
+                return getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxyObj));
+            case "hashCode":
+                return System.identityHashCode(proxyObj);
+            case "equals":
+                return proxyObj == methodArgs[0];
+        }
+
+        // Fluent builder settings (batching, compression, etc.) have no meaning for an in-JVM queue
+        if (method.getReturnType() == apiType) {
+            return proxyObj;
+        }
+
+        throw new UnsupportedOperationException(
+                apiType.getSimpleName() + "." + method.getName() + "() is not supported by the in-memory broker!");
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.memory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A JVM-wide registry of in-memory topics that backs the "memory://" service URL.
+ * All clients created in the same JVM share the same topics.
+ */
+public class MemoryBroker {
+    private final static MemoryBroker INSTANCE = new MemoryBroker();
+
+    private final Map<String, MemoryTopic> topics = new ConcurrentHashMap<>();
+    // Dispatches the delayed messages ("deliverAfter()/deliverAt()") when they are due
+    private ScheduledExecutorService delayedDeliveryExecutor;
+
+    private MemoryBroker() {
+    }
+
+    public static MemoryBroker getInstance() {
+        return INSTANCE;
+    }
+
+    public MemoryTopic getTopic(String topicName) {
+        return topics.computeIfAbsent(topicName, MemoryTopic::new);
+    }
+
+    /**
+     * Turn the topic into a partitioned topic. Its partitions share one message queue, so a consumer
+     * of the topic gets the messages of all the partitions, like a consumer of a real partitioned topic.
+     */
+    public MemoryTopic createPartitionedTopic(String topicName, int numPartitions) {
+        MemoryTopic topic = getTopic(topicName);
+        topic.setNumPartitions(numPartitions);
+        return topic;
+    }
+
+    public void deleteTopic(String topicName) {
+        topics.remove(topicName);
+    }
+
+    synchronized void scheduleDelivery(Runnable delivery, long delayMs) {
+        if (delayedDeliveryExecutor == null) {
+            delayedDeliveryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "memory-delayed-delivery");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        delayedDeliveryExecutor.schedule(delivery, delayMs, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.memory;
+
+import org.apache.pulsar.client.api.BatchReceivePolicy;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageListener;
+import org.apache.pulsar.client.api.Messages;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.transaction.Transaction;
+import org.apache.pulsar.client.util.RetryMessageUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+class MemoryConsumer<T> extends MemoryApiHandler<Consumer<T>> {
+    private final static Logger logger = LoggerFactory.getLogger(MemoryConsumer.class);
+
+    // Used when the batch receive policy doesn't limit the number of messages
+    private final static int DFT_BATCH_RECEIVE_MAX_MESSAGES = 1000;
+    // Max messages delivered to the message listener in a row, before letting the other
+    // consumers of the same listener thread go, and how long to wait when there is none
+    private final static int LISTENER_MAX_MESSAGES_IN_A_ROW = 100;
+    private final static long LISTENER_IDLE_WAIT_MS = 1;
+
+    private final MemoryPulsarClient client;
+    private final MemorySubscription subscription;
+    private final BlockingQueue<MemoryEntry> entryQueue;
+    private final String consumerName;
+    private final Schema<T> schema;
+    private final BatchReceivePolicy batchReceivePolicy;
+    private final MemoryConsumerStats consumerStats;
+    private final MemoryRedeliveryPolicy redeliveryPolicy;
+    private volatile boolean closed = false;
+
+    MemoryConsumer(MemoryPulsarClient client,
+                   MemorySubscription subscription,
+                   String consumerName,
+                   Schema<T> schema,
+                   BatchReceivePolicy batchReceivePolicy,
+                   int receiverQueueSize,
+                   MemoryRedeliveryPolicy redeliveryPolicy) {
+        super(Consumer.class);
+        this.client = client;
+        this.subscription = subscription;
+        this.entryQueue = subscription.attach();
+        this.consumerName = consumerName;
+        this.schema = schema;
+        this.batchReceivePolicy = batchReceivePolicy;
+        this.consumerStats = new MemoryConsumerStats(entryQueue, receiverQueueSize);
+        this.redeliveryPolicy = redeliveryPolicy;
+    }
+
+    @Override
+    protected Object handle(String methodName, Object[] args) throws PulsarClientException {
+        switch (methodName) {
+            case "getTopic":
+                return subscription.getTopic().getTopicName();
+            case "getSubscription":
+                return subscription.getSubscriptionName();
+            case "getConsumerName":
+                return consumerName;
+            case "getStats":
+                return consumerStats.getProxy();
+            case "receive":
+                return (args.length == 0) ? receive() : receive((Integer) args[0], (TimeUnit) args[1]);
+            case "receiveAsync":
+                return CompletableFuture.supplyAsync(this::receiveUnchecked);
+            case "batchReceive":
+                return batchReceive();
+            case "acknowledge":
+            case "acknowledgeCumulative":
+                acknowledge(args[0]);
+                return null;
+            case "acknowledgeAsync":
+            case "acknowledgeCumulativeAsync":
+                if (args.length == 2 && args[1] instanceof Transaction) {
+                    // Applied when the transaction commits
+                    try {
+                        MemoryTransaction.of(args[1]).addOp(() -> acknowledge(args[0]));
+                    }
+                    catch (IllegalStateException ise) {
+                        return CompletableFuture.failedFuture(new PulsarClientException(ise.getMessage()));
+                    }
+                    return CompletableFuture.completedFuture(null);
+                }
+                acknowledge(args[0]);
+                return CompletableFuture.completedFuture(null);
+            case "negativeAcknowledge":
+                if (args[0] instanceof Message) {
+                    negativeAcknowledge(((MemoryMessage<?>) args[0]).getEntry());
+                    return null;
+                }
+                else if (args[0] instanceof Messages) {
+                    for (Message<?> message : (Messages<?>) args[0]) {
+                        negativeAcknowledge(((MemoryMessage<?>) message).getEntry());
+                    }
+                    return null;
+                }
+                return NOT_HANDLED;
+            case "reconsumeLater":
+                reconsumeLater(args);
+                return null;
+            case "reconsumeLaterAsync":
+                try {
+                    reconsumeLater(args);
+                }
+                catch (PulsarClientException pce) {
+                    return CompletableFuture.failedFuture(pce);
+                }
+                return CompletableFuture.completedFuture(null);
+            case "unsubscribe":
+                closed = true;
+                subscription.detach(entryQueue);
+                subscription.getTopic().unsubscribe(subscription.getSubscriptionName());
+                return null;
+            case "isConnected":
+                return true;
+            case "hasReachedEndOfTopic":
+                return false;
+            case "getLastDisconnectedTimestamp":
+                return 0L;
+            case "redeliverUnacknowledgedMessages":
+            case "pause":
+            case "resume":
+                return null;
+            case "close":
+                closed = true;
+                subscription.detach(entryQueue);
+                return null;
+            case "closeAsync":
+                closed = true;
+                subscription.detach(entryQueue);
+                return CompletableFuture.completedFuture(null);
+            default:
+                return NOT_HANDLED;
+        }
+    }
+
+    /**
+     * Deliver the messages to the message listener from the given listener thread, which may be
+     * shared with other consumers, until the consumer is closed.
+     */
+    void startListener(MessageListener<T> messageListener, ScheduledExecutorService listenerExecutor) {
+        Consumer<T> consumer = getProxy();
+        Runnable deliverTask = new Runnable() {
+            @Override
+            public void run() {
+                int delivered = 0;
+                MemoryEntry entry;
+                while (!closed && delivered < LISTENER_MAX_MESSAGES_IN_A_ROW && (entry = entryQueue.poll()) != null) {
+                    try {
+                        messageListener.received(consumer, new MemoryMessage<>(entry, schema));
+                    }
+                    catch (RuntimeException re) {
+                        // Like the Pulsar client, a failing listener doesn't stop the delivery
+                        logger.error("Message listener error in message handling: {}", re.getMessage());
+                    }
+                    delivered++;
+                }
+                if (closed) {
+                    return;
+                }
+
+                try {
+                    if (delivered > 0) {
+                        listenerExecutor.execute(this);
+                    } else {
+                        listenerExecutor.schedule(this, LISTENER_IDLE_WAIT_MS, TimeUnit.MILLISECONDS);
+                    }
+                }
+                catch (RejectedExecutionException ree) {
+                    // The client is closed
+                }
+            }
+        };
+        listenerExecutor.execute(deliverTask);
+    }
+
+    private Message<T> receive() throws PulsarClientException {
+        try {
+            return new MemoryMessage<>(entryQueue.take(), schema);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new PulsarClientException(ie);
+        }
+    }
+
+    private Message<T> receive(int timeout, TimeUnit unit) throws PulsarClientException {
+        try {
+            MemoryEntry entry = entryQueue.poll(timeout, unit);
+            return (entry == null) ? null : new MemoryMessage<>(entry, schema);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new PulsarClientException(ie);
+        }
+    }
+
+    private Message<T> receiveUnchecked() {
+        try {
+            return receive();
+        }
+        catch (PulsarClientException pce) {
+            throw new CompletionException(pce);
+        }
+    }
+
+    // Returns when either the message count limit, the byte size limit or the timeout
+    // of the batch receive policy is reached, whichever comes first.
+    private Messages<T> batchReceive() throws PulsarClientException {
+        int maxNumMessages = (batchReceivePolicy.getMaxNumMessages() > 0)
+                ? batchReceivePolicy.getMaxNumMessages() : DFT_BATCH_RECEIVE_MAX_MESSAGES;
+        long maxNumBytes = (batchReceivePolicy.getMaxNumBytes() > 0)
+                ? batchReceivePolicy.getMaxNumBytes() : Long.MAX_VALUE;
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchReceivePolicy.getTimeoutMs());
+
+        MemoryMessages<T> messages = new MemoryMessages<>();
+        long numBytes = 0;
+        try {
+            while (messages.size() < maxNumMessages && numBytes < maxNumBytes) {
+                // Take the already available messages first; only then wait until the timeout
+                MemoryEntry entry = entryQueue.poll();
+                if (entry == null) {
+                    long remainingNanos = deadlineNanos - System.nanoTime();
+                    if (remainingNanos <= 0) {
+                        break;
+                    }
+                    entry = entryQueue.poll(remainingNanos, TimeUnit.NANOSECONDS);
+                    if (entry == null) {
+                        break;
+                    }
+                }
+                messages.add(new MemoryMessage<>(entry, schema));
+                numBytes += entry.payload.length;
+            }
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new PulsarClientException(ie);
+        }
+        return messages;
+    }
+
+    private void negativeAcknowledge(MemoryEntry entry) {
+        long delayMs = redeliveryPolicy.getNackDelayMs(entry.redeliveryCount);
+        if (delayMs > 0) {
+            client.schedule(() -> redeliverOrDeadLetter(entry), delayMs);
+        }
+        else {
+            redeliverOrDeadLetter(entry);
+        }
+    }
+
+    private void redeliverOrDeadLetter(MemoryEntry entry) {
+        if (redeliveryPolicy.isDeadLetter(entry.redeliveryCount)) {
+            deadLetter(entry, entry.properties);
+        }
+        else {
+            subscription.redeliver(entry);
+        }
+    }
+
+    // reconsumeLater(Message|Messages, [Map<String, String> properties,] long delay, TimeUnit unit)
+    @SuppressWarnings("unchecked")
+    private void reconsumeLater(Object[] args) throws PulsarClientException {
+        if (!redeliveryPolicy.isRetryEnabled()) {
+            throw new PulsarClientException("reconsumeLater method not support!");
+        }
+        Map<String, String> customProperties = (args.length == 4) ? (Map<String, String>) args[1] : null;
+        long delayMs = ((TimeUnit) args[args.length - 1]).toMillis((Long) args[args.length - 2]);
+
+        if (args[0] instanceof Messages) {
+            for (Message<?> message : (Messages<?>) args[0]) {
+                reconsumeLater(((MemoryMessage<?>) message).getEntry(), customProperties, delayMs);
+            }
+        }
+        else {
+            reconsumeLater(((MemoryMessage<?>) args[0]).getEntry(), customProperties, delayMs);
+        }
+    }
+
+    /**
+     * Publish the entry to the retry letter topic (delivered after the delay) and acknowledge it,
+     * or to the dead letter topic once it was reconsumed "maxRedeliverCount" times.
+     */
+    private void reconsumeLater(MemoryEntry entry, Map<String, String> customProperties, long delayMs) {
+        Map<String, String> properties = new HashMap<>(entry.properties);
+        if (customProperties != null) {
+            properties.putAll(customProperties);
+        }
+        int reconsumeTimes = Integer.parseInt(properties.getOrDefault(RetryMessageUtil.SYSTEM_PROPERTY_RECONSUMETIMES, "0")) + 1;
+        if (reconsumeTimes > redeliveryPolicy.getMaxRedeliverCount()) {
+            deadLetter(entry, properties);
+            return;
+        }
+
+        properties.putIfAbsent(RetryMessageUtil.SYSTEM_PROPERTY_REAL_TOPIC, entry.topicName);
+        properties.putIfAbsent(RetryMessageUtil.PROPERTY_ORIGIN_MESSAGE_ID, entry.messageId.toString());
+        properties.put(RetryMessageUtil.SYSTEM_PROPERTY_RECONSUMETIMES, String.valueOf(reconsumeTimes));
+        properties.put(RetryMessageUtil.SYSTEM_PROPERTY_DELAY_TIME, String.valueOf(delayMs));
+        republish(redeliveryPolicy.getRetryLetterTopic(), entry, properties, delayMs);
+        subscription.acknowledge(1);
+    }
+
+    private void deadLetter(MemoryEntry entry, Map<String, String> properties) {
+        Map<String, String> deadLetterProperties = new HashMap<>(properties);
+        deadLetterProperties.putIfAbsent(RetryMessageUtil.SYSTEM_PROPERTY_REAL_TOPIC, entry.topicName);
+        deadLetterProperties.putIfAbsent(RetryMessageUtil.PROPERTY_ORIGIN_MESSAGE_ID, entry.messageId.toString());
+        republish(redeliveryPolicy.getDeadLetterTopic(), entry, deadLetterProperties, 0);
+        subscription.deadLettered();
+    }
+
+    // Like the retry and dead letter producers of the Pulsar client, which use the consumer schema
+    private void republish(String topicName, MemoryEntry entry, Map<String, String> properties, long delayMs) {
+        MemoryTopic topic = client.getBroker().getTopic(topicName);
+        MemoryEntry republished = new MemoryEntry(
+                topic.nextMessageId(-1),
+                topicName,
+                consumerName,
+                entry.key,
+                properties,
+                entry.payload,
+                topic.registerSchema(schema.getSchemaInfo()),
+                entry.sequenceId,
+                System.currentTimeMillis(),
+                entry.eventTime,
+                0);
+        topic.publishAfter(republished, delayMs);
+    }
+
+    private void acknowledge(Object ackTarget) {
+        if (ackTarget instanceof Messages) {
+            subscription.acknowledge(((Messages<?>) ackTarget).size());
+        }
+        else if (ackTarget instanceof List) {
+            subscription.acknowledge(((List<?>) ackTarget).size());
+        }
+        else {
+            subscription.acknowledge(1);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.memory;
+
+import org.apache.pulsar.client.api.BatchReceivePolicy;
+import org.apache.pulsar.client.api.ConsumerBuilder;
+import org.apache.pulsar.client.api.DeadLetterPolicy;
+import org.apache.pulsar.client.api.MessageListener;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.RedeliveryBackoff;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.SubscriptionType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class MemoryConsumerBuilder<T> extends MemoryApiHandler<ConsumerBuilder<T>> {
+    private final static AtomicInteger consumerCounter = new AtomicInteger();
+
+    private final MemoryPulsarClient client;
+    private final Schema<T> schema;
+
+    private final List<String> topicNames = new ArrayList<>();
+    private String subscriptionName;
+    private String consumerName;
+    private SubscriptionType subscriptionType = SubscriptionType.Exclusive;
+    private BatchReceivePolicy batchReceivePolicy = BatchReceivePolicy.DEFAULT_POLICY;
+    private MessageListener<T> messageListener;
+    // Same default as the Pulsar client
+    private int receiverQueueSize = 1000;
+    // The redelivery settings (see MemoryRedeliveryPolicy)
+    private long nackDelayMs = 0;
+    private RedeliveryBackoff nackBackoff;
+    private DeadLetterPolicy deadLetterPolicy;
+    private boolean retryEnabled = false;
+
+    MemoryConsumerBuilder(MemoryPulsarClient client, Schema<T> schema) {
+        super(ConsumerBuilder.class);
+        this.client = client;
+        this.schema = schema;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Object handle(String methodName, Object[] args) throws PulsarClientException {
+        switch (methodName) {
+            case "topic":
+                topicNames.addAll(Arrays.asList((String[]) args[0]));
+                return getProxy();
+            case "topics":
+                topicNames.addAll((List<String>) args[0]);
+                return getProxy();
+            case "subscriptionName":
+                subscriptionName = (String) args[0];
+                return getProxy();
+            case "subscriptionType":
+                subscriptionType = (SubscriptionType) args[0];
+                return getProxy();
+            case "consumerName":
+                consumerName = (String) args[0];
+                return getProxy();
+            case "batchReceivePolicy":
+                batchReceivePolicy = (BatchReceivePolicy) args[0];
+                return getProxy();
+            case "messageListener":
+                messageListener = (MessageListener<T>) args[0];
+                return getProxy();
+            case "receiverQueueSize":
+                receiverQueueSize = (Integer) args[0];
+                return getProxy();
+            case "negativeAckRedeliveryDelay":
+                nackDelayMs = ((TimeUnit) args[1]).toMillis((Long) args[0]);
+                return getProxy();
+            case "negativeAckRedeliveryBackoff":
+                nackBackoff = (RedeliveryBackoff) args[0];
+                return getProxy();
+            case "deadLetterPolicy":
+                deadLetterPolicy = (DeadLetterPolicy) args[0];
+                return getProxy();
+            case "enableRetry":
+                retryEnabled = (Boolean) args[0];
+                return getProxy();
+            case "subscribe":
+                return subscribe();
+            case "subscribeAsync":
+                return CompletableFuture.completedFuture(subscribe());
+            case "clone":
+                MemoryConsumerBuilder<T> cloned = new MemoryConsumerBuilder<>(client, schema);
+                cloned.topicNames.addAll(topicNames);
+                cloned.subscriptionName = subscriptionName;
+                cloned.consumerName = consumerName;
+                cloned.subscriptionType = subscriptionType;
+                cloned.batchReceivePolicy = batchReceivePolicy;
+                cloned.messageListener = messageListener;
+                cloned.receiverQueueSize = receiverQueueSize;
+                cloned.nackDelayMs = nackDelayMs;
+                cloned.nackBackoff = nackBackoff;
+                cloned.deadLetterPolicy = deadLetterPolicy;
+                cloned.retryEnabled = retryEnabled;
+                return cloned.getProxy();
+            default:
+                return NOT_HANDLED;
+        }
+    }
+
+    private Object subscribe() throws PulsarClientException {
+        if (topicNames.size() != 1) {
+            throw new PulsarClientException.InvalidConfigurationException(
+                    "The in-memory broker supports exactly one topic per consumer");
+        }
+        if (subscriptionName == null) {
+            throw new PulsarClientException.InvalidConfigurationException("Subscription name must be set on the consumer builder");
+        }
+
+        MemoryTopic topic = client.getBroker().getTopic(topicNames.get(0));
+        MemorySchemaInfoProvider.configure(schema, topic);
+        MemorySubscription subscription = topic.subscribe(subscriptionName, subscriptionType);
+        MemoryRedeliveryPolicy redeliveryPolicy = new MemoryRedeliveryPolicy(nackDelayMs, nackBackoff,
+                deadLetterPolicy, retryEnabled, topicNames.get(0), subscriptionName);
+        if (retryEnabled) {
+            // Like the Pulsar client, the consumer also subscribes to the retry letter topic
+            client.getBroker().getTopic(redeliveryPolicy.getRetryLetterTopic())
+                    .subscribe(subscriptionName, subscriptionType, subscription);
+        }
+        String name = (consumerName != null) ? consumerName : "memory-consumer-" + consumerCounter.getAndIncrement();
+        MemoryConsumer<T> consumer = new MemoryConsumer<>(client, subscription, name, schema, batchReceivePolicy,
+                receiverQueueSize, redeliveryPolicy);
+        if (messageListener != null) {
+            consumer.startListener(messageListener, client.nextListenerExecutor());
+        }
+        return consumer.getProxy();
+    }
+}
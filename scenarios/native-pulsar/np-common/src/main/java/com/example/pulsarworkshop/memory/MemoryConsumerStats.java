@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.memory;
+
+import org.apache.pulsar.client.api.ConsumerStats;
+
+import java.util.Queue;
+
+/**
+ * The statistics of an in-memory consumer. Only the receiver queue size is supported: the
+ * queue of the in-memory subscription stands for both the broker backlog and the receiver
+ * queue, so the receiver queue size is that queue size, capped at the consumer's
+ * "receiverQueueSize" like the prefetch of the Pulsar client.
+ */
+class MemoryConsumerStats extends MemoryApiHandler<ConsumerStats> {
+    private final Queue<MemoryEntry> entryQueue;
+    private final int receiverQueueSize;
+
+    MemoryConsumerStats(Queue<MemoryEntry> entryQueue, int receiverQueueSize) {
+        super(ConsumerStats.class);
+        this.entryQueue = entryQueue;
+        this.receiverQueueSize = receiverQueueSize;
+    }
+
+    @Override
+    protected Object handle(String methodName, Object[] args) {
+        switch (methodName) {
+            case "getMsgNumInReceiverQueue":
+                return Math.min(entryQueue.size(), receiverQueueSize);
+            case "getMsgNumInSubReceiverQueue":
+                return null;
+            default:
+                return NOT_HANDLED;
+        }
+    }
+}
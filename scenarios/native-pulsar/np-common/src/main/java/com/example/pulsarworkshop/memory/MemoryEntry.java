@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.memory;
+
+import org.apache.pulsar.client.impl.MessageIdImpl;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * One published message as stored by the in-memory broker. The payload is kept
+ * in its schema encoded form so the consumer side pays the same decoding cost
+ * as it would against a real broker.
+ */
+public class MemoryEntry {
+    final MessageIdImpl messageId;
+    final String topicName;
+    final String producerName;
+    final String key;
+    final Map<String, String> properties;
+    final byte[] payload;
+    // null for a schema without versions
+    final byte[] schemaVersion;
+    final long sequenceId;
+    final long publishTime;
+    final long eventTime;
+    final int redeliveryCount;
+
+    MemoryEntry(MessageIdImpl messageId,
+                String topicName,
+                String producerName,
+                String key,
+                Map<String, String> properties,
+                byte[] payload,
+                byte[] schemaVersion,
+                long sequenceId,
+                long publishTime,
+                long eventTime,
+                int redeliveryCount) {
+        this.messageId = messageId;
+        this.topicName = topicName;
+        this.producerName = producerName;
+        this.key = key;
+        this.properties = (properties == null) ? Collections.emptyMap() : properties;
+        this.payload = payload;
+        this.schemaVersion = schemaVersion;
+        this.sequenceId = sequenceId;
+        this.publishTime = publishTime;
+        this.eventTime = eventTime;
+        this.redeliveryCount = redeliveryCount;
+    }
+
+    MemoryEntry redelivered() {
+        return new MemoryEntry(messageId, topicName, producerName, key, properties, payload,
+                schemaVersion, sequenceId, publishTime, eventTime, redeliveryCount + 1);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.memory;
+
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.impl.schema.AbstractSchema;
+import org.apache.pulsar.client.impl.schema.AutoConsumeSchema;
+import org.apache.pulsar.common.api.EncryptionContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+
+public class MemoryMessage<T> implements Message<T> {
+    private final MemoryEntry entry;
+    private final Schema<T> schema;
+
+    MemoryMessage(MemoryEntry entry, Schema<T> schema) {
+        this.entry = entry;
+        this.schema = schema;
+    }
+
+    MemoryEntry getEntry() {
+        return entry;
+    }
+
+    @Override
+    public Map<String, String> getProperties() {
+        return entry.properties;
+    }
+
+    @Override
+    public boolean hasProperty(String name) {
+        return entry.properties.containsKey(name);
+    }
+
+    @Override
+    public String getProperty(String name) {
+        return entry.properties.get(name);
+    }
+
+    @Override
+    public byte[] getData() {
+        return entry.payload;
+    }
+
+    @Override
+    public int size() {
+        return entry.payload.length;
+    }
+
+    @Override
+    public T getValue() {
+        // Like the Pulsar client, a versioned schema decodes the message with the schema it was written with
+        if (entry.schemaVersion != null && schema.supportSchemaVersioning()) {
+            return schema.decode(entry.payload, entry.schemaVersion);
+        }
+        return schema.decode(entry.payload);
+    }
+
+    @Override
+    public MessageId getMessageId() {
+        return entry.messageId;
+    }
+
+    @Override
+    public long getPublishTime() {
+        return entry.publishTime;
+    }
+
+    @Override
+    public long getEventTime() {
+        return entry.eventTime;
+    }
+
+    @Override
+    public long getSequenceId() {
+        return entry.sequenceId;
+    }
+
+    @Override
+    public String getProducerName() {
+        return entry.producerName;
+    }
+
+    @Override
+    public boolean hasKey() {
+        return entry.key != null;
+    }
+
+    @Override
+    public String getKey() {
+        return entry.key;
+    }
+
+    @Override
+    public boolean hasBase64EncodedKey() {
+        return false;
+    }
+
+    @Override
+    public byte[] getKeyBytes() {
+        return (entry.key == null) ? null : entry.key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean hasOrderingKey() {
+        return false;
+    }
+
+    @Override
+    public byte[] getOrderingKey() {
+        return null;
+    }
+
+    @Override
+    public String getTopicName() {
+        return entry.topicName;
+    }
+
+    @Override
+    public Optional<EncryptionContext> getEncryptionCtx() {
+        return Optional.empty();
+    }
+
+    @Override
+    public int getRedeliveryCount() {
+        return entry.redeliveryCount;
+    }
+
+    @Override
+    public byte[] getSchemaVersion() {
+        return entry.schemaVersion;
+    }
+
+    @Override
+    public Optional<Schema<?>> getReaderSchema() {
+        // Same as the Pulsar client: the schema of the message version
+        if (entry.schemaVersion == null) {
+            return Optional.of(schema);
+        }
+        if (schema instanceof AutoConsumeSchema) {
+            return Optional.of(((AutoConsumeSchema) schema).atSchemaVersion(entry.schemaVersion));
+        }
+        else if (schema instanceof AbstractSchema) {
+            return Optional.of(((AbstractSchema<?>) schema).atSchemaVersion(entry.schemaVersion));
+        }
+        return Optional.of(schema);
+    }
+
+    @Override
+    public boolean isReplicated() {
+        return false;
+    }
+
+    @Override
+    public String getReplicatedFrom() {
+        return null;
+    }
+
+    @Override
+    public void release() {
+    }
+
+    @Override
+    public boolean hasBrokerPublishTime() {
+        return false;
+    }
+
+    @Override
+    public Optional<Long> getBrokerPublishTime() {
+        return Optional.empty();
+    }
+
+    @Override
+    public boolean hasIndex() {
+        return false;
+    }
+
+    @Override
+    public Optional<Long> getIndex() {
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.memory;
+
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.TypedMessageBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+class MemoryMessageBuilder<T> extends MemoryApiHandler<TypedMessageBuilder<T>> {
+    private final MemoryProducer<?> producer;
+    private final Schema<T> schema;
+    private final byte[] schemaVersion;
+    // null for a message outside of a transaction
+    private final MemoryTransaction txn;
+
+    private String key;
+    private Map<String, String> properties;
+    private T value;
+    private long eventTime = 0;
+    private Long sequenceId;
+    // 0 to deliver right away
+    private long deliverAtMs = 0;
+
+    MemoryMessageBuilder(MemoryProducer<?> producer, Schema<T> schema, byte[] schemaVersion, MemoryTransaction txn) {
+        super(TypedMessageBuilder.class);
+        this.producer = producer;
+        this.schema = schema;
+        this.schemaVersion = schemaVersion;
+        this.txn = txn;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Object handle(String methodName, Object[] args) throws PulsarClientException {
+        switch (methodName) {
+            case "key":
+                key = (String) args[0];
+                return getProxy();
+            case "keyBytes":
+                key = new String((byte[]) args[0], StandardCharsets.UTF_8);
+                return getProxy();
+            case "value":
+                value = (T) args[0];
+                return getProxy();
+            case "property":
+                getProperties().put((String) args[0], (String) args[1]);
+                return getProxy();
+            case "properties":
+                getProperties().putAll((Map<String, String>) args[0]);
+                return getProxy();
+            case "eventTime":
+                eventTime = (Long) args[0];
+                return getProxy();
+            case "sequenceId":
+                sequenceId = (Long) args[0];
+                return getProxy();
+            case "deliverAfter":
+                deliverAtMs = System.currentTimeMillis() + ((TimeUnit) args[1]).toMillis((Long) args[0]);
+                return getProxy();
+            case "deliverAt":
+                deliverAtMs = (Long) args[0];
+                return getProxy();
+            case "send":
+                return publish();
+            case "sendAsync":
+                try {
+                    return CompletableFuture.completedFuture(publish());
+                }
+                catch (PulsarClientException pce) {
+                    return CompletableFuture.failedFuture(pce);
+                }
+            default:
+                return NOT_HANDLED;
+        }
+    }
+
+    private MessageId publish() throws PulsarClientException {
+        // The builder may be reused for the next message, so don't hand out the mutable property map
+        Map<String, String> msgProperties = (properties == null) ? null : new HashMap<>(properties);
+        try {
+            return producer.publish(schema.encode(value), schemaVersion, key, msgProperties, eventTime, sequenceId, deliverAtMs, txn);
+        }
+        catch (IllegalStateException ise) {
+            // The transaction is no longer open
+            throw new PulsarClientException(ise.getMessage());
+        }
+    }
+
+    private Map<String, String> getProperties() {
+        if (properties == null) {
+            properties = new HashMap<>();
+        }
+        return properties;
+    }
+}
@@ -16,32 +16,29 @@
  * specific language governing permissions and limitations
  * under the License.
  */
-package com.example.pulsarworkshop.pojo;
+package com.example.pulsarworkshop.memory;
 
-import lombok.*;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.Messages;
 
-@Builder
-@AllArgsConstructor
-@NoArgsConstructor
-@ToString
-public class IoTSensorData {
-    // Timestamp of reading (scientific notation)
-    // e.g. 1.43701862E9
-    @Getter @Setter private String ts;
-    // Device name
-    @Getter @Setter private String device;
-    // Carbon monoxide
-    @Getter @Setter private double co;
-    // Humidity (%)
-    @Getter @Setter private double humidity;
-    // Light detected?
-    @Getter @Setter private boolean light;
-    // Liquefied petroleum gas
-    @Getter @Setter private double lpg;
-    // Motion detected?
-    @Getter @Setter private boolean motion;
-    // Smoke
-    @Getter @Setter private double smoke;
-    // Temperature (F)
-    @Getter @Setter private double temp;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+public class MemoryMessages<T> implements Messages<T> {
+    private final List<Message<T>> messageList = new ArrayList<>();
+
+    void add(Message<T> message) {
+        messageList.add(message);
+    }
+
+    @Override
+    public int size() {
+        return messageList.size();
+    }
+
+    @Override
+    public Iterator<Message<T>> iterator() {
+        return messageList.iterator();
+    }
 }
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.memory;
+
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.MessageRouter;
+import org.apache.pulsar.client.api.MessageRoutingMode;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.interceptor.ProducerInterceptor;
+import org.apache.pulsar.client.api.transaction.Transaction;
+import org.apache.pulsar.client.impl.MessageIdImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+class MemoryProducer<T> extends MemoryApiHandler<Producer<T>> {
+    private final MemoryTopic topic;
+    private final String producerName;
+    private final Schema<T> schema;
+    private final byte[] schemaVersion;
+    private final List<ProducerInterceptor> interceptors;
+    private final MessageRoutingMode messageRoutingMode;
+    private final MessageRouter messageRouter;
+    private final AtomicLong lastSequenceId = new AtomicLong(-1);
+    private final AtomicInteger roundRobinIdx = new AtomicInteger();
+    private final MemoryProducerStats producerStats = new MemoryProducerStats();
+    // The partition of the keyless messages in the "SinglePartition" routing mode
+    private final int singlePartitionIdx = ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE);
+
+    MemoryProducer(MemoryTopic topic,
+                   String producerName,
+                   Schema<T> schema,
+                   List<ProducerInterceptor> interceptors,
+                   MessageRoutingMode messageRoutingMode,
+                   MessageRouter messageRouter) {
+        super(Producer.class);
+        this.topic = topic;
+        this.producerName = producerName;
+        this.schema = schema;
+        this.schemaVersion = topic.registerSchema(schema.getSchemaInfo());
+        this.interceptors = new ArrayList<>(interceptors);
+        this.messageRoutingMode = messageRoutingMode;
+        this.messageRouter = messageRouter;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Object handle(String methodName, Object[] args) {
+        switch (methodName) {
+            case "getTopic":
+                return topic.getTopicName();
+            case "getProducerName":
+                return producerName;
+            case "send":
+                return publish(schema.encode((T) args[0]), schemaVersion, null, null, 0, null, 0, null);
+            case "sendAsync":
+                return CompletableFuture.completedFuture(publish(schema.encode((T) args[0]), schemaVersion, null, null, 0, null, 0, null));
+            case "newMessage":
+                if (args.length == 0) {
+                    return new MemoryMessageBuilder<>(this, schema, schemaVersion, null).getProxy();
+                }
+                else if (args[0] instanceof Schema) {
+                    Schema<?> messageSchema = (Schema<?>) args[0];
+                    return new MemoryMessageBuilder<>(this, messageSchema,
+                            topic.registerSchema(messageSchema.getSchemaInfo()), null).getProxy();
+                }
+                else if (args[0] instanceof Transaction) {
+                    return new MemoryMessageBuilder<>(this, schema, schemaVersion, MemoryTransaction.of(args[0])).getProxy();
+                }
+                return NOT_HANDLED;
+            case "getStats":
+                return producerStats.getProxy();
+            case "getLastSequenceId":
+                return lastSequenceId.get();
+            case "getNumOfPartitions":
+                return topic.getNumPartitions();
+            case "isConnected":
+                return true;
+            case "getLastDisconnectedTimestamp":
+                return 0L;
+            case "flush":
+                return null;
+            case "close":
+                closeInterceptors();
+                return null;
+            case "flushAsync":
+                return CompletableFuture.completedFuture(null);
+            case "closeAsync":
+                closeInterceptors();
+                return CompletableFuture.completedFuture(null);
+            default:
+                return NOT_HANDLED;
+        }
+    }
+
+    MessageId publish(byte[] payload,
+                      byte[] payloadSchemaVersion,
+                      String key,
+                      Map<String, String> properties,
+                      long eventTime,
+                      Long sequenceId,
+                      long deliverAtMs,
+                      MemoryTransaction txn) {
+        long seqId = (sequenceId != null) ? sequenceId : lastSequenceId.get() + 1;
+        lastSequenceId.set(seqId);
+
+        int partitionIdx = choosePartition(payload, key, properties, eventTime, seqId);
+        MessageIdImpl messageId = topic.nextMessageId(partitionIdx);
+        MemoryEntry entry = new MemoryEntry(
+                messageId,
+                topic.getPartitionName(partitionIdx),
+                producerName,
+                key,
+                properties,
+                payload,
+                payloadSchemaVersion,
+                seqId,
+                System.currentTimeMillis(),
+                eventTime,
+                0);
+
+        // Like the real client, the interceptors see the message before it is sent and once it is acknowledged
+        if (interceptors.isEmpty()) {
+            deliver(entry, deliverAtMs, txn);
+        }
+        else {
+            MemoryMessage<T> message = new MemoryMessage<>(entry, schema);
+            for (ProducerInterceptor interceptor : interceptors) {
+                if (interceptor.eligible(message)) {
+                    interceptor.beforeSend(getProxy(), message);
+                }
+            }
+            deliver(entry, deliverAtMs, txn);
+            for (ProducerInterceptor interceptor : interceptors) {
+                if (interceptor.eligible(message)) {
+                    interceptor.onSendAcknowledgement(getProxy(), message, messageId, null);
+                }
+            }
+        }
+        return messageId;
+    }
+
+    /**
+     * The messages of a transaction only reach the consumers when it commits.
+     */
+    private void deliver(MemoryEntry entry, long deliverAtMs, MemoryTransaction txn) {
+        producerStats.recordSent(entry.payload.length);
+        if (txn == null) {
+            topic.publish(entry, deliverAtMs);
+        }
+        else {
+            txn.addOp(() -> topic.publish(entry, deliverAtMs));
+        }
+    }
+
+    /**
+     * Same routing as the Pulsar client: a keyed message goes to the partition of its key hash
+     * (with the default "JavaStringHash" hashing scheme), unless a custom router is used.
+     *
+     * @return -1 for a non-partitioned topic
+     */
+    private int choosePartition(byte[] payload, String key, Map<String, String> properties, long eventTime, long seqId) {
+        int numPartitions = topic.getNumPartitions();
+        if (numPartitions == 0) {
+            return -1;
+        }
+
+        if (messageRoutingMode == MessageRoutingMode.CustomPartition) {
+            // The router only gets to see the message content, not its (yet unknown) message id
+            MemoryEntry routedEntry = new MemoryEntry(null, topic.getTopicName(), producerName, key,
+                    properties, payload, null, seqId, System.currentTimeMillis(), eventTime, 0);
+            return messageRouter.choosePartition(new MemoryMessage<>(routedEntry, schema), () -> numPartitions);
+        }
+        else if (key != null) {
+            return (key.hashCode() & Integer.MAX_VALUE) % numPartitions;
+        }
+        else if (messageRoutingMode == MessageRoutingMode.SinglePartition) {
+            return singlePartitionIdx % numPartitions;
+        }
+        return (roundRobinIdx.getAndIncrement() & Integer.MAX_VALUE) % numPartitions;
+    }
+
+    private void closeInterceptors() {
+        for (ProducerInterceptor interceptor : interceptors) {
+            interceptor.close();
+        }
+    }
+}
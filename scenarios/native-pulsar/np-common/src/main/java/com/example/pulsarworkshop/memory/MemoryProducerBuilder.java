@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.memory;
+
+import org.apache.pulsar.client.api.MessageRouter;
+import org.apache.pulsar.client.api.MessageRoutingMode;
+import org.apache.pulsar.client.api.ProducerBuilder;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.interceptor.ProducerInterceptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class MemoryProducerBuilder<T> extends MemoryApiHandler<ProducerBuilder<T>> {
+    private final static AtomicInteger producerCounter = new AtomicInteger();
+
+    private final MemoryPulsarClient client;
+    private final Schema<T> schema;
+
+    private String topicName;
+    private String producerName;
+    private final List<ProducerInterceptor> interceptors = new ArrayList<>();
+    private MessageRoutingMode messageRoutingMode = MessageRoutingMode.RoundRobinPartition;
+    private MessageRouter messageRouter;
+
+    MemoryProducerBuilder(MemoryPulsarClient client, Schema<T> schema) {
+        super(ProducerBuilder.class);
+        this.client = client;
+        this.schema = schema;
+    }
+
+    @Override
+    protected Object handle(String methodName, Object[] args) throws PulsarClientException {
+        switch (methodName) {
+            case "topic":
+                topicName = (String) args[0];
+                return getProxy();
+            case "producerName":
+                producerName = (String) args[0];
+                return getProxy();
+            case "intercept":
+                // Only the non-deprecated interceptor API is supported
+                for (Object interceptor : (Object[]) args[0]) {
+                    if (!(interceptor instanceof ProducerInterceptor)) {
+                        return NOT_HANDLED;
+                    }
+                    interceptors.add((ProducerInterceptor) interceptor);
+                }
+                return getProxy();
+            case "messageRoutingMode":
+                messageRoutingMode = (MessageRoutingMode) args[0];
+                return getProxy();
+            case "messageRouter":
+                messageRouter = (MessageRouter) args[0];
+                return getProxy();
+            case "create":
+                return create();
+            case "createAsync":
+                return CompletableFuture.completedFuture(create());
+            case "clone":
+                MemoryProducerBuilder<T> cloned = new MemoryProducerBuilder<>(client, schema);
+                cloned.topicName = topicName;
+                cloned.producerName = producerName;
+                cloned.interceptors.addAll(interceptors);
+                cloned.messageRoutingMode = messageRoutingMode;
+                cloned.messageRouter = messageRouter;
+                return cloned.getProxy();
+            default:
+                return NOT_HANDLED;
+        }
+    }
+
+    private Object create() throws PulsarClientException {
+        if (topicName == null) {
+            throw new PulsarClientException.InvalidConfigurationException("Topic name must be set on the producer builder");
+        }
+
+        if (messageRoutingMode == MessageRoutingMode.CustomPartition && messageRouter == null) {
+            throw new PulsarClientException.InvalidConfigurationException("When 'messageRoutingMode' is " +
+                    MessageRoutingMode.CustomPartition + ", 'messageRouter' should be set");
+        }
+
+        String name = (producerName != null) ? producerName : "memory-producer-" + producerCounter.getAndIncrement();
+        return new MemoryProducer<>(client.getBroker().getTopic(topicName), name, schema, interceptors,
+                messageRoutingMode, messageRouter).getProxy();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.memory;
+
+import org.apache.pulsar.client.api.ProducerStats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The statistics of an in-memory producer. Only the sent message and byte totals are supported:
+ * the in-memory producer neither batches nor compresses, so the bytes sent are the payload
+ * bytes. Unlike the Pulsar client, the totals are up to date (no stats interval).
+ */
+class MemoryProducerStats extends MemoryApiHandler<ProducerStats> {
+    private final LongAdder totalMsgsSent = new LongAdder();
+    private final LongAdder totalBytesSent = new LongAdder();
+
+    MemoryProducerStats() {
+        super(ProducerStats.class);
+    }
+
+    void recordSent(int payloadSize) {
+        totalMsgsSent.increment();
+        totalBytesSent.add(payloadSize);
+    }
+
+    @Override
+    protected Object handle(String methodName, Object[] args) {
+        switch (methodName) {
+            case "getTotalMsgsSent":
+                return totalMsgsSent.sum();
+            case "getTotalBytesSent":
+                return totalBytesSent.sum();
+            default:
+                return NOT_HANDLED;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.memory;
+
+import org.apache.pulsar.client.api.PulsarClient;
+import org.apache.pulsar.client.api.Schema;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link PulsarClient} that is backed by the in-JVM {@link MemoryBroker} instead of a
+ * Pulsar cluster. It is used when the "brokerServiceUrl" in "client.conf" is "memory://...".
+ *
+ * It supports the subset of the client API used by the workshop applications, which makes it
+ * possible to benchmark and profile the client side code without any broker or network cost.
+ */
+public class MemoryPulsarClient extends MemoryApiHandler<PulsarClient> {
+    public final static String SERVICE_URL_PREFIX = "memory://";
+
+    private final MemoryBroker broker;
+    private volatile boolean closed = false;
+
+    // Like the "listenerThreads" of the Pulsar client: the message listeners of each consumer
+    // are called by one of these threads, assigned round-robin to the consumers
+    private final int listenerThreadNum;
+    private ScheduledExecutorService[] listenerExecutors;
+    private final AtomicInteger listenerConsumerCounter = new AtomicInteger();
+
+    // How long opening, committing and aborting a transaction take (the transaction coordinator
+    // round trips of a Pulsar cluster), 0 to complete them right away
+    private final long txnLatencyMs;
+    // Runs the client side timers: the transaction completions and the negative ack redeliveries
+    private ScheduledExecutorService timerExecutor;
+
+    private MemoryPulsarClient(MemoryBroker broker, int listenerThreadNum, long txnLatencyMs) {
+        super(PulsarClient.class);
+        this.broker = broker;
+        this.listenerThreadNum = Math.max(1, listenerThreadNum);
+        this.txnLatencyMs = Math.max(0, txnLatencyMs);
+    }
+
+    public static boolean isMemoryServiceUrl(String serviceUrl) {
+        return (serviceUrl != null) && serviceUrl.startsWith(SERVICE_URL_PREFIX);
+    }
+
+    public static PulsarClient create() {
+        return create(1);
+    }
+
+    public static PulsarClient create(int listenerThreadNum) {
+        return create(listenerThreadNum, 0);
+    }
+
+    public static PulsarClient create(int listenerThreadNum, long txnLatencyMs) {
+        return new MemoryPulsarClient(MemoryBroker.getInstance(), listenerThreadNum, txnLatencyMs).getProxy();
+    }
+
+    MemoryBroker getBroker() {
+        return broker;
+    }
+
+    /**
+     * @return the listener thread of the next consumer with a message listener
+     */
+    synchronized ScheduledExecutorService nextListenerExecutor() {
+        if (listenerExecutors == null) {
+            listenerExecutors = new ScheduledExecutorService[listenerThreadNum];
+            for (int i = 0; i < listenerThreadNum; i++) {
+                String threadName = "memory-listener-" + i;
+                listenerExecutors[i] = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, threadName);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+        return listenerExecutors[listenerConsumerCounter.getAndIncrement() % listenerThreadNum];
+    }
+
+    /**
+     * Run the completion of a transaction operation after the transaction latency, on the
+     * transaction thread (like the Pulsar client completes it on an IO thread).
+     */
+    void runAfterTxnLatency(Runnable completion) {
+        schedule(completion, txnLatencyMs);
+    }
+
+    synchronized void schedule(Runnable task, long delayMs) {
+        if (timerExecutor == null) {
+            timerExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "memory-timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        timerExecutor.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void shutdownListeners() {
+        if (listenerExecutors != null) {
+            for (ScheduledExecutorService listenerExecutor : listenerExecutors) {
+                listenerExecutor.shutdownNow();
+            }
+            listenerExecutors = null;
+        }
+        if (timerExecutor != null) {
+            timerExecutor.shutdown();
+            timerExecutor = null;
+        }
+    }
+
+    private List<String> getPartitionsForTopic(String topicName) {
+        MemoryTopic topic = broker.getTopic(topicName);
+        if (topic.getNumPartitions() == 0) {
+            return List.of(topicName);
+        }
+
+        List<String> partitions = new ArrayList<>();
+        for (int idx = 0; idx < topic.getNumPartitions(); idx++) {
+            partitions.add(topic.getPartitionName(idx));
+        }
+        return partitions;
+    }
+
+    @Override
+    protected Object handle(String methodName, Object[] args) {
+        switch (methodName) {
+            case "newProducer":
+                Schema<?> producerSchema = (args.length == 0) ? Schema.BYTES : (Schema<?>) args[0];
+                return new MemoryProducerBuilder<>(this, producerSchema).getProxy();
+            case "newConsumer":
+                Schema<?> consumerSchema = (args.length == 0) ? Schema.BYTES : (Schema<?>) args[0];
+                return new MemoryConsumerBuilder<>(this, consumerSchema).getProxy();
+            case "newReader":
+                Schema<?> readerSchema = (args.length == 0) ? Schema.BYTES : (Schema<?>) args[0];
+                return new MemoryReaderBuilder<>(this, readerSchema).getProxy();
+            case "newTableViewBuilder":
+                return new MemoryTableViewBuilder<>(this, (Schema<?>) args[0]).getProxy();
+            case "newTransaction":
+                return new MemoryTransactionBuilder(this).getProxy();
+            case "getPartitionsForTopic":
+                return CompletableFuture.completedFuture(getPartitionsForTopic((String) args[0]));
+            case "close":
+            case "shutdown":
+                closed = true;
+                shutdownListeners();
+                return null;
+            case "closeAsync":
+                closed = true;
+                shutdownListeners();
+                return CompletableFuture.completedFuture(null);
+            case "isClosed":
+                return closed;
+            default:
+                return NOT_HANDLED;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.memory;
+
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Reader;
+import org.apache.pulsar.client.api.Schema;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A reader of the log of an in-memory topic. A reader of one partition of a partitioned topic
+ * reads the log of the topic, and skips the entries of the other partitions.
+ */
+class MemoryReader<T> extends MemoryApiHandler<Reader<T>> {
+    // How often a waiting "readNext()" checks for new entries
+    private final static long READ_WAIT_MS = 1;
+
+    private final MemoryTopic topic;
+    private final String readerTopicName;
+    // null when reading all the partitions
+    private final String partitionName;
+    private final Schema<T> schema;
+    // The log position of the next entry to read
+    private long logPos;
+    private volatile boolean closed = false;
+
+    MemoryReader(MemoryTopic topic, String readerTopicName, String partitionName, Schema<T> schema, long logPos) {
+        super(Reader.class);
+        this.topic = topic;
+        this.readerTopicName = readerTopicName;
+        this.partitionName = partitionName;
+        this.schema = schema;
+        this.logPos = logPos;
+    }
+
+    @Override
+    protected Object handle(String methodName, Object[] args) throws PulsarClientException {
+        switch (methodName) {
+            case "getTopic":
+                return readerTopicName;
+            case "readNext":
+                return (args.length == 0) ? readNext(Long.MAX_VALUE) : readNext(((TimeUnit) args[1]).toNanos((Integer) args[0]));
+            case "hasMessageAvailable":
+                return nextEntry(false) != null;
+            case "hasMessageAvailableAsync":
+                return CompletableFuture.completedFuture(nextEntry(false) != null);
+            case "seek":
+                seek(args[0]);
+                return null;
+            case "seekAsync":
+                seek(args[0]);
+                return CompletableFuture.completedFuture(null);
+            case "hasReachedEndOfTopic":
+                return false;
+            case "isConnected":
+                return !closed;
+            case "close":
+                closed = true;
+                return null;
+            case "closeAsync":
+                closed = true;
+                return CompletableFuture.completedFuture(null);
+            default:
+                return NOT_HANDLED;
+        }
+    }
+
+    /**
+     * Move to the first entry published at or after the timestamp, or to the entry of the
+     * message id (inclusive).
+     */
+    private synchronized void seek(Object seekTarget) {
+        if (seekTarget instanceof Long) {
+            logPos = topic.findLogPos((Long) seekTarget);
+        }
+        else if (seekTarget instanceof MessageId) {
+            logPos = topic.findLogPos((MessageId) seekTarget);
+        }
+        else {
+            throw new UnsupportedOperationException("Reader.seek() only supports a timestamp or a message id in the in-memory broker!");
+        }
+    }
+
+    private Message<T> readNext(long timeoutNanos) throws PulsarClientException {
+        long deadlineNanos = (timeoutNanos == Long.MAX_VALUE) ? Long.MAX_VALUE : System.nanoTime() + timeoutNanos;
+        while (!closed) {
+            MemoryEntry entry = nextEntry(true);
+            if (entry != null) {
+                return new MemoryMessage<>(entry, schema);
+            }
+            if (System.nanoTime() >= deadlineNanos) {
+                return null;
+            }
+
+            try {
+                Thread.sleep(READ_WAIT_MS);
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new PulsarClientException(ie);
+            }
+        }
+        throw new PulsarClientException.AlreadyClosedException("The reader is already closed");
+    }
+
+    /**
+     * @return the next entry of the reader's partition, or null if there is none (yet)
+     */
+    private synchronized MemoryEntry nextEntry(boolean consume) {
+        // Keeps the log from being trimmed while scanning it
+        synchronized (topic) {
+            // The oldest entries may have been dropped from the log
+            long pos = Math.max(logPos, topic.getLogStartPos());
+            long endPos = topic.getLogEndPos();
+            for (; pos < endPos; pos++) {
+                MemoryEntry entry = topic.getLogEntry(pos);
+                if (partitionName == null || partitionName.equals(entry.topicName)) {
+                    logPos = consume ? pos + 1 : pos;
+                    return entry;
+                }
+            }
+            logPos = pos;
+            return null;
+        }
+    }
+}
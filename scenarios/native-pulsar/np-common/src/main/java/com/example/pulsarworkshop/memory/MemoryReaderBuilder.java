@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.memory;
+
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.ReaderBuilder;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.common.naming.TopicName;
+
+import java.util.concurrent.CompletableFuture;
+
+class MemoryReaderBuilder<T> extends MemoryApiHandler<ReaderBuilder<T>> {
+    private final MemoryPulsarClient client;
+    private final Schema<T> schema;
+
+    private String topicName;
+    private MessageId startMessageId;
+    private boolean startMessageIdInclusive = false;
+
+    MemoryReaderBuilder(MemoryPulsarClient client, Schema<T> schema) {
+        super(ReaderBuilder.class);
+        this.client = client;
+        this.schema = schema;
+    }
+
+    @Override
+    protected Object handle(String methodName, Object[] args) throws PulsarClientException {
+        switch (methodName) {
+            case "topic":
+                topicName = (String) args[0];
+                return getProxy();
+            case "startMessageId":
+                startMessageId = (MessageId) args[0];
+                return getProxy();
+            case "startMessageIdInclusive":
+                startMessageIdInclusive = true;
+                return getProxy();
+            case "create":
+                return create();
+            case "createAsync":
+                return CompletableFuture.completedFuture(create());
+            case "clone":
+                MemoryReaderBuilder<T> cloned = new MemoryReaderBuilder<>(client, schema);
+                cloned.topicName = topicName;
+                cloned.startMessageId = startMessageId;
+                cloned.startMessageIdInclusive = startMessageIdInclusive;
+                return cloned.getProxy();
+            default:
+                return NOT_HANDLED;
+        }
+    }
+
+    private Object create() throws PulsarClientException {
+        if (topicName == null) {
+            throw new PulsarClientException.InvalidConfigurationException("Topic name must be set on the reader builder");
+        }
+        if (startMessageId == null) {
+            throw new PulsarClientException.InvalidConfigurationException("Start message id must be set on the reader builder");
+        }
+
+        // The partitions of an in-memory topic share the log of the topic
+        String partitionName = null;
+        MemoryTopic topic;
+        int suffixIdx = topicName.lastIndexOf(TopicName.PARTITIONED_TOPIC_SUFFIX);
+        if (suffixIdx > 0) {
+            partitionName = topicName;
+            topic = client.getBroker().getTopic(topicName.substring(0, suffixIdx));
+        } else {
+            topic = client.getBroker().getTopic(topicName);
+        }
+
+        MemorySchemaInfoProvider.configure(schema, topic);
+
+        // Like the Pulsar client, the start message itself is skipped unless inclusive, and an
+        // inclusive "latest" reader starts at the last message
+        long logPos = topic.findLogPos(startMessageId);
+        if (startMessageIdInclusive && MessageId.latest.equals(startMessageId)) {
+            logPos = topic.findLastLogPos(partitionName);
+        }
+        else if (!startMessageIdInclusive && !MessageId.earliest.equals(startMessageId) &&
+                logPos < topic.getLogEndPos() && topic.getLogEntry(logPos).messageId.equals(startMessageId)) {
+            logPos++;
+        }
+        return new MemoryReader<>(topic, topicName, partitionName, schema, logPos).getProxy();
+    }
+}
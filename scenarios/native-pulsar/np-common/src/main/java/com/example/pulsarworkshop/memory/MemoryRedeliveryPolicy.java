@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.memory;
+
+import org.apache.pulsar.client.api.DeadLetterPolicy;
+import org.apache.pulsar.client.api.RedeliveryBackoff;
+import org.apache.pulsar.client.util.RetryMessageUtil;
+
+/**
+ * The redelivery settings of an in-memory consumer, which are applied on the consumer side like
+ * the Pulsar client does:
+ * - a negatively acknowledged message is redelivered after the "negativeAckRedeliveryDelay", or
+ *   after the delay of the "negativeAckRedeliveryBackoff" for its redelivery count (right away
+ *   when neither is set, instead of the 1 minute default of the Pulsar client)
+ * - with a dead letter policy, a message that was already redelivered "maxRedeliverCount" times
+ *   goes to the dead letter topic instead when it is negatively acknowledged again
+ * - with "enableRetry", "reconsumeLater()" publishes the message to the retry letter topic,
+ *   with a delayed delivery, until it was reconsumed "maxRedeliverCount" times
+ *
+ * The ack timeout is not emulated: a received message stays unacknowledged until the
+ * application acknowledges or negatively acknowledges it.
+ */
+class MemoryRedeliveryPolicy {
+    private final long nackDelayMs;
+    private final RedeliveryBackoff nackBackoff;
+    private final boolean retryEnabled;
+    // 0 without a dead letter policy
+    private final int maxRedeliverCount;
+    private final String deadLetterTopic;
+    private final String retryLetterTopic;
+
+    MemoryRedeliveryPolicy(long nackDelayMs,
+                           RedeliveryBackoff nackBackoff,
+                           DeadLetterPolicy deadLetterPolicy,
+                           boolean retryEnabled,
+                           String topicName,
+                           String subscriptionName) {
+        this.nackDelayMs = nackDelayMs;
+        this.nackBackoff = nackBackoff;
+        this.retryEnabled = retryEnabled;
+
+        // Same defaults as the Pulsar client
+        String topicPrefix = topicName + "-" + subscriptionName;
+        if (deadLetterPolicy != null) {
+            this.maxRedeliverCount = deadLetterPolicy.getMaxRedeliverCount();
+            this.deadLetterTopic = (deadLetterPolicy.getDeadLetterTopic() != null)
+                    ? deadLetterPolicy.getDeadLetterTopic() : topicPrefix + RetryMessageUtil.DLQ_GROUP_TOPIC_SUFFIX;
+            this.retryLetterTopic = (deadLetterPolicy.getRetryLetterTopic() != null)
+                    ? deadLetterPolicy.getRetryLetterTopic() : topicPrefix + RetryMessageUtil.RETRY_GROUP_TOPIC_SUFFIX;
+        }
+        else {
+            this.maxRedeliverCount = retryEnabled ? RetryMessageUtil.MAX_RECONSUMETIMES : 0;
+            this.deadLetterTopic = topicPrefix + RetryMessageUtil.DLQ_GROUP_TOPIC_SUFFIX;
+            this.retryLetterTopic = topicPrefix + RetryMessageUtil.RETRY_GROUP_TOPIC_SUFFIX;
+        }
+    }
+
+    long getNackDelayMs(int redeliveryCount) {
+        return (nackBackoff != null) ? nackBackoff.next(redeliveryCount) : nackDelayMs;
+    }
+
+    boolean isRetryEnabled() { return retryEnabled; }
+    int getMaxRedeliverCount() { return maxRedeliverCount; }
+    String getDeadLetterTopic() { return deadLetterTopic; }
+    String getRetryLetterTopic() { return retryLetterTopic; }
+
+    /**
+     * @return whether a negatively acknowledged message with this redelivery count goes to the
+     * dead letter topic, instead of being redelivered
+     */
+    boolean isDeadLetter(int redeliveryCount) {
+        return maxRedeliverCount > 0 && redeliveryCount >= maxRedeliverCount;
+    }
+}
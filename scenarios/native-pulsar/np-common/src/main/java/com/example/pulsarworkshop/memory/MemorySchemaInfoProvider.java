@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.memory;
+
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.schema.SchemaInfoProvider;
+import org.apache.pulsar.common.schema.SchemaInfo;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Looks up the schemas registered on an in-memory topic by version, so the versioned schemas
+ * (e.g. "Schema.AVRO()" or "Schema.AUTO_CONSUME()") of the consumers and readers can decode each
+ * message with the schema it was written with.
+ */
+class MemorySchemaInfoProvider implements SchemaInfoProvider {
+    private final MemoryTopic topic;
+
+    private MemorySchemaInfoProvider(MemoryTopic topic) {
+        this.topic = topic;
+    }
+
+    /**
+     * Prepare the schema of a consumer or a reader of the topic, like the Pulsar client does
+     * when it subscribes.
+     */
+    static void configure(Schema<?> schema, MemoryTopic topic) {
+        if (schema.supportSchemaVersioning()) {
+            schema.setSchemaInfoProvider(new MemorySchemaInfoProvider(topic));
+        }
+        // e.g. "AUTO_CONSUME", which starts from the latest schema of the topic
+        if (schema.requireFetchingSchemaInfo()) {
+            SchemaInfo latestSchema = topic.getLatestSchema();
+            if (latestSchema != null) {
+                schema.configureSchemaInfo(topic.getTopicName(), "topic", latestSchema);
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<SchemaInfo> getSchemaByVersion(byte[] schemaVersion) {
+        return CompletableFuture.completedFuture(topic.getSchema(schemaVersion));
+    }
+
+    @Override
+    public CompletableFuture<SchemaInfo> getLatestSchema() {
+        return CompletableFuture.completedFuture(topic.getLatestSchema());
+    }
+
+    @Override
+    public String getTopicName() {
+        return topic.getTopicName();
+    }
+}
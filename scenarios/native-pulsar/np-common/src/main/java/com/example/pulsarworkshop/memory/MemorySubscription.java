@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.memory;
+
+import org.apache.pulsar.client.api.SubscriptionType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An in-memory subscription. All consumers attached to the same subscription
+ * pull from one shared queue, i.e. the "Exclusive", "Failover" and "Shared"
+ * subscription types are all dispatched like a "Shared" subscription.
+ *
+ * A "Key_Shared" subscription gives each consumer its own queue instead, and
+ * dispatches every entry to the queue selected by the hash of the message key.
+ * Like the broker's auto split hash ranges, the key to consumer assignment changes
+ * when consumers are added or removed, but already dispatched entries stay in order.
+ */
+public class MemorySubscription {
+    private final MemoryTopic topic;
+    private final String subscriptionName;
+    private final boolean keyShared;
+    // The shared queue, or the backlog of a Key_Shared subscription without consumers
+    private final BlockingQueue<MemoryEntry> entryQueue = new LinkedBlockingQueue<>();
+    private final List<BlockingQueue<MemoryEntry>> consumerQueues = new CopyOnWriteArrayList<>();
+
+    // The retry letter topic subscription of a consumer with retries enabled hands its entries
+    // over to the subscription of the consumer, which receives them with the other messages
+    private volatile MemorySubscription forwardTarget;
+
+    private final LongAdder ackCount = new LongAdder();
+    private final LongAdder negativeAckCount = new LongAdder();
+    private final LongAdder deadLetterCount = new LongAdder();
+
+    MemorySubscription(MemoryTopic topic, String subscriptionName, SubscriptionType subscriptionType) {
+        this.topic = topic;
+        this.subscriptionName = subscriptionName;
+        this.keyShared = (subscriptionType == SubscriptionType.Key_Shared);
+    }
+
+    public MemoryTopic getTopic() { return topic; }
+    public String getSubscriptionName() { return subscriptionName; }
+    public long getAckCount() { return ackCount.sum(); }
+    public long getNegativeAckCount() { return negativeAckCount.sum(); }
+    public long getDeadLetterCount() { return deadLetterCount.sum(); }
+
+    public int getBacklog() {
+        int backlog = entryQueue.size();
+        for (BlockingQueue<MemoryEntry> consumerQueue : consumerQueues) {
+            backlog += consumerQueue.size();
+        }
+        return backlog;
+    }
+
+    /**
+     * @return the queue the attached consumer receives from
+     */
+    BlockingQueue<MemoryEntry> attach() {
+        if (!keyShared) {
+            return entryQueue;
+        }
+
+        synchronized (this) {
+            BlockingQueue<MemoryEntry> consumerQueue = new LinkedBlockingQueue<>();
+            consumerQueues.add(consumerQueue);
+            redispatch(entryQueue);
+            return consumerQueue;
+        }
+    }
+
+    void detach(BlockingQueue<MemoryEntry> consumerQueue) {
+        if (!keyShared) {
+            return;
+        }
+
+        synchronized (this) {
+            if (consumerQueues.remove(consumerQueue)) {
+                redispatch(consumerQueue);
+            }
+        }
+    }
+
+    void forwardTo(MemorySubscription target) {
+        synchronized (this) {
+            forwardTarget = target;
+            List<MemoryEntry> entries = new ArrayList<>();
+            entryQueue.drainTo(entries);
+            for (BlockingQueue<MemoryEntry> consumerQueue : consumerQueues) {
+                consumerQueue.drainTo(entries);
+            }
+            entries.forEach(target::enqueue);
+        }
+    }
+
+    void enqueue(MemoryEntry entry) {
+        MemorySubscription target = forwardTarget;
+        if (target != null) {
+            target.enqueue(entry);
+        }
+        else if (!keyShared) {
+            entryQueue.add(entry);
+        }
+        else {
+            synchronized (this) {
+                dispatch(entry);
+            }
+        }
+    }
+
+    void acknowledge(int count) {
+        ackCount.add(count);
+    }
+
+    void redeliver(MemoryEntry entry) {
+        negativeAckCount.increment();
+        enqueue(entry.redelivered());
+    }
+
+    // The entry was published to the dead letter topic, which acknowledges it
+    void deadLettered() {
+        deadLetterCount.increment();
+        ackCount.increment();
+    }
+
+    private void dispatch(MemoryEntry entry) {
+        if (consumerQueues.isEmpty()) {
+            entryQueue.add(entry);
+        }
+        else {
+            int keyHash = (entry.key == null) ? 0 : entry.key.hashCode();
+            consumerQueues.get(Math.floorMod(keyHash, consumerQueues.size())).add(entry);
+        }
+    }
+
+    private void redispatch(BlockingQueue<MemoryEntry> queue) {
+        List<MemoryEntry> entries = new ArrayList<>();
+        queue.drainTo(entries);
+        for (MemoryEntry entry : entries) {
+            dispatch(entry);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.memory;
+
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Reader;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.TableView;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * A table view of an in-memory topic: the latest value of each message key. Like the Pulsar
+ * client, the view is filled with the existing messages before it is returned, then a background
+ * thread applies the new messages and calls the listeners.
+ *
+ * The in-memory topics are not compacted, so the whole log is read, which gives the same
+ * latest value per key as a compacted topic.
+ */
+class MemoryTableView<T> extends MemoryApiHandler<TableView<T>> {
+    private final static Logger logger = LoggerFactory.getLogger(MemoryTableView.class);
+
+    // How long the background thread waits for a new message before checking if the view is closed
+    private final static int READ_WAIT_MS = 100;
+
+    private final String topicName;
+    private final Reader<T> reader;
+    private final Map<String, T> data = new ConcurrentHashMap<>();
+    private final List<BiConsumer<String, T>> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean closed = false;
+
+    MemoryTableView(MemoryTopic topic, String topicName, Schema<T> schema) {
+        super(TableView.class);
+        this.topicName = topicName;
+        this.reader = new MemoryReader<>(topic, topicName, null, schema, topic.getLogStartPos()).getProxy();
+    }
+
+    void start() throws PulsarClientException {
+        while (reader.hasMessageAvailable()) {
+            handleMessage(reader.readNext());
+        }
+
+        Thread readerThread = new Thread(() -> {
+            try {
+                while (!closed) {
+                    Message<T> message = reader.readNext(READ_WAIT_MS, TimeUnit.MILLISECONDS);
+                    if (message != null) {
+                        handleMessage(message);
+                    }
+                }
+            }
+            catch (PulsarClientException pce) {
+                // The reader is closed
+            }
+        }, "memory-table-view-" + topicName);
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    // Only called by one thread at a time: the creating thread, then the background thread
+    private synchronized void handleMessage(Message<T> message) {
+        // Like the Pulsar client, the messages without a key are ignored
+        if (!message.hasKey()) {
+            return;
+        }
+        // A message without a value (tombstone) removes the key
+        T value = message.getValue();
+        if (value == null) {
+            data.remove(message.getKey());
+        } else {
+            data.put(message.getKey(), value);
+        }
+        for (BiConsumer<String, T> listener : listeners) {
+            try {
+                listener.accept(message.getKey(), value);
+            }
+            catch (RuntimeException re) {
+                // Like the Pulsar client, a failing listener doesn't stop the view updates
+                logger.error("Table view listener error in message handling: {}", re.getMessage());
+            }
+        }
+    }
+
+    private synchronized void forEachAndListen(BiConsumer<String, T> action) {
+        data.forEach(action);
+        listeners.add(action);
+    }
+
+    @Override
+    protected Object handle(String methodName, Object[] args) {
+        switch (methodName) {
+            case "size":
+                return data.size();
+            case "isEmpty":
+                return data.isEmpty();
+            case "containsKey":
+                return data.containsKey((String) args[0]);
+            case "get":
+                return data.get((String) args[0]);
+            case "entrySet":
+                return Collections.unmodifiableSet(data.entrySet());
+            case "keySet":
+                return Collections.unmodifiableSet(data.keySet());
+            case "values":
+                return Collections.unmodifiableCollection(data.values());
+            case "forEach":
+                @SuppressWarnings("unchecked")
+                BiConsumer<String, T> action = (BiConsumer<String, T>) args[0];
+                data.forEach(action);
+                return null;
+            case "forEachAndListen":
+                @SuppressWarnings("unchecked")
+                BiConsumer<String, T> listener = (BiConsumer<String, T>) args[0];
+                forEachAndListen(listener);
+                return null;
+            case "close":
+                closed = true;
+                reader.closeAsync();
+                return null;
+            case "closeAsync":
+                closed = true;
+                return reader.closeAsync();
+            default:
+                return NOT_HANDLED;
+        }
+    }
+}
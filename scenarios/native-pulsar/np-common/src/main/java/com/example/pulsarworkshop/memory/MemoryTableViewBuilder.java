@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.memory;
+
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.TableViewBuilder;
+import org.apache.pulsar.common.naming.TopicName;
+
+import java.util.concurrent.CompletableFuture;
+
+class MemoryTableViewBuilder<T> extends MemoryApiHandler<TableViewBuilder<T>> {
+    private final MemoryPulsarClient client;
+    private final Schema<T> schema;
+
+    private String topicName;
+
+    MemoryTableViewBuilder(MemoryPulsarClient client, Schema<T> schema) {
+        super(TableViewBuilder.class);
+        this.client = client;
+        this.schema = schema;
+    }
+
+    @Override
+    protected Object handle(String methodName, Object[] args) throws PulsarClientException {
+        switch (methodName) {
+            case "topic":
+                topicName = (String) args[0];
+                return getProxy();
+            case "create":
+                return create();
+            case "createAsync":
+                return CompletableFuture.completedFuture(create());
+            default:
+                return NOT_HANDLED;
+        }
+    }
+
+    private Object create() throws PulsarClientException {
+        if (topicName == null) {
+            throw new PulsarClientException.InvalidConfigurationException("Topic name must be set on the table view builder");
+        }
+
+        // A table view covers all the partitions, which share the log of the topic
+        int suffixIdx = topicName.lastIndexOf(TopicName.PARTITIONED_TOPIC_SUFFIX);
+        String baseTopicName = (suffixIdx > 0) ? topicName.substring(0, suffixIdx) : topicName;
+        MemoryTopic topic = client.getBroker().getTopic(baseTopicName);
+        MemorySchemaInfoProvider.configure(schema, topic);
+        MemoryTableView<T> tableView = new MemoryTableView<>(topic, baseTopicName, schema);
+        tableView.start();
+        return tableView.getProxy();
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.memory;
+
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.SubscriptionType;
+import org.apache.pulsar.client.impl.MessageIdImpl;
+import org.apache.pulsar.common.naming.TopicName;
+import org.apache.pulsar.common.schema.SchemaInfo;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-memory topic. Each subscription gets its own copy of every published entry.
+ * Entries published before the first subscription is created are retained and
+ * handed to that subscription, so a producer and a consumer can run one after
+ * the other in the same JVM.
+ *
+ * Like the retention of a real topic, all the published entries are also kept in a log (up to
+ * MAX_LOG_ENTRIES, the oldest ones are dropped first), which the readers read from.
+ */
+public class MemoryTopic {
+    private final String topicName;
+    private final Map<String, MemorySubscription> subscriptions = new ConcurrentHashMap<>();
+    private final Queue<MemoryEntry> retainedEntries = new ArrayDeque<>();
+
+    final static int MAX_LOG_ENTRIES = 1_000_000;
+    private final List<MemoryEntry> log = new ArrayList<>();
+    // The log position of the first entry still in the log
+    private long logStartPos = 0;
+
+    private long nextEntryId = 0;
+    // The registered schemas, the index is the schema version (an 8 byte long, like a broker uses)
+    private final List<SchemaInfo> schemas = new ArrayList<>();
+    // 0 means a non-partitioned topic
+    private volatile int numPartitions = 0;
+
+    MemoryTopic(String topicName) {
+        this.topicName = topicName;
+    }
+
+    public String getTopicName() {
+        return topicName;
+    }
+
+    public int getNumPartitions() {
+        return numPartitions;
+    }
+
+    /**
+     * @return the subscription, or null if it doesn't exist
+     */
+    public MemorySubscription getSubscription(String subscriptionName) {
+        return subscriptions.get(subscriptionName);
+    }
+
+    void setNumPartitions(int numPartitions) {
+        this.numPartitions = numPartitions;
+    }
+
+    String getPartitionName(int partitionIdx) {
+        return (partitionIdx < 0) ? topicName : topicName + TopicName.PARTITIONED_TOPIC_SUFFIX + partitionIdx;
+    }
+
+    synchronized MessageIdImpl nextMessageId(int partitionIdx) {
+        return new MessageIdImpl(0, nextEntryId++, partitionIdx);
+    }
+
+    synchronized void publish(MemoryEntry entry) {
+        publish(entry, 0);
+    }
+
+    /**
+     * Like the broker, a delayed message is stored (and visible to the readers) right away, but
+     * only dispatched to the subscriptions at "deliverAtMs".
+     */
+    synchronized void publish(MemoryEntry entry, long deliverAtMs) {
+        publishAfter(entry, (deliverAtMs > 0) ? deliverAtMs - System.currentTimeMillis() : 0);
+    }
+
+    /**
+     * Same as "publish", with a delay relative to now, which is scheduled as is: converting it to a
+     * wall clock time and back would round it down to whole milliseconds.
+     */
+    synchronized void publishAfter(MemoryEntry entry, long delayMs) {
+        if (log.size() >= MAX_LOG_ENTRIES) {
+            int dropped = MAX_LOG_ENTRIES / 10;
+            log.subList(0, dropped).clear();
+            logStartPos += dropped;
+        }
+        log.add(entry);
+
+        if (delayMs > 0) {
+            MemoryBroker.getInstance().scheduleDelivery(() -> dispatch(entry), delayMs);
+        }
+        else {
+            dispatch(entry);
+        }
+    }
+
+    private synchronized void dispatch(MemoryEntry entry) {
+        Collection<MemorySubscription> subs = subscriptions.values();
+        if (subs.isEmpty()) {
+            retainedEntries.add(entry);
+        }
+        else {
+            for (MemorySubscription sub : subs) {
+                sub.enqueue(entry);
+            }
+        }
+    }
+
+    // The subscription type is set by the first consumer of the subscription
+    synchronized MemorySubscription subscribe(String subscriptionName, SubscriptionType subscriptionType) {
+        MemorySubscription subscription = subscriptions.get(subscriptionName);
+        if (subscription == null) {
+            subscription = new MemorySubscription(this, subscriptionName, subscriptionType);
+            subscriptions.put(subscriptionName, subscription);
+
+            MemoryEntry entry;
+            while ((entry = retainedEntries.poll()) != null) {
+                subscription.enqueue(entry);
+            }
+        }
+        return subscription;
+    }
+
+    /**
+     * Subscribe, and hand all the entries of the subscription over to the target subscription
+     * (under the topic lock, so no entry is dispatched in between).
+     */
+    synchronized MemorySubscription subscribe(String subscriptionName,
+                                              SubscriptionType subscriptionType,
+                                              MemorySubscription forwardTarget) {
+        MemorySubscription subscription = subscribe(subscriptionName, subscriptionType);
+        subscription.forwardTo(forwardTarget);
+        return subscription;
+    }
+
+    synchronized void unsubscribe(String subscriptionName) {
+        subscriptions.remove(subscriptionName);
+    }
+
+    /**
+     * Register the schema of a producer, like the broker does when the producer connects. The
+     * schema compatibility is not checked.
+     *
+     * @return the schema version, or null for a schema without versions (e.g. BYTES)
+     */
+    synchronized byte[] registerSchema(SchemaInfo schemaInfo) {
+        if (schemaInfo == null || !schemaInfo.getType().isStruct()) {
+            return null;
+        }
+        for (int version = 0; version < schemas.size(); version++) {
+            SchemaInfo registered = schemas.get(version);
+            if (registered.getType() == schemaInfo.getType() && Arrays.equals(registered.getSchema(), schemaInfo.getSchema())) {
+                return toSchemaVersion(version);
+            }
+        }
+        schemas.add(schemaInfo);
+        return toSchemaVersion(schemas.size() - 1);
+    }
+
+    /**
+     * @return the schema of the version, or null if there is no such version
+     */
+    synchronized SchemaInfo getSchema(byte[] schemaVersion) {
+        if (schemaVersion == null || schemaVersion.length != Long.BYTES) {
+            return null;
+        }
+        long version = ByteBuffer.wrap(schemaVersion).getLong();
+        return (version >= 0 && version < schemas.size()) ? schemas.get((int) version) : null;
+    }
+
+    /**
+     * @return the last registered schema, or null if there is none
+     */
+    synchronized SchemaInfo getLatestSchema() {
+        return schemas.isEmpty() ? null : schemas.get(schemas.size() - 1);
+    }
+
+    private static byte[] toSchemaVersion(long version) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(version).array();
+    }
+
+    synchronized long getLogStartPos() {
+        return logStartPos;
+    }
+
+    synchronized long getLogEndPos() {
+        return logStartPos + log.size();
+    }
+
+    /**
+     * @return the entry at the log position (which must be in the log)
+     */
+    synchronized MemoryEntry getLogEntry(long logPos) {
+        return log.get((int) (logPos - logStartPos));
+    }
+
+    /**
+     * @return the log position of the last entry of the partition (of any partition if null), or
+     *         the end of the log if there is none
+     */
+    synchronized long findLastLogPos(String partitionName) {
+        for (int idx = log.size() - 1; idx >= 0; idx--) {
+            if (partitionName == null || partitionName.equals(log.get(idx).topicName)) {
+                return logStartPos + idx;
+            }
+        }
+        return getLogEndPos();
+    }
+
+    /**
+     * @return the log position of the first entry published at or after the timestamp
+     */
+    synchronized long findLogPos(long publishTime) {
+        // The publish times only go up (at millisecond precision)
+        int low = 0;
+        int high = log.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (log.get(mid).publishTime < publishTime) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return logStartPos + low;
+    }
+
+    /**
+     * @return the log position of the entry with the message id, or of the first entry after it
+     */
+    synchronized long findLogPos(MessageId messageId) {
+        if (MessageId.earliest.equals(messageId)) {
+            return logStartPos;
+        }
+        if (MessageId.latest.equals(messageId)) {
+            return getLogEndPos();
+        }
+
+        // The entry ids of a topic are unique across its partitions
+        long entryId = ((MessageIdImpl) messageId).getEntryId();
+        for (int idx = 0; idx < log.size(); idx++) {
+            if (log.get(idx).messageId.getEntryId() >= entryId) {
+                return logStartPos + idx;
+            }
+        }
+        return getLogEndPos();
+    }
+}
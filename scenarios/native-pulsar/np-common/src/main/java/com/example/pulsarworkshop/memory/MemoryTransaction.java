@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.memory;
+
+import org.apache.pulsar.client.api.transaction.Transaction;
+import org.apache.pulsar.client.api.transaction.TransactionCoordinatorClientException;
+import org.apache.pulsar.client.api.transaction.TxnID;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-memory transaction. The messages published and the acknowledgements made with the
+ * transaction are buffered, and only applied when it commits (an abort drops them, the acknowledged
+ * messages are not redelivered until the consumer asks for it, like with the Pulsar client).
+ *
+ * Opening, committing and aborting a transaction take the "txnLatencyMs" of the client, which
+ * stands for the round trips to the transaction coordinator of a Pulsar cluster.
+ */
+class MemoryTransaction extends MemoryApiHandler<Transaction> {
+    private final MemoryPulsarClient client;
+    private final TxnID txnId;
+    private final List<Runnable> pendingOps = new ArrayList<>();
+    private Transaction.State state = Transaction.State.OPEN;
+
+    MemoryTransaction(MemoryPulsarClient client, TxnID txnId) {
+        super(Transaction.class);
+        this.client = client;
+        this.txnId = txnId;
+    }
+
+    /**
+     * @return the in-memory transaction behind a transaction of the in-memory client
+     */
+    static MemoryTransaction of(Object transaction) {
+        return (MemoryTransaction) Proxy.getInvocationHandler(transaction);
+    }
+
+    @Override
+    protected Object handle(String methodName, Object[] args) {
+        switch (methodName) {
+            case "getTxnID":
+                return txnId;
+            case "getState":
+                return getState();
+            case "commit":
+                return end(Transaction.State.COMMITTING, Transaction.State.COMMITTED);
+            case "abort":
+                return end(Transaction.State.ABORTING, Transaction.State.ABORTED);
+            default:
+                return NOT_HANDLED;
+        }
+    }
+
+    private synchronized Transaction.State getState() {
+        return state;
+    }
+
+    /**
+     * Buffer a publish or an acknowledgement until the transaction commits.
+     *
+     * @throws IllegalStateException if the transaction is no longer open
+     */
+    synchronized void addOp(Runnable op) {
+        if (state != Transaction.State.OPEN) {
+            throw new IllegalStateException("Transaction " + txnId + " is " + state + ", not OPEN");
+        }
+        pendingOps.add(op);
+    }
+
+    private CompletableFuture<Void> end(Transaction.State endingState, Transaction.State endState) {
+        List<Runnable> ops;
+        synchronized (this) {
+            if (state != Transaction.State.OPEN) {
+                return CompletableFuture.failedFuture(new TransactionCoordinatorClientException.InvalidTxnStatusException(
+                        "Transaction " + txnId + " is " + state + ", not OPEN"));
+            }
+            state = endingState;
+            ops = new ArrayList<>(pendingOps);
+            pendingOps.clear();
+        }
+
+        CompletableFuture<Void> endFuture = new CompletableFuture<>();
+        client.runAfterTxnLatency(() -> {
+            if (endState == Transaction.State.COMMITTED) {
+                ops.forEach(Runnable::run);
+            }
+            synchronized (this) {
+                state = endState;
+            }
+            endFuture.complete(null);
+        });
+        return endFuture;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.memory;
+
+import org.apache.pulsar.client.api.transaction.Transaction;
+import org.apache.pulsar.client.api.transaction.TransactionBuilder;
+import org.apache.pulsar.client.api.transaction.TxnID;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opens the in-memory transactions. The transaction timeout is accepted and ignored.
+ */
+class MemoryTransactionBuilder extends MemoryApiHandler<TransactionBuilder> {
+    private final static AtomicLong txnIdCounter = new AtomicLong();
+
+    private final MemoryPulsarClient client;
+
+    MemoryTransactionBuilder(MemoryPulsarClient client) {
+        super(TransactionBuilder.class);
+        this.client = client;
+    }
+
+    @Override
+    protected Object handle(String methodName, Object[] args) {
+        if (methodName.equals("build")) {
+            CompletableFuture<Transaction> txnFuture = new CompletableFuture<>();
+            TxnID txnId = new TxnID(0, txnIdCounter.getAndIncrement());
+            client.runAfterTxnLatency(() -> txnFuture.complete(new MemoryTransaction(client, txnId).getProxy()));
+            return txnFuture;
+        }
+        return NOT_HANDLED;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.pojo;
+
+import com.example.pulsarworkshop.util.ResolvingAvroDecoder;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.SchemaSerializationException;
+import org.apache.pulsar.client.api.schema.SchemaInfoProvider;
+import org.apache.pulsar.common.schema.SchemaInfo;
+import org.apache.pulsar.common.schema.SchemaType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * An AVRO schema of the IoT sensor readings that encodes and decodes the generated
+ * "IoTSensorData" SpecificRecord directly.
+ *
+ * "Schema.AVRO(IoTSensorData.class)" goes through the Avro reflection on every message, and
+ * serializes all the sends of a producer through one shared encoder. This schema uses the
+ * generated (reflection free) encoding and decoding code, and each thread reuses its own datum
+ * reader and writer, encoder, decoder and output buffer.
+ *
+ * The registered schema is the one Pulsar derived from the former "IoTSensorData" POJO, so the
+ * topics that already have it don't get a new schema version: the generated class schema carries
+ * the docs and the Java string type hints of the ".avsc" file, which the POJO schema didn't have.
+ *
+ * The messages with a schema version are decoded against the schema of that version (the writer
+ * schema), looked up once per version through the schema info provider that the client sets on
+ * the schema of a consumer, so a reading written with another version of the schema is resolved
+ * instead of being misread. A version without a known schema fails to decode. As the schema
+ * versions are those of one topic, each consumer needs its own instance: "clone()" (and
+ * "IoTSensorDataUtils.payloadSchema()") returns a new one.
+ */
+public class IoTSensorDataAvroSchema implements Schema<IoTSensorData> {
+
+    public final static IoTSensorDataAvroSchema INSTANCE = new IoTSensorDataAvroSchema();
+
+    private final static SchemaInfo SCHEMA_INFO = SchemaInfo.builder()
+            .name(IoTSensorData.class.getSimpleName())
+            .type(SchemaType.AVRO)
+            .schema(withoutDocsAndProps(IoTSensorData.getClassSchema()).toString().getBytes(StandardCharsets.UTF_8))
+            .properties(Map.of(
+                    "__alwaysAllowNull", "true",
+                    "__jsr310ConversionEnabled", "false"))
+            .build();
+
+    // The generated "customEncode()/customDecode()" methods read and write the fields directly,
+    // instead of boxing each primitive field through "get(int)/put(int, Object)"
+    private final static SpecificData SPECIFIC_DATA = new SpecificData(IoTSensorData.class.getClassLoader());
+    static { SPECIFIC_DATA.setCustomCoders(true); }
+
+    private static class Codec {
+        private final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(256);
+        private final SpecificDatumWriter<IoTSensorData> datumWriter =
+                new SpecificDatumWriter<>(IoTSensorData.getClassSchema(), SPECIFIC_DATA);
+        private final SpecificDatumReader<IoTSensorData> datumReader =
+                new SpecificDatumReader<>(IoTSensorData.getClassSchema(), IoTSensorData.getClassSchema(), SPECIFIC_DATA);
+        private BinaryEncoder encoder;
+        private BinaryDecoder decoder;
+    }
+    private final static ThreadLocal<Codec> THREAD_CODEC = ThreadLocal.withInitial(Codec::new);
+
+    // The schema versions of the topic of the consumer (or reader) that uses this instance
+    private volatile SchemaInfoProvider schemaInfoProvider;
+    private final ResolvingAvroDecoder<IoTSensorData> versionDecoder =
+            new ResolvingAvroDecoder<>(IoTSensorData.getClassSchema(), SPECIFIC_DATA);
+
+    /**
+     * @return the same schema without the docs and the properties (e.g. "avro.java.string"), only
+     * for the records, unions and primitive types of the IoT sensor reading schema
+     */
+    static org.apache.avro.Schema withoutDocsAndProps(org.apache.avro.Schema schema) {
+        switch (schema.getType()) {
+            case RECORD:
+                List<Field> fields = new ArrayList<>();
+                for (Field field : schema.getFields()) {
+                    fields.add(new Field(field.name(), withoutDocsAndProps(field.schema()), null, field.defaultVal()));
+                }
+                return org.apache.avro.Schema.createRecord(schema.getName(), null, schema.getNamespace(), false, fields);
+            case UNION:
+                List<org.apache.avro.Schema> types = new ArrayList<>();
+                for (org.apache.avro.Schema type : schema.getTypes()) {
+                    types.add(withoutDocsAndProps(type));
+                }
+                return org.apache.avro.Schema.createUnion(types);
+            default:
+                return org.apache.avro.Schema.create(schema.getType());
+        }
+    }
+
+    @Override
+    public byte[] encode(IoTSensorData message) {
+        Codec codec = THREAD_CODEC.get();
+        codec.outputStream.reset();
+        codec.encoder = EncoderFactory.get().binaryEncoder(codec.outputStream, codec.encoder);
+        try {
+            codec.datumWriter.write(message, codec.encoder);
+            codec.encoder.flush();
+        } catch (IOException ioe) {
+            throw new SchemaSerializationException(ioe);
+        }
+        return codec.outputStream.toByteArray();
+    }
+
+    @Override
+    public IoTSensorData decode(byte[] bytes) {
+        return decode(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public IoTSensorData decode(byte[] bytes, byte[] schemaVersion) {
+        if (schemaVersion == null) {
+            return decode(bytes);
+        }
+        return versionDecoder.decode(schemaVersion, bytes, 0, bytes.length, this::loadWriterSchema);
+    }
+
+    @Override
+    public IoTSensorData decode(ByteBuffer data, byte[] schemaVersion) {
+        if (data == null) {
+            return null;
+        }
+        if (!data.hasArray()) {
+            byte[] bytes = new byte[data.remaining()];
+            data.duplicate().get(bytes);
+            return decode(bytes, schemaVersion);
+        }
+
+        int offset = data.arrayOffset() + data.position();
+        if (schemaVersion == null) {
+            return decode(data.array(), offset, data.remaining());
+        }
+        return versionDecoder.decode(schemaVersion, data.array(), offset, data.remaining(), this::loadWriterSchema);
+    }
+
+    /**
+     * @return the writer schema of a schema version, null if it is unknown
+     */
+    private org.apache.avro.Schema loadWriterSchema(byte[] schemaVersion) {
+        SchemaInfoProvider provider = schemaInfoProvider;
+        if (provider == null) {
+            return null;
+        }
+
+        SchemaInfo schemaInfo;
+        try {
+            schemaInfo = provider.getSchemaByVersion(schemaVersion).get();
+        } catch (ExecutionException ee) {
+            throw new SchemaSerializationException(ee.getCause());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SchemaSerializationException(ie);
+        }
+        if (schemaInfo == null) {
+            return null;
+        }
+        return new org.apache.avro.Schema.Parser().parse(new String(schemaInfo.getSchema(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public boolean supportSchemaVersioning() {
+        return true;
+    }
+
+    @Override
+    public void setSchemaInfoProvider(SchemaInfoProvider schemaInfoProvider) {
+        this.schemaInfoProvider = schemaInfoProvider;
+    }
+
+    private IoTSensorData decode(byte[] bytes, int offset, int length) {
+        Codec codec = THREAD_CODEC.get();
+        codec.decoder = DecoderFactory.get().binaryDecoder(bytes, offset, length, codec.decoder);
+        try {
+            // A new record each time, the previous one may still be in use by the application
+            return codec.datumReader.read(null, codec.decoder);
+        } catch (IOException ioe) {
+            throw new SchemaSerializationException(ioe);
+        }
+    }
+
+    @Override
+    public SchemaInfo getSchemaInfo() {
+        return SCHEMA_INFO;
+    }
+
+    @Override
+    public Schema<IoTSensorData> clone() {
+        // The schema versions are per topic (the per thread state is not tied to the instance)
+        return new IoTSensorDataAvroSchema();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.pojo;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import static com.example.pulsarworkshop.pojo.IoTSensorDataBinarySchema.*;
+
+/**
+ * Reads the fields of a binary encoded IoT sensor reading (see {@link IoTSensorDataBinarySchema})
+ * in place, from the message buffer, without decoding the whole reading into an object.
+ *
+ * A view can be reused for any number of readings, e.g. one view per consumer thread:
+ *
+ *   Message<ByteBuffer> message = consumer.receive();    // with "Schema.BYTEBUFFER"
+ *   double temp = view.wrap(message.getValue()).getTemp();
+ *
+ * It isn't thread safe, and only valid as long as the wrapped buffer isn't modified.
+ */
+public class IoTSensorDataBinaryView {
+
+    private ByteBuffer buffer;
+    private int offset;
+
+    /**
+     * Point the view to the reading that starts at the current position of the buffer. The
+     * position of the buffer isn't changed.
+     */
+    public IoTSensorDataBinaryView wrap(ByteBuffer buffer) {
+        this.buffer = (buffer.order() == ByteOrder.BIG_ENDIAN) ?
+                buffer : buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        this.offset = buffer.position();
+        return this;
+    }
+
+    public double getTsSeconds() {
+        return buffer.getDouble(offset + TS_OFFSET);
+    }
+
+    public String getTs() {
+        return decodeTs(getTsSeconds());
+    }
+
+    /**
+     * @return the packed MAC address of the device, or {@link IoTSensorDataBinarySchema#NO_DEVICE_ID}
+     *         if the device is null or isn't a MAC address
+     */
+    public long getDeviceId() {
+        return buffer.getLong(offset + DEVICE_OFFSET);
+    }
+
+    public String getDevice() {
+        int flags = getFlags();
+        if ((flags & FLAG_DEVICE_NULL) != 0) {
+            return null;
+        }
+        if ((flags & FLAG_DEVICE_NAME) != 0) {
+            int nameLength = buffer.limit() - offset - FIXED_SIZE;
+            byte[] name = new byte[nameLength];
+            buffer.duplicate().position(offset + FIXED_SIZE).get(name);
+            return new String(name, StandardCharsets.UTF_8);
+        }
+        return deviceName(getDeviceId());
+    }
+
+    public double getCo() {
+        return buffer.getDouble(offset + CO_OFFSET);
+    }
+
+    public double getHumidity() {
+        return buffer.getDouble(offset + HUMIDITY_OFFSET);
+    }
+
+    public boolean isLight() {
+        return (getFlags() & FLAG_LIGHT) != 0;
+    }
+
+    public double getLpg() {
+        return buffer.getDouble(offset + LPG_OFFSET);
+    }
+
+    public boolean isMotion() {
+        return (getFlags() & FLAG_MOTION) != 0;
+    }
+
+    public double getSmoke() {
+        return buffer.getDouble(offset + SMOKE_OFFSET);
+    }
+
+    public double getTemp() {
+        return buffer.getDouble(offset + TEMP_OFFSET);
+    }
+
+    private int getFlags() {
+        return buffer.get(offset + FLAGS_OFFSET);
+    }
+
+    /**
+     * @return a new "IoTSensorData" object with all the fields of the reading
+     */
+    public IoTSensorData toData() {
+        return IoTSensorData.newBuilder()
+                .setTs(getTs())
+                .setDevice(getDevice())
+                .setCo(getCo())
+                .setHumidity(getHumidity())
+                .setLight(isLight())
+                .setLpg(getLpg())
+                .setMotion(isMotion())
+                .setSmoke(getSmoke())
+                .setTemp(getTemp())
+                .build();
+    }
+}
@@ -18,24 +18,62 @@
  */
 package com.example.pulsarworkshop.pojo;
 
+import org.apache.commons.lang3.StringUtils;
+import org.apache.pulsar.client.api.Schema;
+
 import java.util.regex.Pattern;
 
 public class IoTSensorDataUtils {
+
+    public final static String PAYLOAD_FORMAT_AVRO = "AVRO";
+    public final static String PAYLOAD_FORMAT_BINARY = "BINARY";
+
     public static IoTSensorData csvToPojo(String csvLine) {
         String csvLineNoQuote = csvLine.replaceAll("\"", "");
         Pattern pattern = Pattern.compile(",");
         String[] fields = pattern.split(csvLineNoQuote);
 
-        return IoTSensorData.builder()
-                .ts(fields[0])
-                .device(fields[1])
-                .co(Double.parseDouble(fields[2]))
-                .humidity(Double.parseDouble(fields[3]))
-                .light(Boolean.parseBoolean(fields[4]))
-                .lpg(Double.parseDouble(fields[5]))
-                .motion(Boolean.parseBoolean(fields[6]))
-                .smoke(Double.parseDouble(fields[7]))
-                .temp(Double.parseDouble(fields[8]))
+        return IoTSensorData.newBuilder()
+                .setTs(fields[0])
+                .setDevice(fields[1])
+                .setCo(Double.parseDouble(fields[2]))
+                .setHumidity(Double.parseDouble(fields[3]))
+                .setLight(Boolean.parseBoolean(fields[4]))
+                .setLpg(Double.parseDouble(fields[5]))
+                .setMotion(Boolean.parseBoolean(fields[6]))
+                .setSmoke(Double.parseDouble(fields[7]))
+                .setTemp(Double.parseDouble(fields[8]))
                 .build();
     }
+
+    /**
+     * Get the schema of an IoT sensor reading payload format (case insensitive).
+     *
+     * @return the schema, or null if the payload format is unknown
+     */
+    public static Schema<IoTSensorData> payloadSchema(String payloadFormat) {
+        if (StringUtils.equalsIgnoreCase(payloadFormat, PAYLOAD_FORMAT_AVRO)) {
+            // Its own instance, for the schema versions of the topic of a consumer
+            return IoTSensorDataAvroSchema.INSTANCE.clone();
+        } else if (StringUtils.equalsIgnoreCase(payloadFormat, PAYLOAD_FORMAT_BINARY)) {
+            return IoTSensorDataBinarySchema.INSTANCE;
+        }
+        return null;
+    }
+
+    /**
+     * Get the device id (2nd field) of a CSV line without parsing the whole line.
+     */
+    public static String csvDeviceId(String csvLine) {
+        int start = csvLine.indexOf(',') + 1;
+        int end = csvLine.indexOf(',', start);
+        if (start == 0 || end < 0) {
+            return null;
+        }
+
+        if (csvLine.charAt(start) == '"' && end - start >= 2) {
+            return csvLine.substring(start + 1, end - 1);
+        }
+        return csvLine.substring(start, end);
+    }
 }
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.util;
+
+/**
+ * Counts the acknowledgements of a consumer, and estimates how many ack commands (RPCs) the
+ * Pulsar client sends to the broker for them.
+ *
+ * The Pulsar client doesn't expose that number, so it is derived from how the client groups the
+ * acknowledgements: without an ack group time, each "acknowledge()" call (of one message or of a
+ * whole batch) is sent right away as one command; with an ack group time, the acknowledgements
+ * are sent at most once per group time, plus once per 1000 pending individual acknowledgements.
+ * The group time windows are aligned on the wall clock here, so this is an estimate.
+ */
+public class AckRpcCounter {
+
+    // Same as the "MAX_ACK_GROUP_SIZE" of the Pulsar client ack grouping tracker
+    private final static int MAX_ACK_GROUP_SIZE = 1000;
+
+    private final long ackGroupTimeMs;
+
+    private long ackCalls = 0;
+    private long ackedMsgCnt = 0;
+    private long ackRpcCnt = 0;
+
+    // The current group time window, and what is pending in it
+    private long groupWindow = -1;
+    private int pendingIndividualAcks = 0;
+    private boolean pendingCumulativeAck = false;
+
+    public AckRpcCounter(long ackGroupTimeMs) {
+        this.ackGroupTimeMs = ackGroupTimeMs;
+    }
+
+    /**
+     * Record an individual acknowledgement of one or more messages (i.e. one "acknowledge()" call).
+     */
+    public synchronized void recordAck(int msgCnt) {
+        ackCalls++;
+        ackedMsgCnt += msgCnt;
+
+        if (ackGroupTimeMs <= 0) {
+            ackRpcCnt++;
+            return;
+        }
+
+        nextGroupWindow();
+        pendingIndividualAcks += msgCnt;
+        if (pendingIndividualAcks >= MAX_ACK_GROUP_SIZE) {
+            ackRpcCnt++;
+            pendingIndividualAcks = 0;
+        }
+    }
+
+    /**
+     * Record a cumulative acknowledgement of the given number of messages (i.e. one
+     * "acknowledgeCumulative()" call). Only the last cumulative position of a group time window
+     * is sent to the broker.
+     */
+    public synchronized void recordCumulativeAck(int msgCnt) {
+        ackCalls++;
+        ackedMsgCnt += msgCnt;
+
+        if (ackGroupTimeMs <= 0) {
+            ackRpcCnt++;
+            return;
+        }
+
+        nextGroupWindow();
+        pendingCumulativeAck = true;
+    }
+
+    // What is pending is sent at the end of each group time window
+    private void nextGroupWindow() {
+        long window = System.currentTimeMillis() / ackGroupTimeMs;
+        if (window != groupWindow) {
+            groupWindow = window;
+            flushPending();
+        }
+    }
+
+    private void flushPending() {
+        if (pendingIndividualAcks > 0) {
+            ackRpcCnt++;
+        }
+        if (pendingCumulativeAck) {
+            ackRpcCnt++;
+        }
+        pendingIndividualAcks = 0;
+        pendingCumulativeAck = false;
+    }
+
+    public synchronized long getAckCalls() { return ackCalls; }
+    public synchronized long getAckedMsgCnt() { return ackedMsgCnt; }
+
+    /**
+     * @return the estimated number of ack commands, including the ones still pending (which the
+     *         client sends when the consumer is closed)
+     */
+    public synchronized long getAckRpcCnt() {
+        return ackRpcCnt + ((pendingIndividualAcks > 0) ? 1 : 0) + (pendingCumulativeAck ? 1 : 0);
+    }
+}
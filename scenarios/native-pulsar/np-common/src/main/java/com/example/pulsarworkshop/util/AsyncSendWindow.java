@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.util;
+
+import org.apache.pulsar.client.api.MessageId;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds the number of in-flight asynchronous sends of a producer.
+ *
+ * A permit is taken before each "sendAsync()" call and given back when the send completes,
+ * so the publishing thread blocks once "maxInFlight" messages are waiting for the broker
+ * acknowledgement. The completion callbacks run on the Pulsar client IO threads, so the
+ * completion and failure counters are lock-free.
+ */
+public class AsyncSendWindow {
+
+    private final int maxInFlight;
+    private final Semaphore inFlightPermits;
+
+    private final LongAdder completedCnt = new LongAdder();
+    private final LongAdder failedCnt = new LongAdder();
+    private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+
+    public AsyncSendWindow(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        this.inFlightPermits = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Block until there is room in the window for one more send.
+     */
+    public void acquire() throws InterruptedException {
+        inFlightPermits.acquire();
+    }
+
+    /**
+     * Track the completion of a send that was started after {@link #acquire()}.
+     */
+    public void track(CompletableFuture<MessageId> sendFuture) {
+        sendFuture.whenComplete((messageId, throwable) -> {
+            if (throwable == null) {
+                completedCnt.increment();
+            } else {
+                failedCnt.increment();
+                firstFailure.compareAndSet(null, throwable);
+            }
+            inFlightPermits.release();
+        });
+    }
+
+    /**
+     * Wait until all the in-flight sends are completed (successfully or not).
+     *
+     * @return false if the wait timed out
+     */
+    public boolean awaitDrained(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        if (inFlightPermits.tryAcquire(maxInFlight, timeout, timeUnit)) {
+            inFlightPermits.release(maxInFlight);
+            return true;
+        }
+        return false;
+    }
+
+    public int getMaxInFlight() { return maxInFlight; }
+    public int getInFlight() { return maxInFlight - inFlightPermits.availablePermits(); }
+    public long getCompletedCnt() { return completedCnt.sum(); }
+    public long getFailedCnt() { return failedCnt.sum(); }
+    public Throwable getFirstFailure() { return firstFailure.get(); }
+}
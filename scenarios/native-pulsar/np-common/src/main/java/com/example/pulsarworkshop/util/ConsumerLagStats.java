@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.util;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.pulsar.client.api.Message;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records, for every received message, how old it is when the consumer gets it:
+ * - the "publish lag": now - publish time, i.e. the time spent in the producer batch, the broker
+ *   and the consumer receiver queue
+ * - the "event lag": now - event time (when set by the producer), i.e. the end-to-end staleness
+ *   of the reading, including the time it waited to be sent on the producer side
+ *
+ * Both are recorded in histograms (millisecond precision, up to 1 hour), which can be read per
+ * interval for a live view, and in total at the end of a run. It is thread safe, so all the
+ * consumers of an application can share it.
+ */
+public class ConsumerLagStats {
+
+    private final static long MAX_LAG_MS = TimeUnit.HOURS.toMillis(1);
+    private final static int SIGNIFICANT_DIGITS = 3;
+
+    private final Recorder publishLagRecorder = new Recorder(MAX_LAG_MS, SIGNIFICANT_DIGITS);
+    private final Recorder eventLagRecorder = new Recorder(MAX_LAG_MS, SIGNIFICANT_DIGITS);
+
+    private final Histogram publishLagTotal = new Histogram(MAX_LAG_MS, SIGNIFICANT_DIGITS);
+    private final Histogram eventLagTotal = new Histogram(MAX_LAG_MS, SIGNIFICANT_DIGITS);
+    private Histogram publishLagInterval;
+    private Histogram eventLagInterval;
+
+    public void record(Message<?> message) {
+        long nowMs = System.currentTimeMillis();
+        publishLagRecorder.recordValue(clampLag(nowMs - message.getPublishTime()));
+        // 0 means no event time
+        if (message.getEventTime() > 0) {
+            eventLagRecorder.recordValue(clampLag(nowMs - message.getEventTime()));
+        }
+    }
+
+    // The producer and consumer clocks may differ a little
+    private static long clampLag(long lagMs) {
+        return Math.max(0, Math.min(lagMs, MAX_LAG_MS));
+    }
+
+    /**
+     * Move what was recorded since the previous call to the totals.
+     *
+     * @return the summary of that interval
+     */
+    public synchronized String takeIntervalSummary() {
+        publishLagInterval = publishLagRecorder.getIntervalHistogram(publishLagInterval);
+        eventLagInterval = eventLagRecorder.getIntervalHistogram(eventLagInterval);
+        publishLagTotal.add(publishLagInterval);
+        eventLagTotal.add(eventLagInterval);
+        return summarize(publishLagInterval, eventLagInterval);
+    }
+
+    /**
+     * @return the summary of everything recorded so far
+     */
+    public synchronized String getTotalSummary() {
+        takeIntervalSummary();
+        return summarize(publishLagTotal, eventLagTotal);
+    }
+
+    /**
+     * @return a copy of the publish lag histogram of everything recorded so far
+     */
+    public synchronized Histogram getPublishLagHistogram() {
+        takeIntervalSummary();
+        return publishLagTotal.copy();
+    }
+
+    /**
+     * @return a copy of the event lag histogram of everything recorded so far
+     */
+    public synchronized Histogram getEventLagHistogram() {
+        takeIntervalSummary();
+        return eventLagTotal.copy();
+    }
+
+    private static String summarize(Histogram publishLag, Histogram eventLag) {
+        return publishLag.getTotalCount() + " msgs, publish lag " + percentiles(publishLag) +
+                ", event lag " + ((eventLag.getTotalCount() > 0) ? percentiles(eventLag) : "n/a");
+    }
+
+    private static String percentiles(Histogram histogram) {
+        if (histogram.getTotalCount() == 0) {
+            return "n/a";
+        }
+        return "p50 " + histogram.getValueAtPercentile(50) +
+                " / p90 " + histogram.getValueAtPercentile(90) +
+                " / p99 " + histogram.getValueAtPercentile(99) +
+                " / p99.9 " + histogram.getValueAtPercentile(99.9) +
+                " / max " + histogram.getMaxValue() + " ms";
+    }
+}
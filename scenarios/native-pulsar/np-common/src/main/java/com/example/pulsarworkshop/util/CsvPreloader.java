@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.util;
+
+import com.example.pulsarworkshop.exception.WorkshopRuntimException;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.PulsarClient;
+import org.apache.pulsar.client.api.PulsarClientException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the IoT sensor readings of a CSV file as message payloads, and publishes them to a topic
+ * before a consumer program starts (the "-pre" option), so the consumer is measured on a full
+ * backlog instead of the producer rate.
+ */
+public class CsvPreloader {
+
+    private final static int MAX_IN_FLIGHT = 1000;
+    private final static long DRAIN_TIMEOUT_SEC = 30;
+
+    /**
+     * The readings of the CSV file, one payload per line, without the title line and the blank lines.
+     */
+    public static List<byte[]> loadPayloads(File csvFile) throws IOException {
+        List<byte[]> payloads = new ArrayList<>();
+        CsvFileLineScanner csvFileLineScanner = new CsvFileLineScanner(csvFile);
+        boolean isTitleLine = true;
+        while (csvFileLineScanner.hasNextLine()) {
+            String csvLine = csvFileLineScanner.getNextLine();
+            if (!isTitleLine && StringUtils.isNotBlank(csvLine)) {
+                payloads.add(csvLine.getBytes());
+            }
+            isTitleLine = false;
+        }
+        if (payloads.isEmpty()) {
+            throw new WorkshopRuntimException("No IoT sensor reading in " + csvFile);
+        }
+        return payloads;
+    }
+
+    /**
+     * Publish "msgCnt" readings of the CSV file (from the start again when the file is shorter),
+     * and wait for all of them to be acknowledged by the broker.
+     */
+    public static void preload(PulsarClient pulsarClient, String topicName, File csvFile, long msgCnt)
+            throws IOException, PulsarClientException, InterruptedException {
+        List<byte[]> payloads = loadPayloads(csvFile);
+
+        try (Producer<byte[]> producer = pulsarClient.newProducer().topic(topicName).create()) {
+            AsyncSendWindow sendWindow = new AsyncSendWindow(MAX_IN_FLIGHT);
+            for (long i = 0; i < msgCnt; i++) {
+                sendWindow.acquire();
+                sendWindow.track(producer.sendAsync(payloads.get((int) (i % payloads.size()))));
+            }
+            producer.flush();
+            if (!sendWindow.awaitDrained(DRAIN_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+                throw new WorkshopRuntimException("Timed out preloading the messages: " +
+                        sendWindow.getInFlight() + " still in flight after " + DRAIN_TIMEOUT_SEC + " seconds");
+            }
+            if (sendWindow.getFailedCnt() > 0) {
+                throw new WorkshopRuntimException("Failed to preload " + sendWindow.getFailedCnt() + " messages: " +
+                        sendWindow.getFirstFailure().getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.util;
+
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageRouter;
+import org.apache.pulsar.client.api.TopicMetadata;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Routes the messages of a partitioned topic by the hash of their key (the IoT device id).
+ *
+ * The hash is the same as the one of the default partitioner of the Kafka clients (murmur2 of the
+ * UTF-8 key bytes, made positive, modulo the number of partitions). So for the same number of
+ * partitions a device lands on the same partition number whether its readings are published by
+ * a native Pulsar producer or by a Kafka producer (e.g. through Starlight for Kafka).
+ *
+ * Messages without a key are spread round-robin over the partitions.
+ */
+public class DeviceHashMessageRouter implements MessageRouter {
+
+    private final AtomicInteger roundRobinIdx = new AtomicInteger();
+
+    @Override
+    public int choosePartition(Message<?> msg, TopicMetadata metadata) {
+        int numPartitions = metadata.numPartitions();
+        if (!msg.hasKey()) {
+            return (roundRobinIdx.getAndIncrement() & Integer.MAX_VALUE) % numPartitions;
+        }
+        return partitionFor(msg.getKeyBytes(), numPartitions);
+    }
+
+    public static int partitionFor(byte[] keyBytes, int numPartitions) {
+        return (murmur2(keyBytes) & Integer.MAX_VALUE) % numPartitions;
+    }
+
+    /**
+     * The 32-bit murmur2 hash, with the same seed as "org.apache.kafka.common.utils.Utils.murmur2()".
+     */
+    public static int murmur2(byte[] data) {
+        final int length = data.length;
+        final int seed = 0x9747b28c;
+        final int m = 0x5bd1e995;
+        final int r = 24;
+
+        int h = seed ^ length;
+        int length4 = length / 4;
+
+        for (int i = 0; i < length4; i++) {
+            final int i4 = i * 4;
+            int k = (data[i4] & 0xff) +
+                    ((data[i4 + 1] & 0xff) << 8) +
+                    ((data[i4 + 2] & 0xff) << 16) +
+                    ((data[i4 + 3] & 0xff) << 24);
+            k *= m;
+            k ^= k >>> r;
+            k *= m;
+            h *= m;
+            h ^= k;
+        }
+
+        // The last few bytes of the input
+        switch (length % 4) {
+            case 3:
+                h ^= (data[(length & ~3) + 2] & 0xff) << 16;
+            case 2:
+                h ^= (data[(length & ~3) + 1] & 0xff) << 8;
+            case 1:
+                h ^= data[length & ~3] & 0xff;
+                h *= m;
+        }
+
+        h ^= h >>> 13;
+        h *= m;
+        h ^= h >>> 15;
+
+        return h;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Processes tasks on a pool of worker threads while keeping the order of the tasks of each key
+ * (e.g. the messages of one device): all the tasks of a key go to the same worker, chosen by
+ * the hash of the key, and each worker runs its tasks one at a time, in submission order. The
+ * tasks of different keys complete out of order, so the messages they process must be
+ * acknowledged individually.
+ *
+ * Each worker has a bounded queue. When the queue of a worker is full, the "pause" callback is
+ * called (e.g. "Consumer.pause()", so the broker stops pushing messages) and the submitting
+ * thread blocks until there is room again. Once all the queues are down to half their capacity,
+ * the "resume" callback is called.
+ */
+public class KeyOrderedExecutor {
+
+    // Tells a worker to exit once its queue is drained
+    private final static Runnable STOP = () -> {};
+
+    private final String name;
+    private final int queueCapacity;
+    private final List<BlockingQueue<Runnable>> workerQueues = new ArrayList<>();
+    private final List<Thread> workerThreads = new ArrayList<>();
+    private final List<LongAdder> workerTaskCnts = new ArrayList<>();
+
+    private final Runnable pauseCallback;
+    private final Runnable resumeCallback;
+    private volatile boolean paused = false;
+    private long pauseCnt = 0;
+
+    private final LongAdder failedCnt = new LongAdder();
+    private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+
+    /**
+     * @param pauseCallback  called when the queue of a worker is full (may be null)
+     * @param resumeCallback called when the queues are down to half their capacity again (may be null)
+     */
+    public KeyOrderedExecutor(String name,
+                              int workerNum,
+                              int queueCapacity,
+                              Runnable pauseCallback,
+                              Runnable resumeCallback) {
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        this.pauseCallback = pauseCallback;
+        this.resumeCallback = resumeCallback;
+
+        for (int i = 0; i < workerNum; i++) {
+            BlockingQueue<Runnable> workerQueue = new ArrayBlockingQueue<>(queueCapacity);
+            LongAdder workerTaskCnt = new LongAdder();
+            Thread workerThread = new Thread(() -> runWorker(workerQueue, workerTaskCnt), name + "-worker-" + i);
+            workerThread.setDaemon(true);
+
+            workerQueues.add(workerQueue);
+            workerTaskCnts.add(workerTaskCnt);
+            workerThreads.add(workerThread);
+            workerThread.start();
+        }
+    }
+
+    /**
+     * @return the worker that runs the tasks of the key (a null key always goes to the first worker)
+     */
+    public int workerFor(String key) {
+        if (key == null) {
+            return 0;
+        }
+        // Spread the bits of the hash code, like a HashMap does
+        int hash = key.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), workerQueues.size());
+    }
+
+    /**
+     * Queue the task on the worker of the key, blocking (after pausing) while its queue is full.
+     */
+    public void submit(String key, Runnable task) throws InterruptedException {
+        submitTo(workerFor(key), task);
+    }
+
+    /**
+     * Queue the task on the given worker (e.g. to spread the tasks round-robin instead of by key),
+     * blocking (after pausing) while its queue is full.
+     */
+    public void submitTo(int workerIdx, Runnable task) throws InterruptedException {
+        BlockingQueue<Runnable> workerQueue = workerQueues.get(workerIdx);
+        if (!workerQueue.offer(task)) {
+            pause();
+            workerQueue.put(task);
+        }
+    }
+
+    private void runWorker(BlockingQueue<Runnable> workerQueue, LongAdder workerTaskCnt) {
+        try {
+            while (true) {
+                Runnable task = workerQueue.take();
+                if (task == STOP) {
+                    return;
+                }
+
+                try {
+                    task.run();
+                } catch (RuntimeException re) {
+                    failedCnt.increment();
+                    firstFailure.compareAndSet(null, re);
+                }
+                workerTaskCnt.increment();
+
+                if (paused && workerQueue.size() <= queueCapacity / 2) {
+                    resumeIfDrained();
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void pause() {
+        if (!paused) {
+            paused = true;
+            pauseCnt++;
+            if (pauseCallback != null) {
+                pauseCallback.run();
+            }
+        }
+    }
+
+    private synchronized void resumeIfDrained() {
+        if (!paused) {
+            return;
+        }
+        for (BlockingQueue<Runnable> workerQueue : workerQueues) {
+            if (workerQueue.size() > queueCapacity / 2) {
+                return;
+            }
+        }
+        paused = false;
+        if (resumeCallback != null) {
+            resumeCallback.run();
+        }
+    }
+
+    /**
+     * Stop accepting tasks, and wait until all the queued tasks are done.
+     *
+     * @return false if the wait timed out
+     */
+    public boolean shutdownAndAwait(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        for (BlockingQueue<Runnable> workerQueue : workerQueues) {
+            workerQueue.put(STOP);
+        }
+
+        long deadlineNanos = System.nanoTime() + timeUnit.toNanos(timeout);
+        for (Thread workerThread : workerThreads) {
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+            if (remainingMs <= 0) {
+                return false;
+            }
+            workerThread.join(remainingMs);
+            if (workerThread.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getName() { return name; }
+    public int getWorkerNum() { return workerQueues.size(); }
+    public synchronized long getPauseCnt() { return pauseCnt; }
+    public long getFailedCnt() { return failedCnt.sum(); }
+    public Throwable getFirstFailure() { return firstFailure.get(); }
+
+    /**
+     * @return the number of tasks run by each worker
+     */
+    public List<Long> getWorkerTaskCnts() {
+        List<Long> taskCnts = new ArrayList<>();
+        for (LongAdder workerTaskCnt : workerTaskCnts) {
+            taskCnts.add(workerTaskCnt.sum());
+        }
+        return taskCnts;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.util;
+
+import org.apache.pulsar.client.api.PulsarClient;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.TableView;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Keeps the latest reading of each device in memory, from a topic keyed by the device id (e.g.
+ * published with "-kd"), or by the tag id of the "DeviceTS" readings. The readings are read with
+ * a Pulsar {@link TableView}, which reads the compacted topic first (if compaction is enabled on
+ * the topic), so the start-up cost depends on the number of devices instead of the topic history.
+ *
+ * Each reading is converted once, when it arrives (e.g. a CSV line parsed into "IoTSensorData"),
+ * so a lookup is a single hash map read, without any round trip to the broker or a database.
+ * The listeners are called on the client thread that reads the topic, so they must not block.
+ *
+ * @param <T> the message value type
+ * @param <V> the cached reading type
+ */
+public class LatestReadingCache<T, V> implements Closeable {
+
+    private final TableView<T> tableView;
+    private final Function<T, V> readingMapper;
+    private final Map<String, V> latestReadings = new ConcurrentHashMap<>();
+    private final List<BiConsumer<String, V>> listeners = new CopyOnWriteArrayList<>();
+
+    private final LongAdder updateCnt = new LongAdder();
+    private final LongAdder lookupCnt = new LongAdder();
+    private final LongAdder missCnt = new LongAdder();
+
+    /**
+     * Create the cache, once all the existing readings of the topic are loaded.
+     *
+     * @param readingMapper converts a message value into the cached reading, null removes the device
+     */
+    public static <T, V> LatestReadingCache<T, V> create(PulsarClient pulsarClient,
+                                                         String topicName,
+                                                         Schema<T> schema,
+                                                         Function<T, V> readingMapper) throws PulsarClientException {
+        TableView<T> tableView = pulsarClient.newTableViewBuilder(schema)
+                .topic(topicName)
+                .create();
+        return new LatestReadingCache<>(tableView, readingMapper);
+    }
+
+    LatestReadingCache(TableView<T> tableView, Function<T, V> readingMapper) {
+        this.tableView = tableView;
+        this.readingMapper = readingMapper;
+        // Called for the readings loaded so far, then for each new one
+        tableView.forEachAndListen(this::update);
+    }
+
+    private void update(String deviceId, T value) {
+        V reading = (value == null) ? null : readingMapper.apply(value);
+        if (reading == null) {
+            latestReadings.remove(deviceId);
+        } else {
+            latestReadings.put(deviceId, reading);
+        }
+        updateCnt.increment();
+
+        for (BiConsumer<String, V> listener : listeners) {
+            listener.accept(deviceId, reading);
+        }
+    }
+
+    /**
+     * @return the latest reading of the device, or null if the device is unknown
+     */
+    public V get(String deviceId) {
+        V reading = latestReadings.get(deviceId);
+        lookupCnt.increment();
+        if (reading == null) {
+            missCnt.increment();
+        }
+        return reading;
+    }
+
+    public boolean contains(String deviceId) {
+        return latestReadings.containsKey(deviceId);
+    }
+
+    public int size() {
+        return latestReadings.size();
+    }
+
+    /**
+     * @return a read-only, live view of the latest reading of each device
+     */
+    public Map<String, V> asMap() {
+        return Collections.unmodifiableMap(latestReadings);
+    }
+
+    /**
+     * Call the listener for each reading received from now on, with the device id and the new
+     * reading (null when the device is removed).
+     */
+    public void addListener(BiConsumer<String, V> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(BiConsumer<String, V> listener) {
+        listeners.remove(listener);
+    }
+
+    public long getUpdateCnt() { return updateCnt.sum(); }
+    public long getLookupCnt() { return lookupCnt.sum(); }
+    public long getMissCnt() { return missCnt.sum(); }
+
+    @Override
+    public void close() throws IOException {
+        tableView.close();
+    }
+}
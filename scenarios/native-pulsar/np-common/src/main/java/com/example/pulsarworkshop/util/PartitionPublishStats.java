@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.util;
+
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.interceptor.ProducerInterceptor;
+import org.apache.pulsar.client.impl.MessageIdImpl;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A producer interceptor that counts the acknowledged messages and their publish latency per
+ * partition of a partitioned topic, in order to spot the hot partitions of a skewed key space.
+ *
+ * The partition comes from the message id of the acknowledgement. The latency is the time between
+ * the publish time the client stamps on the message and its acknowledgement, so it has a millisecond
+ * resolution and includes the batching delay. A non-partitioned topic is reported as partition -1.
+ */
+public class PartitionPublishStats implements ProducerInterceptor {
+
+    public static class PartitionStats {
+        private final LongAdder ackedMsgCnt = new LongAdder();
+        private final LongAdder latencySumMs = new LongAdder();
+        private final LongAccumulator latencyMaxMs = new LongAccumulator(Long::max, 0);
+
+        void record(long latencyMs) {
+            ackedMsgCnt.increment();
+            latencySumMs.add(latencyMs);
+            latencyMaxMs.accumulate(latencyMs);
+        }
+
+        public long getAckedMsgCnt() { return ackedMsgCnt.sum(); }
+        public long getLatencyMaxMs() { return latencyMaxMs.get(); }
+        public double getLatencyAvgMs() {
+            long cnt = ackedMsgCnt.sum();
+            return (cnt > 0) ? (double) latencySumMs.sum() / cnt : 0.0;
+        }
+    }
+
+    private final Map<Integer, PartitionStats> partitionStatsMap = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean eligible(Message message) {
+        return true;
+    }
+
+    @Override
+    public Message beforeSend(Producer producer, Message message) {
+        return message;
+    }
+
+    @Override
+    public void onSendAcknowledgement(Producer producer, Message message, MessageId msgId, Throwable exception) {
+        if (exception != null) {
+            return;
+        }
+
+        int partitionIdx = (msgId instanceof MessageIdImpl) ? ((MessageIdImpl) msgId).getPartitionIndex() : -1;
+        long publishTime = message.getPublishTime();
+        long latencyMs = (publishTime > 0) ? Math.max(0, System.currentTimeMillis() - publishTime) : 0;
+
+        partitionStatsMap.computeIfAbsent(partitionIdx, idx -> new PartitionStats()).record(latencyMs);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * @return the statistics of the partitions that got at least one message, by partition index
+     */
+    public SortedMap<Integer, PartitionStats> getPartitionStats() {
+        return new TreeMap<>(partitionStatsMap);
+    }
+}
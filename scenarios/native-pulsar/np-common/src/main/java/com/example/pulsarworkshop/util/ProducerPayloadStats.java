@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.util;
+
+import org.apache.pulsar.client.api.CompressionType;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.interceptor.ProducerInterceptor;
+import org.apache.pulsar.common.compression.CompressionCodec;
+import org.apache.pulsar.common.compression.CompressionCodecProvider;
+import org.apache.pulsar.common.naming.TopicName;
+import org.apache.pulsar.shade.io.netty.buffer.ByteBuf;
+import org.apache.pulsar.shade.io.netty.buffer.Unpooled;
+
+import java.io.ByteArrayOutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A producer interceptor that measures the raw (serialized) payload bytes of the published
+ * messages and, optionally, estimates the payload bytes on the wire after batching and compression.
+ *
+ * The bytes actually sent are reported by the client statistics ("ProducerStats.getTotalBytesSent()"),
+ * but the Pulsar client 2.10 counts the uncompressed size of each batch there, so with batching
+ * they don't show the compression. The optional estimate is a client-internal approximation: it
+ * relies on the client's internal compression codecs (not part of the public client API), and it
+ * groups the payloads the same way the producers batch them and compresses each group with the
+ * same codec. Like in the client, each producer batches the messages of each partition separately
+ * (by message count, bytes and publish delay), and with key based batching a batch of a partition
+ * is split into one batch per key when it is sent. Protocol headers
+ * (message and batch metadata) are not included, and the batches are cut by the publish delay
+ * when the messages are sent, not by the client timer.
+ *
+ * The estimation copies and compresses every payload on the sending thread, which adds about
+ * the compression CPU of the client again, so it is only enabled on request. The counters alone
+ * are cheap.
+ */
+public class ProducerPayloadStats implements ProducerInterceptor {
+
+    private final boolean wireBytesEstimated;
+    private final CompressionCodec compressionCodec;
+    private final int batchMaxMessages;
+    private final int batchMaxBytes;
+    private final long batchMaxDelayNanos;
+    private final boolean keyBasedBatching;
+
+    private final LongAdder rawMsgCnt = new LongAdder();
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder ackedMsgCnt = new LongAdder();
+    private final LongAdder ackedRawBytes = new LongAdder();
+
+    // The batch being estimated for each producer and partition
+    private final Map<String, BatchEstimate> curBatches = new ConcurrentHashMap<>();
+    private final LongAdder wireBytes = new LongAdder();
+    private final LongAdder batchCnt = new LongAdder();
+
+    /**
+     * Only the raw payload bytes, no wire bytes estimation.
+     */
+    public ProducerPayloadStats() {
+        this.wireBytesEstimated = false;
+        this.compressionCodec = null;
+        this.batchMaxMessages = 1;
+        this.batchMaxBytes = Integer.MAX_VALUE;
+        this.batchMaxDelayNanos = 0;
+        this.keyBasedBatching = false;
+    }
+
+    /**
+     * @param batchMaxMessages 1 means no batching
+     * @param keyBasedBatching whether the producers use the key based batcher ("BatcherBuilder.KEY_BASED")
+     */
+    public ProducerPayloadStats(CompressionType compressionType,
+                                int batchMaxMessages,
+                                int batchMaxBytes,
+                                long batchMaxDelay,
+                                TimeUnit delayTimeUnit,
+                                boolean keyBasedBatching) {
+        this.wireBytesEstimated = true;
+        this.compressionCodec = CompressionCodecProvider.getCompressionCodec(compressionType);
+        this.batchMaxMessages = batchMaxMessages;
+        this.batchMaxBytes = batchMaxBytes;
+        this.batchMaxDelayNanos = delayTimeUnit.toNanos(batchMaxDelay);
+        this.keyBasedBatching = keyBasedBatching;
+    }
+
+    @Override
+    public boolean eligible(Message message) {
+        return true;
+    }
+
+    @Override
+    public Message beforeSend(Producer producer, Message message) {
+        byte[] payload = message.getData();
+        rawMsgCnt.increment();
+        rawBytes.add(payload.length);
+        if (wireBytesEstimated) {
+            String batchStream = producer.getProducerName() + "@" + partitionOf(producer, message);
+            curBatches.computeIfAbsent(batchStream, stream -> new BatchEstimate()).add(message.getKey(), payload);
+        }
+        return message;
+    }
+
+    /**
+     * The real client calls the interceptors from the producer of each partition, the in-memory
+     * client from the producer of the topic, with the partition in the message.
+     */
+    private static String partitionOf(Producer<?> producer, Message<?> message) {
+        String messageTopic = message.getTopicName();
+        if (messageTopic != null && messageTopic.contains(TopicName.PARTITIONED_TOPIC_SUFFIX)) {
+            return messageTopic;
+        }
+        return producer.getTopic();
+    }
+
+    @Override
+    public void onSendAcknowledgement(Producer producer, Message message, MessageId msgId, Throwable exception) {
+        if (exception == null) {
+            ackedMsgCnt.increment();
+            ackedRawBytes.add(message.size());
+        }
+    }
+
+    @Override
+    public void close() {
+        flushBatches();
+    }
+
+    private void flushBatches() {
+        for (BatchEstimate batchEstimate : curBatches.values()) {
+            batchEstimate.flush();
+        }
+    }
+
+    /**
+     * The batch of one producer and partition, with one group of messages per key with key based
+     * batching (and a single group otherwise). The limits apply to the whole batch.
+     */
+    private class BatchEstimate {
+        private final Map<String, ByteArrayOutputStream> groups = new LinkedHashMap<>();
+        private int msgCnt = 0;
+        private int byteCnt = 0;
+        private long startNanos = 0;
+
+        synchronized void add(String key, byte[] payload) {
+            long now = System.nanoTime();
+            if (msgCnt > 0 &&
+                (msgCnt >= batchMaxMessages ||
+                 byteCnt + payload.length > batchMaxBytes ||
+                 now - startNanos >= batchMaxDelayNanos)) {
+                flush();
+            }
+
+            if (msgCnt == 0) {
+                startNanos = now;
+            }
+            String groupKey = (keyBasedBatching && key != null) ? key : "";
+            ByteArrayOutputStream group = groups.computeIfAbsent(groupKey, k -> new ByteArrayOutputStream());
+            // Each message in a batch is prefixed with its (single message) metadata, mainly its size
+            if (batchMaxMessages > 1) {
+                group.write(payload.length >>> 24);
+                group.write(payload.length >>> 16);
+                group.write(payload.length >>> 8);
+                group.write(payload.length);
+            }
+            group.write(payload, 0, payload.length);
+            msgCnt++;
+            byteCnt += payload.length;
+        }
+
+        synchronized void flush() {
+            if (msgCnt == 0) {
+                return;
+            }
+
+            for (ByteArrayOutputStream group : groups.values()) {
+                ByteBuf uncompressed = Unpooled.wrappedBuffer(group.toByteArray());
+                ByteBuf compressed = compressionCodec.encode(uncompressed);
+                wireBytes.add(compressed.readableBytes());
+                batchCnt.increment();
+                // The "NONE" codec returns the (retained) input buffer, so both releases are always needed
+                compressed.release();
+                uncompressed.release();
+            }
+
+            groups.clear();
+            msgCnt = 0;
+            byteCnt = 0;
+        }
+    }
+
+    public long getRawMsgCnt() { return rawMsgCnt.sum(); }
+    public long getRawBytes() { return rawBytes.sum(); }
+    public long getAckedMsgCnt() { return ackedMsgCnt.sum(); }
+    public long getAckedRawBytes() { return ackedRawBytes.sum(); }
+    public boolean isWireBytesEstimated() { return wireBytesEstimated; }
+
+    /**
+     * The estimated (client-internal approximation) payload bytes on the wire, including the last
+     * (possibly incomplete) batches. Always 0 when the estimation is not enabled.
+     */
+    public long getWireBytes() {
+        flushBatches();
+        return wireBytes.sum();
+    }
+
+    public long getBatchCnt() {
+        flushBatches();
+        return batchCnt.sum();
+    }
+}
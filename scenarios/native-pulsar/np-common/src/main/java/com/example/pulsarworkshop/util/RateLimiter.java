@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spreads the messages evenly over time, at most "permitsPerSec" messages per second.
+ *
+ * Each call reserves the next free time slots for its messages and waits (outside of the lock)
+ * until the first one is due, so a batch of messages goes out at once and delays the next call
+ * by its size. The unused time is only saved up for "MAX_CATCH_UP_MS" milliseconds, which makes up
+ * for the sleeps that overshoot (e.g. one message at a time at a high rate) without allowing a
+ * burst after an idle period.
+ */
+public class RateLimiter {
+
+    private final static long MAX_CATCH_UP_MS = 10;
+    private final static long MAX_CATCH_UP_NANOS = TimeUnit.MILLISECONDS.toNanos(MAX_CATCH_UP_MS);
+
+    private final double permitsPerSec;
+    private final double nanosPerPermit;
+    private long nextFreeNanos;
+
+    public RateLimiter(double permitsPerSec) {
+        if (permitsPerSec <= 0) {
+            throw new IllegalArgumentException("The rate must be positive, but got " + permitsPerSec);
+        }
+        this.permitsPerSec = permitsPerSec;
+        this.nanosPerPermit = TimeUnit.SECONDS.toNanos(1) / permitsPerSec;
+        this.nextFreeNanos = System.nanoTime();
+    }
+
+    /**
+     * Block until the given number of messages can go out.
+     *
+     * @return the time waited in nanoseconds
+     */
+    public long acquire(int permits) throws InterruptedException {
+        long waitNanos = reserve(permits, System.nanoTime());
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        return waitNanos;
+    }
+
+    /**
+     * @return how long to wait from "nowNanos" before the reserved messages can go out
+     */
+    synchronized long reserve(int permits, long nowNanos) {
+        if (nextFreeNanos - (nowNanos - MAX_CATCH_UP_NANOS) < 0) {
+            nextFreeNanos = nowNanos - MAX_CATCH_UP_NANOS;
+        }
+        long waitNanos = Math.max(0, nextFreeNanos - nowNanos);
+        nextFreeNanos += (long) (permits * nanosPerPermit);
+        return waitNanos;
+    }
+
+    public double getPermitsPerSec() { return permitsPerSec; }
+}
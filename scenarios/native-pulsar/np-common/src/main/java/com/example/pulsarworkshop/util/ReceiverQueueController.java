@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sizes the receiver queue (prefetch) of a consumer from what it observes, once per interval:
+ * - the consumer is the bottleneck when its receiver queue stays (nearly) full: the prefetched
+ *   messages only cost memory, so the queue is shrunk to what the consumer processes in
+ *   "targetBufferMs" (but not below "minSize")
+ * - the consumer is starved when it waits in "receive()" while its receiver queue is (nearly)
+ *   empty: the queue is doubled (but not above "maxSize"), like the auto scaled receiver queue
+ *   of the newer Pulsar clients. From the client side, a slow producer looks the same, but a
+ *   larger queue costs no memory as long as it stays empty.
+ *
+ * The number of messages in the receiver queue is sampled once per interval, when the decision is
+ * due, as reading it costs a consumer stats snapshot.
+ *
+ * Recreating the consumer drops its prefetched messages (they are redelivered) and its queue has
+ * to fill up again, so the decisions come with some hysteresis:
+ * - the queue is only shrunk when the target size is at most half of the current size
+ * - a change is only made once the same condition was seen in "STABLE_INTERVALS" intervals in a row
+ * - after a change, the next "SETTLE_INTERVALS" intervals are not considered, as the new consumer
+ *   is still filling up its queue
+ * Each change is kept as a {@link Decision}.
+ */
+public class ReceiverQueueController {
+
+    private final static double FULL_OCCUPANCY = 0.9;
+    private final static double EMPTY_OCCUPANCY = 0.1;
+    private final static double STARVED_WAIT_FRACTION = 0.2;
+    public final static int STABLE_INTERVALS = 2;
+    public final static int SETTLE_INTERVALS = 1;
+
+    public final static String CONSUMER_BOUND = "consumer-bound";
+    public final static String STARVED = "starved";
+
+    /**
+     * One change of the receiver queue size, and what it was based on.
+     */
+    public static class Decision {
+        private final long elapsedMs;
+        private final int fromSize;
+        private final int toSize;
+        private final String reason;
+        private final double msgRate;
+        private final double occupancy;
+        private final double waitFraction;
+
+        Decision(long elapsedMs, int fromSize, int toSize, String reason,
+                 double msgRate, double occupancy, double waitFraction) {
+            this.elapsedMs = elapsedMs;
+            this.fromSize = fromSize;
+            this.toSize = toSize;
+            this.reason = reason;
+            this.msgRate = msgRate;
+            this.occupancy = occupancy;
+            this.waitFraction = waitFraction;
+        }
+
+        public int getFromSize() { return fromSize; }
+        public int getToSize() { return toSize; }
+        public String getReason() { return reason; }
+
+        @Override
+        public String toString() {
+            return String.format("+%.1fs %d -> %d (%s: %.0f msg/s, queue %.0f%% full, waited %.0f%% of the time)",
+                    elapsedMs / 1000.0, fromSize, toSize, reason, msgRate, occupancy * 100, waitFraction * 100);
+        }
+    }
+
+    private final int minSize;
+    private final int maxSize;
+    private final long intervalNanos;
+    private final long targetBufferMs;
+    private int currentSize;
+
+    private long startNanos = -1;
+    private long intervalStartNanos = -1;
+    // What was observed in the current interval
+    private long msgCnt = 0;
+    private long waitNanos = 0;
+    // The condition seen in the previous intervals, and in how many of them in a row
+    private String pendingReason = null;
+    private int pendingIntervals = 0;
+    private int settleIntervalsLeft = 0;
+
+    private final List<Decision> decisions = new ArrayList<>();
+    private int minSizeSeen;
+    private int maxSizeSeen;
+
+    public ReceiverQueueController(int minSize, int maxSize, int initialSize, long intervalMs, long targetBufferMs) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+        this.targetBufferMs = targetBufferMs;
+        this.currentSize = Math.max(minSize, Math.min(initialSize, maxSize));
+        this.minSizeSeen = currentSize;
+        this.maxSizeSeen = currentSize;
+    }
+
+    /**
+     * Record one "receive()" (or "batchReceive()") call.
+     *
+     * @param receivedCnt the number of messages it returned
+     * @param receiveWaitNanos how long the call took
+     */
+    public synchronized void recordReceive(int receivedCnt, long receiveWaitNanos) {
+        msgCnt += receivedCnt;
+        waitNanos += receiveWaitNanos;
+    }
+
+    /**
+     * @return whether the current interval is over (or the first one is not started yet), i.e.
+     * whether "evaluate()" needs the number of messages in the receiver queue
+     */
+    public synchronized boolean isDue(long nowNanos) {
+        return (intervalStartNanos == -1) || (nowNanos - intervalStartNanos >= intervalNanos);
+    }
+
+    /**
+     * Decide on a new receiver queue size once the interval is over (the first call starts the
+     * first interval).
+     *
+     * @param msgNumInReceiverQueue the number of messages in the receiver queue now
+     * @return the new size, or -1 to keep the current one
+     */
+    public synchronized int evaluate(long nowNanos, int msgNumInReceiverQueue) {
+        if (intervalStartNanos == -1) {
+            startNanos = nowNanos;
+            startInterval(nowNanos);
+            return -1;
+        }
+        long elapsedNanos = nowNanos - intervalStartNanos;
+        if (elapsedNanos < intervalNanos) {
+            return -1;
+        }
+
+        double elapsedSec = elapsedNanos / 1_000_000_000.0;
+        double msgRate = msgCnt / elapsedSec;
+        double occupancy = (double) msgNumInReceiverQueue / currentSize;
+        double waitFraction = Math.min(1.0, (double) waitNanos / elapsedNanos);
+        boolean anyMsg = (msgCnt > 0);
+        startInterval(nowNanos);
+        if (settleIntervalsLeft > 0) {
+            settleIntervalsLeft--;
+            return -1;
+        }
+
+        int newSize = -1;
+        String reason = null;
+        if (!anyMsg) {
+            // Nothing to base a decision on
+        }
+        else if (occupancy >= FULL_OCCUPANCY) {
+            int targetSize = Math.max(minSize, (int) Math.ceil(msgRate * targetBufferMs / 1000.0));
+            if (targetSize <= currentSize / 2) {
+                newSize = targetSize;
+                reason = CONSUMER_BOUND;
+            }
+        }
+        else if (occupancy <= EMPTY_OCCUPANCY && waitFraction >= STARVED_WAIT_FRACTION && currentSize < maxSize) {
+            newSize = (int) Math.min(maxSize, 2L * currentSize);
+            reason = STARVED;
+        }
+
+        pendingIntervals = (reason != null && reason.equals(pendingReason)) ? pendingIntervals + 1 : 1;
+        pendingReason = reason;
+        if (newSize == -1 || pendingIntervals < STABLE_INTERVALS) {
+            return -1;
+        }
+        pendingReason = null;
+        pendingIntervals = 0;
+        settleIntervalsLeft = SETTLE_INTERVALS;
+
+        decisions.add(new Decision(TimeUnit.NANOSECONDS.toMillis(nowNanos - startNanos),
+                currentSize, newSize, reason, msgRate, occupancy, waitFraction));
+        currentSize = newSize;
+        minSizeSeen = Math.min(minSizeSeen, newSize);
+        maxSizeSeen = Math.max(maxSizeSeen, newSize);
+        return newSize;
+    }
+
+    private void startInterval(long nowNanos) {
+        intervalStartNanos = nowNanos;
+        msgCnt = 0;
+        waitNanos = 0;
+    }
+
+    public synchronized int getCurrentSize() { return currentSize; }
+    public synchronized int getMinSizeSeen() { return minSizeSeen; }
+    public synchronized int getMaxSizeSeen() { return maxSizeSeen; }
+    public synchronized List<Decision> getDecisions() { return new ArrayList<>(decisions); }
+
+    public synchronized long getDecisionCnt(String reason) {
+        return decisions.stream().filter(decision -> decision.reason.equals(reason)).count();
+    }
+}
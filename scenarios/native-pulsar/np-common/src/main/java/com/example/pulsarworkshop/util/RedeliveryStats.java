@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.util;
+
+import org.HdrHistogram.Histogram;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.util.RetryMessageUtil;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records how a consumer gets through its failing messages:
+ * - the deliveries, and how many of them are redeliveries
+ * - the outcome of each message: processed, or sent to the dead letter topic
+ * - the number of attempts (deliveries) each message took
+ * - the redelivery delay: from the failed attempt of a message to its next delivery
+ *
+ * A message is followed across its redeliveries by its original message id, also when it comes
+ * back from the retry letter topic as a new message. It is thread safe, so all the consumers of
+ * an application can share it.
+ */
+public class RedeliveryStats {
+
+    private final static long MAX_DELAY_MS = TimeUnit.HOURS.toMillis(1);
+    private final static int SIGNIFICANT_DIGITS = 3;
+
+    private final LongAdder deliveryCnt = new LongAdder();
+    private final LongAdder redeliveryCnt = new LongAdder();
+    private final LongAdder failureCnt = new LongAdder();
+    private final LongAdder processedCnt = new LongAdder();
+    private final LongAdder deadLetterCnt = new LongAdder();
+    private final Map<Integer, LongAdder> attemptCnts = new ConcurrentHashMap<>();
+
+    // When the last attempt of each failed message failed
+    private final Map<String, Long> failureNanos = new ConcurrentHashMap<>();
+    private final Histogram redeliveryDelayMs = new Histogram(MAX_DELAY_MS, SIGNIFICANT_DIGITS);
+
+    /**
+     * @return the id of the message as first published, across its redeliveries
+     */
+    public static String originMessageId(Message<?> message) {
+        String originMessageId = message.getProperty(RetryMessageUtil.PROPERTY_ORIGIN_MESSAGE_ID);
+        return (originMessageId != null) ? originMessageId : message.getMessageId().toString();
+    }
+
+    /**
+     * @return the number of previous deliveries of the message (redelivered after a negative
+     * acknowledgement or an ack timeout, or reconsumed from the retry letter topic)
+     */
+    public static int previousAttempts(Message<?> message) {
+        return message.getRedeliveryCount() +
+                NumberUtils.toInt(message.getProperty(RetryMessageUtil.SYSTEM_PROPERTY_RECONSUMETIMES), 0);
+    }
+
+    public void recordDelivery(Message<?> message) {
+        deliveryCnt.increment();
+        if (previousAttempts(message) > 0) {
+            redeliveryCnt.increment();
+        }
+
+        Long failedAtNanos = failureNanos.remove(originMessageId(message));
+        if (failedAtNanos != null) {
+            long delayMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - failedAtNanos);
+            synchronized (redeliveryDelayMs) {
+                redeliveryDelayMs.recordValue(Math.min(delayMs, MAX_DELAY_MS));
+            }
+        }
+    }
+
+    /**
+     * Record a failed attempt, which is either redelivered later or sent to the dead letter topic.
+     */
+    public void recordFailure(Message<?> message, boolean deadLetter) {
+        failureCnt.increment();
+        if (deadLetter) {
+            deadLetterCnt.increment();
+            recordAttempts(message);
+        }
+        else {
+            failureNanos.put(originMessageId(message), System.nanoTime());
+        }
+    }
+
+    public void recordProcessed(Message<?> message) {
+        processedCnt.increment();
+        recordAttempts(message);
+    }
+
+    private void recordAttempts(Message<?> message) {
+        attemptCnts.computeIfAbsent(previousAttempts(message) + 1, attempts -> new LongAdder()).increment();
+    }
+
+    public long getDeliveryCnt() { return deliveryCnt.sum(); }
+    public long getRedeliveryCnt() { return redeliveryCnt.sum(); }
+    public long getFailureCnt() { return failureCnt.sum(); }
+    public long getProcessedCnt() { return processedCnt.sum(); }
+    public long getDeadLetterCnt() { return deadLetterCnt.sum(); }
+
+    /**
+     * @return the number of messages (processed or dead lettered) per number of attempts
+     */
+    public Map<Integer, Long> getAttemptCnts() {
+        Map<Integer, Long> attempts = new TreeMap<>();
+        attemptCnts.forEach((attemptCnt, msgCnt) -> attempts.put(attemptCnt, msgCnt.sum()));
+        return attempts;
+    }
+
+    public Histogram getRedeliveryDelayHistogram() {
+        synchronized (redeliveryDelayMs) {
+            return redeliveryDelayMs.copy();
+        }
+    }
+
+    public String getRedeliveryDelaySummary() {
+        Histogram histogram = getRedeliveryDelayHistogram();
+        if (histogram.getTotalCount() == 0) {
+            return "n/a";
+        }
+        return "avg " + String.format("%.1f", histogram.getMean()) +
+                " / p50 " + histogram.getValueAtPercentile(50) +
+                " / p99 " + histogram.getValueAtPercentile(99) +
+                " / max " + histogram.getMaxValue() + " ms";
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.util;
+
+import org.apache.pulsar.client.api.MessageId;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The position up to which the messages of a (non-partitioned) topic have been reprocessed, saved
+ * to a file so a restarted reprocessor can skip them.
+ *
+ * The messages are tracked in their receive order, with the future of their reprocessing (e.g.
+ * the republish). The checkpoint only moves past a message once it and all the messages received
+ * before it are reprocessed, so a failed or pending message holds it back. A failed message is
+ * expected to be redelivered (negatively acknowledged): its redelivered copy takes over its place,
+ * instead of being tracked behind the failed one forever. The acknowledgements
+ * of a subscription are sent asynchronously (and in groups), so after a crash the broker can
+ * redeliver messages that were already reprocessed: the ones up to the checkpoint are not
+ * reprocessed again.
+ *
+ * The file is replaced atomically, so a crash while saving leaves the previous checkpoint.
+ */
+public class ReprocessCheckpoint {
+
+    private final static String MESSAGE_ID_PROP = "messageId";
+    private final static String REPROCESSED_CNT_PROP = "reprocessedCnt";
+
+    private static class Pending {
+        private final MessageId messageId;
+        private CompletableFuture<?> future;
+
+        Pending(MessageId messageId, CompletableFuture<?> future) {
+            this.messageId = messageId;
+            this.future = future;
+        }
+    }
+
+    private final File checkpointFile;
+    // The checkpoint loaded from the file, null if there was none
+    private final MessageId resumeMessageId;
+    private final long resumeReprocessedCnt;
+
+    private final Deque<Pending> pendings = new ArrayDeque<>();
+    // The last pending of each message, to find the failed one a redelivered message replaces
+    private final Map<MessageId, Pending> pendingsById = new HashMap<>();
+    private MessageId checkpointMessageId;
+    private long reprocessedCnt;
+    private boolean changed = false;
+
+    public ReprocessCheckpoint(File checkpointFile) throws IOException {
+        this.checkpointFile = checkpointFile;
+
+        MessageId messageId = null;
+        long cnt = 0;
+        if (checkpointFile.isFile()) {
+            Properties properties = new Properties();
+            try (InputStream inputStream = Files.newInputStream(checkpointFile.toPath())) {
+                properties.load(inputStream);
+            }
+            String messageIdStr = properties.getProperty(MESSAGE_ID_PROP);
+            if (messageIdStr != null) {
+                messageId = MessageId.fromByteArray(Base64.getDecoder().decode(messageIdStr));
+            }
+            cnt = Long.parseLong(properties.getProperty(REPROCESSED_CNT_PROP, "0"));
+        }
+        this.resumeMessageId = messageId;
+        this.resumeReprocessedCnt = cnt;
+        this.checkpointMessageId = messageId;
+        this.reprocessedCnt = cnt;
+    }
+
+    /**
+     * @return whether the message was already reprocessed before the restart
+     */
+    public boolean isReprocessed(MessageId messageId) {
+        return (resumeMessageId != null) && (messageId.compareTo(resumeMessageId) <= 0);
+    }
+
+    /**
+     * Track the reprocessing of a message, in the receive order. The reprocessing of a redelivered
+     * message that failed before replaces the failed one, in its original place.
+     */
+    public synchronized void track(MessageId messageId, CompletableFuture<?> future) {
+        Pending failed = pendingsById.get(messageId);
+        if (failed != null && failed.future.isCompletedExceptionally()) {
+            failed.future = future;
+            return;
+        }
+        Pending pending = new Pending(messageId, future);
+        pendings.addLast(pending);
+        pendingsById.put(messageId, pending);
+    }
+
+    /**
+     * Hold the checkpoint back at a message that is left unprocessed (e.g. without a target), so a
+     * restarted reprocessor receives it again instead of skipping it.
+     */
+    public void holdBack(MessageId messageId) {
+        track(messageId, new CompletableFuture<>());
+    }
+
+    /**
+     * Move the checkpoint past the leading messages that are reprocessed successfully.
+     *
+     * @return the number of messages still pending
+     */
+    public synchronized int advance() {
+        while (!pendings.isEmpty()) {
+            CompletableFuture<?> future = pendings.peekFirst().future;
+            if (!future.isDone() || future.isCompletedExceptionally()) {
+                break;
+            }
+            Pending pending = pendings.removeFirst();
+            pendingsById.remove(pending.messageId, pending);
+            // A redelivered message can come after newer ones, the checkpoint never moves back
+            if (checkpointMessageId == null || pending.messageId.compareTo(checkpointMessageId) > 0) {
+                checkpointMessageId = pending.messageId;
+            }
+            reprocessedCnt++;
+            changed = true;
+        }
+        return pendings.size();
+    }
+
+    /**
+     * Save the checkpoint, if it moved since the last save.
+     */
+    public void save() throws IOException {
+        Properties properties = new Properties();
+        synchronized (this) {
+            advance();
+            if (!changed) {
+                return;
+            }
+            properties.setProperty(MESSAGE_ID_PROP,
+                    Base64.getEncoder().encodeToString(checkpointMessageId.toByteArray()));
+            properties.setProperty(REPROCESSED_CNT_PROP, String.valueOf(reprocessedCnt));
+            changed = false;
+        }
+
+        Path checkpointPath = checkpointFile.toPath().toAbsolutePath();
+        Path tmpPath = checkpointPath.resolveSibling(checkpointPath.getFileName() + ".tmp");
+        try (OutputStream outputStream = Files.newOutputStream(tmpPath)) {
+            properties.store(outputStream, "Reprocess checkpoint");
+        }
+        Files.move(tmpPath, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public MessageId getResumeMessageId() { return resumeMessageId; }
+    public long getResumeReprocessedCnt() { return resumeReprocessedCnt; }
+    public synchronized MessageId getCheckpointMessageId() { return checkpointMessageId; }
+    // Including the messages reprocessed before the restart
+    public synchronized long getReprocessedCnt() { return reprocessedCnt; }
+}
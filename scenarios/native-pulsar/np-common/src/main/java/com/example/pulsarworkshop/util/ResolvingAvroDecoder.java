@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.util;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaCompatibility;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.pulsar.client.api.SchemaSerializationException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Decodes the AVRO payloads written with any version of a schema into one reader schema (e.g.
+ * the latest version), with one resolving datum reader per writer schema version.
+ *
+ * The writer schema of a version is only looked up and parsed the first time the version is
+ * seen. After that, a message costs a map lookup plus the decoding itself, which reads the
+ * fields straight into the reader's SpecificRecord: the fields that only the writer has are
+ * skipped and the fields that only the reader has get their default value. The datum readers are
+ * shared by all the threads, and each thread reuses its own binary decoder.
+ *
+ * @param <T> the SpecificRecord class of the reader schema
+ */
+public class ResolvingAvroDecoder<T> {
+
+    // The version key of the messages without a schema version
+    private final static long NO_VERSION = -1;
+
+    private final Schema readerSchema;
+    private final SpecificData specificData;
+    private final Map<Long, DatumReader<T>> versionReaders = new ConcurrentHashMap<>();
+
+    private static class DecoderHolder {
+        private BinaryDecoder decoder;
+    }
+    private final ThreadLocal<DecoderHolder> threadDecoder = ThreadLocal.withInitial(DecoderHolder::new);
+
+    public ResolvingAvroDecoder(Schema readerSchema, SpecificData specificData) {
+        this.readerSchema = readerSchema;
+        this.specificData = specificData;
+    }
+
+    /**
+     * @param schemaVersion      the schema version of the message (null if none)
+     * @param writerSchemaLoader returns the writer schema of a version, only called once per version
+     */
+    public T decode(byte[] schemaVersion, byte[] payload, Function<byte[], Schema> writerSchemaLoader) {
+        return decode(schemaVersion, payload, 0, payload.length, writerSchemaLoader);
+    }
+
+    /**
+     * Same as above, for a payload in a slice of a byte array.
+     */
+    public T decode(byte[] schemaVersion, byte[] payload, int offset, int length, Function<byte[], Schema> writerSchemaLoader) {
+        long versionKey = toVersionKey(schemaVersion);
+        DatumReader<T> datumReader = versionReaders.get(versionKey);
+        if (datumReader == null) {
+            datumReader = versionReaders.computeIfAbsent(versionKey,
+                    key -> createReader(schemaVersion, writerSchemaLoader.apply(schemaVersion)));
+        }
+
+        DecoderHolder holder = threadDecoder.get();
+        holder.decoder = DecoderFactory.get().binaryDecoder(payload, offset, length, holder.decoder);
+        try {
+            // A new record each time, the previous one may still be in use by the application
+            return datumReader.read(null, holder.decoder);
+        } catch (IOException ioe) {
+            throw new SchemaSerializationException(ioe);
+        }
+    }
+
+    /**
+     * The compatibility is checked up front, so an incompatible version fails with a clear error
+     * instead of an "AvroTypeException" in the middle of a record.
+     */
+    private DatumReader<T> createReader(byte[] schemaVersion, Schema writerSchema) {
+        if (writerSchema == null) {
+            throw new SchemaSerializationException("No writer schema for the schema version " + versionString(schemaVersion));
+        }
+        SchemaCompatibility.SchemaPairCompatibility compatibility =
+                SchemaCompatibility.checkReaderWriterCompatibility(readerSchema, writerSchema);
+        if (compatibility.getType() != SchemaCompatibility.SchemaCompatibilityType.COMPATIBLE) {
+            throw new SchemaSerializationException("The schema version " + versionString(schemaVersion) +
+                    " can't be read with the reader schema: " + compatibility.getDescription());
+        }
+        return new SpecificDatumReader<>(writerSchema, readerSchema, specificData);
+    }
+
+    /**
+     * Copy a record schema into a reader schema for the payloads of its older versions: the fields
+     * they don't have yet get a default value, and the older record names (if the record was
+     * renamed) are added as aliases.
+     *
+     * @param fieldDefaults     the default value of each field, by field name
+     * @param writerRecordNames the full names of the older versions of the record
+     */
+    public static Schema readerSchemaOf(Schema recordSchema, Map<String, Object> fieldDefaults, String... writerRecordNames) {
+        List<Schema.Field> fields = new ArrayList<>();
+        for (Schema.Field field : recordSchema.getFields()) {
+            Object defaultValue = fieldDefaults.containsKey(field.name()) ? fieldDefaults.get(field.name()) : field.defaultVal();
+            Schema.Field copiedField = new Schema.Field(field.name(), field.schema(), field.doc(), defaultValue, field.order());
+            field.getObjectProps().forEach(copiedField::addProp);
+            field.aliases().forEach(copiedField::addAlias);
+            fields.add(copiedField);
+        }
+
+        Schema readerSchema = Schema.createRecord(recordSchema.getName(), recordSchema.getDoc(),
+                recordSchema.getNamespace(), recordSchema.isError(), fields);
+        recordSchema.getAliases().forEach(readerSchema::addAlias);
+        for (String writerRecordName : writerRecordNames) {
+            readerSchema.addAlias(writerRecordName);
+        }
+        return readerSchema;
+    }
+
+    /**
+     * The Pulsar schema versions are 8 byte (big endian) longs.
+     *
+     * @return the schema version as a number, -1 if none
+     */
+    public static long toVersionKey(byte[] schemaVersion) {
+        if (schemaVersion == null) {
+            return NO_VERSION;
+        }
+        if (schemaVersion.length != Long.BYTES) {
+            throw new SchemaSerializationException("Unexpected schema version length: " + schemaVersion.length);
+        }
+        long versionKey = 0;
+        for (byte versionByte : schemaVersion) {
+            versionKey = (versionKey << 8) | (versionByte & 0xFF);
+        }
+        return versionKey;
+    }
+
+    private static String versionString(byte[] schemaVersion) {
+        return (schemaVersion == null) ? "(none)" : String.valueOf(toVersionKey(schemaVersion));
+    }
+
+    /**
+     * @return the number of writer schema versions seen so far
+     */
+    public int getVersionCnt() {
+        return versionReaders.size();
+    }
+
+    public Schema getReaderSchema() {
+        return readerSchema;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop.util;
+
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.transaction.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Groups the messages of a consume-transform-produce loop into Pulsar transactions: a transaction
+ * is committed every "batchSize" messages or "batchTimeMs" milliseconds, whichever comes first,
+ * so the transaction coordinator round trips (open, add partition/subscription, commit) are paid
+ * once per batch instead of once per message.
+ *
+ * The commits are asynchronous: the next batch fills up in a new transaction while the previous
+ * ones are still committing, up to "maxOpenTxns" open transactions (the filling one included).
+ * With more than one, the transaction of the next batch is also opened ahead of time. When a
+ * commit fails, the transaction is aborted and the failure handler gets the items of its batch
+ * (e.g. to negatively acknowledge the input messages, so they are processed again).
+ *
+ * The batching methods must be called from one thread (the one receiving the messages); the
+ * statistics can be read from any thread.
+ *
+ * @param <M> the item recorded for each message of a batch (e.g. the input message)
+ */
+public class TransactionBatcher<M> {
+
+    private final Supplier<CompletableFuture<Transaction>> txnOpener;
+    private final int batchSize;
+    private final long batchTimeNanos;
+    private final int maxOpenTxns;
+    private final BiConsumer<List<M>, Throwable> failureHandler;
+    private final Semaphore openTxnPermits;
+
+    private CompletableFuture<Transaction> nextTxn;
+    private Transaction currentTxn;
+    private List<M> currentItems = new ArrayList<>();
+    private long batchStartNanos;
+
+    private final AtomicInteger openTxnCnt = new AtomicInteger();
+    private final LongAccumulator maxOpenTxnCnt = new LongAccumulator(Long::max, 0);
+    private final LongAdder committedTxnCnt = new LongAdder();
+    private final LongAdder committedItemCnt = new LongAdder();
+    private final LongAdder failedTxnCnt = new LongAdder();
+    private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+    private final LongAdder commitNanosSum = new LongAdder();
+    private final LongAccumulator commitNanosMax = new LongAccumulator(Long::max, 0);
+
+    /**
+     * @param txnOpener      opens a new transaction (e.g. "client.newTransaction().build()")
+     * @param failureHandler called with the items of a batch whose commit failed (may be null)
+     */
+    public TransactionBatcher(Supplier<CompletableFuture<Transaction>> txnOpener,
+                              int batchSize,
+                              long batchTimeMs,
+                              int maxOpenTxns,
+                              BiConsumer<List<M>, Throwable> failureHandler) {
+        this.txnOpener = txnOpener;
+        this.batchSize = batchSize;
+        this.batchTimeNanos = TimeUnit.MILLISECONDS.toNanos(batchTimeMs);
+        this.maxOpenTxns = maxOpenTxns;
+        this.failureHandler = failureHandler;
+        this.openTxnPermits = new Semaphore(maxOpenTxns);
+    }
+
+    /**
+     * @return the transaction of the current batch, which is opened (or taken from the ones
+     * opened ahead of time) by the first message of the batch. Blocks while "maxOpenTxns"
+     * transactions are open.
+     */
+    public Transaction currentTransaction() throws PulsarClientException, InterruptedException {
+        if (currentTxn != null) {
+            return currentTxn;
+        }
+
+        openTxnPermits.acquire();
+        maxOpenTxnCnt.accumulate(openTxnCnt.incrementAndGet());
+        CompletableFuture<Transaction> txnFuture = (nextTxn != null) ? nextTxn : txnOpener.get();
+        nextTxn = null;
+        try {
+            currentTxn = txnFuture.get();
+        }
+        catch (ExecutionException ee) {
+            openTxnCnt.decrementAndGet();
+            openTxnPermits.release();
+            throw PulsarClientException.unwrap(ee.getCause());
+        }
+
+        // The open round trip of the next transaction overlaps this batch
+        if (maxOpenTxns > 1) {
+            nextTxn = txnOpener.get();
+        }
+        batchStartNanos = System.nanoTime();
+        return currentTxn;
+    }
+
+    /**
+     * Record a message of the current batch, after it was published and acknowledged with
+     * {@link #currentTransaction()}. Commits the batch when it is full.
+     */
+    public void add(M item) {
+        currentItems.add(item);
+        if (currentItems.size() >= batchSize) {
+            commit();
+        }
+    }
+
+    /**
+     * @return how long the current batch may still wait for messages before it is committed
+     */
+    public long remainingBatchNanos() {
+        if (currentTxn == null) {
+            return batchTimeNanos;
+        }
+        return Math.max(0, batchTimeNanos - (System.nanoTime() - batchStartNanos));
+    }
+
+    /**
+     * Commit the current batch if its time is up (to be called when no message was received in time).
+     */
+    public void commitIfDue() {
+        if (currentTxn != null && remainingBatchNanos() == 0) {
+            if (currentItems.isEmpty()) {
+                // Nothing to commit yet, keep the transaction for the next messages
+                batchStartNanos = System.nanoTime();
+            }
+            else {
+                commit();
+            }
+        }
+    }
+
+    /**
+     * Start committing the current batch (if any), without waiting for the commit to complete.
+     */
+    public void commit() {
+        if (currentTxn == null || currentItems.isEmpty()) {
+            return;
+        }
+
+        Transaction txn = currentTxn;
+        List<M> items = currentItems;
+        currentTxn = null;
+        currentItems = new ArrayList<>();
+
+        long commitStartNanos = System.nanoTime();
+        txn.commit().whenComplete((result, throwable) -> {
+            if (throwable == null) {
+                long commitNanos = System.nanoTime() - commitStartNanos;
+                commitNanosSum.add(commitNanos);
+                commitNanosMax.accumulate(commitNanos);
+                committedTxnCnt.increment();
+                committedItemCnt.add(items.size());
+            }
+            else {
+                failedTxnCnt.increment();
+                firstFailure.compareAndSet(null, throwable);
+                txn.abort();
+                if (failureHandler != null) {
+                    failureHandler.accept(items, throwable);
+                }
+            }
+            openTxnCnt.decrementAndGet();
+            openTxnPermits.release();
+        });
+    }
+
+    /**
+     * Commit the current batch, abort the transaction opened ahead of time, and wait until all
+     * the commits are completed.
+     *
+     * @return false if the wait timed out
+     */
+    public boolean close(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        commit();
+        if (currentTxn != null) {
+            // An empty batch
+            currentTxn.abort();
+            currentTxn = null;
+            openTxnCnt.decrementAndGet();
+            openTxnPermits.release();
+        }
+        if (nextTxn != null) {
+            nextTxn.thenAccept(Transaction::abort);
+            nextTxn = null;
+        }
+
+        if (openTxnPermits.tryAcquire(maxOpenTxns, timeout, timeUnit)) {
+            openTxnPermits.release(maxOpenTxns);
+            return true;
+        }
+        return false;
+    }
+
+    public int getBatchSize() { return batchSize; }
+    public int getMaxOpenTxns() { return maxOpenTxns; }
+    public long getMaxOpenTxnCnt() { return maxOpenTxnCnt.get(); }
+    public long getCommittedTxnCnt() { return committedTxnCnt.sum(); }
+    public long getCommittedItemCnt() { return committedItemCnt.sum(); }
+    public long getFailedTxnCnt() { return failedTxnCnt.sum(); }
+    public Throwable getFirstFailure() { return firstFailure.get(); }
+
+    /**
+     * @return the average time from the commit call to its completion, in milliseconds
+     */
+    public double getAvgCommitMs() {
+        long txnCnt = committedTxnCnt.sum();
+        return (txnCnt > 0) ? commitNanosSum.sum() / 1_000_000.0 / txnCnt : 0.0;
+    }
+
+    public double getMaxCommitMs() {
+        return commitNanosMax.get() / 1_000_000.0;
+    }
+}
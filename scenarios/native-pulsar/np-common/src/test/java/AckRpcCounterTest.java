@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import com.example.pulsarworkshop.util.AckRpcCounter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class AckRpcCounterTest {
+
+    // Long enough for all the acknowledgements of a test to fall into the same group time window
+    private final static long ONE_WINDOW_MS = Long.MAX_VALUE / 2;
+
+    @Test
+    public void testNoGrouping() {
+        AckRpcCounter counter = new AckRpcCounter(0);
+        counter.recordAck(1);
+        counter.recordAck(100);
+        counter.recordCumulativeAck(50);
+
+        Assertions.assertEquals(3, counter.getAckCalls());
+        Assertions.assertEquals(151, counter.getAckedMsgCnt());
+        Assertions.assertEquals(3, counter.getAckRpcCnt());
+    }
+
+    @Test
+    public void testGroupedIndividualAcks() {
+        AckRpcCounter counter = new AckRpcCounter(ONE_WINDOW_MS);
+        for (int i = 0; i < 2500; i++) {
+            counter.recordAck(1);
+        }
+
+        // Flushed at 1000 and 2000 pending acknowledgements, plus the last 500 ones
+        Assertions.assertEquals(2500, counter.getAckCalls());
+        Assertions.assertEquals(3, counter.getAckRpcCnt());
+    }
+
+    @Test
+    public void testGroupedCumulativeAcks() {
+        AckRpcCounter counter = new AckRpcCounter(ONE_WINDOW_MS);
+        for (int i = 0; i < 2500; i++) {
+            counter.recordCumulativeAck(1);
+        }
+
+        // Only the last cumulative position is sent
+        Assertions.assertEquals(2500, counter.getAckedMsgCnt());
+        Assertions.assertEquals(1, counter.getAckRpcCnt());
+    }
+}
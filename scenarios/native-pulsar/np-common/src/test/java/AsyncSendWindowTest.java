@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import com.example.pulsarworkshop.util.AsyncSendWindow;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncSendWindowTest {
+
+    @Test
+    public void testWindowAndCounters() throws InterruptedException {
+        AsyncSendWindow window = new AsyncSendWindow(2);
+
+        CompletableFuture<MessageId> send1 = new CompletableFuture<>();
+        CompletableFuture<MessageId> send2 = new CompletableFuture<>();
+        window.acquire();
+        window.track(send1);
+        window.acquire();
+        window.track(send2);
+        Assertions.assertEquals(2, window.getInFlight());
+        Assertions.assertFalse(window.awaitDrained(10, TimeUnit.MILLISECONDS));
+
+        send1.complete(MessageId.earliest);
+        send2.completeExceptionally(new PulsarClientException.TimeoutException("timeout"));
+        Assertions.assertTrue(window.awaitDrained(1, TimeUnit.SECONDS));
+
+        Assertions.assertEquals(0, window.getInFlight());
+        Assertions.assertEquals(1, window.getCompletedCnt());
+        Assertions.assertEquals(1, window.getFailedCnt());
+        Assertions.assertTrue(window.getFirstFailure() instanceof PulsarClientException.TimeoutException);
+    }
+}
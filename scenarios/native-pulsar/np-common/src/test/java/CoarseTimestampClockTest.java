@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import com.example.pulsarworkshop.util.CoarseTimestampClock;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneOffset;
+
+public class CoarseTimestampClockTest {
+
+    private final static String PATTERN = "yyyy-MM-dd HH:mm:ss.SSS";
+    // 2023-03-14 15:09:26.535 UTC
+    private final static long EPOCH_MS = 1678806566535L;
+
+    @Test
+    public void testFormat() {
+        CoarseTimestampClock clock = new CoarseTimestampClock(PATTERN, ZoneOffset.UTC, 1);
+        Assertions.assertEquals("2023-03-14 15:09:26.535", clock.format(EPOCH_MS));
+        Assertions.assertEquals("2023-03-14 15:09:26.536", clock.format(EPOCH_MS + 1));
+    }
+
+    @Test
+    public void testSameTickSameString() {
+        CoarseTimestampClock clock = new CoarseTimestampClock(PATTERN, ZoneOffset.UTC, 1);
+        String first = clock.format(EPOCH_MS);
+        Assertions.assertSame(first, clock.format(EPOCH_MS));
+        Assertions.assertNotSame(first, clock.format(EPOCH_MS + 1));
+    }
+
+    @Test
+    public void testGranularity() {
+        CoarseTimestampClock clock = new CoarseTimestampClock(PATTERN, ZoneOffset.UTC, 100);
+        Assertions.assertEquals("2023-03-14 15:09:26.500", clock.format(EPOCH_MS));
+        Assertions.assertSame(clock.format(EPOCH_MS), clock.format(EPOCH_MS + 64));
+        Assertions.assertEquals("2023-03-14 15:09:26.600", clock.format(EPOCH_MS + 65));
+    }
+
+    @Test
+    public void testNow() {
+        CoarseTimestampClock clock = new CoarseTimestampClock(PATTERN);
+        Assertions.assertEquals(PATTERN.length(), clock.now().length());
+    }
+
+    @Test
+    public void testInvalidGranularity() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new CoarseTimestampClock(PATTERN, ZoneOffset.UTC, 0));
+    }
+}
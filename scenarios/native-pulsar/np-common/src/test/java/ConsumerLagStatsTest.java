@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import com.example.pulsarworkshop.memory.MemoryBroker;
+import com.example.pulsarworkshop.memory.MemoryPulsarClient;
+import com.example.pulsarworkshop.util.ConsumerLagStats;
+import org.HdrHistogram.Histogram;
+import org.apache.pulsar.client.api.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ConsumerLagStatsTest {
+    private final static String TOPIC = "persistent://public/default/lag-test";
+
+    @AfterEach
+    public void cleanup() {
+        MemoryBroker.getInstance().deleteTopic(TOPIC);
+    }
+
+    @Test
+    public void testPublishAndEventLag() throws Exception {
+        PulsarClient client = MemoryPulsarClient.create();
+        Producer<String> producer = client.newProducer(Schema.STRING).topic(TOPIC).create();
+        Consumer<String> consumer = client.newConsumer(Schema.STRING)
+                .topic(TOPIC)
+                .subscriptionName("sub")
+                .receiverQueueSize(10)
+                .subscribe();
+
+        // A reading that waited 5 seconds before being published, and one without event time
+        producer.newMessage().value("msg-0").eventTime(System.currentTimeMillis() - 5000).send();
+        producer.newMessage().value("msg-1").send();
+        Assertions.assertEquals(2, consumer.getStats().getMsgNumInReceiverQueue());
+
+        ConsumerLagStats lagStats = new ConsumerLagStats();
+        lagStats.record(consumer.receive());
+        lagStats.record(consumer.receive());
+
+        Assertions.assertTrue(lagStats.takeIntervalSummary().startsWith("2 msgs"));
+        // The interval is reset, the totals are kept
+        Assertions.assertTrue(lagStats.takeIntervalSummary().startsWith("0 msgs"));
+        Histogram publishLag = lagStats.getPublishLagHistogram();
+        Histogram eventLag = lagStats.getEventLagHistogram();
+        Assertions.assertEquals(2, publishLag.getTotalCount());
+        Assertions.assertTrue(publishLag.getMaxValue() < 1000);
+        Assertions.assertEquals(1, eventLag.getTotalCount());
+        Assertions.assertTrue(eventLag.getMinValue() >= 4990);
+
+        client.close();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import com.example.pulsarworkshop.exception.WorkshopRuntimException;
+import com.example.pulsarworkshop.memory.MemoryBroker;
+import com.example.pulsarworkshop.memory.MemoryPulsarClient;
+import com.example.pulsarworkshop.util.CsvPreloader;
+import org.apache.pulsar.client.api.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class CsvPreloaderTest {
+    private final static String TOPIC = "persistent://public/default/csv-preload-test";
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    public void cleanup() {
+        MemoryBroker.getInstance().deleteTopic(TOPIC);
+    }
+
+    private File writeCsv(String... lines) throws Exception {
+        Path csvPath = tempDir.resolve("readings.csv");
+        Files.write(csvPath, List.of(lines));
+        return csvPath.toFile();
+    }
+
+    @Test
+    public void testLoadPayloads() throws Exception {
+        File csvFile = writeCsv("ts,device,co", "1,dev-1,0.1", "", "2,dev-2,0.2");
+
+        List<byte[]> payloads = CsvPreloader.loadPayloads(csvFile);
+        Assertions.assertEquals(2, payloads.size());
+        Assertions.assertEquals("1,dev-1,0.1", new String(payloads.get(0)));
+        Assertions.assertEquals("2,dev-2,0.2", new String(payloads.get(1)));
+    }
+
+    @Test
+    public void testNoReading() throws Exception {
+        File csvFile = writeCsv("ts,device,co");
+
+        Assertions.assertThrows(WorkshopRuntimException.class, () -> CsvPreloader.loadPayloads(csvFile));
+    }
+
+    @Test
+    public void testPreloadWrapsAround() throws Exception {
+        File csvFile = writeCsv("ts,device,co", "1,dev-1,0.1", "2,dev-2,0.2");
+
+        try (PulsarClient client = MemoryPulsarClient.create()) {
+            Consumer<byte[]> consumer = client.newConsumer().topic(TOPIC).subscriptionName("sub").subscribe();
+            CsvPreloader.preload(client, TOPIC, csvFile, 5);
+
+            String[] expected = { "1,dev-1,0.1", "2,dev-2,0.2", "1,dev-1,0.1", "2,dev-2,0.2", "1,dev-1,0.1" };
+            for (String reading : expected) {
+                Assertions.assertEquals(reading, new String(consumer.receive(1, TimeUnit.SECONDS).getValue()));
+            }
+            Assertions.assertNull(consumer.receive(10, TimeUnit.MILLISECONDS));
+            consumer.close();
+        }
+    }
+}
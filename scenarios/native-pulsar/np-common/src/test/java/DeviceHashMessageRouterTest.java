@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import com.example.pulsarworkshop.util.DeviceHashMessageRouter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class DeviceHashMessageRouterTest {
+
+    private static byte[] bytes(String str) {
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testKafkaCompatibleHash() {
+        // Expected values of "org.apache.kafka.common.utils.Utils.murmur2()"
+        Assertions.assertEquals(-973932308, DeviceHashMessageRouter.murmur2(bytes("21")));
+        Assertions.assertEquals(-790332482, DeviceHashMessageRouter.murmur2(bytes("foobar")));
+        Assertions.assertEquals(-985981536, DeviceHashMessageRouter.murmur2(bytes("a-little-bit-long-string")));
+        Assertions.assertEquals(-1120828562, DeviceHashMessageRouter.murmur2(bytes("b8:27:eb:bf:9d:51")));
+    }
+
+    @Test
+    public void testKafkaCompatiblePartition() {
+        // Same partitions as the Kafka default partitioner with 5 partitions
+        Assertions.assertEquals(1, DeviceHashMessageRouter.partitionFor(bytes("b8:27:eb:bf:9d:51"), 5));
+        Assertions.assertEquals(2, DeviceHashMessageRouter.partitionFor(bytes("00:0f:00:70:91:0a"), 5));
+        Assertions.assertEquals(3, DeviceHashMessageRouter.partitionFor(bytes("1c:bf:ce:15:ec:4d"), 5));
+    }
+}
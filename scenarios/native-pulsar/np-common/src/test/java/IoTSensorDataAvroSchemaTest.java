@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import com.example.pulsarworkshop.pojo.IoTSensorData;
+import com.example.pulsarworkshop.pojo.IoTSensorDataAvroSchema;
+import com.example.pulsarworkshop.pojo.IoTSensorDataUtils;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.SchemaSerializationException;
+import org.apache.pulsar.client.api.schema.SchemaInfoProvider;
+import org.apache.pulsar.common.schema.SchemaInfo;
+import org.apache.pulsar.common.schema.SchemaType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+public class IoTSensorDataAvroSchemaTest {
+
+    private final static String CSV_LINE = "\"1594512095.2574008\",\"b8:27:eb:bf:9d:51\",\"0.0010677603542012504\"," +
+            "\"43.44681994166432\",\"true\",\"0.004011771144485149\",\"false\",\"0.07572920491648762\",\"28.330648866008808\"";
+    // The same reading, encoded by "Schema.AVRO()" of the former IoTSensorData POJO
+    private final static String POJO_ENCODED_HEX = "f6d647f3827e513f022262383a32373a65623a62663a39643a35310f53566531b94540010667d59da56e703f00" +
+            "d9e8773afd62b33fa2f77167a5543c400224313539343531323039352e32353734303038";
+
+    @Test
+    public void testRoundTrip() {
+        IoTSensorData data = IoTSensorDataUtils.csvToPojo(CSV_LINE);
+        byte[] bytes = IoTSensorDataAvroSchema.INSTANCE.encode(data);
+
+        Assertions.assertEquals(data, IoTSensorDataAvroSchema.INSTANCE.decode(bytes));
+        Assertions.assertEquals("b8:27:eb:bf:9d:51", IoTSensorDataAvroSchema.INSTANCE.decode(bytes).getDevice().toString());
+
+        // Decoding from a slice of a larger buffer
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 8);
+        buffer.position(4);
+        buffer.put(bytes);
+        buffer.position(4).limit(4 + bytes.length);
+        Assertions.assertEquals(data, IoTSensorDataAvroSchema.INSTANCE.decode(buffer, null));
+    }
+
+    @Test
+    public void testSameEncodingAsReflectionSchema() {
+        IoTSensorData data = IoTSensorDataUtils.csvToPojo(CSV_LINE);
+        Schema<IoTSensorData> reflectAvroSchema = Schema.AVRO(IoTSensorData.class);
+
+        Assertions.assertArrayEquals(reflectAvroSchema.encode(data), IoTSensorDataAvroSchema.INSTANCE.encode(data));
+    }
+
+    @Test
+    public void testSameSchemaAndEncodingAsFormerPojo() throws IOException {
+        // Captured with "Schema.AVRO()" of the former (Lombok) IoTSensorData POJO
+        String pojoSchemaJson;
+        try (InputStream inputStream = IoTSensorDataAvroSchemaTest.class.getResourceAsStream("/IoTSensorData-pojo-schema.json")) {
+            pojoSchemaJson = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8).trim();
+        }
+        SchemaInfo schemaInfo = IoTSensorDataAvroSchema.INSTANCE.getSchemaInfo();
+
+        Assertions.assertEquals(SchemaType.AVRO, schemaInfo.getType());
+        Assertions.assertEquals(pojoSchemaJson, new String(schemaInfo.getSchema(), StandardCharsets.UTF_8));
+        Assertions.assertEquals(Map.of("__alwaysAllowNull", "true", "__jsr310ConversionEnabled", "false"),
+                schemaInfo.getProperties());
+        Assertions.assertEquals(POJO_ENCODED_HEX,
+                toHex(IoTSensorDataAvroSchema.INSTANCE.encode(IoTSensorDataUtils.csvToPojo(CSV_LINE))));
+    }
+
+    @Test
+    public void testDecodeWithWriterSchemaVersion() throws IOException {
+        IoTSensorData data = IoTSensorDataUtils.csvToPojo(CSV_LINE);
+        SchemaInfo registeredInfo = IoTSensorDataAvroSchema.INSTANCE.getSchemaInfo();
+
+        // A newer version of the schema, with an extra field after the existing ones
+        org.apache.avro.Schema registeredSchema =
+                new org.apache.avro.Schema.Parser().parse(new String(registeredInfo.getSchema(), StandardCharsets.UTF_8));
+        List<org.apache.avro.Schema.Field> fields = new ArrayList<>();
+        for (org.apache.avro.Schema.Field field : registeredSchema.getFields()) {
+            fields.add(new org.apache.avro.Schema.Field(field.name(), field.schema(), null, field.defaultVal()));
+        }
+        fields.add(new org.apache.avro.Schema.Field("location", org.apache.avro.Schema.create(org.apache.avro.Schema.Type.STRING)));
+        org.apache.avro.Schema newerSchema = org.apache.avro.Schema.createRecord(
+                registeredSchema.getName(), null, registeredSchema.getNamespace(), false, fields);
+
+        GenericRecord newerRecord = new GenericData.Record(newerSchema);
+        for (org.apache.avro.Schema.Field field : registeredSchema.getFields()) {
+            newerRecord.put(field.name(), data.get(field.name()));
+        }
+        newerRecord.put("location", "alpha");
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(outputStream, null);
+        new GenericDatumWriter<GenericRecord>(newerSchema).write(newerRecord, encoder);
+        encoder.flush();
+        byte[] newerBytes = outputStream.toByteArray();
+
+        byte[] version0 = ByteBuffer.allocate(Long.BYTES).putLong(0).array();
+        byte[] version1 = ByteBuffer.allocate(Long.BYTES).putLong(1).array();
+        byte[] version2 = ByteBuffer.allocate(Long.BYTES).putLong(2).array();
+        SchemaInfo newerInfo = SchemaInfo.builder().name(registeredInfo.getName()).type(SchemaType.AVRO)
+                .schema(newerSchema.toString().getBytes(StandardCharsets.UTF_8)).build();
+
+        Schema<IoTSensorData> schema = IoTSensorDataAvroSchema.INSTANCE.clone();
+        Assertions.assertTrue(schema.supportSchemaVersioning());
+        // Without the schema versions of the topic, a versioned message can't be decoded
+        Assertions.assertThrows(SchemaSerializationException.class,
+                () -> schema.decode(IoTSensorDataAvroSchema.INSTANCE.encode(data), version0));
+
+        schema.setSchemaInfoProvider(new SchemaInfoProvider() {
+            @Override
+            public CompletableFuture<SchemaInfo> getSchemaByVersion(byte[] schemaVersion) {
+                long version = ByteBuffer.wrap(schemaVersion).getLong();
+                return CompletableFuture.completedFuture((version == 0) ? registeredInfo : (version == 1) ? newerInfo : null);
+            }
+            @Override
+            public CompletableFuture<SchemaInfo> getLatestSchema() {
+                return CompletableFuture.completedFuture(newerInfo);
+            }
+            @Override
+            public String getTopicName() {
+                return "iot-sensor-data";
+            }
+        });
+
+        Assertions.assertEquals(data, schema.decode(IoTSensorDataAvroSchema.INSTANCE.encode(data), version0));
+        // The extra field of the newer version is skipped, instead of being read as the next reading
+        Assertions.assertEquals(data, schema.decode(newerBytes, version1));
+        Assertions.assertEquals(data, schema.decode(ByteBuffer.wrap(newerBytes), version1));
+        Assertions.assertThrows(SchemaSerializationException.class, () -> schema.decode(newerBytes, version2));
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
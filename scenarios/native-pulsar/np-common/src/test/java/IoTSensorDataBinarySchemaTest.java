@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import com.example.pulsarworkshop.pojo.IoTSensorData;
+import com.example.pulsarworkshop.pojo.IoTSensorDataBinarySchema;
+import com.example.pulsarworkshop.pojo.IoTSensorDataBinaryView;
+import com.example.pulsarworkshop.pojo.IoTSensorDataUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+public class IoTSensorDataBinarySchemaTest {
+
+    private final static String CSV_LINE = "\"1594512095.2574008\",\"b8:27:eb:bf:9d:51\",\"0.0010677603542012504\"," +
+            "\"43.44681994166432\",\"true\",\"0.004011771144485149\",\"false\",\"0.07572920491648762\",\"28.330648866008808\"";
+
+    @Test
+    public void testRoundTrip() {
+        IoTSensorData data = IoTSensorDataUtils.csvToPojo(CSV_LINE);
+        byte[] bytes = IoTSensorDataBinarySchema.INSTANCE.encode(data);
+
+        Assertions.assertEquals(IoTSensorDataBinarySchema.FIXED_SIZE, bytes.length);
+        Assertions.assertEquals(data, IoTSensorDataBinarySchema.INSTANCE.decode(bytes));
+        // The device names are shared
+        Assertions.assertSame(IoTSensorDataBinarySchema.INSTANCE.decode(bytes).getDevice(),
+                IoTSensorDataBinarySchema.INSTANCE.decode(bytes).getDevice());
+    }
+
+    @Test
+    public void testDeviceNameAndNulls() {
+        IoTSensorData data = IoTSensorDataUtils.csvToPojo(CSV_LINE);
+        data.setDevice("B8:27:EB:BF:9D:51");
+        byte[] bytes = IoTSensorDataBinarySchema.INSTANCE.encode(data);
+        Assertions.assertEquals(IoTSensorDataBinarySchema.FIXED_SIZE + 17, bytes.length);
+        Assertions.assertEquals(data, IoTSensorDataBinarySchema.INSTANCE.decode(bytes));
+
+        data.setDevice(null);
+        data.setTs(null);
+        Assertions.assertEquals(data, IoTSensorDataBinarySchema.INSTANCE.decode(IoTSensorDataBinarySchema.INSTANCE.encode(data)));
+    }
+
+    @Test
+    public void testReadInPlace() {
+        IoTSensorData data = IoTSensorDataUtils.csvToPojo(CSV_LINE);
+        byte[] bytes = IoTSensorDataBinarySchema.INSTANCE.encode(data);
+
+        // A reading in the middle of a larger buffer
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 8);
+        buffer.position(4);
+        buffer.put(bytes);
+        buffer.position(4).limit(4 + bytes.length);
+
+        IoTSensorDataBinaryView view = new IoTSensorDataBinaryView().wrap(buffer);
+        Assertions.assertEquals(1594512095.2574008, view.getTsSeconds());
+        Assertions.assertEquals(0xb827ebbf9d51L, view.getDeviceId());
+        Assertions.assertEquals("b8:27:eb:bf:9d:51", view.getDevice());
+        Assertions.assertEquals(43.44681994166432, view.getHumidity());
+        Assertions.assertTrue(view.isLight());
+        Assertions.assertFalse(view.isMotion());
+        Assertions.assertEquals(28.330648866008808, view.getTemp());
+        Assertions.assertEquals(data, view.toData());
+        Assertions.assertEquals(4, buffer.position());
+    }
+}
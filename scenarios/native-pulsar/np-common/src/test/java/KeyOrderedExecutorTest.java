@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import com.example.pulsarworkshop.util.KeyOrderedExecutor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class KeyOrderedExecutorTest {
+
+    @Test
+    public void testPerKeyOrder() throws InterruptedException {
+        KeyOrderedExecutor executor = new KeyOrderedExecutor("test", 4, 16, null, null);
+
+        String[] keys = { "device-a", "device-b", "device-c", "device-d", "device-e" };
+        Map<String, List<Integer>> processed = new ConcurrentHashMap<>();
+        for (String key : keys) {
+            processed.put(key, new ArrayList<>());
+        }
+        for (int i = 0; i < 1000; i++) {
+            String key = keys[i % keys.length];
+            int seq = i;
+            // Only the worker of the key touches its list
+            executor.submit(key, () -> processed.get(key).add(seq));
+        }
+        executor.submit(null, () -> {});
+        Assertions.assertTrue(executor.shutdownAndAwait(5, TimeUnit.SECONDS));
+
+        for (String key : keys) {
+            List<Integer> seqs = processed.get(key);
+            Assertions.assertEquals(200, seqs.size());
+            for (int i = 1; i < seqs.size(); i++) {
+                Assertions.assertTrue(seqs.get(i - 1) < seqs.get(i), "out of order for " + key);
+            }
+        }
+        Assertions.assertEquals(0, executor.workerFor(null));
+        Assertions.assertEquals(1001, executor.getWorkerTaskCnts().stream().mapToLong(Long::longValue).sum());
+    }
+
+    @Test
+    public void testSubmitToWorker() throws InterruptedException {
+        KeyOrderedExecutor executor = new KeyOrderedExecutor("test", 3, 16, null, null);
+
+        Map<Integer, List<String>> threadNames = new ConcurrentHashMap<>();
+        for (int i = 0; i < 30; i++) {
+            int workerIdx = i % 3;
+            executor.submitTo(workerIdx, () -> threadNames
+                    .computeIfAbsent(workerIdx, idx -> new ArrayList<>())
+                    .add(Thread.currentThread().getName()));
+        }
+        Assertions.assertTrue(executor.shutdownAndAwait(5, TimeUnit.SECONDS));
+
+        Assertions.assertEquals(List.of(10L, 10L, 10L), executor.getWorkerTaskCnts());
+        for (int workerIdx = 0; workerIdx < 3; workerIdx++) {
+            // Each worker index always runs on the same thread
+            Assertions.assertEquals(1, threadNames.get(workerIdx).stream().distinct().count());
+            Assertions.assertEquals("test-worker-" + workerIdx, threadNames.get(workerIdx).get(0));
+        }
+    }
+
+    @Test
+    public void testPauseResumeAndFailures() throws InterruptedException {
+        AtomicInteger pauseCnt = new AtomicInteger();
+        AtomicInteger resumeCnt = new AtomicInteger();
+        KeyOrderedExecutor executor = new KeyOrderedExecutor("test", 1, 2,
+                pauseCnt::incrementAndGet, resumeCnt::incrementAndGet);
+
+        // Block the only worker, so the next tasks fill its queue
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.submit("key", () -> {
+            started.countDown();
+            try {
+                blocker.await();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.submit("key", () -> {});
+        executor.submit("key", () -> { throw new IllegalStateException("failed"); });
+        Assertions.assertEquals(0, pauseCnt.get());
+
+        // The queue is full: this one pauses and waits until the worker is unblocked
+        Thread submitter = new Thread(() -> {
+            try {
+                executor.submit("key", () -> {});
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        submitter.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pauseCnt.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        Assertions.assertEquals(1, pauseCnt.get());
+        Assertions.assertEquals(0, resumeCnt.get());
+
+        blocker.countDown();
+        submitter.join(5000);
+        Assertions.assertTrue(executor.shutdownAndAwait(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, executor.getPauseCnt());
+        Assertions.assertEquals(1, resumeCnt.get());
+        Assertions.assertEquals(1, executor.getFailedCnt());
+        Assertions.assertTrue(executor.getFirstFailure() instanceof IllegalStateException);
+        Assertions.assertEquals(List.of(4L), executor.getWorkerTaskCnts());
+    }
+}
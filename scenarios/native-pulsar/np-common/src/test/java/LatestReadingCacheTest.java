@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import com.example.pulsarworkshop.memory.MemoryBroker;
+import com.example.pulsarworkshop.memory.MemoryPulsarClient;
+import com.example.pulsarworkshop.util.LatestReadingCache;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.PulsarClient;
+import org.apache.pulsar.client.api.PulsarClientException;
+import org.apache.pulsar.client.api.Schema;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class LatestReadingCacheTest {
+    private final static String TOPIC = "persistent://public/default/latest-reading-test";
+
+    @AfterEach
+    public void cleanup() {
+        MemoryBroker.getInstance().deleteTopic(TOPIC);
+    }
+
+    @Test
+    public void testLatestReadingPerDevice() throws PulsarClientException, IOException, InterruptedException {
+        PulsarClient client = MemoryPulsarClient.create();
+        Producer<String> producer = client.newProducer(Schema.STRING).topic(TOPIC).create();
+        for (int i = 0; i < 10; i++) {
+            producer.newMessage().key("dev-" + (i % 3)).value("temp=" + i).send();
+        }
+        // Ignored, there is no device id
+        producer.newMessage().value("no key").send();
+
+        // The existing readings are loaded before the cache is returned
+        LatestReadingCache<String, Integer> cache = LatestReadingCache.create(client, TOPIC, Schema.STRING,
+                value -> value.isEmpty() ? null : Integer.parseInt(value.substring("temp=".length())));
+        Assertions.assertEquals(3, cache.size());
+        Assertions.assertEquals(9, cache.get("dev-0"));
+        Assertions.assertEquals(7, cache.get("dev-1"));
+        Assertions.assertEquals(8, cache.get("dev-2"));
+        Assertions.assertNull(cache.get("dev-3"));
+        // Only the latest reading of each device is loaded
+        Assertions.assertEquals(3, cache.getUpdateCnt());
+        Assertions.assertEquals(4, cache.getLookupCnt());
+        Assertions.assertEquals(1, cache.getMissCnt());
+
+        Map<String, Integer> changes = new ConcurrentHashMap<>();
+        CountDownLatch changed = new CountDownLatch(2);
+        cache.addListener((deviceId, reading) -> {
+            changes.put(deviceId, (reading == null) ? -1 : reading);
+            changed.countDown();
+        });
+        producer.newMessage().key("dev-3").value("temp=42").send();
+        // An empty reading removes the device
+        producer.newMessage().key("dev-1").value("").send();
+        Assertions.assertTrue(changed.await(5, TimeUnit.SECONDS));
+
+        Assertions.assertEquals(Map.of("dev-3", 42, "dev-1", -1), changes);
+        Assertions.assertEquals(42, cache.get("dev-3"));
+        Assertions.assertFalse(cache.contains("dev-1"));
+        Assertions.assertEquals(Map.of("dev-0", 9, "dev-2", 8, "dev-3", 42), cache.asMap());
+
+        cache.close();
+        producer.close();
+        client.close();
+    }
+}
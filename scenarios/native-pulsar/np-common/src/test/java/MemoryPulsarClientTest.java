@@ -0,0 +1,446 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import com.example.pulsarworkshop.DeviceTS;
+import com.example.pulsarworkshop.DeviceTSNew;
+import com.example.pulsarworkshop.memory.MemoryBroker;
+import com.example.pulsarworkshop.memory.MemoryPulsarClient;
+import com.example.pulsarworkshop.memory.MemorySubscription;
+import com.example.pulsarworkshop.util.DeviceHashMessageRouter;
+import com.example.pulsarworkshop.util.PartitionPublishStats;
+import org.apache.pulsar.client.impl.MessageIdImpl;
+import org.apache.pulsar.client.impl.MultiplierRedeliveryBackoff;
+import org.apache.pulsar.client.api.*;
+import org.apache.pulsar.client.api.schema.GenericRecord;
+import org.apache.pulsar.client.api.transaction.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class MemoryPulsarClientTest {
+    private final static String TOPIC = "persistent://public/default/memory-test";
+
+    @AfterEach
+    public void cleanup() {
+        MemoryBroker.getInstance().deleteTopic(TOPIC);
+        MemoryBroker.getInstance().deleteTopic(TOPIC + "-sub-RETRY");
+        MemoryBroker.getInstance().deleteTopic(TOPIC + "-sub-DLQ");
+    }
+
+    @Test
+    public void testPublishBeforeSubscribe() throws PulsarClientException {
+        PulsarClient client = MemoryPulsarClient.create();
+        Producer<String> producer = client.newProducer(Schema.STRING)
+                .topic(TOPIC)
+                .enableBatching(true)
+                .create();
+        producer.newMessage().key("dev1").property("p1", "v1").value("msg-0").send();
+        producer.sendAsync("msg-1");
+
+        Consumer<String> consumer = client.newConsumer(Schema.STRING)
+                .topic(TOPIC)
+                .subscriptionName("sub")
+                .subscriptionType(SubscriptionType.Shared)
+                .subscribe();
+
+        Message<String> message = consumer.receive();
+        Assertions.assertEquals("dev1", message.getKey());
+        Assertions.assertEquals("v1", message.getProperty("p1"));
+        Assertions.assertEquals("msg-0", message.getValue());
+        consumer.acknowledge(message);
+
+        Assertions.assertEquals("msg-1", consumer.receive().getValue());
+        Assertions.assertNull(consumer.receive(10, TimeUnit.MILLISECONDS));
+
+        client.close();
+    }
+
+    @Test
+    public void testNegativeAckAndBatchReceive() throws PulsarClientException {
+        PulsarClient client = MemoryPulsarClient.create();
+        Producer<byte[]> producer = client.newProducer().topic(TOPIC).create();
+        Consumer<byte[]> consumer = client.newConsumer()
+                .topic(TOPIC)
+                .subscriptionName("sub")
+                .batchReceivePolicy(BatchReceivePolicy.builder()
+                        .maxNumMessages(10)
+                        .timeout(10, TimeUnit.MILLISECONDS)
+                        .build())
+                .subscribe();
+
+        for (int i = 0; i < 3; i++) {
+            producer.send(new byte[] { (byte) i });
+        }
+
+        Message<byte[]> message = consumer.receive();
+        consumer.negativeAcknowledge(message);
+
+        Messages<byte[]> messages = consumer.batchReceive();
+        Assertions.assertEquals(3, messages.size());
+        int redelivered = 0;
+        for (Message<byte[]> msg : messages) {
+            redelivered += msg.getRedeliveryCount();
+        }
+        Assertions.assertEquals(1, redelivered);
+
+        client.close();
+    }
+
+    @Test
+    public void testKeySharedDispatch() throws PulsarClientException {
+        PulsarClient client = MemoryPulsarClient.create();
+        @SuppressWarnings("unchecked")
+        Consumer<String>[] consumers = new Consumer[2];
+        for (int i = 0; i < consumers.length; i++) {
+            consumers[i] = client.newConsumer(Schema.STRING)
+                    .topic(TOPIC)
+                    .subscriptionName("sub")
+                    .subscriptionType(SubscriptionType.Key_Shared)
+                    .subscribe();
+        }
+
+        Producer<String> producer = client.newProducer(Schema.STRING).topic(TOPIC).create();
+        for (int i = 0; i < 100; i++) {
+            producer.newMessage().key("dev" + (i % 10)).value("msg-" + i).send();
+        }
+
+        // Each key goes to exactly one consumer
+        Map<String, Integer> keyOwners = new HashMap<>();
+        int received = 0;
+        for (int i = 0; i < consumers.length; i++) {
+            Message<String> message;
+            while ((message = consumers[i].receive(10, TimeUnit.MILLISECONDS)) != null) {
+                Integer owner = keyOwners.putIfAbsent(message.getKey(), i);
+                Assertions.assertTrue(owner == null || owner == i);
+                received++;
+            }
+        }
+        Assertions.assertEquals(100, received);
+
+        client.close();
+    }
+
+    @Test
+    public void testPartitionedTopicRouting() throws Exception {
+        MemoryBroker.getInstance().createPartitionedTopic(TOPIC, 4);
+
+        PulsarClient client = MemoryPulsarClient.create();
+        Assertions.assertEquals(4, client.getPartitionsForTopic(TOPIC).get().size());
+
+        PartitionPublishStats partitionStats = new PartitionPublishStats();
+        Producer<String> producer = client.newProducer(Schema.STRING)
+                .topic(TOPIC)
+                .messageRoutingMode(MessageRoutingMode.CustomPartition)
+                .messageRouter(new DeviceHashMessageRouter())
+                .intercept(partitionStats)
+                .create();
+        Assertions.assertEquals(4, producer.getNumOfPartitions());
+
+        int expectedPartition = DeviceHashMessageRouter.partitionFor("dev1".getBytes(), 4);
+        for (int i = 0; i < 3; i++) {
+            MessageId messageId = producer.newMessage().key("dev1").value("msg-" + i).send();
+            Assertions.assertEquals(expectedPartition, ((MessageIdImpl) messageId).getPartitionIndex());
+        }
+        Assertions.assertEquals(3, partitionStats.getPartitionStats().get(expectedPartition).getAckedMsgCnt());
+
+        // A consumer of the partitioned topic gets the messages of all the partitions
+        Consumer<String> consumer = client.newConsumer(Schema.STRING)
+                .topic(TOPIC)
+                .subscriptionName("sub")
+                .subscribe();
+        Message<String> message = consumer.receive();
+        Assertions.assertEquals(TOPIC + "-partition-" + expectedPartition, message.getTopicName());
+
+        client.close();
+    }
+
+    @Test
+    public void testMessageListener() throws Exception {
+        PulsarClient client = MemoryPulsarClient.create(2);
+        CountDownLatch latch = new CountDownLatch(100);
+        Set<String> listenerThreads = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < 3; i++) {
+            client.newConsumer(Schema.STRING)
+                    .topic(TOPIC)
+                    .subscriptionName("sub")
+                    .subscriptionType(SubscriptionType.Shared)
+                    .messageListener((consumer, message) -> {
+                        listenerThreads.add(Thread.currentThread().getName());
+                        consumer.acknowledgeAsync(message);
+                        latch.countDown();
+                    })
+                    .subscribe();
+        }
+
+        Producer<String> producer = client.newProducer(Schema.STRING).topic(TOPIC).create();
+        for (int i = 0; i < 100; i++) {
+            producer.sendAsync("msg-" + i);
+        }
+
+        Assertions.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        // 3 consumers, served by the 2 listener threads of the client
+        Assertions.assertTrue(listenerThreads.size() <= 2);
+        Assertions.assertEquals(100, MemoryBroker.getInstance().getTopic(TOPIC).getSubscription("sub").getAckCount());
+
+        client.close();
+    }
+
+    @Test
+    public void testReaderSeekByPublishTime() throws Exception {
+        MemoryBroker.getInstance().createPartitionedTopic(TOPIC, 2);
+
+        PulsarClient client = MemoryPulsarClient.create();
+        Producer<String> producer = client.newProducer(Schema.STRING).topic(TOPIC).create();
+        for (int i = 0; i < 4; i++) {
+            producer.send("old-" + i);
+        }
+        Thread.sleep(5);
+        long seekTime = System.currentTimeMillis();
+        for (int i = 0; i < 6; i++) {
+            producer.send("new-" + i);
+        }
+        // The messages are still read after they are consumed by a subscription
+        Consumer<String> consumer = client.newConsumer(Schema.STRING).topic(TOPIC).subscriptionName("sub").subscribe();
+        Assertions.assertNotNull(consumer.receive());
+
+        int newMsgCnt = 0;
+        for (String partition : client.getPartitionsForTopic(TOPIC).get()) {
+            Reader<String> reader = client.newReader(Schema.STRING)
+                    .topic(partition)
+                    .startMessageId(MessageId.earliest)
+                    .create();
+            reader.seek(seekTime);
+            while (reader.hasMessageAvailable()) {
+                Message<String> message = reader.readNext();
+                Assertions.assertEquals(partition, message.getTopicName());
+                Assertions.assertTrue(message.getValue().startsWith("new-"));
+                Assertions.assertTrue(message.getPublishTime() >= seekTime);
+                newMsgCnt++;
+            }
+            Assertions.assertNull(reader.readNext(10, TimeUnit.MILLISECONDS));
+            reader.close();
+        }
+        Assertions.assertEquals(6, newMsgCnt);
+
+        client.close();
+    }
+
+    @Test
+    public void testReaderFromLatestInclusive() throws Exception {
+        PulsarClient client = MemoryPulsarClient.create();
+        Reader<String> emptyReader = client.newReader(Schema.STRING)
+                .topic(TOPIC)
+                .startMessageId(MessageId.latest)
+                .startMessageIdInclusive()
+                .create();
+        Assertions.assertFalse(emptyReader.hasMessageAvailable());
+        emptyReader.close();
+
+        Producer<String> producer = client.newProducer(Schema.STRING).topic(TOPIC).create();
+        for (int i = 0; i < 3; i++) {
+            producer.send("msg-" + i);
+        }
+        // Starts at the last message
+        Reader<String> reader = client.newReader(Schema.STRING)
+                .topic(TOPIC)
+                .startMessageId(MessageId.latest)
+                .startMessageIdInclusive()
+                .create();
+        Assertions.assertTrue(reader.hasMessageAvailable());
+        Assertions.assertEquals("msg-2", reader.readNext().getValue());
+        Assertions.assertFalse(reader.hasMessageAvailable());
+        reader.close();
+
+        client.close();
+    }
+
+    @Test
+    public void testAutoConsumeSchemaVersions() throws PulsarClientException {
+        PulsarClient client = MemoryPulsarClient.create();
+        Producer<DeviceTS> oldProducer = client.newProducer(Schema.AVRO(DeviceTS.class)).topic(TOPIC).create();
+        Producer<DeviceTSNew> newProducer = client.newProducer(Schema.AVRO(DeviceTSNew.class)).topic(TOPIC).create();
+        oldProducer.send(new DeviceTS("tag-1", 1, "2023-07-18T01:02:03Z", 1.5));
+        newProducer.send(new DeviceTSNew("tag-2", 2, "2023-08-18T01:02:03Z", 2.5, 202308));
+        oldProducer.send(new DeviceTS("tag-3", 3, "2023-09-18T01:02:03Z", 3.5));
+
+        Consumer<GenericRecord> consumer = client.newConsumer(Schema.AUTO_CONSUME())
+                .topic(TOPIC)
+                .subscriptionName("sub")
+                .subscribe();
+        Map<String, byte[]> schemaVersions = new HashMap<>();
+        for (int i = 0; i < 3; i++) {
+            Message<GenericRecord> message = consumer.receive(1, TimeUnit.SECONDS);
+            Assertions.assertNotNull(message);
+            GenericRecord record = message.getValue();
+            String tagId = record.getField("tag_id").toString();
+            schemaVersions.put(tagId, message.getSchemaVersion());
+
+            // Each message is decoded with the schema it was written with
+            boolean newVersion = tagId.equals("tag-2");
+            Assertions.assertEquals(newVersion ? 5 : 4, record.getFields().size());
+            Assertions.assertEquals(newVersion ? DeviceTSNew.getClassSchema() : DeviceTS.getClassSchema(),
+                    new org.apache.avro.Schema.Parser().parse(
+                            message.getReaderSchema().get().getSchemaInfo().getSchemaDefinition()));
+            consumer.acknowledge(message);
+        }
+        Assertions.assertArrayEquals(schemaVersions.get("tag-1"), schemaVersions.get("tag-3"));
+        Assertions.assertFalse(Arrays.equals(schemaVersions.get("tag-1"), schemaVersions.get("tag-2")));
+
+        client.close();
+    }
+
+    @Test
+    public void testTransaction() throws Exception {
+        PulsarClient client = MemoryPulsarClient.create(1, 10);
+        Producer<String> producer = client.newProducer(Schema.STRING).topic(TOPIC).create();
+        producer.send("input");
+        Consumer<String> consumer = client.newConsumer(Schema.STRING)
+                .topic(TOPIC)
+                .subscriptionName("sub")
+                .subscribe();
+        Message<String> input = consumer.receive(1, TimeUnit.SECONDS);
+
+        // Neither the output message nor the acknowledgement are applied before the commit
+        Transaction txn = client.newTransaction().withTransactionTimeout(1, TimeUnit.MINUTES).build().get();
+        producer.newMessage(txn).value("output").sendAsync().get();
+        consumer.acknowledgeAsync(input.getMessageId(), txn).get();
+        Assertions.assertNull(consumer.receive(50, TimeUnit.MILLISECONDS));
+        MemorySubscription subscription = MemoryBroker.getInstance().getTopic(TOPIC).getSubscription("sub");
+        Assertions.assertEquals(0, subscription.getAckCount());
+
+        txn.commit().get();
+        Assertions.assertEquals(Transaction.State.COMMITTED, txn.getState());
+        Assertions.assertEquals("output", consumer.receive(1, TimeUnit.SECONDS).getValue());
+        Assertions.assertEquals(1, subscription.getAckCount());
+        Assertions.assertThrows(ExecutionException.class, () -> producer.newMessage(txn).value("late").sendAsync().get());
+
+        // An aborted transaction leaves nothing behind
+        Transaction abortedTxn = client.newTransaction().build().get();
+        producer.newMessage(abortedTxn).value("aborted").send();
+        abortedTxn.abort().get();
+        Assertions.assertEquals(Transaction.State.ABORTED, abortedTxn.getState());
+        Assertions.assertNull(consumer.receive(50, TimeUnit.MILLISECONDS));
+        Assertions.assertThrows(ExecutionException.class, () -> abortedTxn.commit().get());
+
+        client.close();
+    }
+
+    @Test
+    public void testUnsupportedMethod() throws PulsarClientException {
+        PulsarClient client = MemoryPulsarClient.create();
+        Consumer<byte[]> consumer = client.newConsumer().topic(TOPIC).subscriptionName("sub").subscribe();
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> consumer.seek(0L));
+        client.close();
+    }
+
+    @Test
+    public void testNegativeAckBackoffAndDeadLetter() throws Exception {
+        PulsarClient client = MemoryPulsarClient.create();
+        Producer<String> producer = client.newProducer(Schema.STRING).topic(TOPIC).create();
+        Consumer<String> consumer = client.newConsumer(Schema.STRING)
+                .topic(TOPIC)
+                .subscriptionName("sub")
+                .subscriptionType(SubscriptionType.Shared)
+                .negativeAckRedeliveryBackoff(MultiplierRedeliveryBackoff.builder()
+                        .minDelayMs(20)
+                        .maxDelayMs(50)
+                        .multiplier(2)
+                        .build())
+                .deadLetterPolicy(DeadLetterPolicy.builder().maxRedeliverCount(2).build())
+                .subscribe();
+        Consumer<String> dlqConsumer = client.newConsumer(Schema.STRING)
+                .topic(TOPIC + "-sub-DLQ")
+                .subscriptionName("dlq-sub")
+                .subscribe();
+        producer.newMessage().key("dev1").value("msg-0").send();
+
+        // Delivered "maxRedeliverCount" + 1 times, with growing delays (20, 40 ms) in between
+        long lastNackNanos = 0;
+        for (int redeliveryCount = 0; redeliveryCount <= 2; redeliveryCount++) {
+            Message<String> message = consumer.receive(1, TimeUnit.SECONDS);
+            Assertions.assertEquals(redeliveryCount, message.getRedeliveryCount());
+            if (redeliveryCount > 0) {
+                long minDelayMs = 20L << (redeliveryCount - 1);
+                Assertions.assertTrue(System.nanoTime() - lastNackNanos >= TimeUnit.MILLISECONDS.toNanos(minDelayMs));
+            }
+            lastNackNanos = System.nanoTime();
+            consumer.negativeAcknowledge(message);
+        }
+
+        Message<String> deadLetter = dlqConsumer.receive(1, TimeUnit.SECONDS);
+        Assertions.assertEquals("msg-0", deadLetter.getValue());
+        Assertions.assertEquals("dev1", deadLetter.getKey());
+        Assertions.assertEquals(TOPIC, deadLetter.getProperty("REAL_TOPIC"));
+        Assertions.assertNull(consumer.receive(100, TimeUnit.MILLISECONDS));
+
+        MemorySubscription subscription = MemoryBroker.getInstance().getTopic(TOPIC).getSubscription("sub");
+        Assertions.assertEquals(2, subscription.getNegativeAckCount());
+        Assertions.assertEquals(1, subscription.getDeadLetterCount());
+        client.close();
+    }
+
+    @Test
+    public void testRetryLetterTopic() throws Exception {
+        PulsarClient client = MemoryPulsarClient.create();
+        Producer<String> producer = client.newProducer(Schema.STRING).topic(TOPIC).create();
+        Consumer<String> consumer = client.newConsumer(Schema.STRING)
+                .topic(TOPIC)
+                .subscriptionName("sub")
+                .subscriptionType(SubscriptionType.Shared)
+                .enableRetry(true)
+                .deadLetterPolicy(DeadLetterPolicy.builder().maxRedeliverCount(2).build())
+                .subscribe();
+        producer.newMessage().value("msg-0").send();
+
+        Message<String> message = consumer.receive(1, TimeUnit.SECONDS);
+        String originMessageId = message.getMessageId().toString();
+        consumer.reconsumeLater(message, 50, TimeUnit.MILLISECONDS);
+
+        // Not before the delay
+        Assertions.assertNull(consumer.receive(20, TimeUnit.MILLISECONDS));
+        Message<String> retried = consumer.receive(1, TimeUnit.SECONDS);
+        Assertions.assertEquals("msg-0", retried.getValue());
+        Assertions.assertEquals(TOPIC + "-sub-RETRY", retried.getTopicName());
+        Assertions.assertEquals("1", retried.getProperty("RECONSUMETIMES"));
+        Assertions.assertEquals(originMessageId, retried.getProperty("ORIGIN_MESSAGE_ID"));
+
+        consumer.reconsumeLater(retried, 0, TimeUnit.MILLISECONDS);
+        retried = consumer.receive(1, TimeUnit.SECONDS);
+        Assertions.assertEquals("2", retried.getProperty("RECONSUMETIMES"));
+
+        // Reconsumed "maxRedeliverCount" times already
+        consumer.reconsumeLater(retried, 0, TimeUnit.MILLISECONDS);
+        Assertions.assertNull(consumer.receive(50, TimeUnit.MILLISECONDS));
+        MemorySubscription subscription = MemoryBroker.getInstance().getTopic(TOPIC).getSubscription("sub");
+        Assertions.assertEquals(1, subscription.getDeadLetterCount());
+        Assertions.assertEquals(3, subscription.getAckCount());
+
+        Consumer<String> plainConsumer = client.newConsumer(Schema.STRING).topic(TOPIC).subscriptionName("sub2").subscribe();
+        Assertions.assertThrows(PulsarClientException.class, () -> plainConsumer.reconsumeLater(message, 0, TimeUnit.SECONDS));
+        client.close();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import com.example.pulsarworkshop.memory.MemoryBroker;
+import com.example.pulsarworkshop.memory.MemoryPulsarClient;
+import com.example.pulsarworkshop.util.ProducerPayloadStats;
+import org.apache.pulsar.client.api.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+public class ProducerPayloadStatsTest {
+    private final static String TOPIC = "persistent://public/default/payload-stats-test";
+    private final static byte[] PAYLOAD =
+            "1594512094.3859746,b8:27:eb:bf:9d:51,0.004955938648391245,51.0,false,0.00765082227055719,false"
+                    .getBytes(StandardCharsets.UTF_8);
+
+    @AfterEach
+    public void cleanup() {
+        MemoryBroker.getInstance().deleteTopic(TOPIC);
+    }
+
+    private static ProducerPayloadStats publish(CompressionType compressionType, int batchMaxMessages, int msgCnt)
+            throws PulsarClientException {
+        return publish(new ProducerPayloadStats(
+                compressionType, batchMaxMessages, 128 * 1024, 1, TimeUnit.HOURS, false), compressionType, msgCnt, null);
+    }
+
+    /**
+     * @param keys the keys of the messages, in turn (none when null)
+     */
+    private static ProducerPayloadStats publish(ProducerPayloadStats payloadStats,
+                                                CompressionType compressionType,
+                                                int msgCnt,
+                                                String[] keys) throws PulsarClientException {
+        try (PulsarClient client = MemoryPulsarClient.create()) {
+            Producer<byte[]> producer = client.newProducer()
+                    .topic(TOPIC)
+                    .compressionType(compressionType)
+                    .intercept(payloadStats)
+                    .create();
+            for (int i = 0; i < msgCnt; i++) {
+                TypedMessageBuilder<byte[]> messageBuilder = producer.newMessage().value(PAYLOAD);
+                if (keys != null) {
+                    messageBuilder.key(keys[i % keys.length]);
+                }
+                messageBuilder.send();
+            }
+            producer.close();
+        }
+        return payloadStats;
+    }
+
+    @Test
+    public void testNoCompression() throws PulsarClientException {
+        ProducerPayloadStats payloadStats = publish(CompressionType.NONE, 1, 10);
+
+        Assertions.assertEquals(10L * PAYLOAD.length, payloadStats.getRawBytes());
+        Assertions.assertEquals(10L * PAYLOAD.length, payloadStats.getWireBytes());
+        Assertions.assertEquals(10, payloadStats.getBatchCnt());
+        Assertions.assertEquals(10, payloadStats.getAckedMsgCnt());
+    }
+
+    @Test
+    public void testBatchedCompression() throws PulsarClientException {
+        ProducerPayloadStats payloadStats = publish(CompressionType.LZ4, 100, 250);
+
+        Assertions.assertEquals(250L * PAYLOAD.length, payloadStats.getRawBytes());
+        Assertions.assertEquals(3, payloadStats.getBatchCnt());
+        // Repeated readings compress very well within a batch
+        Assertions.assertTrue(payloadStats.getWireBytes() < payloadStats.getRawBytes() / 10);
+    }
+
+    @Test
+    public void testRawBytesOnly() throws PulsarClientException {
+        ProducerPayloadStats payloadStats = publish(new ProducerPayloadStats(), CompressionType.LZ4, 10, null);
+
+        Assertions.assertFalse(payloadStats.isWireBytesEstimated());
+        Assertions.assertEquals(10L * PAYLOAD.length, payloadStats.getRawBytes());
+        Assertions.assertEquals(0, payloadStats.getWireBytes());
+        Assertions.assertEquals(0, payloadStats.getBatchCnt());
+    }
+
+    @Test
+    public void testSentBytesFromProducerStats() throws PulsarClientException {
+        ProducerPayloadStats payloadStats = new ProducerPayloadStats();
+        try (PulsarClient client = MemoryPulsarClient.create()) {
+            Producer<byte[]> producer = client.newProducer().topic(TOPIC).intercept(payloadStats).create();
+            for (int i = 0; i < 10; i++) {
+                producer.send(PAYLOAD);
+            }
+
+            // The in-memory producer sends the payloads as they are
+            ProducerStats producerStats = producer.getStats();
+            Assertions.assertEquals(payloadStats.getRawMsgCnt(), producerStats.getTotalMsgsSent());
+            Assertions.assertEquals(payloadStats.getRawBytes(), producerStats.getTotalBytesSent());
+            producer.close();
+        }
+    }
+
+    @Test
+    public void testBatchPerPartition() throws PulsarClientException {
+        // Round-robin over 2 partitions: 2 batches of 50 messages instead of one of 100
+        MemoryBroker.getInstance().createPartitionedTopic(TOPIC, 2);
+        ProducerPayloadStats payloadStats = publish(new ProducerPayloadStats(
+                CompressionType.NONE, 100, 128 * 1024, 1, TimeUnit.HOURS, false), CompressionType.NONE, 100, null);
+
+        Assertions.assertEquals(2, payloadStats.getBatchCnt());
+    }
+
+    @Test
+    public void testKeyBasedBatching() throws PulsarClientException {
+        String[] keys = { "device-1", "device-2" };
+        ProducerPayloadStats defaultBatching = publish(new ProducerPayloadStats(
+                CompressionType.NONE, 100, 128 * 1024, 1, TimeUnit.HOURS, false), CompressionType.NONE, 200, keys);
+        cleanup();
+        ProducerPayloadStats keyBasedBatching = publish(new ProducerPayloadStats(
+                CompressionType.NONE, 100, 128 * 1024, 1, TimeUnit.HOURS, true), CompressionType.NONE, 200, keys);
+
+        // The limits apply to the whole batch, which is sent as one batch per key
+        Assertions.assertEquals(2, defaultBatching.getBatchCnt());
+        Assertions.assertEquals(4, keyBasedBatching.getBatchCnt());
+        Assertions.assertEquals(defaultBatching.getWireBytes(), keyBasedBatching.getWireBytes());
+    }
+}
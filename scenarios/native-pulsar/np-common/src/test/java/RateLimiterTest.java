@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import com.example.pulsarworkshop.util.RateLimiter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class RateLimiterTest {
+
+    @Test
+    public void testEvenRate() throws InterruptedException {
+        // 10 batches of 20 messages at 1000 msg/s: the first batch goes out right away
+        RateLimiter rateLimiter = new RateLimiter(1000);
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            rateLimiter.acquire(20);
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        Assertions.assertTrue(elapsedMs >= 175, "elapsed " + elapsedMs + " ms");
+    }
+
+    @Test
+    public void testNoBurstAfterIdle() throws InterruptedException {
+        RateLimiter rateLimiter = new RateLimiter(10);
+        rateLimiter.acquire(1);
+        Thread.sleep(300);
+
+        // The idle time is not saved up: the second message waits (most of) its 100 ms slot
+        Assertions.assertEquals(0, rateLimiter.acquire(1));
+        long waitNanos = rateLimiter.acquire(1);
+        Assertions.assertTrue(waitNanos > TimeUnit.MILLISECONDS.toNanos(50), "waited " + waitNanos + " ns");
+    }
+
+    @Test
+    public void testOneMessageAtATime() throws InterruptedException {
+        // The sleeps of 0.1 ms overshoot, the next messages make up for it
+        RateLimiter rateLimiter = new RateLimiter(10000);
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < 5000; i++) {
+            rateLimiter.acquire(1);
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        Assertions.assertTrue(elapsedMs >= 480 && elapsedMs < 750, "elapsed " + elapsedMs + " ms");
+    }
+
+    @Test
+    public void testInvalidRate() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new RateLimiter(0));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import com.example.pulsarworkshop.util.ReceiverQueueController;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ReceiverQueueControllerTest {
+    private final static long SEC_NANOS = 1_000_000_000L;
+
+    @Test
+    public void testShrinkWhenConsumerBound() {
+        // 10..10000, initial 1000, 1 s interval, 100 ms of processing to buffer
+        ReceiverQueueController controller = new ReceiverQueueController(10, 10000, 1000, 1000, 100);
+        Assertions.assertTrue(controller.isDue(0));
+        Assertions.assertEquals(-1, controller.evaluate(0, 0));
+
+        // 500 msg/s with a full queue: 50 messages cover 100 ms, once seen in 2 intervals in a row
+        controller.recordReceive(500, 0);
+        Assertions.assertFalse(controller.isDue(SEC_NANOS / 2));
+        Assertions.assertEquals(-1, controller.evaluate(SEC_NANOS / 2, 1000));
+        Assertions.assertTrue(controller.isDue(SEC_NANOS));
+        Assertions.assertEquals(-1, controller.evaluate(SEC_NANOS, 1000));
+        controller.recordReceive(500, 0);
+        Assertions.assertEquals(50, controller.evaluate(2 * SEC_NANOS, 1000));
+        Assertions.assertEquals(50, controller.getCurrentSize());
+
+        // The interval after the change is skipped, while the new consumer fills up its queue
+        controller.recordReceive(400, 0);
+        Assertions.assertEquals(-1, controller.evaluate(3 * SEC_NANOS, 50));
+        // Still full, but the target is not below half of the current size
+        for (int i = 4; i < 8; i++) {
+            controller.recordReceive(400, 0);
+            Assertions.assertEquals(-1, controller.evaluate(i * SEC_NANOS, 50));
+        }
+        Assertions.assertEquals(1, controller.getDecisionCnt(ReceiverQueueController.CONSUMER_BOUND));
+    }
+
+    @Test
+    public void testGrowWhenStarved() {
+        ReceiverQueueController controller = new ReceiverQueueController(10, 300, 100, 1000, 100);
+        controller.evaluate(0, 0);
+
+        // Waiting half of the time with an empty queue
+        controller.recordReceive(100, SEC_NANOS / 2);
+        Assertions.assertEquals(-1, controller.evaluate(SEC_NANOS, 0));
+        controller.recordReceive(100, SEC_NANOS / 2);
+        Assertions.assertEquals(200, controller.evaluate(2 * SEC_NANOS, 0));
+        // Skipped interval, then 2 more starved intervals
+        for (int i = 3; i < 5; i++) {
+            controller.recordReceive(100, SEC_NANOS / 2);
+            Assertions.assertEquals(-1, controller.evaluate(i * SEC_NANOS, 0));
+        }
+        controller.recordReceive(100, SEC_NANOS / 2);
+        Assertions.assertEquals(300, controller.evaluate(5 * SEC_NANOS, 0));
+        // Capped at the max size
+        for (int i = 6; i < 9; i++) {
+            controller.recordReceive(100, SEC_NANOS / 2);
+            Assertions.assertEquals(-1, controller.evaluate(i * SEC_NANOS, 0));
+        }
+
+        // No message at all: no decision
+        Assertions.assertEquals(-1, controller.evaluate(9 * SEC_NANOS, 0));
+        Assertions.assertEquals(2, controller.getDecisions().size());
+        Assertions.assertEquals(100, controller.getMinSizeSeen());
+        Assertions.assertEquals(300, controller.getMaxSizeSeen());
+    }
+
+    @Test
+    public void testNoChangeOnAlternatingConditions() {
+        ReceiverQueueController controller = new ReceiverQueueController(10, 10000, 1000, 1000, 100);
+        controller.evaluate(0, 0);
+
+        // Starved and consumer-bound in turn: never twice the same condition in a row
+        for (int i = 1; i <= 10; i++) {
+            if (i % 2 == 0) {
+                controller.recordReceive(500, 0);
+                Assertions.assertEquals(-1, controller.evaluate(i * SEC_NANOS, 1000));
+            }
+            else {
+                controller.recordReceive(100, SEC_NANOS / 2);
+                Assertions.assertEquals(-1, controller.evaluate(i * SEC_NANOS, 0));
+            }
+        }
+        Assertions.assertTrue(controller.getDecisions().isEmpty());
+    }
+}
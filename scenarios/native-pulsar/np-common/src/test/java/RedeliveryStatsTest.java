@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import com.example.pulsarworkshop.memory.MemoryBroker;
+import com.example.pulsarworkshop.memory.MemoryPulsarClient;
+import com.example.pulsarworkshop.util.RedeliveryStats;
+import org.apache.pulsar.client.api.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class RedeliveryStatsTest {
+    private final static String TOPIC = "persistent://public/default/redelivery-stats-test";
+
+    @AfterEach
+    public void cleanup() {
+        MemoryBroker.getInstance().deleteTopic(TOPIC);
+        MemoryBroker.getInstance().deleteTopic(TOPIC + "-sub-RETRY");
+        MemoryBroker.getInstance().deleteTopic(TOPIC + "-sub-DLQ");
+    }
+
+    @Test
+    public void testNegativeAckAndRetryLetterAttempts() throws Exception {
+        PulsarClient client = MemoryPulsarClient.create();
+        Producer<String> producer = client.newProducer(Schema.STRING).topic(TOPIC).create();
+        Consumer<String> consumer = client.newConsumer(Schema.STRING)
+                .topic(TOPIC)
+                .subscriptionName("sub")
+                .subscriptionType(SubscriptionType.Shared)
+                .enableRetry(true)
+                .deadLetterPolicy(DeadLetterPolicy.builder().maxRedeliverCount(1).build())
+                .subscribe();
+        producer.send("ok");
+        producer.send("nack-once");
+        producer.send("retry-always");
+
+        RedeliveryStats stats = new RedeliveryStats();
+        int finished = 0;
+        while (finished < 3) {
+            Message<String> message = consumer.receive(1, TimeUnit.SECONDS);
+            stats.recordDelivery(message);
+            int previousAttempts = RedeliveryStats.previousAttempts(message);
+            if (message.getValue().equals("ok") || (message.getValue().equals("nack-once") && previousAttempts > 0)) {
+                consumer.acknowledge(message);
+                stats.recordProcessed(message);
+                finished++;
+            }
+            else if (message.getValue().equals("nack-once")) {
+                stats.recordFailure(message, false);
+                consumer.negativeAcknowledge(message);
+            }
+            else {
+                // Back from the retry letter topic as a new message, but with the same origin
+                boolean deadLetter = previousAttempts >= 1;
+                stats.recordFailure(message, deadLetter);
+                consumer.reconsumeLater(message, 10, TimeUnit.MILLISECONDS);
+                if (deadLetter) {
+                    finished++;
+                }
+            }
+        }
+
+        Assertions.assertEquals(5, stats.getDeliveryCnt());
+        Assertions.assertEquals(2, stats.getRedeliveryCnt());
+        Assertions.assertEquals(3, stats.getFailureCnt());
+        Assertions.assertEquals(2, stats.getProcessedCnt());
+        Assertions.assertEquals(1, stats.getDeadLetterCnt());
+        Assertions.assertEquals(Map.of(1, 1L, 2, 2L), stats.getAttemptCnts());
+        // The retried message was delivered again after its 10 ms delay
+        Assertions.assertEquals(2, stats.getRedeliveryDelayHistogram().getTotalCount());
+        Assertions.assertTrue(stats.getRedeliveryDelayHistogram().getMaxValue() >= 10);
+        client.close();
+    }
+}
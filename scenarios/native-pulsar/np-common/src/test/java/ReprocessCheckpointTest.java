@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import com.example.pulsarworkshop.util.ReprocessCheckpoint;
+import org.apache.pulsar.client.api.MessageId;
+import org.apache.pulsar.client.impl.MessageIdImpl;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+public class ReprocessCheckpointTest {
+
+    @TempDir
+    File tempDir;
+
+    private static MessageId messageId(long entryId) {
+        return new MessageIdImpl(1, entryId, -1);
+    }
+
+    @Test
+    public void testCheckpointInReceiveOrder() throws IOException {
+        File checkpointFile = new File(tempDir, "checkpoint.properties");
+        ReprocessCheckpoint checkpoint = new ReprocessCheckpoint(checkpointFile);
+        Assertions.assertNull(checkpoint.getResumeMessageId());
+        Assertions.assertFalse(checkpoint.isReprocessed(messageId(0)));
+
+        CompletableFuture<MessageId> send0 = new CompletableFuture<>();
+        CompletableFuture<MessageId> send1 = new CompletableFuture<>();
+        CompletableFuture<MessageId> send2 = new CompletableFuture<>();
+        checkpoint.track(messageId(0), send0);
+        checkpoint.track(messageId(1), send1);
+        checkpoint.track(messageId(2), send2);
+
+        // The message 1 holds the checkpoint back until it is republished
+        send0.complete(MessageId.earliest);
+        send2.complete(MessageId.earliest);
+        Assertions.assertEquals(2, checkpoint.advance());
+        Assertions.assertEquals(messageId(0), checkpoint.getCheckpointMessageId());
+        checkpoint.save();
+
+        send1.complete(MessageId.earliest);
+        Assertions.assertEquals(0, checkpoint.advance());
+        Assertions.assertEquals(messageId(2), checkpoint.getCheckpointMessageId());
+        Assertions.assertEquals(3, checkpoint.getReprocessedCnt());
+        checkpoint.save();
+
+        ReprocessCheckpoint resumed = new ReprocessCheckpoint(checkpointFile);
+        Assertions.assertEquals(messageId(2), resumed.getResumeMessageId());
+        Assertions.assertEquals(3, resumed.getResumeReprocessedCnt());
+        Assertions.assertTrue(resumed.isReprocessed(messageId(1)));
+        Assertions.assertTrue(resumed.isReprocessed(messageId(2)));
+        Assertions.assertFalse(resumed.isReprocessed(messageId(3)));
+    }
+
+    @Test
+    public void testFailedMessageHoldsCheckpoint() throws IOException {
+        File checkpointFile = new File(tempDir, "checkpoint.properties");
+        ReprocessCheckpoint checkpoint = new ReprocessCheckpoint(checkpointFile);
+
+        checkpoint.track(messageId(0), CompletableFuture.failedFuture(new IOException("send failed")));
+        checkpoint.track(messageId(1), CompletableFuture.completedFuture(MessageId.earliest));
+        Assertions.assertEquals(2, checkpoint.advance());
+        Assertions.assertNull(checkpoint.getCheckpointMessageId());
+
+        // Nothing to save yet
+        checkpoint.save();
+        Assertions.assertFalse(checkpointFile.exists());
+    }
+
+    @Test
+    public void testHeldBackMessageIsNotSkippedAfterRestart() throws IOException {
+        File checkpointFile = new File(tempDir, "checkpoint.properties");
+        ReprocessCheckpoint checkpoint = new ReprocessCheckpoint(checkpointFile);
+
+        checkpoint.track(messageId(0), CompletableFuture.completedFuture(MessageId.earliest));
+        checkpoint.holdBack(messageId(1));
+        checkpoint.track(messageId(2), CompletableFuture.completedFuture(MessageId.earliest));
+        Assertions.assertEquals(2, checkpoint.advance());
+        Assertions.assertEquals(messageId(0), checkpoint.getCheckpointMessageId());
+        checkpoint.save();
+
+        // The message left unprocessed and the ones after it are received and processed again
+        ReprocessCheckpoint resumed = new ReprocessCheckpoint(checkpointFile);
+        Assertions.assertEquals(messageId(0), resumed.getResumeMessageId());
+        Assertions.assertTrue(resumed.isReprocessed(messageId(0)));
+        Assertions.assertFalse(resumed.isReprocessed(messageId(1)));
+        Assertions.assertFalse(resumed.isReprocessed(messageId(2)));
+    }
+
+    @Test
+    public void testRedeliveredMessageReplacesFailedOne() throws IOException {
+        File checkpointFile = new File(tempDir, "checkpoint.properties");
+        ReprocessCheckpoint checkpoint = new ReprocessCheckpoint(checkpointFile);
+
+        checkpoint.track(messageId(0), CompletableFuture.failedFuture(new IOException("send failed")));
+        checkpoint.track(messageId(1), CompletableFuture.completedFuture(MessageId.earliest));
+        Assertions.assertEquals(2, checkpoint.advance());
+
+        // The redelivered message takes the place of the failed one, and fails again
+        checkpoint.track(messageId(0), CompletableFuture.failedFuture(new IOException("send failed again")));
+        Assertions.assertEquals(2, checkpoint.advance());
+        Assertions.assertNull(checkpoint.getCheckpointMessageId());
+
+        CompletableFuture<MessageId> resend0 = new CompletableFuture<>();
+        checkpoint.track(messageId(0), resend0);
+        checkpoint.track(messageId(2), CompletableFuture.completedFuture(MessageId.earliest));
+        Assertions.assertEquals(3, checkpoint.advance());
+
+        resend0.complete(MessageId.earliest);
+        Assertions.assertEquals(0, checkpoint.advance());
+        Assertions.assertEquals(messageId(2), checkpoint.getCheckpointMessageId());
+        Assertions.assertEquals(3, checkpoint.getReprocessedCnt());
+    }
+}
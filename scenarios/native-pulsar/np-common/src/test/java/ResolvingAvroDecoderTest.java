@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import com.example.pulsarworkshop.DeviceTS;
+import com.example.pulsarworkshop.DeviceTSNew;
+import com.example.pulsarworkshop.util.ResolvingAvroDecoder;
+import org.apache.avro.specific.SpecificData;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.SchemaSerializationException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ResolvingAvroDecoderTest {
+
+    private final static byte[] VERSION_0 = ByteBuffer.allocate(Long.BYTES).putLong(0).array();
+    private final static byte[] VERSION_1 = ByteBuffer.allocate(Long.BYTES).putLong(1).array();
+
+    private static org.apache.avro.Schema writerSchemaOf(byte[] schemaVersion) {
+        return (schemaVersion[Long.BYTES - 1] == 0) ? DeviceTS.getClassSchema() : DeviceTSNew.getClassSchema();
+    }
+
+    @Test
+    public void testDecodeMixedVersions() {
+        byte[] oldPayload = Schema.AVRO(DeviceTS.class).encode(
+                new DeviceTS("tag-1", 1, "2023-07-18T01:02:03Z", 1.5));
+        byte[] newPayload = Schema.AVRO(DeviceTSNew.class).encode(
+                new DeviceTSNew("tag-2", 2, "2023-08-18T01:02:03Z", 2.5, 202308));
+
+        // The latest version, with a default for the field the older version doesn't have
+        org.apache.avro.Schema readerSchema = ResolvingAvroDecoder.readerSchemaOf(
+                DeviceTSNew.getClassSchema(), Map.of("yyyymm", 0), DeviceTS.getClassSchema().getFullName());
+        ResolvingAvroDecoder<DeviceTSNew> decoder =
+                new ResolvingAvroDecoder<>(readerSchema, new SpecificData(DeviceTSNew.class.getClassLoader()));
+
+        AtomicInteger loadCnt = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            DeviceTSNew oldReading = decoder.decode(VERSION_0, oldPayload, version -> {
+                loadCnt.incrementAndGet();
+                return writerSchemaOf(version);
+            });
+            Assertions.assertEquals("tag-1", oldReading.getTagId().toString());
+            Assertions.assertEquals(1.5, oldReading.getEventValue());
+            Assertions.assertEquals(0, oldReading.getYyyymm());
+
+            DeviceTSNew newReading = decoder.decode(VERSION_1, newPayload, version -> {
+                loadCnt.incrementAndGet();
+                return writerSchemaOf(version);
+            });
+            Assertions.assertEquals("tag-2", newReading.getTagId().toString());
+            Assertions.assertEquals(202308, newReading.getYyyymm());
+        }
+        // The writer schema is only looked up once per version
+        Assertions.assertEquals(2, loadCnt.get());
+        Assertions.assertEquals(2, decoder.getVersionCnt());
+        Assertions.assertEquals(readerSchema.getField("event_time").getObjectProp("logicalType"),
+                DeviceTSNew.getClassSchema().getField("event_time").getObjectProp("logicalType"));
+
+        // The older version reads the newer one by skipping the extra field
+        ResolvingAvroDecoder<DeviceTS> oldDecoder = new ResolvingAvroDecoder<>(
+                ResolvingAvroDecoder.readerSchemaOf(DeviceTS.getClassSchema(), Map.of(), DeviceTSNew.getClassSchema().getFullName()),
+                new SpecificData(DeviceTS.class.getClassLoader()));
+        DeviceTS skipped = oldDecoder.decode(VERSION_1, newPayload, ResolvingAvroDecoderTest::writerSchemaOf);
+        Assertions.assertEquals("tag-2", skipped.getTagId().toString());
+        Assertions.assertEquals(2.5, skipped.getEventValue());
+    }
+
+    @Test
+    public void testIncompatibleVersion() {
+        byte[] oldPayload = Schema.AVRO(DeviceTS.class).encode(
+                new DeviceTS("tag-1", 1, "2023-07-18T01:02:03Z", 1.5));
+
+        // Without a default, the new field can't be filled from the older version
+        org.apache.avro.Schema readerSchema = ResolvingAvroDecoder.readerSchemaOf(
+                DeviceTSNew.getClassSchema(), Map.of(), DeviceTS.getClassSchema().getFullName());
+        ResolvingAvroDecoder<DeviceTSNew> decoder =
+                new ResolvingAvroDecoder<>(readerSchema, new SpecificData(DeviceTSNew.class.getClassLoader()));
+        SchemaSerializationException sse = Assertions.assertThrows(SchemaSerializationException.class,
+                () -> decoder.decode(VERSION_0, oldPayload, ResolvingAvroDecoderTest::writerSchemaOf));
+        Assertions.assertTrue(sse.getMessage().contains("yyyymm"), sse.getMessage());
+
+        Assertions.assertThrows(SchemaSerializationException.class,
+                () -> decoder.decode(VERSION_0, oldPayload, version -> null));
+        Assertions.assertThrows(SchemaSerializationException.class,
+                () -> decoder.decode("v1".getBytes(StandardCharsets.UTF_8), oldPayload, ResolvingAvroDecoderTest::writerSchemaOf));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+import com.example.pulsarworkshop.memory.MemoryBroker;
+import com.example.pulsarworkshop.memory.MemoryPulsarClient;
+import com.example.pulsarworkshop.util.TransactionBatcher;
+import org.apache.pulsar.client.api.Consumer;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.Producer;
+import org.apache.pulsar.client.api.PulsarClient;
+import org.apache.pulsar.client.api.Schema;
+import org.apache.pulsar.client.api.transaction.Transaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+public class TransactionBatcherTest {
+    private final static String TOPIC = "persistent://public/default/txn-batcher-test";
+
+    @AfterEach
+    public void cleanup() {
+        MemoryBroker.getInstance().deleteTopic(TOPIC);
+    }
+
+    private static Supplier<CompletableFuture<Transaction>> txnOpener(PulsarClient client) {
+        return () -> {
+            try {
+                return client.newTransaction().build();
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        };
+    }
+
+    @Test
+    public void testBatchesBySize() throws Exception {
+        PulsarClient client = MemoryPulsarClient.create(1, 5);
+        Producer<String> producer = client.newProducer(Schema.STRING).topic(TOPIC).create();
+        Consumer<String> consumer = client.newConsumer(Schema.STRING)
+                .topic(TOPIC)
+                .subscriptionName("sub")
+                .subscribe();
+
+        TransactionBatcher<Integer> batcher = new TransactionBatcher<>(txnOpener(client), 10, 60_000, 3, null);
+        for (int i = 0; i < 25; i++) {
+            Transaction txn = batcher.currentTransaction();
+            producer.newMessage(txn).value("msg-" + i).sendAsync();
+            batcher.add(i);
+            // The commits overlap with the next batches, up to 3 open transactions
+            Assertions.assertTrue(batcher.getMaxOpenTxnCnt() <= 3);
+        }
+        Assertions.assertTrue(batcher.close(10, TimeUnit.SECONDS));
+
+        // 2 full batches and the last partial one, the transaction opened ahead is aborted
+        Assertions.assertEquals(3, batcher.getCommittedTxnCnt());
+        Assertions.assertEquals(25, batcher.getCommittedItemCnt());
+        Assertions.assertEquals(0, batcher.getFailedTxnCnt());
+        Assertions.assertTrue(batcher.getAvgCommitMs() > 0);
+        for (int i = 0; i < 25; i++) {
+            Message<String> message = consumer.receive(1, TimeUnit.SECONDS);
+            Assertions.assertEquals("msg-" + i, message.getValue());
+        }
+        client.close();
+    }
+
+    @Test
+    public void testBatchTimeAndFailure() throws Exception {
+        PulsarClient client = MemoryPulsarClient.create();
+        List<Integer> failedItems = new CopyOnWriteArrayList<>();
+        TransactionBatcher<Integer> batcher = new TransactionBatcher<>(txnOpener(client), 100, 20, 1,
+                (items, throwable) -> failedItems.addAll(items));
+
+        // Not due yet
+        batcher.currentTransaction();
+        batcher.add(1);
+        batcher.commitIfDue();
+        Assertions.assertEquals(0, batcher.getCommittedTxnCnt());
+        Thread.sleep(30);
+        Assertions.assertEquals(0, batcher.remainingBatchNanos());
+        batcher.commitIfDue();
+
+        // The transaction is no longer open when the batch commits
+        Transaction txn = batcher.currentTransaction();
+        batcher.add(2);
+        txn.abort().get();
+        Assertions.assertTrue(batcher.close(10, TimeUnit.SECONDS));
+
+        Assertions.assertEquals(1, batcher.getCommittedTxnCnt());
+        Assertions.assertEquals(1, batcher.getFailedTxnCnt());
+        Assertions.assertEquals(List.of(2), failedItems);
+        Assertions.assertNotNull(batcher.getFirstFailure());
+        client.close();
+    }
+}
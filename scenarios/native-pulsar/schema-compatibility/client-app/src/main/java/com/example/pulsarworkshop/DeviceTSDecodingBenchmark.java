@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop;
+
+import com.example.pulsarworkshop.exception.InvalidParamException;
+import com.example.pulsarworkshop.exception.WorkshopRuntimException;
+import com.example.pulsarworkshop.util.AsyncSendWindow;
+import org.apache.pulsar.client.api.*;
+import org.apache.pulsar.client.api.schema.GenericRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the decoding modes of {@link DeviceTSVersionDecoder} on a topic with a mix of
+ * "DeviceTS" and "DeviceTSNew" messages: the per message "GenericRecord" and the cached
+ * resolving readers.
+ *
+ * The mixed messages are published once, and received by one "Schema.AUTO_CONSUME()" subscription
+ * per mode. After a warm-up, the received messages are decoded "decodeRounds" times in each mode,
+ * which reports the decoding throughput, and the CPU time and heap allocation of decoding one
+ * message (without the receive).
+ *
+ * The two record names are different, so on a Pulsar cluster the namespace schema compatibility
+ * strategy must allow it (e.g. "ALWAYS_COMPATIBLE").
+ */
+public class DeviceTSDecodingBenchmark extends NativePulsarConsumerCmdApp {
+
+    // Must be set before initializing the "logger" object.
+    private final static String APP_NAME = "DeviceTSDecodingBenchmark";
+    static { System.setProperty("log_file_base_name", getLogFileName(API_TYPE, APP_NAME)); }
+    private final static Logger logger = LoggerFactory.getLogger(DeviceTSDecodingBenchmark.class);
+
+    private final static int DFT_MSG_NUM = 100_000;
+    private final static int DFT_NEW_VERSION_PCT = 50;
+    private final static int DFT_DECODE_ROUNDS = 10;
+    private final static int WARM_UP_ROUNDS = 5;
+    private final static int MAX_IN_FLIGHT = 1000;
+    private final static long RECEIVE_TIMEOUT_SEC = 30;
+    private final static String[] MODES = { DeviceTSVersionDecoder.MODE_GENERIC, DeviceTSVersionDecoder.MODE_CACHED };
+
+    private final static com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static PulsarClient pulsarClient;
+
+    private int msgNum;
+    private int newVersionPct;
+    private int decodeRounds;
+
+    public DeviceTSDecodingBenchmark(String appName, String[] inputParams) {
+        super(appName, inputParams);
+        addOptionalCommandLineOption("nvp", "newVersionPercent",
+                true, "Percentage of the messages published with the \"DeviceTSNew\" schema (default: " + DFT_NEW_VERSION_PCT + ").");
+        addOptionalCommandLineOption("dr", "decodeRounds",
+                true, "Number of times the received messages are decoded in each mode (default: " + DFT_DECODE_ROUNDS + ").");
+
+        logger.info("Starting application: \"" + appName + "\" ...");
+    }
+
+    public static void main(String[] args) {
+        PulsarWorkshopCmdApp workshopApp = new DeviceTSDecodingBenchmark(APP_NAME, args);
+        int exitCode = workshopApp.runCmdApp();
+        System.exit(exitCode);
+    }
+
+    @Override
+    public void processExtendedInputParams() throws InvalidParamException {
+        super.processExtendedInputParams();
+
+        msgNum = (numMsg == -1) ? DFT_MSG_NUM : numMsg;
+
+        newVersionPct = processIntegerInputParam("nvp", DFT_NEW_VERSION_PCT);
+        if (newVersionPct < 0 || newVersionPct > 100) {
+            throw new InvalidParamException("The percentage of new version messages must be between 0 and 100!");
+        }
+
+        decodeRounds = processIntegerInputParam("dr", DFT_DECODE_ROUNDS);
+        if (decodeRounds <= 0) {
+            throw new InvalidParamException("The number of decoding rounds must be a positive integer!");
+        }
+    }
+
+    @Override
+    public void execute() throws WorkshopRuntimException {
+        Map<String, Consumer<GenericRecord>> consumers = new LinkedHashMap<>();
+        try {
+            pulsarClient = createNativePulsarClient();
+
+            // Subscribe before publishing, so that each subscription receives exactly the mixed messages
+            String subPrefix = appName + "-" + System.currentTimeMillis();
+            for (String mode : MODES) {
+                consumers.put(mode, applyConsumerSettings(pulsarClient.newConsumer(Schema.AUTO_CONSUME()))
+                        .topic(topicName)
+                        .subscriptionName(subPrefix + "-" + mode)
+                        .subscriptionType(SubscriptionType.Exclusive)
+                        .subscriptionInitialPosition(SubscriptionInitialPosition.Latest)
+                        .subscribe());
+            }
+            publishMixedVersions();
+
+            Map<String, List<Message<GenericRecord>>> modeMessages = new LinkedHashMap<>();
+            Map<String, DeviceTSVersionDecoder> modeDecoders = new LinkedHashMap<>();
+            for (String mode : MODES) {
+                modeMessages.put(mode, receiveAll(mode, consumers.get(mode)));
+                // Like a long running consumer, the decoder (and its cached readers) is kept across the rounds
+                modeDecoders.put(mode, new DeviceTSVersionDecoder(mode));
+            }
+
+            // Warm up (JIT) all the modes first, the result is not reported
+            for (String mode : MODES) {
+                for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+                    decodeAll(modeDecoders.get(mode), modeMessages.get(mode));
+                }
+            }
+
+            System.out.println("[" + appName + "] " + msgNum + " messages, " + newVersionPct + "% DeviceTSNew, " +
+                    decodeRounds + " decoding rounds");
+            System.out.println(String.format("[%s] %-8s %10s %14s %16s %16s",
+                    appName, "mode", "messages", "decode msg/s", "decode cpu ns", "decode alloc B"));
+            for (String mode : MODES) {
+                System.out.println("[" + appName + "] " + runBenchmark(modeDecoders.get(mode), modeMessages.get(mode)));
+            }
+        } catch (PulsarClientException pce) {
+            pce.printStackTrace();
+            throw new WorkshopRuntimException("Unexpected error when running the decoding benchmark: " + pce.getMessage());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new WorkshopRuntimException("Interrupted while running the decoding benchmark!");
+        } finally {
+            for (Consumer<GenericRecord> consumer : consumers.values()) {
+                try {
+                    consumer.unsubscribe();
+                    consumer.close();
+                } catch (PulsarClientException pce) {
+                    logger.warn("Failed to remove the subscription {}: {}", consumer.getSubscription(), pce.getMessage());
+                }
+            }
+        }
+    }
+
+    private void publishMixedVersions() throws PulsarClientException, InterruptedException {
+        AsyncSendWindow sendWindow = new AsyncSendWindow(MAX_IN_FLIGHT);
+        try (Producer<DeviceTS> oldProducer = pulsarClient.newProducer(Schema.AVRO(DeviceTS.class))
+                .topic(topicName).maxPendingMessages(MAX_IN_FLIGHT).blockIfQueueFull(true).create();
+             Producer<DeviceTSNew> newProducer = pulsarClient.newProducer(Schema.AVRO(DeviceTSNew.class))
+                .topic(topicName).maxPendingMessages(MAX_IN_FLIGHT).blockIfQueueFull(true).create()) {
+            long baseTime = System.currentTimeMillis();
+            for (int i = 0; i < msgNum; i++) {
+                String tagId = "tag-" + (i % 100);
+                String eventTime = Instant.ofEpochMilli(baseTime + i).toString();
+                double eventValue = (i % 1000) / 10.0;
+
+                sendWindow.acquire();
+                // Spread the new version messages evenly
+                if ((i * newVersionPct) % 100 + newVersionPct >= 100) {
+                    sendWindow.track(newProducer.sendAsync(new DeviceTSNew(tagId, i % 3, eventTime, eventValue,
+                            DeviceTSVersionDecoder.yyyymmOf(eventTime))));
+                } else {
+                    sendWindow.track(oldProducer.sendAsync(new DeviceTS(tagId, i % 3, eventTime, eventValue)));
+                }
+            }
+            oldProducer.flush();
+            newProducer.flush();
+        }
+        sendWindow.awaitDrained(RECEIVE_TIMEOUT_SEC, TimeUnit.SECONDS);
+        if (sendWindow.getFailedCnt() > 0) {
+            throw new WorkshopRuntimException(sendWindow.getFailedCnt() + " sends failed (first failure: " +
+                    sendWindow.getFirstFailure().getMessage() + ")");
+        }
+    }
+
+    private List<Message<GenericRecord>> receiveAll(String mode, Consumer<GenericRecord> consumer)
+            throws PulsarClientException {
+        List<Message<GenericRecord>> messages = new ArrayList<>(msgNum);
+        while (messages.size() < msgNum) {
+            Message<GenericRecord> message = consumer.receive((int) RECEIVE_TIMEOUT_SEC, TimeUnit.SECONDS);
+            if (message == null) {
+                logger.warn("No {} message received for {} seconds, giving up", mode, RECEIVE_TIMEOUT_SEC);
+                break;
+            }
+            recordFirstMessage();
+            consumer.acknowledge(message);
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    private static long decodeAll(DeviceTSVersionDecoder decoder, List<Message<GenericRecord>> messages) {
+        long hash = 0;
+        for (Message<GenericRecord> message : messages) {
+            hash += decoder.decode(message).getYyyymm();
+        }
+        return hash;
+    }
+
+    /**
+     * Decode all the received messages "decodeRounds" times. Only the decoding is measured, not the receive.
+     *
+     * @return the result summary
+     */
+    private String runBenchmark(DeviceTSVersionDecoder decoder, List<Message<GenericRecord>> messages) {
+        long threadId = Thread.currentThread().getId();
+        long cpuStart = threadMXBean.getCurrentThreadCpuTime();
+        long allocStart = threadMXBean.getThreadAllocatedBytes(threadId);
+        long startNanos = System.nanoTime();
+
+        long hash = 0;
+        for (int round = 0; round < decodeRounds; round++) {
+            hash += decodeAll(decoder, messages);
+        }
+
+        long wallNanos = System.nanoTime() - startNanos;
+        long cpuNanos = threadMXBean.getCurrentThreadCpuTime() - cpuStart;
+        long allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - allocStart;
+        logger.debug("{}: decoded value hash {}", decoder.getMode(), hash);
+
+        long msgCnt = Math.max((long) messages.size() * decodeRounds, 1);
+        return String.format("%-8s %10d %14.0f %16.1f %16.1f",
+                decoder.getMode(),
+                messages.size(),
+                (wallNanos > 0) ? msgCnt * 1_000_000_000.0 / wallNanos : 0.0,
+                (double) cpuNanos / msgCnt,
+                (double) allocatedBytes / msgCnt);
+    }
+
+    @Override
+    public void termCmdApp() {
+        try {
+            if (pulsarClient != null) {
+                pulsarClient.close();
+            }
+        }
+        catch (PulsarClientException pce) {
+            throw new WorkshopRuntimException("Failed to terminate Pulsar client!");
+        }
+        finally {
+            logger.info("Terminating application: \"" + appName + "\" ...");
+        }
+    }
+}
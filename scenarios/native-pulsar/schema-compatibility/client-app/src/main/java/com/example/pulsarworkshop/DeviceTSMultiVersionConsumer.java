@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop;
+
+import com.example.pulsarworkshop.exception.InvalidParamException;
+import com.example.pulsarworkshop.exception.WorkshopRuntimException;
+import com.example.pulsarworkshop.util.ResolvingAvroDecoder;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.pulsar.client.api.*;
+import org.apache.pulsar.client.api.schema.GenericRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consumes a topic with both the "DeviceTS" and the "DeviceTSNew" schema versions (e.g. the input
+ * and the output topics of the "add-yyyymm" transform function, or a topic whose producers are
+ * upgraded one by one) with "Schema.AUTO_CONSUME()", and decodes all the messages into
+ * "DeviceTSNew" objects (see {@link DeviceTSVersionDecoder} for the decoding modes).
+ *
+ * At the end, it reports the number of messages of each schema version and the average decoding
+ * time per message.
+ */
+public class DeviceTSMultiVersionConsumer extends NativePulsarConsumerCmdApp {
+
+    // Must be set before initializing the "logger" object.
+    private final static String APP_NAME = "DeviceTSMultiVersionConsumer";
+    static { System.setProperty("log_file_base_name", getLogFileName(API_TYPE, APP_NAME)); }
+    private final static Logger logger = LoggerFactory.getLogger(DeviceTSMultiVersionConsumer.class);
+
+    private String subscriptionName;
+    private SubscriptionType subscriptionType = SubscriptionType.Exclusive;
+    private DeviceTSVersionDecoder decoder;
+
+    private static PulsarClient pulsarClient;
+    private static Consumer<GenericRecord> pulsarConsumer;
+
+    public DeviceTSMultiVersionConsumer(String appName, String[] inputParams) {
+        super(appName, inputParams);
+        addOptionalCommandLineOption("sbt","subType", true, "Pulsar subscription type.");
+        addRequiredCommandLineOption("sbn", "subName", true, "Pulsar subscription name.");
+        addOptionalCommandLineOption("dm", "decodeMode", true,
+                "Decoding mode: \"" + DeviceTSVersionDecoder.MODE_CACHED + "\" (default, one reader per schema version) or \"" +
+                        DeviceTSVersionDecoder.MODE_GENERIC + "\" (GenericRecord).");
+
+        logger.info("Starting application: \"" + appName + "\" ...");
+    }
+
+    public static void main(String[] args) {
+        PulsarWorkshopCmdApp workshopApp = new DeviceTSMultiVersionConsumer(APP_NAME, args);
+        int exitCode = workshopApp.runCmdApp();
+        System.exit(exitCode);
+    }
+
+    @Override
+    public void processExtendedInputParams() throws InvalidParamException {
+        super.processExtendedInputParams();
+
+        // (Required) Pulsar subscription name
+        subscriptionName = processStringInputParam("sbn");
+        if ( StringUtils.isBlank(subscriptionName) ) {
+            throw new InvalidParamException("Must provide a subscription name for a consumer!");
+        }
+
+        // (Optional) Pulsar subscription type
+        String subType = processStringInputParam("sbt");
+        if (!StringUtils.isBlank(subType)) {
+            try {
+                subscriptionType = SubscriptionType.valueOf(subType);
+            }
+            catch (IllegalArgumentException iae) {
+                subscriptionType = SubscriptionType.Exclusive;
+            }
+        }
+
+        // (Optional) Decoding mode
+        String decodeMode = StringUtils.defaultIfBlank(processStringInputParam("dm"), DeviceTSVersionDecoder.MODE_CACHED);
+        if (!DeviceTSVersionDecoder.isValidMode(decodeMode)) {
+            throw new InvalidParamException("decodeMode", "must be \"" + DeviceTSVersionDecoder.MODE_CACHED + "\" or \"" +
+                    DeviceTSVersionDecoder.MODE_GENERIC + "\", but got \"" + decodeMode + "\"");
+        }
+        decoder = new DeviceTSVersionDecoder(decodeMode);
+    }
+
+    @Override
+    public void execute() {
+        try {
+            if (pulsarClient == null) {
+                pulsarClient = createNativePulsarClient();
+
+                if (pulsarConsumer == null) {
+                    ConsumerBuilder<GenericRecord> consumerBuilder = pulsarClient.newConsumer(Schema.AUTO_CONSUME());
+                    consumerBuilder.topic(topicName);
+                    consumerBuilder.subscriptionName(subscriptionName);
+                    consumerBuilder.subscriptionType(subscriptionType);
+                    pulsarConsumer = applyConsumerSettings(consumerBuilder).subscribe();
+                }
+            }
+            addToLagReport(pulsarConsumer);
+
+            int msgRecvd = 0;
+            if (numMsg == -1) {
+                numMsg = Integer.MAX_VALUE;
+            }
+
+            // Number of messages per schema version (-1: no version)
+            Map<Long, Long> versionMsgCnts = new TreeMap<>();
+            long decodeNanos = 0;
+
+            long startNanos = 0;
+            while (msgRecvd < numMsg && hasRunTimeLeft()) {
+                Message<GenericRecord> message = pulsarConsumer.receive(RUN_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (message == null) {
+                    continue;
+                }
+                if (startNanos == 0) {
+                    startNanos = System.nanoTime();
+                }
+                recordFirstMessage();
+                recordLag(message);
+
+                long decodeStartNanos = System.nanoTime();
+                DeviceTSNew deviceTS = decoder.decode(message);
+                decodeNanos += System.nanoTime() - decodeStartNanos;
+                versionMsgCnts.merge(ResolvingAvroDecoder.toVersionKey(message.getSchemaVersion()), 1L, Long::sum);
+
+                logger.info("({}) Message received and acknowledged: " +
+                                "key={}; properties={}; value={}",
+                        pulsarConsumer.getConsumerName(),
+                        message.getKey(),
+                        message.getProperties(),
+                        deviceTS);
+                pulsarConsumer.acknowledge(message);
+                ackRpcCounter.recordAck(1);
+                msgRecvd++;
+            }
+
+            reportConsumption(msgRecvd, (startNanos > 0) ? (System.nanoTime() - startNanos) / 1_000_000_000.0 : 0.0);
+            System.out.println("[" + appName + "] Messages per schema version: " + versionMsgCnts);
+            System.out.println("[" + appName + "] Decoding (" + decoder.getMode() + "): " +
+                    String.format("%.0f", (msgRecvd > 0) ? (double) decodeNanos / msgRecvd : 0.0) + " ns/msg" +
+                    (decoder.getMode().equals(DeviceTSVersionDecoder.MODE_CACHED) ?
+                            ", " + decoder.getCachedVersionCnt() + " cached reader(s)" : ""));
+        }
+        catch (PulsarClientException pce) {
+            throw new WorkshopRuntimException("Unexpected error when consuming Pulsar messages: " + pce.getMessage());
+        }
+    }
+
+    @Override
+    public void termCmdApp() {
+        try {
+            if (pulsarConsumer != null) {
+                pulsarConsumer.close();
+            }
+
+            if (pulsarClient != null) {
+                pulsarClient.close();
+            }
+        }
+        catch (PulsarClientException pce) {
+            throw new WorkshopRuntimException("Failed to terminate Pulsar consumer or client!");
+        }
+        finally {
+            logger.info("Terminating application: \"" + appName + "\" ...");
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.example.pulsarworkshop;
+
+import com.example.pulsarworkshop.util.ResolvingAvroDecoder;
+import org.apache.avro.specific.SpecificData;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.pulsar.client.api.Message;
+import org.apache.pulsar.client.api.SchemaSerializationException;
+import org.apache.pulsar.client.api.schema.Field;
+import org.apache.pulsar.client.api.schema.GenericRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Decodes the messages of a topic with both the "DeviceTS" and the "DeviceTSNew" schema versions,
+ * received with "Schema.AUTO_CONSUME()", into "DeviceTSNew" objects. The "yyyymm" field of the
+ * "DeviceTS" readings is derived from their event time, like the "add-yyyymm" transform function does.
+ *
+ * The decoding modes:
+ * - "cached": one resolving datum reader per writer schema version ({@link ResolvingAvroDecoder}),
+ *   which reads the payload straight into a "DeviceTSNew" object
+ * - "generic": the "GenericRecord" of the message (decoded by the Pulsar client with the schema of
+ *   its version), whose fields are then looked up by name and converted
+ */
+public class DeviceTSVersionDecoder {
+
+    public final static String MODE_CACHED = "cached";
+    public final static String MODE_GENERIC = "generic";
+
+    // The older "DeviceTS" version doesn't have the "yyyymm" field, 0 until it is derived
+    private final static org.apache.avro.Schema READER_SCHEMA = ResolvingAvroDecoder.readerSchemaOf(
+            DeviceTSNew.getClassSchema(), Map.of("yyyymm", 0), DeviceTS.getClassSchema().getFullName());
+    private final static SpecificData SPECIFIC_DATA = new SpecificData(DeviceTSNew.class.getClassLoader());
+
+    private final String mode;
+    private final ResolvingAvroDecoder<DeviceTSNew> resolvingDecoder = new ResolvingAvroDecoder<>(READER_SCHEMA, SPECIFIC_DATA);
+
+    public DeviceTSVersionDecoder(String mode) {
+        this.mode = mode;
+    }
+
+    public static boolean isValidMode(String mode) {
+        return StringUtils.equalsAny(mode, MODE_CACHED, MODE_GENERIC);
+    }
+
+    public DeviceTSNew decode(Message<GenericRecord> message) {
+        DeviceTSNew deviceTS = mode.equals(MODE_GENERIC) ?
+                decodeGeneric(message.getValue()) :
+                resolvingDecoder.decode(message.getSchemaVersion(), message.getData(), version -> writerSchemaOf(message));
+
+        if (deviceTS.getYyyymm() == 0) {
+            deviceTS.setYyyymm(yyyymmOf(deviceTS.getEventTime()));
+        }
+        return deviceTS;
+    }
+
+    private static DeviceTSNew decodeGeneric(GenericRecord record) {
+        Integer yyyymm = 0;
+        for (Field field : record.getFields()) {
+            if (field.getName().equals("yyyymm")) {
+                yyyymm = (Integer) record.getField(field);
+                break;
+            }
+        }
+        return new DeviceTSNew(
+                record.getField("tag_id").toString(),
+                (Integer) record.getField("data_quality"),
+                record.getField("event_time").toString(),
+                (Double) record.getField("event_value"),
+                yyyymm);
+    }
+
+    /**
+     * @return the (parsed) schema the message was written with, only called once per version
+     */
+    private static org.apache.avro.Schema writerSchemaOf(Message<GenericRecord> message) {
+        byte[] schemaDefinition = message.getReaderSchema()
+                .orElseThrow(() -> new SchemaSerializationException("No schema for the message " + message.getMessageId()))
+                .getSchemaInfo().getSchema();
+        return new org.apache.avro.Schema.Parser().parse(new String(schemaDefinition, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param eventTime an ISO-8601 time, e.g. "2023-07-18T01:02:03Z"
+     */
+    static int yyyymmOf(CharSequence eventTime) {
+        if (eventTime == null || eventTime.length() < 7) {
+            return 0;
+        }
+        String eventTimeStr = eventTime.toString();
+        return NumberUtils.toInt(eventTimeStr.substring(0, 4)) * 100 + NumberUtils.toInt(eventTimeStr.substring(5, 7));
+    }
+
+    /**
+     * @return the number of writer schema versions seen so far by the "cached" mode
+     */
+    public int getCachedVersionCnt() {
+        return resolvingDecoder.getVersionCnt();
+    }
+
+    public String getMode() {
+        return mode;
+    }
+}
@@ -58,7 +58,7 @@ public class S4RFanoutProducer extends S4RCmdApp {
             channel.exchangeDeclare(S4RExchangeName, BuiltinExchangeType.FANOUT);
             logger.info("Exchange name is: " + S4RExchangeName);
             int msgSent = 0;
-            while (numMsg > msgSent) {
+            while (numMsg > msgSent && paceWorkload(msgSent)) {
                 String message = S4RMessage; 
                 channel.basicPublish(S4RExchangeName, "", null, message.getBytes());
                 if (logger.isDebugEnabled()) {
@@ -69,7 +69,7 @@ public class S4RQueueConsumer extends S4RCmdApp {
             };
             channel.basicConsume(S4RQueueName, true, consumer);
             logger.info("SR4 Consumer created for queue " + S4RQueueName + " running until " + numMsg + " messages are received.");
-            while (numMsg > MsgReceived) {
+            while (numMsg > MsgReceived && hasRunTimeLeft()) {
                 Thread.sleep(2000);    
             }
         } catch (Exception e) {
@@ -54,7 +54,7 @@ public class S4RQueueProducer extends S4RCmdApp {
             channel.confirmSelect();
             channel.queueDeclare(S4RQueueName, true, false, false, null);
             int msgSent = 0;
-            while (numMsg > msgSent) {
+            while (numMsg > msgSent && paceWorkload(msgSent)) {
                 String message = S4RMessage; 
                 channel.basicPublish("", S4RQueueName, null, message.getBytes());
                 if (logger.isDebugEnabled()) {
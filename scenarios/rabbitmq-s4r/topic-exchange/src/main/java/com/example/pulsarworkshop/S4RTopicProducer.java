@@ -57,7 +57,7 @@ public class S4RTopicProducer extends S4RCmdApp {
             channel.exchangeDeclare(S4RExchangeName, BuiltinExchangeType.TOPIC);
             logger.info("Exchange name is: " + S4RExchangeName);
             int msgSent = 0;
-            while (numMsg > msgSent) {
+            while (numMsg > msgSent && paceWorkload(msgSent)) {
                 String message = S4RMessage; 
                 channel.basicPublish(S4RExchangeName, S4RRoutingKey, null, message.getBytes());
                 if (logger.isDebugEnabled()) {
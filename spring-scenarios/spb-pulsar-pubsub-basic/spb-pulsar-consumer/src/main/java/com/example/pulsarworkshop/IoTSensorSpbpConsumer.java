@@ -128,6 +128,8 @@ public class IoTSensorSpbpConsumer implements CommandLineRunner  {
                             .subscriptionType(SubscriptionType.Shared);
                 };
 
+        // The same registered schema as "IoTSensorDataAvroSchema" of the native Pulsar scenarios, which
+        // is not used here to keep this build independent of their Pulsar client version (see README)
         Consumer<IoTSensorData> consumer = pulsarConsumerFactory.createConsumer(
                 Schema.AVRO(IoTSensorData.class),
                 Collections.singletonList(topic),